@@ -0,0 +1,179 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Saves anchors with at most maxConcurrentSaves requests in flight. Anything beyond that waits
+// in a queue shared by all batches of this uploader, so a large survey cannot flood the service.
+// Transient failures are retried according to the RetryPolicy while the anchor keeps its slot.
+class AnchorBatchUploader<A> {
+    interface AnchorSaver<A> {
+        CompletableFuture<A> save(A anchor);
+    }
+
+    private final AnchorSaver<A> saver;
+    private final ScheduledExecutorService scheduler;
+    private final RetryPolicy retryPolicy;
+    private final int maxConcurrentSaves;
+
+    private final ConcurrentLinkedQueue<Upload<A>> queued = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    AnchorBatchUploader(AnchorSaver<A> saver, ScheduledExecutorService scheduler,
+                        int maxConcurrentSaves, RetryPolicy retryPolicy) {
+        if (maxConcurrentSaves < 1) {
+            throw new IllegalArgumentException("maxConcurrentSaves must be at least 1.");
+        }
+        this.saver = saver;
+        this.scheduler = scheduler;
+        this.maxConcurrentSaves = maxConcurrentSaves;
+        this.retryPolicy = retryPolicy;
+    }
+
+    Batch<A> upload(Collection<? extends A> anchors) {
+        List<CompletableFuture<A>> futures = new ArrayList<>(anchors.size());
+        for (A anchor : anchors) {
+            Upload<A> upload = new Upload<>(anchor);
+            queued.add(upload);
+            futures.add(upload.result);
+        }
+        drain();
+        return new Batch<>(futures);
+    }
+
+    int getQueuedCount() {
+        return queued.size();
+    }
+
+    int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    // Saves that settle on the calling thread call back in here from finish(). Only one caller
+    // runs the loop at a time; the others leave their freed slot to it, so a batch of synchronous
+    // failures is a loop rather than one nested drain per anchor.
+    private void drain() {
+        do {
+            if (!draining.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                drainQueued();
+            } finally {
+                draining.set(false);
+            }
+            // A slot freed after the loop stopped but before the flag was cleared.
+        } while (!queued.isEmpty() && inFlight.get() < maxConcurrentSaves);
+    }
+
+    private void drainQueued() {
+        while (!queued.isEmpty()) {
+            int current = inFlight.get();
+            if (current >= maxConcurrentSaves) {
+                return;
+            }
+            if (!inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+
+            Upload<A> next = queued.poll();
+            if (next.result.isDone()) {
+                // The caller cancelled while queued.
+                inFlight.decrementAndGet();
+                continue;
+            }
+            attempt(next);
+        }
+    }
+
+    private void attempt(Upload<A> upload) {
+        if (upload.result.isDone()) {
+            // Cancelled by the caller while waiting for a retry; give its slot to the next anchor.
+            finish(upload, null, null);
+            return;
+        }
+        upload.attempts++;
+        CompletableFuture<A> save;
+        try {
+            save = saver.save(upload.anchor);
+        } catch (RuntimeException e) {
+            save = new CompletableFuture<>();
+            save.completeExceptionally(e);
+        }
+
+        save.whenComplete((saved, error) -> {
+            if (error == null) {
+                finish(upload, saved, null);
+            } else if (!upload.result.isDone() && retryPolicy.shouldRetry(error, upload.attempts)) {
+                try {
+                    scheduler.schedule(() -> attempt(upload),
+                            retryPolicy.nextDelayMs(upload.attempts), TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // The scheduler was shut down, e.g. with the session; there is no retry to wait for.
+                    finish(upload, null, e);
+                }
+            } else {
+                finish(upload, null, RetryPolicy.unwrap(error));
+            }
+        });
+    }
+
+    private void finish(Upload<A> upload, A saved, Throwable error) {
+        inFlight.decrementAndGet();
+        if (error == null) {
+            upload.result.complete(saved);
+        } else {
+            upload.result.completeExceptionally(error);
+        }
+        drain();
+    }
+
+    static final class Batch<A> {
+        private final List<CompletableFuture<A>> anchorFutures;
+        private final CompletableFuture<List<A>> completion;
+
+        Batch(List<CompletableFuture<A>> anchorFutures) {
+            this.anchorFutures = Collections.unmodifiableList(anchorFutures);
+            // Settles once every anchor has settled; fails with the first failure if any failed.
+            this.completion = CompletableFuture
+                    .allOf(anchorFutures.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(ignore -> {
+                        List<A> saved = new ArrayList<>(anchorFutures.size());
+                        for (CompletableFuture<A> future : anchorFutures) {
+                            saved.add(future.join());
+                        }
+                        return saved;
+                    });
+        }
+
+        List<CompletableFuture<A>> getAnchorFutures() {
+            return anchorFutures;
+        }
+
+        CompletableFuture<List<A>> getCompletion() {
+            return completion;
+        }
+    }
+
+    private static final class Upload<A> {
+        final A anchor;
+        final CompletableFuture<A> result = new CompletableFuture<>();
+        volatile int attempts;
+
+        Upload(A anchor) {
+            this.anchor = anchor;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+// Speculatively asks for the anchors a session is likely to need next. Whenever an anchor is
+// located, its strongest CoLocateGraph neighbors are returned to be added to the locator's
+// criteria, so they are often already in the scene by the time the user asks for them.
+// Speculative identifiers located in turn chain to their own neighbors.
+//
+// The budget: at most fanout new neighbors per located anchor, at most maxOutstanding speculative
+// identifiers not yet located, and each one is given up after ttlNanos so it stops widening
+// the watcher. The caller feeds back what happened and cancels what expire() returns.
+//
+// Metrics, cumulative over sessions:
+//   prefetch.issued            speculative identifiers added to the search
+//   prefetch.located           ...that were located
+//   prefetch.hits              ...that the user went on to request
+//   prefetch.wasted            ...that expired, were not found or were still pending at the end
+// Thread-safe.
+class AnchorPrefetcher {
+    private final CoLocateGraph graph;
+    private final FrameScheduler.Clock clock;
+    private final int fanout;
+    private final int maxOutstanding;
+    private final float minScore;
+    private final long ttlNanos;
+
+    private final LongAdder issued;
+    private final LongAdder locatedSpeculative;
+    private final LongAdder hits;
+    private final LongAdder wasted;
+
+    // Speculative identifiers not located yet -> when they were issued, oldest first.
+    private final LinkedHashMap<String, Long> outstanding = new LinkedHashMap<>();
+    // Located speculatively and not requested yet.
+    private final Set<String> prefetched = new HashSet<>();
+    // Everything this session has asked for, speculatively or not.
+    private final Set<String> known = new HashSet<>();
+    private final Set<String> locatedOrder = new LinkedHashSet<>();
+
+    AnchorPrefetcher(CoLocateGraph graph, FrameScheduler.Clock clock, MetricsRegistry metrics,
+                     int fanout, int maxOutstanding, float minScore, long ttlNanos) {
+        this.graph = graph;
+        this.clock = clock;
+        this.fanout = fanout;
+        this.maxOutstanding = maxOutstanding;
+        this.minScore = minScore;
+        this.ttlNanos = ttlNanos;
+        issued = metrics.counter("prefetch.issued");
+        locatedSpeculative = metrics.counter("prefetch.located");
+        hits = metrics.counter("prefetch.hits");
+        wasted = metrics.counter("prefetch.wasted");
+    }
+
+    // The user asked for an identifier. Returns true if it was already prefetched, located or
+    // not, which is a hit.
+    synchronized boolean onRequested(String identifier) {
+        known.add(identifier);
+        if (outstanding.remove(identifier) != null || prefetched.remove(identifier)) {
+            hits.increment();
+            return true;
+        }
+        return false;
+    }
+
+    // An anchor was located; returns the identifiers to add to the search.
+    synchronized List<String> onLocated(String identifier) {
+        known.add(identifier);
+        locatedOrder.add(identifier);
+        if (outstanding.remove(identifier) != null) {
+            locatedSpeculative.increment();
+            prefetched.add(identifier);
+        }
+
+        List<String> next = new ArrayList<>();
+        if (outstanding.size() >= maxOutstanding) {
+            return next;
+        }
+        long now = clock.nanoTime();
+        for (CoLocateGraph.Neighbor neighbor : graph.neighbors(identifier, Integer.MAX_VALUE, minScore)) {
+            if (next.size() >= fanout || outstanding.size() >= maxOutstanding) {
+                break;
+            }
+            if (known.add(neighbor.identifier)) {
+                outstanding.put(neighbor.identifier, now);
+                issued.increment();
+                next.add(neighbor.identifier);
+            }
+        }
+        return next;
+    }
+
+    synchronized void onNotFound(String identifier) {
+        if (outstanding.remove(identifier) != null) {
+            wasted.increment();
+        }
+    }
+
+    // Gives up on speculative identifiers older than the TTL and returns them to be cancelled.
+    synchronized List<String> expire() {
+        List<String> expired = new ArrayList<>();
+        long now = clock.nanoTime();
+        Iterator<Map.Entry<String, Long>> iterator = outstanding.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (now - entry.getValue() < ttlNanos) {
+                // Oldest first, so the rest are younger.
+                break;
+            }
+            iterator.remove();
+            expired.add(entry.getKey());
+        }
+        wasted.add(expired.size());
+        return expired;
+    }
+
+    synchronized boolean isOutstanding(String identifier) {
+        return outstanding.containsKey(identifier);
+    }
+
+    synchronized int getOutstandingCount() {
+        return outstanding.size();
+    }
+
+    // Ends the session and returns the anchors it located, in order, to be recorded. Prefetched
+    // anchors the user never asked for are left out, so predictions do not reinforce themselves.
+    synchronized String[] endSession() {
+        wasted.add(outstanding.size());
+        locatedOrder.removeAll(prefetched);
+        String[] session = locatedOrder.toArray(new String[0]);
+        outstanding.clear();
+        prefetched.clear();
+        known.clear();
+        locatedOrder.clear();
+        return session;
+    }
+
+    long getIssued() {
+        return issued.sum();
+    }
+
+    long getLocated() {
+        return locatedSpeculative.sum();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getWasted() {
+        return wasted.sum();
+    }
+}
@@ -0,0 +1,59 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+// Backend-neutral locate criteria; mirrors the parts of AnchorLocateCriteria the app uses.
+// A query looks either for the given identifiers or, once setNearDevice() is called, for
+// whatever anchors the service finds near the device from its sensor readings.
+class AnchorQuery {
+    private String[] identifiers = new String[0];
+    private boolean bypassCache;
+    private float nearDeviceDistance = Float.NaN;
+    private int nearDeviceMaxCount;
+
+    String[] getIdentifiers() {
+        return identifiers.clone();
+    }
+
+    AnchorQuery setIdentifiers(String[] identifiers) {
+        if (isNearDevice() && identifiers.length > 0) {
+            throw new IllegalStateException("A near-device query cannot also look for identifiers.");
+        }
+        this.identifiers = identifiers.clone();
+        return this;
+    }
+
+    boolean isNearDevice() {
+        return !Float.isNaN(nearDeviceDistance);
+    }
+
+    float getNearDeviceDistance() {
+        return nearDeviceDistance;
+    }
+
+    int getNearDeviceMaxCount() {
+        return nearDeviceMaxCount;
+    }
+
+    // Looks for up to maxCount anchors within distanceMeters of the device.
+    AnchorQuery setNearDevice(float distanceMeters, int maxCount) {
+        if (identifiers.length > 0) {
+            throw new IllegalStateException("A query for identifiers cannot also look near the device.");
+        }
+        if (!(distanceMeters > 0) || maxCount < 1) {
+            throw new IllegalArgumentException("The distance and count must be positive.");
+        }
+        this.nearDeviceDistance = distanceMeters;
+        this.nearDeviceMaxCount = maxCount;
+        return this;
+    }
+
+    boolean getBypassCache() {
+        return bypassCache;
+    }
+
+    AnchorQuery setBypassCache(boolean bypassCache) {
+        this.bypassCache = bypassCache;
+        return this;
+    }
+}
@@ -0,0 +1,90 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// What this device remembers about a cloud anchor it created or located. The pose is
+// {tx, ty, tz, qx, qy, qz, qw} in the AR world frame of the session that last saw the anchor.
+class AnchorRecord {
+    static final int POSE_LENGTH = 7;
+
+    private final String identifier;
+    private final long createdAtMillis;
+    private final long lastLocatedAtMillis;
+    private final float[] pose;
+    private final int color;
+    private final String shape;
+    private final Map<String, String> appProperties;
+
+    AnchorRecord(String identifier, long createdAtMillis, long lastLocatedAtMillis, float[] pose,
+                 int color, String shape, Map<String, String> appProperties) {
+        if (identifier == null || identifier.isEmpty()) {
+            throw new IllegalArgumentException("The identifier may not be empty.");
+        }
+        if (pose.length != POSE_LENGTH) {
+            throw new IllegalArgumentException("The pose must have " + POSE_LENGTH + " components.");
+        }
+        this.identifier = identifier;
+        this.createdAtMillis = createdAtMillis;
+        this.lastLocatedAtMillis = lastLocatedAtMillis;
+        this.pose = pose.clone();
+        this.color = color;
+        this.shape = shape;
+        this.appProperties = Collections.unmodifiableMap(new HashMap<>(appProperties));
+    }
+
+    String getIdentifier() {
+        return identifier;
+    }
+
+    long getCreatedAtMillis() {
+        return createdAtMillis;
+    }
+
+    long getLastLocatedAtMillis() {
+        return lastLocatedAtMillis;
+    }
+
+    float[] getPose() {
+        return pose.clone();
+    }
+
+    float getX() {
+        return pose[0];
+    }
+
+    float getY() {
+        return pose[1];
+    }
+
+    float getZ() {
+        return pose[2];
+    }
+
+    int getColor() {
+        return color;
+    }
+
+    String getShape() {
+        return shape;
+    }
+
+    Map<String, String> getAppProperties() {
+        return appProperties;
+    }
+
+    AnchorRecord withLocated(long locatedAtMillis, float[] locatedPose) {
+        return new AnchorRecord(identifier, createdAtMillis, locatedAtMillis, locatedPose,
+                color, shape, appProperties);
+    }
+
+    AnchorRecord withAppProperty(String key, String value) {
+        Map<String, String> properties = new HashMap<>(appProperties);
+        properties.put(key, value);
+        return new AnchorRecord(identifier, createdAtMillis, lastLocatedAtMillis, pose,
+                color, shape, properties);
+    }
+}
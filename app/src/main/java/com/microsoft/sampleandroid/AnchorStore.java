@@ -0,0 +1,259 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// On-device store of anchors this device created or located, kept as an append-only RecordLog
+// with an in-memory index by identifier (LRU ordered) and by position (SpatialGrid).
+//
+// One log record per change:
+//   payload := byte op, UTF identifier, [PUT only: long createdAt, long lastLocatedAt,
+//              float[7] pose, int color, UTF shape, short propertyCount, (UTF key, UTF value)*]
+//
+// Replaying the log on open rebuilds the index; a torn or corrupt tail (from a crash mid-write)
+// is truncated. Evictions beyond maxRecords are logged as removals, and the log is rewritten
+// once it holds more than COMPACTION_RATIO entries per live record.
+//
+// Reads only lock the in-memory index. Writes, and the compaction they may trigger, also hold a
+// separate write lock across the disk I/O, so a read never waits for the disk; writes still do,
+// so make them off the UI thread.
+class AnchorStore implements Closeable {
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int COMPACTION_RATIO = 3;
+    private static final int MIN_COMPACTION_ENTRIES = 1024;
+
+    private final int maxRecords;
+    // Guards the log and the encoding buffer; taken before the index lock, never after.
+    private final Object writeLock = new Object();
+    private final LinkedHashMap<String, AnchorRecord> records = new LinkedHashMap<>(16, 0.75f, true);
+    private final SpatialGrid<String> positions;
+    private final ByteArrayOutputStream scratch = new ByteArrayOutputStream(256);
+    private final DataOutputStream scratchOut = new DataOutputStream(scratch);
+
+    private RecordLog log;
+    private int logEntries;
+    private long evictions;
+
+    private AnchorStore(int maxRecords, float cellSizeMeters) {
+        if (maxRecords < 1) {
+            throw new IllegalArgumentException("maxRecords must be at least 1.");
+        }
+        this.maxRecords = maxRecords;
+        this.positions = new SpatialGrid<>(cellSizeMeters);
+    }
+
+    static AnchorStore open(File file, int maxRecords, float cellSizeMeters) throws IOException {
+        AnchorStore store = new AnchorStore(maxRecords, cellSizeMeters);
+        synchronized (store.writeLock) {
+            store.log = RecordLog.open(file, payload -> {
+                store.decode(payload);
+                store.logEntries++;
+            });
+            store.evictOverflow();
+        }
+        return store;
+    }
+
+    synchronized AnchorRecord get(String identifier) {
+        return records.get(identifier);
+    }
+
+    void put(AnchorRecord record) throws IOException {
+        synchronized (writeLock) {
+            append(OP_PUT, record.getIdentifier(), record);
+            synchronized (this) {
+                apply(record);
+            }
+            evictOverflow();
+            compactIfNeeded();
+        }
+    }
+
+    boolean remove(String identifier) throws IOException {
+        synchronized (writeLock) {
+            // Only writers add or remove records, so the answer holds until the removal is applied.
+            synchronized (this) {
+                if (!records.containsKey(identifier)) {
+                    return false;
+                }
+            }
+            append(OP_REMOVE, identifier, null);
+            synchronized (this) {
+                records.remove(identifier);
+                positions.remove(identifier);
+            }
+            compactIfNeeded();
+            return true;
+        }
+    }
+
+    // Records whose last known position is within radius of the point, nearest first.
+    synchronized List<AnchorRecord> findNear(float x, float y, float z, float radiusMeters, int limit) {
+        List<String> identifiers = positions.findWithin(x, y, z, radiusMeters, limit);
+        List<AnchorRecord> result = new ArrayList<>(identifiers.size());
+        for (String identifier : identifiers) {
+            result.add(records.get(identifier));
+        }
+        return result;
+    }
+
+    // The requested identifier first, followed by up to maxNeighbors stored anchors that were
+    // last seen near it; locating those along with it costs nothing extra to the user.
+    synchronized String[] locateCandidates(String identifier, float radiusMeters, int maxNeighbors) {
+        List<String> candidates = new ArrayList<>(maxNeighbors + 1);
+        candidates.add(identifier);
+        AnchorRecord record = records.get(identifier);
+        if (record != null) {
+            for (String neighbor : positions.findWithin(record.getX(), record.getY(), record.getZ(),
+                    radiusMeters, maxNeighbors + 1)) {
+                if (!neighbor.equals(identifier) && candidates.size() <= maxNeighbors) {
+                    candidates.add(neighbor);
+                }
+            }
+        }
+        return candidates.toArray(new String[0]);
+    }
+
+    // A copy of every record, least recently used first.
+    synchronized List<AnchorRecord> getAll() {
+        return new ArrayList<>(records.values());
+    }
+
+    synchronized int size() {
+        return records.size();
+    }
+
+    synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    int getLogEntryCount() {
+        synchronized (writeLock) {
+            return logEntries;
+        }
+    }
+
+    // Rewrites the log with one entry per live record, oldest access first so LRU order survives.
+    void compact() throws IOException {
+        synchronized (writeLock) {
+            List<AnchorRecord> live;
+            synchronized (this) {
+                live = new ArrayList<>(records.values());
+            }
+            List<byte[]> payloads = new ArrayList<>(live.size());
+            for (AnchorRecord record : live) {
+                payloads.add(encode(OP_PUT, record.getIdentifier(), record));
+            }
+            log.rewrite(payloads);
+            logEntries = live.size();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            log.close();
+        }
+    }
+
+    private void apply(AnchorRecord record) {
+        records.put(record.getIdentifier(), record);
+        positions.put(record.getIdentifier(), record.getX(), record.getY(), record.getZ());
+    }
+
+    private void evictOverflow() throws IOException {
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, AnchorRecord>> eldest = records.entrySet().iterator();
+            while (records.size() > maxRecords) {
+                String identifier = eldest.next().getKey();
+                eldest.remove();
+                positions.remove(identifier);
+                evicted.add(identifier);
+                evictions++;
+            }
+        }
+        for (String identifier : evicted) {
+            append(OP_REMOVE, identifier, null);
+        }
+    }
+
+    private void compactIfNeeded() throws IOException {
+        int live;
+        synchronized (this) {
+            live = records.size();
+        }
+        if (logEntries > MIN_COMPACTION_ENTRIES && logEntries > COMPACTION_RATIO * live) {
+            compact();
+        }
+    }
+
+    private void append(byte op, String identifier, AnchorRecord record) throws IOException {
+        log.append(encode(op, identifier, record));
+        log.flush();
+        logEntries++;
+    }
+
+    private byte[] encode(byte op, String identifier, AnchorRecord record) throws IOException {
+        scratch.reset();
+        scratchOut.writeByte(op);
+        scratchOut.writeUTF(identifier);
+        if (op == OP_PUT) {
+            scratchOut.writeLong(record.getCreatedAtMillis());
+            scratchOut.writeLong(record.getLastLocatedAtMillis());
+            for (float component : record.getPose()) {
+                scratchOut.writeFloat(component);
+            }
+            scratchOut.writeInt(record.getColor());
+            scratchOut.writeUTF(record.getShape());
+            Map<String, String> properties = record.getAppProperties();
+            scratchOut.writeShort(properties.size());
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                scratchOut.writeUTF(property.getKey());
+                scratchOut.writeUTF(property.getValue());
+            }
+        }
+        scratchOut.flush();
+        return scratch.toByteArray();
+    }
+
+    private void decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        String identifier = in.readUTF();
+        if (op == OP_REMOVE) {
+            records.remove(identifier);
+            positions.remove(identifier);
+            return;
+        }
+
+        long createdAt = in.readLong();
+        long lastLocatedAt = in.readLong();
+        float[] pose = new float[AnchorRecord.POSE_LENGTH];
+        for (int i = 0; i < pose.length; i++) {
+            pose[i] = in.readFloat();
+        }
+        int color = in.readInt();
+        String shape = in.readUTF();
+        int propertyCount = in.readUnsignedShort();
+        Map<String, String> properties = new HashMap<>(propertyCount * 2);
+        for (int i = 0; i < propertyCount; i++) {
+            properties.put(in.readUTF(), in.readUTF());
+        }
+        apply(new AnchorRecord(identifier, createdAt, lastLocatedAt, pose, color, shape, properties));
+    }
+}
@@ -4,34 +4,96 @@ package com.microsoft.sampleandroid;
 
 import android.content.Context;
 import com.google.ar.core.Anchor;
+import com.google.ar.core.Pose;
+import com.google.ar.core.TrackingState;
 import com.google.ar.sceneform.AnchorNode;
+import com.google.ar.sceneform.Scene;
 import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.rendering.Color;
 import com.google.ar.sceneform.rendering.Material;
 import com.google.ar.sceneform.rendering.MaterialFactory;
+import com.google.ar.sceneform.rendering.ModelRenderable;
 import com.google.ar.sceneform.rendering.Renderable;
 import com.google.ar.sceneform.rendering.ShapeFactory;
 import com.google.ar.sceneform.ux.ArFragment;
 import com.google.ar.sceneform.ux.TransformableNode;
 import com.microsoft.azure.spatialanchors.CloudSpatialAnchor;
 
-import java.util.HashMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 class AnchorVisual {
     enum Shape {
         Sphere,
         Cube,
         Cylinder,
+        // A model, the sample one unless setModel gives another, at a level of detail chosen
+        // by distance from the camera.
+        Model,
     }
 
+    // A model compiled to res/raw by the build: its levels of detail, nearest first, and the
+    // scale to show it at.
+    static final class Model {
+        final int[] levels;
+        final float scale;
+
+        Model(float scale, int... levels) {
+            if (levels.length == 0) {
+                throw new IllegalArgumentException("A model needs at least one level.");
+            }
+            this.levels = levels;
+            this.scale = scale;
+        }
+    }
+
+    // The full sample model and the levels generated from it by generateModelLods in
+    // build.gradle. It is about a meter across; show it at the size of the other shapes.
+    static final Model SAMPLE_MODEL = new Model(0.2f, R.raw.model, R.raw.model_lod1, R.raw.model_lod2);
+
     private final AnchorNode anchorNode;
     private TransformableNode transformableNode;
     private CloudSpatialAnchor cloudAnchor;
     private Shape shape = Shape.Sphere;
+    private Model model = SAMPLE_MODEL;
     private Material material;
+    private Renderable renderable;
+    private boolean destroyed;
+    private boolean culled;
+    private Scene scene;
+    private int lodLevel = -1;
+
+    // Dispatcher keys: a newer pending request for the same node operation replaces the older.
+    private final Object nodeKey = new Object();
+    private final Object materialKey = new Object();
+    private final Object lodKey = new Object();
+    private volatile int requestedColor;
 
-    private static HashMap<Integer, CompletableFuture<Material>> solidColorMaterialCache = new HashMap<>();
+    // Materials are shared by color across all visuals. The cache only ever holds the
+    // application context, never the activity that first asked for a color.
+    private static final int MAX_CACHED_MATERIALS = 32;
+    private static final int MATERIAL_CACHE_STRIPES = 4;
+    private static volatile ResourceCache<Integer, Material> solidColorMaterialCache;
+
+    // Camera distances in meters at which a model switches to its next level of detail.
+    private static final LodSelector modelLodSelector = new LodSelector(new float[]{1.5f, 4f}, 0.25f);
+
+    // One geometry per shape; each visual gets a copy sharing it, with its own material.
+    // Only used on the UI thread.
+    private static final SharedRenderableRegistry<Shape, Renderable, Material> renderables =
+            new SharedRenderableRegistry<>(new SharedRenderableRegistry.Factory<Shape, Renderable, Material>() {
+                @Override
+                public Renderable makePrototype(Shape shape, Material material) {
+                    return makeShapeRenderable(shape, material);
+                }
+
+                @Override
+                public Renderable makeInstance(Renderable prototype, Material material) {
+                    Renderable instance = prototype.makeCopy();
+                    instance.setMaterial(material);
+                    return instance;
+                }
+            });
 
     AnchorVisual(ArFragment arFragment, Anchor localAnchor) {
         anchorNode = new AnchorNode(localAnchor);
@@ -51,14 +113,40 @@ class AnchorVisual {
         return this.cloudAnchor;
     }
 
+    Shape getShape() {
+        return this.shape;
+    }
+
+    // Must be called before the visual is first rendered.
+    void setShape(Shape shape) {
+        this.shape = shape;
+        float scale = shape == Shape.Model ? model.scale : 1f;
+        transformableNode.setLocalScale(new Vector3(scale, scale, scale));
+    }
+
+    // Shows the given model instead of a shape. Must be called before the visual is first
+    // rendered.
+    void setModel(Model model) {
+        this.model = model;
+        setShape(Shape.Model);
+    }
+
+    // Visuals currently holding a shape renderable; UI thread only.
+    static int getLiveRenderableCount() {
+        return renderables.getLiveCount();
+    }
+
     Anchor getLocalAnchor() {
         return this.anchorNode.getAnchor();
     }
 
     void render(ArFragment arFragment) {
-        MainThreadContext.runOnUiThread(() -> {
+        MainThreadContext.runOnUiThread(nodeKey, () -> {
             recreateRenderableOnUiThread();
-            anchorNode.setParent(arFragment.getArSceneView().getScene());
+            scene = arFragment.getArSceneView().getScene();
+            if (!culled) {
+                anchorNode.setParent(scene);
+            }
         });
     }
 
@@ -66,33 +154,130 @@ class AnchorVisual {
         this.cloudAnchor = cloudAnchor;
     }
 
-    synchronized void setColor(Context context, int rgb) {
-        CompletableFuture<Material> loadMaterial =
-                solidColorMaterialCache.computeIfAbsent(rgb,
-                        color ->
-                        {
-                            CompletableFuture<Material> promise = new CompletableFuture<>();
-                            MainThreadContext.runOnUiThread(() -> {
-                                try {
-                                    MaterialFactory.makeOpaqueWithColor(context, new Color(rgb)).thenAccept(promise::complete);
-                                } catch (Exception ex) {
-                                    promise.completeExceptionally(ex);
-                                }
-                            });
-                            return promise;
-                        });
-        loadMaterial.thenAccept(this::setMaterial);
-    }
-
-    private void setMaterial(Material material) {
+    void setColor(Context context, int rgb) {
+        requestedColor = rgb;
+        getMaterialCache(context).get(rgb).thenAccept(loaded -> {
+            // A later setColor wins even if its material finished loading first.
+            if (requestedColor == rgb) {
+                MainThreadContext.runOnUiThread(materialKey, () -> setMaterialOnUiThread(loaded));
+            }
+        });
+    }
+
+    // Detaches the node while the anchor is out of range, so the scene neither updates nor
+    // draws it, and attaches it again when it comes back. UI thread only.
+    void setCulled(boolean culled) {
+        if (this.culled == culled || destroyed) {
+            return;
+        }
+        this.culled = culled;
+        if (scene != null) {
+            anchorNode.setParent(culled ? null : scene);
+        }
+    }
+
+    // The anchor's world position as ARCore currently estimates it; this keeps refining while
+    // the node is detached. Returns false once the anchor no longer tracks.
+    boolean readWorldPosition(float[] out) {
+        Anchor anchor = anchorNode.getAnchor();
+        if (anchor == null || anchor.getTrackingState() == TrackingState.STOPPED) {
+            return false;
+        }
+        Pose pose = anchor.getPose();
+        out[0] = pose.tx();
+        out[1] = pose.ty();
+        out[2] = pose.tz();
+        return true;
+    }
+
+    // Switches the model to the level of detail for its distance from the camera. Called every
+    // frame on the UI thread; does nothing for the other shapes.
+    void updateLod(Context context, Vector3 cameraPosition) {
+        if (shape != Shape.Model || destroyed) {
+            return;
+        }
+        float distance = Vector3.subtract(anchorNode.getWorldPosition(), cameraPosition).length();
+        int level = Math.min(modelLodSelector.select(lodLevel, distance), model.levels.length - 1);
+        if (level == lodLevel) {
+            return;
+        }
+        lodLevel = level;
+        PreloadingRegistry<Integer, ModelRenderable> models = RenderableAssets.getModels(context);
+        ModelRenderable loaded = models.getIfLoaded(model.levels[level]);
+        if (loaded != null) {
+            // Preloaded: show it this frame rather than after another trip through the UI queue.
+            setModelOnUiThread(level, loaded);
+            return;
+        }
+        models.get(model.levels[level]).thenAccept(renderable ->
+                MainThreadContext.runOnUiThread(lodKey, () -> setModelOnUiThread(level, renderable)));
+    }
+
+    private void setModelOnUiThread(int level, ModelRenderable loaded) {
+        // A level requested later wins even if its model finished loading first.
+        if (destroyed || level != lodLevel) {
+            return;
+        }
+        renderable = loaded.makeCopy();
+        transformableNode.setRenderable(renderable);
+    }
+
+    static ResourceCache<Integer, Material> getMaterialCache(Context context) {
+        ResourceCache<Integer, Material> cache = solidColorMaterialCache;
+        if (cache == null) {
+            synchronized (AnchorVisual.class) {
+                cache = solidColorMaterialCache;
+                if (cache == null) {
+                    Context applicationContext = context.getApplicationContext();
+                    cache = new ResourceCache<>(MAX_CACHED_MATERIALS, MATERIAL_CACHE_STRIPES,
+                            rgb -> buildOnUiThread(() -> MaterialFactory.makeOpaqueWithColor(
+                                    applicationContext, new Color(rgb))));
+                    solidColorMaterialCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    // Sceneform builders must run on the UI thread; the result completes wherever they do.
+    static <T> CompletableFuture<T> buildOnUiThread(Supplier<CompletableFuture<T>> build) {
+        CompletableFuture<T> promise = new CompletableFuture<>();
+        MainThreadContext.runOnUiThread(() -> {
+            try {
+                build.get().whenComplete((result, error) -> {
+                    if (error != null) {
+                        promise.completeExceptionally(error);
+                    } else {
+                        promise.complete(result);
+                    }
+                });
+            } catch (Exception ex) {
+                promise.completeExceptionally(ex);
+            }
+        });
+        return promise;
+    }
+
+    private void setMaterialOnUiThread(Material material) {
         if (this.material != material) {
             this.material = material;
-            MainThreadContext.runOnUiThread(this::recreateRenderableOnUiThread);
+            recreateRenderableOnUiThread();
         }
     }
 
     void destroy() {
-        MainThreadContext.runOnUiThread(() -> {
+        MainThreadContext.cancel(materialKey);
+        MainThreadContext.cancel(lodKey);
+        // Supersedes a render that has not run yet.
+        MainThreadContext.runOnUiThread(nodeKey, () -> {
+            destroyed = true;
+            if (renderable != null) {
+                transformableNode.setRenderable(null);
+                if (shape != Shape.Model) {
+                    renderables.release(shape);
+                }
+                renderable = null;
+            }
             anchorNode.setRenderable(null);
             anchorNode.setParent(null);
             Anchor localAnchor = anchorNode.getAnchor();
@@ -104,32 +289,39 @@ class AnchorVisual {
     }
 
     private void recreateRenderableOnUiThread() {
-        if (material != null) {
-            Renderable renderable;
-            switch (shape) {
-                case Sphere:
-                    renderable = ShapeFactory.makeSphere(
-                            0.1f,
-                            new Vector3(0.0f, 0.1f, 0.0f),
-                            material);
-                    break;
-                case Cube:
-                    renderable = ShapeFactory.makeCube(
-                            new Vector3(0.161f, 0.161f, 0.161f),
-                            new Vector3(0.0f, 0.0805f, 0.0f),
-                            material);
-                    break;
-                case Cylinder:
-                    renderable = ShapeFactory.makeCylinder(
-                            0.0874f,
-                            0.175f,
-                            new Vector3(0.0f, 0.0875f, 0.0f),
-                            material);
-                    break;
-                default:
-                    throw new IllegalStateException("Invalid shape");
-            }
+        // The model keeps its own materials and gets its renderable from updateLod.
+        if (material == null || destroyed || shape == Shape.Model) {
+            return;
+        }
+        if (renderable == null) {
+            renderable = renderables.acquire(shape, material);
             transformableNode.setRenderable(renderable);
+        } else {
+            // Same geometry, new color: no need to rebuild anything.
+            renderable.setMaterial(material);
+        }
+    }
+
+    private static Renderable makeShapeRenderable(Shape shape, Material material) {
+        switch (shape) {
+            case Sphere:
+                return ShapeFactory.makeSphere(
+                        0.1f,
+                        new Vector3(0.0f, 0.1f, 0.0f),
+                        material);
+            case Cube:
+                return ShapeFactory.makeCube(
+                        new Vector3(0.161f, 0.161f, 0.161f),
+                        new Vector3(0.0f, 0.0805f, 0.0f),
+                        material);
+            case Cylinder:
+                return ShapeFactory.makeCylinder(
+                        0.0874f,
+                        0.175f,
+                        new Vector3(0.0f, 0.0875f, 0.0f),
+                        material);
+            default:
+                throw new IllegalStateException("Invalid shape");
         }
     }
 }
@@ -0,0 +1,278 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import android.Manifest;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanResult;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.net.wifi.WifiManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Fingerprints from the device's own radios: the last location fix, the last Wi-Fi scan and
+// the Bluetooth LE devices heard recently. All three need the fine location permission; without
+// it every sensor reports Blocked and read() returns what little is left.
+//
+// start() and stop() must be called on the main thread; read() may be called from any thread.
+class AndroidSensorProvider implements SensorProvider {
+    private static final String TAG = "ASASensors";
+
+    // Android throttles apps to four Wi-Fi scans every two minutes.
+    private static final long WIFI_SCAN_INTERVAL_MS = 30_000;
+    private static final long LOCATION_INTERVAL_MS = 2_000;
+    // Readings older than these no longer describe where the device is.
+    private static final long MAX_LOCATION_AGE_MS = 60_000;
+    private static final long MAX_WIFI_AGE_MS = 2 * WIFI_SCAN_INTERVAL_MS;
+    private static final long MAX_BEACON_AGE_MS = 10_000;
+    // Used when a fix does not report its accuracy.
+    private static final float DEFAULT_ACCURACY_METERS = 100f;
+
+    private static final class Sighting {
+        final int rssi;
+        final long elapsedMillis;
+
+        Sighting(int rssi, long elapsedMillis) {
+            this.rssi = rssi;
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+
+    private final Context context;
+    private final WifiManager wifiManager;
+    private final LocationManager locationManager;
+    private final BluetoothAdapter bluetoothAdapter;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<Long, Sighting> beacons = new ConcurrentHashMap<>();
+
+    private volatile boolean started;
+    private volatile Location lastLocation;
+    private BluetoothLeScanner bluetoothScanner;
+
+    private final LocationListener locationListener = new LocationListener() {
+        @Override
+        public void onLocationChanged(Location location) {
+            Location last = lastLocation;
+            if (last == null || location.getElapsedRealtimeNanos() >= last.getElapsedRealtimeNanos()) {
+                lastLocation = location;
+            }
+        }
+
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle extras) {
+        }
+
+        @Override
+        public void onProviderEnabled(String provider) {
+        }
+
+        @Override
+        public void onProviderDisabled(String provider) {
+        }
+    };
+
+    private final Runnable wifiScan = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                wifiManager.startScan();
+            } catch (SecurityException e) {
+                Log.w(TAG, "Wi-Fi scan not permitted", e);
+            }
+            handler.postDelayed(this, WIFI_SCAN_INTERVAL_MS);
+        }
+    };
+
+    private final ScanCallback beaconScan = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            long key = SensorFingerprint.macToKey(result.getDevice().getAddress());
+            if (key >= 0) {
+                beacons.put(key, new Sighting(result.getRssi(), SystemClock.elapsedRealtime()));
+            }
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            for (ScanResult result : results) {
+                onScanResult(0, result);
+            }
+        }
+    };
+
+    AndroidSensorProvider(Context context) {
+        this.context = context.getApplicationContext();
+        this.wifiManager = (WifiManager) this.context.getSystemService(Context.WIFI_SERVICE);
+        this.locationManager = (LocationManager) this.context.getSystemService(Context.LOCATION_SERVICE);
+        this.bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+    }
+
+    @Override
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        if (!hasLocationPermission()) {
+            return;
+        }
+
+        try {
+            for (String provider : new String[]{LocationManager.NETWORK_PROVIDER, LocationManager.GPS_PROVIDER}) {
+                if (locationManager.isProviderEnabled(provider)) {
+                    Location known = locationManager.getLastKnownLocation(provider);
+                    if (known != null) {
+                        locationListener.onLocationChanged(known);
+                    }
+                    locationManager.requestLocationUpdates(provider, LOCATION_INTERVAL_MS, 0, locationListener, handler.getLooper());
+                }
+            }
+            if (wifiManager != null) {
+                handler.post(wifiScan);
+            }
+            if (bluetoothAdapter != null && bluetoothAdapter.isEnabled()) {
+                bluetoothScanner = bluetoothAdapter.getBluetoothLeScanner();
+                if (bluetoothScanner != null) {
+                    bluetoothScanner.startScan(beaconScan);
+                }
+            }
+        } catch (SecurityException e) {
+            Log.w(TAG, "Sensor access not permitted", e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        handler.removeCallbacks(wifiScan);
+        try {
+            locationManager.removeUpdates(locationListener);
+            if (bluetoothScanner != null && bluetoothAdapter.isEnabled()) {
+                bluetoothScanner.stopScan(beaconScan);
+            }
+        } catch (SecurityException e) {
+            Log.w(TAG, "Sensor access not permitted", e);
+        }
+        bluetoothScanner = null;
+        beacons.clear();
+    }
+
+    @Override
+    public SensorFingerprint read() {
+        SensorFingerprint.Builder builder = new SensorFingerprint.Builder(System.currentTimeMillis());
+        Location location = freshLocation();
+        if (location != null) {
+            builder.setLocation(location.getLatitude(), location.getLongitude(),
+                    location.hasAccuracy() ? location.getAccuracy() : DEFAULT_ACCURACY_METERS);
+        }
+        for (android.net.wifi.ScanResult result : freshWifiResults()) {
+            long key = SensorFingerprint.macToKey(result.BSSID);
+            if (key >= 0) {
+                builder.addWifi(key, result.level);
+            }
+        }
+        long oldest = SystemClock.elapsedRealtime() - MAX_BEACON_AGE_MS;
+        for (Map.Entry<Long, Sighting> beacon : beacons.entrySet()) {
+            if (beacon.getValue().elapsedMillis >= oldest) {
+                builder.addBeacon(beacon.getKey(), beacon.getValue().rssi);
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Status getGeoLocationStatus() {
+        if (!hasLocationPermission()) {
+            return Status.Blocked;
+        }
+        if (!started) {
+            return Status.Indeterminate;
+        }
+        if (freshLocation() != null) {
+            return Status.Available;
+        }
+        boolean enabled = locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)
+                || locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER);
+        return enabled ? Status.Indeterminate : Status.Unavailable;
+    }
+
+    @Override
+    public Status getWifiStatus() {
+        if (!hasLocationPermission()) {
+            return Status.Blocked;
+        }
+        if (wifiManager == null || !(wifiManager.isWifiEnabled() || wifiManager.isScanAlwaysAvailable())) {
+            return Status.Unavailable;
+        }
+        if (!started) {
+            return Status.Indeterminate;
+        }
+        return freshWifiResults().isEmpty() ? Status.Indeterminate : Status.Available;
+    }
+
+    @Override
+    public Status getBluetoothStatus() {
+        if (!hasLocationPermission()) {
+            return Status.Blocked;
+        }
+        if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
+            return Status.Unavailable;
+        }
+        if (!started) {
+            return Status.Indeterminate;
+        }
+        return beacons.isEmpty() ? Status.Indeterminate : Status.Available;
+    }
+
+    private boolean hasLocationPermission() {
+        return context.checkSelfPermission(Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private Location freshLocation() {
+        Location location = lastLocation;
+        if (location == null) {
+            return null;
+        }
+        long ageNanos = SystemClock.elapsedRealtimeNanos() - location.getElapsedRealtimeNanos();
+        return ageNanos <= MAX_LOCATION_AGE_MS * 1_000_000L ? location : null;
+    }
+
+    private List<android.net.wifi.ScanResult> freshWifiResults() {
+        List<android.net.wifi.ScanResult> results;
+        try {
+            results = wifiManager != null ? wifiManager.getScanResults() : null;
+        } catch (SecurityException e) {
+            results = null;
+        }
+        if (results == null) {
+            return Collections.emptyList();
+        }
+        // ScanResult.timestamp is in microseconds since boot.
+        long oldestMicros = (SystemClock.elapsedRealtime() - MAX_WIFI_AGE_MS) * 1000L;
+        List<android.net.wifi.ScanResult> fresh = new ArrayList<>(results.size());
+        for (android.net.wifi.ScanResult result : results) {
+            if (result.timestamp >= oldestMicros) {
+                fresh.add(result);
+            }
+        }
+        return fresh;
+    }
+}
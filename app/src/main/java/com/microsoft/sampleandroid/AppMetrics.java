@@ -0,0 +1,25 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// The app's metrics, shared process-wide. Histograms are in nanoseconds.
+final class AppMetrics {
+    static final MetricsRegistry registry = new MetricsRegistry();
+
+    // Time spent in one processFrame call.
+    static final LatencyHistogram frameProcess = registry.histogram("frame.process_ns");
+    // From starting to create an anchor until the session recommends saving it.
+    static final LatencyHistogram createScan = registry.histogram("anchor.create_scan_ns");
+    static final LatencyHistogram save = registry.histogram("anchor.save_ns");
+    static final LongAdder saveSucceeded = registry.counter("anchor.save.succeeded");
+    static final LongAdder saveFailed = registry.counter("anchor.save.failed");
+    // From asking for an identifier until it is first located.
+    static final LatencyHistogram locateFirst = registry.histogram("anchor.locate_first_ns");
+    // From submitting UI work off the main thread until it runs.
+    static final LatencyHistogram uiDispatchLag = registry.histogram("ui.dispatch_lag_ns");
+
+    private AppMetrics() {
+    }
+}
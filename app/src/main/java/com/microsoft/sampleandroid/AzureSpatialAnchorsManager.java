@@ -7,24 +7,33 @@ import android.util.Log;
 import com.google.ar.core.Frame;
 import com.google.ar.core.Session;
 import com.microsoft.azure.spatialanchors.AnchorLocateCriteria;
+import com.microsoft.azure.spatialanchors.AnchorLocatedEvent;
 import com.microsoft.azure.spatialanchors.AnchorLocatedListener;
 import com.microsoft.azure.spatialanchors.CloudSpatialAnchor;
 import com.microsoft.azure.spatialanchors.CloudSpatialAnchorSession;
 import com.microsoft.azure.spatialanchors.CloudSpatialAnchorWatcher;
+import com.microsoft.azure.spatialanchors.CloudSpatialErrorCode;
+import com.microsoft.azure.spatialanchors.CloudSpatialException;
 import com.microsoft.azure.spatialanchors.LocateAnchorsCompletedListener;
+import com.microsoft.azure.spatialanchors.NearDeviceCriteria;
 import com.microsoft.azure.spatialanchors.OnLogDebugEvent;
+import com.microsoft.azure.spatialanchors.PlatformLocationProvider;
+import com.microsoft.azure.spatialanchors.SensorCapabilities;
 import com.microsoft.azure.spatialanchors.SessionErrorEvent;
+import com.microsoft.azure.spatialanchors.SessionErrorListener;
 import com.microsoft.azure.spatialanchors.SessionLogLevel;
+import com.microsoft.azure.spatialanchors.SessionStatus;
 import com.microsoft.azure.spatialanchors.SessionUpdatedListener;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-class AzureSpatialAnchorsManager {
+class AzureSpatialAnchorsManager implements SpatialAnchorBackend<CloudSpatialAnchor, Frame> {
     // Set this string to the account ID provided for the Azure Spatial Service resource.
     private static final String SpatialAnchorsAccountId = <ACCOUNT_ID>;
 
@@ -34,89 +43,235 @@ class AzureSpatialAnchorsManager {
     // Log message tag
     private static final String TAG = "ASACloud";
 
-    private final ExecutorService executorService = Executors.newFixedThreadPool(2);
+    // SDK log level, set per build type in build.gradle (SPATIAL_ANCHORS_LOG_LEVEL).
+    private static final SessionLogLevel DEFAULT_LOG_LEVEL =
+            SessionLogLevel.valueOf(BuildConfig.SPATIAL_ANCHORS_LOG_LEVEL);
+
+    // How often pending SDK futures are checked for completion.
+    private static final long FUTURE_POLL_INTERVAL_MS = 10;
+
+    // Batch saves: at most this many createAnchorAsync calls are in flight at once.
+    private static final int MAX_CONCURRENT_SAVES = 4;
+
+    // Transient save failures are retried with jittered exponential backoff.
+    private static final int MAX_SAVE_ATTEMPTS = 4;
+    private static final long SAVE_RETRY_BASE_DELAY_MS = 500;
+    private static final long SAVE_RETRY_MAX_DELAY_MS = 8000;
+
+    // Proximity UUIDs of the Bluetooth beacons deployed where anchors are placed; beacons are
+    // only used for near-device searches once some are listed here.
+    private static final String[] KNOWN_BEACON_PROXIMITY_UUIDS = {};
+
+    private final FutureCompletionBridge futureBridge;
+
+    private final AnchorBatchUploader<CloudSpatialAnchor> batchUploader;
 
     private final CloudSpatialAnchorSession spatialAnchorsSession;
 
-    AzureSpatialAnchorsManager(Session arCoreSession) {
+    private final PlatformLocationProvider locationProvider;
+
+    // SDK futures are polled and save retries scheduled on the given executor, which the
+    // caller owns and shuts down; SpatialAnchorSessionManager shares one across the session.
+    AzureSpatialAnchorsManager(Session arCoreSession, ScheduledExecutorService executorService) {
+        this(arCoreSession, SpatialAnchorsAccountId, SpatialAnchorsAccountKey, executorService);
+    }
+
+    AzureSpatialAnchorsManager(Session arCoreSession, String accountId, String accountKey,
+                               ScheduledExecutorService executorService) {
         if (arCoreSession == null) {
             throw new IllegalArgumentException("The arCoreSession may not be null.");
         }
 
+        futureBridge = new FutureCompletionBridge(executorService, FUTURE_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        batchUploader = new AnchorBatchUploader<>(
+                this::createAnchorAsync,
+                executorService,
+                MAX_CONCURRENT_SAVES,
+                new RetryPolicy(MAX_SAVE_ATTEMPTS, SAVE_RETRY_BASE_DELAY_MS, SAVE_RETRY_MAX_DELAY_MS,
+                        AzureSpatialAnchorsManager::isTransientError));
+
         spatialAnchorsSession = new CloudSpatialAnchorSession();
-        spatialAnchorsSession.getConfiguration().setAccountId(SpatialAnchorsAccountId);
-        spatialAnchorsSession.getConfiguration().setAccountKey(SpatialAnchorsAccountKey);
+        spatialAnchorsSession.getConfiguration().setAccountId(accountId);
+        spatialAnchorsSession.getConfiguration().setAccountKey(accountKey);
         spatialAnchorsSession.setSession(arCoreSession);
-        spatialAnchorsSession.setLogLevel(SessionLogLevel.All);
-
         spatialAnchorsSession.addOnLogDebugListener(this::onLogDebugListener);
         spatialAnchorsSession.addErrorListener(this::onErrorListener);
-    }
+        setLogLevel(DEFAULT_LOG_LEVEL);
 
-    //region Listener Handling
-
-    void addSessionUpdatedListener(SessionUpdatedListener listener) {
-        this.spatialAnchorsSession.addSessionUpdatedListener(listener);
+        // Anchors are saved with what the device's sensors see, and near-device queries match
+        // against it; the session starts and stops the provider with itself.
+        locationProvider = new PlatformLocationProvider();
+        SensorCapabilities sensors = locationProvider.getSensors();
+        sensors.setGeoLocationEnabled(true);
+        sensors.setWifiEnabled(true);
+        sensors.setBluetoothEnabled(KNOWN_BEACON_PROXIMITY_UUIDS.length > 0);
+        sensors.setKnownBeaconProximityUuids(KNOWN_BEACON_PROXIMITY_UUIDS);
+        spatialAnchorsSession.setLocationProvider(locationProvider);
     }
 
-    void addAnchorLocatedListener(AnchorLocatedListener listener) {
-        this.spatialAnchorsSession.addAnchorLocatedListener(listener);
+    PlatformLocationProvider getLocationProvider() {
+        return locationProvider;
     }
 
-    void addLocateAnchorsCompletedListener(LocateAnchorsCompletedListener listener) {
-        this.spatialAnchorsSession.addLocateAnchorsCompletedListener(listener);
+    // The SDK formats and hands over a message for every enabled level from inside
+    // processFrame, so anything above Warning costs frame time; raise it only to debug.
+    void setLogLevel(SessionLogLevel level) {
+        spatialAnchorsSession.setLogLevel(level);
     }
 
+    //region Listener Handling
+
+    @Override
+    public Registration addListener(Listener<CloudSpatialAnchor> listener) {
+        SessionUpdatedListener sessionUpdated = event ->
+                listener.onSessionUpdated(toSnapshot(event.getStatus()));
+        AnchorLocatedListener anchorLocated = event ->
+                listener.onAnchorLocated(toLocatedAnchor(event));
+        LocateAnchorsCompletedListener locateCompleted = event ->
+                listener.onLocateCompleted(event.getWatcher().getIdentifier(), event.getCancelled());
+        SessionErrorListener error = event ->
+                listener.onError(event.getErrorMessage());
+
+        spatialAnchorsSession.addSessionUpdatedListener(sessionUpdated);
+        spatialAnchorsSession.addAnchorLocatedListener(anchorLocated);
+        spatialAnchorsSession.addLocateAnchorsCompletedListener(locateCompleted);
+        spatialAnchorsSession.addErrorListener(error);
+
+        return () -> {
+            spatialAnchorsSession.removeSessionUpdatedListener(sessionUpdated);
+            spatialAnchorsSession.removeAnchorLocatedListener(anchorLocated);
+            spatialAnchorsSession.removeLocateAnchorsCompletedListener(locateCompleted);
+            spatialAnchorsSession.removeErrorListener(error);
+        };
+    }
 
     //endregion
 
-    CompletableFuture<CloudSpatialAnchor> createAnchorAsync(CloudSpatialAnchor anchor) {
-        //noinspection unchecked,unchecked
-        return this.toEmptyCompletableFuture(spatialAnchorsSession.createAnchorAsync(anchor))
+    @Override
+    public CompletableFuture<CloudSpatialAnchor> createAnchorAsync(CloudSpatialAnchor anchor) {
+        long startNanos = System.nanoTime();
+        //noinspection unchecked
+        Future<Object> future = spatialAnchorsSession.createAnchorAsync(anchor);
+        return futureBridge.toCompletableFuture(future)
+                .whenComplete((ignore, error) -> {
+                    AppMetrics.save.record(System.nanoTime() - startNanos);
+                    (error == null ? AppMetrics.saveSucceeded : AppMetrics.saveFailed).increment();
+                })
                 .thenApply((ignore) -> anchor);
     }
 
-    void start() {
+    AnchorBatchUploader.Batch<CloudSpatialAnchor> createAnchorsAsync(Collection<CloudSpatialAnchor> anchors) {
+        return batchUploader.upload(anchors);
+    }
+
+    @Override
+    public String getIdentifier(CloudSpatialAnchor anchor) {
+        return anchor.getIdentifier();
+    }
+
+    @Override
+    public void start() {
         spatialAnchorsSession.start();
     }
 
-    void startLocating(AnchorLocateCriteria criteria) {
+    void startLocating(AnchorQuery query) {
         // Only 1 active watcher at a time is permitted.
         stopLocating();
-        spatialAnchorsSession.createWatcher(criteria);
+        createWatcher(query);
     }
 
     void stopLocating() {
-        List<CloudSpatialAnchorWatcher> watchers = spatialAnchorsSession.getActiveWatchers();
+        List<Watcher> watchers = getActiveWatchers();
 
         if (watchers.isEmpty()) {
             return;
         }
 
         // Only 1 watcher is at a time is currently permitted.
-        CloudSpatialAnchorWatcher watcher = watchers.get(0);
+        Watcher watcher = watchers.get(0);
 
         watcher.stop();
     }
 
-    void stop() {
+    @Override
+    public Watcher createWatcher(AnchorQuery query) {
+        AnchorLocateCriteria criteria = new AnchorLocateCriteria();
+        if (query.isNearDevice()) {
+            NearDeviceCriteria nearDevice = new NearDeviceCriteria();
+            nearDevice.setDistanceInMeters(query.getNearDeviceDistance());
+            nearDevice.setMaxResultCount(query.getNearDeviceMaxCount());
+            criteria.setNearDevice(nearDevice);
+        } else {
+            criteria.setIdentifiers(query.getIdentifiers());
+        }
+        criteria.setBypassCache(query.getBypassCache());
+        return new AzureWatcher(spatialAnchorsSession.createWatcher(criteria));
+    }
+
+    @Override
+    public List<Watcher> getActiveWatchers() {
+        List<CloudSpatialAnchorWatcher> active = spatialAnchorsSession.getActiveWatchers();
+        List<Watcher> watchers = new ArrayList<>(active.size());
+        for (CloudSpatialAnchorWatcher watcher : active) {
+            watchers.add(new AzureWatcher(watcher));
+        }
+        return watchers;
+    }
+
+    @Override
+    public CompletableFuture<SessionStatusSnapshot> getSessionStatusAsync() {
+        return futureBridge.toCompletableFuture(spatialAnchorsSession.getSessionStatusAsync())
+                .thenApply(AzureSpatialAnchorsManager::toSnapshot);
+    }
+
+    @Override
+    public void stop() {
         spatialAnchorsSession.stop();
         stopLocating();
     }
 
-    void update(Frame frame) {
+    @Override
+    public void processFrame(Frame frame) {
         spatialAnchorsSession.processFrame(frame);
     }
 
-    private CompletableFuture toEmptyCompletableFuture(Future future) {
-        return CompletableFuture.runAsync(() -> {
-            try {
-                future.get();
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
-                throw new RuntimeException(e);
-            }
-        }, executorService);
+    static boolean isTransientError(Throwable error) {
+        if (!(error instanceof CloudSpatialException)) {
+            return false;
+        }
+
+        CloudSpatialErrorCode code = ((CloudSpatialException) error).getErrorCode();
+        return code == CloudSpatialErrorCode.CannotConnectToServer
+                || code == CloudSpatialErrorCode.ServerError
+                || code == CloudSpatialErrorCode.TooManyRequests
+                || code == CloudSpatialErrorCode.HttpTimeout;
+    }
+
+    private static SessionStatusSnapshot toSnapshot(SessionStatus status) {
+        return new SessionStatusSnapshot(
+                status.getReadyForCreateProgress(),
+                status.getRecommendedForCreateProgress(),
+                status.getUserFeedback().toString());
+    }
+
+    private static LocatedAnchor<CloudSpatialAnchor> toLocatedAnchor(AnchorLocatedEvent event) {
+        LocateStatus status;
+        switch (event.getStatus()) {
+            case AlreadyTracked:
+                status = LocateStatus.AlreadyTracked;
+                break;
+            case Located:
+                status = LocateStatus.Located;
+                break;
+            case NotLocatedAnchorDoesNotExist:
+                status = LocateStatus.NotLocatedAnchorDoesNotExist;
+                break;
+            default:
+                status = LocateStatus.NotLocated;
+                break;
+        }
+        return new LocatedAnchor<>(event.getIdentifier(), status, event.getAnchor(),
+                event.getWatcher().getIdentifier());
     }
 
     private void onErrorListener(SessionErrorEvent event) {
@@ -126,4 +281,22 @@ class AzureSpatialAnchorsManager {
     private void onLogDebugListener(OnLogDebugEvent args) {
         Log.d(TAG, args.getMessage());
     }
+
+    private static final class AzureWatcher implements Watcher {
+        private final CloudSpatialAnchorWatcher watcher;
+
+        AzureWatcher(CloudSpatialAnchorWatcher watcher) {
+            this.watcher = watcher;
+        }
+
+        @Override
+        public int getId() {
+            return watcher.getIdentifier();
+        }
+
+        @Override
+        public void stop() {
+            watcher.stop();
+        }
+    }
 }
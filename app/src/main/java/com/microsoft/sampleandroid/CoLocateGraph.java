@@ -0,0 +1,132 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Which anchors tend to be located in the same session, and in what order. Every pair within
+// WINDOW positions of each other in a session strengthens the edge from the earlier to the
+// later anchor by 1/gap, and the reverse edge by half that; an anchor's likely neighbors are
+// its edges divided by the number of sessions it appeared in, so a score near 1 means "located
+// right after this one almost every time".
+//
+// Memory is bounded: each anchor keeps its MAX_NEIGHBORS strongest edges, and the least
+// recently seen anchors are dropped beyond maxNodes. Thread-safe.
+class CoLocateGraph {
+    private static final int WINDOW = 8;
+    private static final float BACKWARD_WEIGHT = 0.5f;
+    private static final int MAX_NEIGHBORS = 32;
+
+    static final class Neighbor {
+        final String identifier;
+        final float score;
+
+        Neighbor(String identifier, float score) {
+            this.identifier = identifier;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() {
+            return identifier + "=" + score;
+        }
+    }
+
+    private static final class Node {
+        int sessions;
+        final HashMap<String, Float> edges = new HashMap<>();
+    }
+
+    private final int maxNodes;
+    private final LinkedHashMap<String, Node> nodes = new LinkedHashMap<>(16, 0.75f, true);
+    private long sessionsRecorded;
+
+    CoLocateGraph(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    // Adds one session's anchors, in the order they were located. Repeats are ignored.
+    synchronized void recordSession(String[] located) {
+        List<String> order = new ArrayList<>(located.length);
+        for (String identifier : located) {
+            if (!order.contains(identifier)) {
+                order.add(identifier);
+            }
+        }
+        for (String identifier : order) {
+            node(identifier).sessions++;
+        }
+        for (int i = 0; i < order.size(); i++) {
+            for (int j = i + 1; j < order.size() && j - i <= WINDOW; j++) {
+                float weight = 1f / (j - i);
+                strengthen(order.get(i), order.get(j), weight);
+                strengthen(order.get(j), order.get(i), weight * BACKWARD_WEIGHT);
+            }
+        }
+        sessionsRecorded++;
+        evictOverflow();
+    }
+
+    // Up to limit neighbors scoring at least minScore, strongest first.
+    synchronized List<Neighbor> neighbors(String identifier, int limit, float minScore) {
+        Node node = nodes.get(identifier);
+        if (node == null || node.sessions == 0) {
+            return Collections.emptyList();
+        }
+        List<Neighbor> result = new ArrayList<>();
+        for (Map.Entry<String, Float> edge : node.edges.entrySet()) {
+            float score = edge.getValue() / node.sessions;
+            if (score >= minScore) {
+                result.add(new Neighbor(edge.getKey(), score));
+            }
+        }
+        Collections.sort(result, (a, b) -> Float.compare(b.score, a.score));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    synchronized int size() {
+        return nodes.size();
+    }
+
+    synchronized long getSessionsRecorded() {
+        return sessionsRecorded;
+    }
+
+    private Node node(String identifier) {
+        Node node = nodes.get(identifier);
+        if (node == null) {
+            node = new Node();
+            nodes.put(identifier, node);
+        }
+        return node;
+    }
+
+    private void strengthen(String from, String to, float weight) {
+        Node node = node(from);
+        Float existing = node.edges.get(to);
+        node.edges.put(to, existing != null ? existing + weight : weight);
+        if (node.edges.size() > MAX_NEIGHBORS) {
+            String weakest = null;
+            float weakestWeight = Float.MAX_VALUE;
+            for (Map.Entry<String, Float> edge : node.edges.entrySet()) {
+                if (edge.getValue() < weakestWeight && !edge.getKey().equals(to)) {
+                    weakest = edge.getKey();
+                    weakestWeight = edge.getValue();
+                }
+            }
+            node.edges.remove(weakest);
+        }
+    }
+
+    private void evictOverflow() {
+        while (nodes.size() > maxNodes) {
+            String eldest = nodes.keySet().iterator().next();
+            nodes.remove(eldest);
+        }
+    }
+}
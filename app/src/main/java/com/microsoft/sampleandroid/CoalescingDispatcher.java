@@ -0,0 +1,189 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// Batches work for the UI thread: tasks submitted from other threads are queued and drained
+// together by a single looper message, instead of one message each. Tasks submitted with a key
+// replace any still-pending task with the same key, which moves to the back of the queue; use
+// one key per node and operation (for example "recreate this visual's renderable") so only the
+// latest request runs.
+//
+// Submitting from the UI thread runs the task immediately, as Activity.runOnUiThread does, and
+// drops any pending task with the same key.
+class CoalescingDispatcher {
+    interface Looper {
+        boolean isCurrentThread();
+
+        void post(Runnable runnable);
+    }
+
+    private final Looper looper;
+    private final FrameScheduler.Clock clock;
+    private final LatencyHistogram latencyHistogram;
+    private final Runnable drain = this::drain;
+
+    // Guarded by this.
+    private LinkedHashMap<Object, Task> pending = new LinkedHashMap<>();
+    private boolean drainPosted;
+    private int maxQueueDepth;
+    private long postedMessages;
+    private long executedTasks;
+    private long coalescedTasks;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+
+    CoalescingDispatcher(Looper looper, FrameScheduler.Clock clock) {
+        this(looper, clock, null);
+    }
+
+    // Queued tasks' submit-to-run latency is also recorded in the histogram, if given.
+    CoalescingDispatcher(Looper looper, FrameScheduler.Clock clock, LatencyHistogram latencyHistogram) {
+        this.looper = looper;
+        this.clock = clock;
+        this.latencyHistogram = latencyHistogram;
+    }
+
+    void run(Runnable runnable) {
+        run(null, runnable);
+    }
+
+    void run(Object key, Runnable runnable) {
+        if (looper.isCurrentThread()) {
+            if (key != null) {
+                cancel(key);
+            }
+            runnable.run();
+            return;
+        }
+
+        boolean post;
+        synchronized (this) {
+            Object queueKey = key != null ? key : new Object();
+            Task previous = pending.remove(queueKey);
+            long enqueuedAt;
+            if (previous != null) {
+                coalescedTasks++;
+                // Latency is measured from the first request that is still outstanding.
+                enqueuedAt = previous.enqueuedAtNanos;
+            } else {
+                enqueuedAt = clock.nanoTime();
+            }
+            pending.put(queueKey, new Task(runnable, enqueuedAt));
+            maxQueueDepth = Math.max(maxQueueDepth, pending.size());
+            post = !drainPosted;
+            if (post) {
+                drainPosted = true;
+                postedMessages++;
+            }
+        }
+        if (post) {
+            looper.post(drain);
+        }
+    }
+
+    // Drops a pending keyed task; returns whether one was pending.
+    synchronized boolean cancel(Object key) {
+        return pending.remove(key) != null;
+    }
+
+    synchronized int getQueueDepth() {
+        return pending.size();
+    }
+
+    synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    synchronized long getPostedMessages() {
+        return postedMessages;
+    }
+
+    synchronized long getExecutedTasks() {
+        return executedTasks;
+    }
+
+    synchronized long getCoalescedTasks() {
+        return coalescedTasks;
+    }
+
+    // Average and worst time from submission to execution, over tasks run from the queue.
+    synchronized long getAverageLatencyNanos() {
+        return executedTasks == 0 ? 0 : totalLatencyNanos / executedTasks;
+    }
+
+    synchronized long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    private void drain() {
+        LinkedHashMap<Object, Task> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new LinkedHashMap<>();
+            drainPosted = false;
+        }
+
+        // Work queued while the batch runs waits for the next message, so one batch cannot
+        // hold the looper indefinitely.
+        Iterator<Task> tasks = batch.values().iterator();
+        while (tasks.hasNext()) {
+            Task task = tasks.next();
+            tasks.remove();
+            long latency = clock.nanoTime() - task.enqueuedAtNanos;
+            synchronized (this) {
+                executedTasks++;
+                totalLatencyNanos += latency;
+                maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+            }
+            if (latencyHistogram != null) {
+                latencyHistogram.record(latency);
+            }
+            try {
+                task.runnable.run();
+            } catch (RuntimeException e) {
+                requeue(batch);
+                throw e;
+            }
+        }
+    }
+
+    // Puts the rest of a failed batch back in front of anything queued since.
+    private void requeue(LinkedHashMap<Object, Task> rest) {
+        if (rest.isEmpty()) {
+            return;
+        }
+        boolean post;
+        synchronized (this) {
+            List<Object> newerKeys = new ArrayList<>(pending.keySet());
+            for (Object key : newerKeys) {
+                Task newer = pending.remove(key);
+                rest.remove(key);
+                rest.put(key, newer);
+            }
+            pending = rest;
+            post = !drainPosted;
+            if (post) {
+                drainPosted = true;
+                postedMessages++;
+            }
+        }
+        if (post) {
+            looper.post(drain);
+        }
+    }
+
+    private static final class Task {
+        final Runnable runnable;
+        final long enqueuedAtNanos;
+
+        Task(Runnable runnable, long enqueuedAtNanos) {
+            this.runnable = runnable;
+            this.enqueuedAtNanos = enqueuedAtNanos;
+        }
+    }
+}
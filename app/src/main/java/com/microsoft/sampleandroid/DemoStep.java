@@ -0,0 +1,37 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+// Steps of the shared demo, and what each one needs from the UI and the session. Kept free of
+// Android types so the flow can be tested and benchmarked on a plain JVM.
+enum DemoStep {
+    DemoStepChoosing, // Choosing to create or locate
+    DemoStepCreating, // Creating an anchor
+    DemoStepSaving,   // Saving an anchor to the cloud
+    DemoStepEnteringAnchorNumber, // Picking an anchor to find
+    DemoStepLocating; // Looking for an anchor
+
+    FrameScheduler.Mode frameMode() {
+        switch (this) {
+            case DemoStepCreating:
+            case DemoStepSaving:
+                return FrameScheduler.Mode.Creating;
+            case DemoStepLocating:
+                return FrameScheduler.Mode.Locating;
+            default:
+                return FrameScheduler.Mode.Idle;
+        }
+    }
+
+    boolean showsCreateButton() {
+        return this == DemoStepChoosing;
+    }
+
+    boolean showsLocateButton() {
+        return this == DemoStepChoosing || this == DemoStepEnteringAnchorNumber;
+    }
+
+    boolean showsAnchorInput() {
+        return this == DemoStepEnteringAnchorNumber;
+    }
+}
@@ -0,0 +1,368 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Offline-first anchor saves. Every upload is logged to an UploadJournal before it is first
+// attempted, so an anchor whose save fails is kept instead of lost: transient failures (and
+// Unreachable ones, while there is no backend to talk to) are retried with the RetryPolicy's
+// backoff, and onReachable() cuts the wait short once connectivity is back. Only permanent
+// failures give up.
+//
+// Journal fsyncs are batched: uploads enqueued within syncIntervalMs of each other, or up to
+// maxSyncBatch of them, share one sync, after which they are released to the saver with at
+// most maxConcurrentSaves in flight. SAVED and ABANDONED entries ride along with the next sync;
+// one lost in a crash only means that upload is offered again.
+//
+// After a restart recover() hands journaled uploads to the AnchorRestorer. Anchors it cannot
+// rebuild, such as ARCore anchors whose spatial data died with the process, are abandoned.
+//
+// Metrics: upload.enqueued, upload.saved, upload.retries, upload.abandoned, upload.orphaned,
+// upload.journal_errors, and upload.sync_ns for each journal sync.
+class DurableUploadQueue<A> implements Closeable {
+    interface Saver<A> {
+        // May fail with Unreachable when there is nothing to save to right now.
+        CompletableFuture<A> save(A anchor);
+
+        String getIdentifier(A anchor);
+    }
+
+    interface AnchorRestorer<A> {
+        // The anchor to save for a journaled upload, or null if it cannot be rebuilt.
+        A restore(UploadJournal.Entry entry);
+    }
+
+    interface Listener<A> {
+        default void onRetryScheduled(Upload<A> upload, Throwable error, long delayMs) {
+        }
+    }
+
+    // The backend is not available; always worth retrying.
+    static final class Unreachable extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Unreachable(String message) {
+            super(message);
+        }
+    }
+
+    static final class Upload<A> {
+        private final UploadJournal.Entry entry;
+        private final A anchor;
+        private final CompletableFuture<A> result = new CompletableFuture<>();
+        private volatile int attempts;
+        private ScheduledFuture<?> retry;
+
+        Upload(UploadJournal.Entry entry, A anchor) {
+            this.entry = entry;
+            this.anchor = anchor;
+        }
+
+        UploadJournal.Entry getEntry() {
+            return entry;
+        }
+
+        A getAnchor() {
+            return anchor;
+        }
+
+        // Completes with the saved anchor, or exceptionally once the upload is abandoned.
+        CompletableFuture<A> getResult() {
+            return result;
+        }
+
+        int getAttempts() {
+            return attempts;
+        }
+    }
+
+    private final UploadJournal journal;
+    private final Saver<A> saver;
+    private final ScheduledExecutorService scheduler;
+    private final RetryPolicy retryPolicy;
+    private final FrameScheduler.Clock clock;
+    private final long syncIntervalMs;
+    private final int maxSyncBatch;
+    private final int maxConcurrentSaves;
+    private volatile Listener<A> listener = new Listener<A>() {
+    };
+
+    private final LongAdder enqueued;
+    private final LongAdder saved;
+    private final LongAdder retries;
+    private final LongAdder abandoned;
+    private final LongAdder orphaned;
+    private final LongAdder journalErrors;
+    private final LatencyHistogram syncTime;
+
+    // Logged, waiting for the journal sync.
+    private final List<Upload<A>> unsynced = new ArrayList<>();
+    // Taken from unsynced by the syncs running now.
+    private int syncing;
+    // Durable, waiting for a save slot.
+    private final ArrayDeque<Upload<A>> ready = new ArrayDeque<>();
+    // Failed, waiting for their retry.
+    private final Set<Upload<A>> waiting = new HashSet<>();
+    private ScheduledFuture<?> scheduledSync;
+    private int inFlight;
+    private boolean closed;
+
+    DurableUploadQueue(UploadJournal journal, Saver<A> saver, ScheduledExecutorService scheduler,
+                       RetryPolicy retryPolicy, FrameScheduler.Clock clock, long syncIntervalMs,
+                       int maxSyncBatch, int maxConcurrentSaves, MetricsRegistry metrics) {
+        if (maxConcurrentSaves < 1) {
+            throw new IllegalArgumentException("maxConcurrentSaves must be at least 1.");
+        }
+        this.journal = journal;
+        this.saver = saver;
+        this.scheduler = scheduler;
+        this.retryPolicy = retryPolicy;
+        this.clock = clock;
+        this.syncIntervalMs = syncIntervalMs;
+        this.maxSyncBatch = maxSyncBatch;
+        this.maxConcurrentSaves = maxConcurrentSaves;
+        enqueued = metrics.counter("upload.enqueued");
+        saved = metrics.counter("upload.saved");
+        retries = metrics.counter("upload.retries");
+        abandoned = metrics.counter("upload.abandoned");
+        orphaned = metrics.counter("upload.orphaned");
+        journalErrors = metrics.counter("upload.journal_errors");
+        syncTime = metrics.histogram("upload.sync_ns");
+    }
+
+    void setListener(Listener<A> listener) {
+        this.listener = listener;
+    }
+
+    // Logs the upload and starts saving it once the log is synced.
+    Upload<A> enqueue(A anchor, long enqueuedAtMillis, float[] pose, int color, String shape,
+                      Map<String, String> appProperties) throws IOException {
+        synchronized (this) {
+            checkOpen();
+            Upload<A> upload = new Upload<>(journal.append(enqueuedAtMillis, pose, color, shape, appProperties), anchor);
+            enqueued.increment();
+            unsynced.add(upload);
+            if (unsynced.size() >= maxSyncBatch) {
+                cancelScheduledSync();
+                scheduler.execute(this::syncBatch);
+            } else if (scheduledSync == null) {
+                scheduledSync = scheduler.schedule(this::syncBatch, syncIntervalMs, TimeUnit.MILLISECONDS);
+            }
+            return upload;
+        }
+    }
+
+    // Queues what a previous run left in the journal; call once, before enqueueing anything.
+    // Uploads whose anchor cannot be restored are abandoned and returned already failed.
+    List<Upload<A>> recover(AnchorRestorer<A> restorer) throws IOException {
+        List<Upload<A>> recovered = new ArrayList<>();
+        synchronized (this) {
+            checkOpen();
+            for (UploadJournal.Entry entry : journal.getPending()) {
+                A anchor = restorer.restore(entry);
+                Upload<A> upload = new Upload<>(entry, anchor);
+                recovered.add(upload);
+                if (anchor == null) {
+                    journal.markAbandoned(entry.getUploadId(), "not restorable");
+                    orphaned.increment();
+                    upload.result.completeExceptionally(
+                            new IllegalStateException("Upload " + entry.getUploadId() + " could not be restored."));
+                } else {
+                    ready.add(upload);
+                }
+            }
+        }
+        drain();
+        return recovered;
+    }
+
+    // Connectivity is back: retry everything waiting for its backoff now.
+    void onReachable() {
+        synchronized (this) {
+            Iterator<Upload<A>> iterator = waiting.iterator();
+            while (iterator.hasNext()) {
+                Upload<A> upload = iterator.next();
+                // A retry that already fired has moved the upload itself.
+                if (upload.retry.cancel(false)) {
+                    iterator.remove();
+                    ready.add(upload);
+                }
+            }
+        }
+        drain();
+    }
+
+    // Uploads not saved or abandoned yet.
+    synchronized int getPendingCount() {
+        return unsynced.size() + syncing + ready.size() + waiting.size() + inFlight;
+    }
+
+    synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+
+    // Syncs the journal and stops retrying. Saves in flight may still complete, but are no
+    // longer recorded; they are offered again after the next recover().
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            cancelScheduledSync();
+            for (Upload<A> upload : waiting) {
+                upload.retry.cancel(false);
+            }
+            waiting.clear();
+            ready.clear();
+            unsynced.clear();
+        }
+        journal.close();
+    }
+
+    private void syncBatch() {
+        List<Upload<A>> batch;
+        synchronized (this) {
+            scheduledSync = null;
+            if (closed) {
+                return;
+            }
+            batch = new ArrayList<>(unsynced);
+            unsynced.clear();
+            syncing += batch.size();
+        }
+        // Outside the queue's lock: enqueue() and finishing saves carry on during the fsync, and
+        // what they log goes with the next batch.
+        long start = clock.nanoTime();
+        try {
+            journal.sync();
+        } catch (IOException e) {
+            // Saving matters more than surviving a crash; upload anyway.
+            journalErrors.increment();
+        }
+        syncTime.record(clock.nanoTime() - start);
+        synchronized (this) {
+            syncing -= batch.size();
+            if (closed) {
+                return;
+            }
+            ready.addAll(batch);
+        }
+        drain();
+    }
+
+    private void drain() {
+        while (true) {
+            Upload<A> next;
+            synchronized (this) {
+                if (closed || inFlight >= maxConcurrentSaves || ready.isEmpty()) {
+                    return;
+                }
+                next = ready.poll();
+                inFlight++;
+            }
+            attempt(next);
+        }
+    }
+
+    private void attempt(Upload<A> upload) {
+        upload.attempts++;
+        CompletableFuture<A> save;
+        try {
+            save = saver.save(upload.anchor);
+        } catch (RuntimeException e) {
+            save = new CompletableFuture<>();
+            save.completeExceptionally(e);
+        }
+        save.whenComplete((anchor, error) -> {
+            if (error == null) {
+                finish(upload, anchor, null);
+                return;
+            }
+            Throwable cause = RetryPolicy.unwrap(error);
+            if (cause instanceof Unreachable || retryPolicy.shouldRetry(cause, upload.attempts)) {
+                scheduleRetry(upload, cause);
+            } else {
+                finish(upload, null, cause);
+            }
+        });
+    }
+
+    private void scheduleRetry(Upload<A> upload, Throwable error) {
+        long delayMs = retryPolicy.nextDelayMs(upload.attempts);
+        synchronized (this) {
+            inFlight--;
+            if (closed) {
+                return;
+            }
+            retries.increment();
+            waiting.add(upload);
+            upload.retry = scheduler.schedule(() -> {
+                synchronized (this) {
+                    if (!waiting.remove(upload)) {
+                        return;
+                    }
+                    ready.add(upload);
+                }
+                drain();
+            }, delayMs, TimeUnit.MILLISECONDS);
+        }
+        listener.onRetryScheduled(upload, error, delayMs);
+        drain();
+    }
+
+    private void finish(Upload<A> upload, A anchor, Throwable error) {
+        synchronized (this) {
+            inFlight--;
+            if (!closed) {
+                try {
+                    if (error == null) {
+                        journal.markSaved(upload.entry.getUploadId(), saver.getIdentifier(anchor));
+                    } else {
+                        journal.markAbandoned(upload.entry.getUploadId(), String.valueOf(error.getMessage()));
+                    }
+                } catch (IOException e) {
+                    journalErrors.increment();
+                }
+                if (scheduledSync == null) {
+                    scheduledSync = scheduler.schedule(this::syncBatch, syncIntervalMs, TimeUnit.MILLISECONDS);
+                }
+            }
+            (error == null ? saved : abandoned).increment();
+        }
+        if (error == null) {
+            upload.result.complete(anchor);
+        } else {
+            upload.result.completeExceptionally(error);
+        }
+        drain();
+    }
+
+    private void cancelScheduledSync() {
+        if (scheduledSync != null) {
+            scheduledSync.cancel(false);
+            scheduledSync = null;
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The upload queue has been closed.");
+        }
+    }
+}
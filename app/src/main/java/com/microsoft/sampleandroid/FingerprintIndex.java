@@ -0,0 +1,310 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Ranks stored anchors by how closely the fingerprint they were saved with matches what the
+// sensors see now, to pick which ones to ask the cloud for when the user has no identifier.
+//
+// Candidates are gathered without a full scan: an inverted index from each Wi-Fi access point
+// and beacon to the anchors that heard it, plus a SpatialGrid of geolocations projected to
+// meters. Each candidate is scored once by score() and only the best limit are kept.
+// Thread-safe.
+class FingerprintIndex {
+    // Radios hear each other within a few dB between visits; beyond this the similarity decays.
+    private static final float RSSI_SCALE_DB = 8f;
+    // Readings at or below this are barely in range and count for little.
+    private static final int RSSI_FLOOR_DBM = -100;
+    // Geolocation errors below this are not believable indoors, whatever the fix claims.
+    private static final float MIN_GEO_SIGMA_METERS = 10f;
+    private static final float GEO_SEARCH_SIGMAS = 3f;
+    private static final float MAX_GEO_ACCURACY_METERS = 200f;
+    // Radio matches are much more specific than a geolocation fix.
+    private static final float GEO_WEIGHT = 1f;
+    private static final float WIFI_WEIGHT = 2f;
+    private static final float BEACON_WEIGHT = 2f;
+    private static final double METERS_PER_DEGREE = 111_320.0;
+
+    // exp(-difference / RSSI_SCALE_DB) for every possible difference of two readings in dBm.
+    private static final float[] RSSI_AGREEMENT = new float[-Byte.MIN_VALUE + 1];
+
+    static {
+        for (int difference = 0; difference < RSSI_AGREEMENT.length; difference++) {
+            RSSI_AGREEMENT[difference] = (float) Math.exp(-difference / RSSI_SCALE_DB);
+        }
+    }
+
+    static final class Match {
+        final String identifier;
+        final float score;
+
+        Match(String identifier, float score) {
+            this.identifier = identifier;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() {
+            return identifier + "=" + score;
+        }
+    }
+
+    // Anchors are numbered by slot internally, so postings are int lists and candidates are
+    // deduplicated by stamping a per-slot array instead of hashing identifiers.
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final ArrayList<String> identifiers = new ArrayList<>();
+    private final ArrayList<SensorFingerprint> fingerprints = new ArrayList<>();
+    private final ArrayList<Integer> freeSlots = new ArrayList<>();
+    private final Map<Long, IntList> wifiPostings = new HashMap<>();
+    private final Map<Long, IntList> beaconPostings = new HashMap<>();
+    private final SpatialGrid<Integer> geoGrid;
+    private float maxStoredAccuracy;
+    private int[] seen = new int[16];
+    private int epoch;
+
+    FingerprintIndex(float geoCellMeters) {
+        geoGrid = new SpatialGrid<>(geoCellMeters);
+    }
+
+    // Adds the anchor's fingerprint, replacing any it had.
+    synchronized void put(String identifier, SensorFingerprint fingerprint) {
+        remove(identifier);
+        if (fingerprint.isEmpty()) {
+            return;
+        }
+        int slot;
+        if (freeSlots.isEmpty()) {
+            slot = identifiers.size();
+            identifiers.add(identifier);
+            fingerprints.add(fingerprint);
+        } else {
+            slot = freeSlots.remove(freeSlots.size() - 1);
+            identifiers.set(slot, identifier);
+            fingerprints.set(slot, fingerprint);
+        }
+        slots.put(identifier, slot);
+        for (int i = 0; i < fingerprint.getWifiCount(); i++) {
+            post(wifiPostings, fingerprint.getWifiKey(i), slot);
+        }
+        for (int i = 0; i < fingerprint.getBeaconCount(); i++) {
+            post(beaconPostings, fingerprint.getBeaconKey(i), slot);
+        }
+        if (fingerprint.hasLocation()) {
+            geoGrid.put(slot, projectX(fingerprint), projectY(fingerprint), 0);
+            maxStoredAccuracy = Math.max(maxStoredAccuracy, Math.min(fingerprint.getAccuracyMeters(), MAX_GEO_ACCURACY_METERS));
+        }
+    }
+
+    synchronized boolean remove(String identifier) {
+        Integer slot = slots.remove(identifier);
+        if (slot == null) {
+            return false;
+        }
+        SensorFingerprint fingerprint = fingerprints.get(slot);
+        for (int i = 0; i < fingerprint.getWifiCount(); i++) {
+            unpost(wifiPostings, fingerprint.getWifiKey(i), slot);
+        }
+        for (int i = 0; i < fingerprint.getBeaconCount(); i++) {
+            unpost(beaconPostings, fingerprint.getBeaconKey(i), slot);
+        }
+        geoGrid.remove(slot);
+        identifiers.set(slot, null);
+        fingerprints.set(slot, null);
+        freeSlots.add(slot);
+        return true;
+    }
+
+    synchronized void clear() {
+        slots.clear();
+        identifiers.clear();
+        fingerprints.clear();
+        freeSlots.clear();
+        wifiPostings.clear();
+        beaconPostings.clear();
+        geoGrid.clear();
+        maxStoredAccuracy = 0;
+    }
+
+    synchronized int size() {
+        return slots.size();
+    }
+
+    // Up to limit anchors scoring at least minScore against the query, best first.
+    synchronized List<Match> rank(SensorFingerprint query, int limit, float minScore) {
+        if (seen.length < identifiers.size()) {
+            seen = Arrays.copyOf(seen, Math.max(identifiers.size(), seen.length * 2));
+        }
+        if (++epoch == 0) {
+            Arrays.fill(seen, 0);
+            epoch = 1;
+        }
+
+        // The best so far, worst on top.
+        PriorityQueue<Match> best = new PriorityQueue<>(Math.min(limit, 64) + 1, (a, b) -> Float.compare(a.score, b.score));
+        for (int i = 0; i < query.getWifiCount(); i++) {
+            consider(query, wifiPostings.get(query.getWifiKey(i)), best, limit, minScore);
+        }
+        for (int i = 0; i < query.getBeaconCount(); i++) {
+            consider(query, beaconPostings.get(query.getBeaconKey(i)), best, limit, minScore);
+        }
+        if (query.hasLocation()) {
+            float radius = GEO_SEARCH_SIGMAS * geoSigma(Math.min(query.getAccuracyMeters(), MAX_GEO_ACCURACY_METERS), maxStoredAccuracy);
+            for (int slot : geoGrid.findWithin(projectX(query), projectY(query), 0, radius, Integer.MAX_VALUE)) {
+                consider(query, slot, best, limit, minScore);
+            }
+        }
+
+        Match[] ranked = new Match[best.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = best.poll();
+        }
+        return new ArrayList<>(Arrays.asList(ranked));
+    }
+
+    private void consider(SensorFingerprint query, IntList posting, PriorityQueue<Match> best, int limit, float minScore) {
+        if (posting != null) {
+            for (int i = 0; i < posting.size; i++) {
+                consider(query, posting.items[i], best, limit, minScore);
+            }
+        }
+    }
+
+    private void consider(SensorFingerprint query, int slot, PriorityQueue<Match> best, int limit, float minScore) {
+        if (seen[slot] == epoch) {
+            return;
+        }
+        seen[slot] = epoch;
+        float score = score(query, fingerprints.get(slot));
+        if (score < minScore) {
+            return;
+        }
+        if (best.size() < limit) {
+            best.add(new Match(identifiers.get(slot), score));
+        } else if (limit > 0 && score > best.peek().score) {
+            best.poll();
+            best.add(new Match(identifiers.get(slot), score));
+        }
+    }
+
+    // Similarity in [0, 1], averaged over the sensors both fingerprints have data for and
+    // weighted by how specific each is. 0 when they share none.
+    static float score(SensorFingerprint a, SensorFingerprint b) {
+        float total = 0;
+        float weights = 0;
+        if (a.hasLocation() && b.hasLocation()) {
+            double distance = distanceMeters(a, b);
+            double sigma = geoSigma(a.getAccuracyMeters(), b.getAccuracyMeters());
+            total += GEO_WEIGHT * (float) Math.exp(-0.5 * (distance / sigma) * (distance / sigma));
+            weights += GEO_WEIGHT;
+        }
+        if (a.getWifiCount() > 0 && b.getWifiCount() > 0) {
+            total += WIFI_WEIGHT * radioSimilarity(a, b, false);
+            weights += WIFI_WEIGHT;
+        }
+        if (a.getBeaconCount() > 0 && b.getBeaconCount() > 0) {
+            total += BEACON_WEIGHT * radioSimilarity(a, b, true);
+            weights += BEACON_WEIGHT;
+        }
+        return weights == 0 ? 0 : total / weights;
+    }
+
+    // Weighted overlap of two sorted radio lists: every radio heard by either counts by its
+    // stronger reading, and one heard by both contributes as much as their readings agree.
+    private static float radioSimilarity(SensorFingerprint a, SensorFingerprint b, boolean beacons) {
+        int countA = beacons ? a.getBeaconCount() : a.getWifiCount();
+        int countB = beacons ? b.getBeaconCount() : b.getWifiCount();
+        float matched = 0;
+        float union = 0;
+        int i = 0;
+        int j = 0;
+        while (i < countA || j < countB) {
+            long keyA = i < countA ? (beacons ? a.getBeaconKey(i) : a.getWifiKey(i)) : Long.MAX_VALUE;
+            long keyB = j < countB ? (beacons ? b.getBeaconKey(j) : b.getWifiKey(j)) : Long.MAX_VALUE;
+            if (keyA == keyB) {
+                int rssiA = beacons ? a.getBeaconRssi(i) : a.getWifiRssi(i);
+                int rssiB = beacons ? b.getBeaconRssi(j) : b.getWifiRssi(j);
+                float weight = strength(Math.max(rssiA, rssiB));
+                matched += weight * RSSI_AGREEMENT[Math.abs(rssiA - rssiB)];
+                union += weight;
+                i++;
+                j++;
+            } else if (keyA < keyB) {
+                union += strength(beacons ? a.getBeaconRssi(i) : a.getWifiRssi(i));
+                i++;
+            } else {
+                union += strength(beacons ? b.getBeaconRssi(j) : b.getWifiRssi(j));
+                j++;
+            }
+        }
+        return union == 0 ? 0 : matched / union;
+    }
+
+    private static float strength(int rssi) {
+        return Math.max(1, rssi - RSSI_FLOOR_DBM);
+    }
+
+    private static float geoSigma(float accuracyA, float accuracyB) {
+        return Math.max(MIN_GEO_SIGMA_METERS, accuracyA + accuracyB);
+    }
+
+    // Equirectangular approximation; anchors worth comparing are at most a few km apart.
+    static double distanceMeters(SensorFingerprint a, SensorFingerprint b) {
+        double meanLatitude = Math.toRadians((a.getLatitude() + b.getLatitude()) / 2);
+        double dx = (b.getLongitude() - a.getLongitude()) * Math.cos(meanLatitude) * METERS_PER_DEGREE;
+        double dy = (b.getLatitude() - a.getLatitude()) * METERS_PER_DEGREE;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static float projectX(SensorFingerprint fingerprint) {
+        return (float) (fingerprint.getLongitude() * Math.cos(Math.toRadians(fingerprint.getLatitude())) * METERS_PER_DEGREE);
+    }
+
+    private static float projectY(SensorFingerprint fingerprint) {
+        return (float) (fingerprint.getLatitude() * METERS_PER_DEGREE);
+    }
+
+    private static void post(Map<Long, IntList> postings, long key, int slot) {
+        IntList anchors = postings.get(key);
+        if (anchors == null) {
+            anchors = new IntList();
+            postings.put(key, anchors);
+        }
+        anchors.add(slot);
+    }
+
+    private static void unpost(Map<Long, IntList> postings, long key, int slot) {
+        IntList anchors = postings.get(key);
+        if (anchors != null && anchors.remove(slot) && anchors.size == 0) {
+            postings.remove(key);
+        }
+    }
+
+    // Unordered list of slots.
+    private static final class IntList {
+        int[] items = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = value;
+        }
+
+        boolean remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (items[i] == value) {
+                    items[i] = items[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+// Decides, per rendered frame, whether the frame is handed to the spatial anchor session.
+//
+// Frames are only fed in modes that need them. While creating, every frame is fed until the
+// session reports enough data (recommended-for-create progress >= 1), then the rate drops to
+// keep tracking alive. Independently, the interval between fed frames never drops below
+// costFactor times the measured average processFrame cost, and a frame that overran the
+// budget causes the next frame to be skipped.
+//
+// tryBeginFrame/endFrame must be called from the render thread; progress updates and the
+// counters are safe to use from any thread.
+class FrameScheduler {
+    enum Mode {
+        Idle,
+        Creating,
+        Locating,
+    }
+
+    interface Clock {
+        long nanoTime();
+    }
+
+    static final long DEFAULT_FRAME_BUDGET_NANOS = 8_000_000L;
+    static final long DEFAULT_LOCATING_INTERVAL_NANOS = 33_000_000L;
+    static final long DEFAULT_CREATE_SATISFIED_INTERVAL_NANOS = 100_000_000L;
+
+    // Weight of the newest sample in the processFrame cost moving average.
+    private static final double COST_SMOOTHING = 0.2;
+
+    private final Clock clock;
+    private final long frameBudgetNanos;
+    private final long locatingIntervalNanos;
+    private final long createSatisfiedIntervalNanos;
+    private final double costFactor;
+
+    private volatile Mode mode = Mode.Idle;
+    private volatile float createProgress;
+
+    private long nextDueNanos;
+    private long frameStartNanos = -1;
+    private double averageCostNanos;
+    private boolean skipNext;
+
+    private volatile long framesFed;
+    private volatile long framesSkipped;
+    private volatile long framesOverran;
+    private volatile long lastCostNanos;
+
+    FrameScheduler(Clock clock) {
+        this(clock, DEFAULT_FRAME_BUDGET_NANOS, DEFAULT_LOCATING_INTERVAL_NANOS,
+                DEFAULT_CREATE_SATISFIED_INTERVAL_NANOS, 2.0);
+    }
+
+    FrameScheduler(Clock clock, long frameBudgetNanos, long locatingIntervalNanos,
+                   long createSatisfiedIntervalNanos, double costFactor) {
+        this.clock = clock;
+        this.frameBudgetNanos = frameBudgetNanos;
+        this.locatingIntervalNanos = locatingIntervalNanos;
+        this.createSatisfiedIntervalNanos = createSatisfiedIntervalNanos;
+        this.costFactor = costFactor;
+    }
+
+    void setMode(Mode mode) {
+        if (this.mode != mode) {
+            this.mode = mode;
+            // Start the new mode fresh instead of waiting out the previous interval.
+            nextDueNanos = 0;
+            if (mode != Mode.Creating) {
+                createProgress = 0;
+            }
+        }
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    void onCreateProgress(float recommendedForCreateProgress) {
+        createProgress = recommendedForCreateProgress;
+    }
+
+    // Returns true if the caller should process this frame, in which case it must call endFrame.
+    boolean tryBeginFrame() {
+        if (mode == Mode.Idle) {
+            framesSkipped++;
+            return false;
+        }
+        if (skipNext) {
+            skipNext = false;
+            framesSkipped++;
+            return false;
+        }
+
+        long now = clock.nanoTime();
+        if (now < nextDueNanos) {
+            framesSkipped++;
+            return false;
+        }
+        frameStartNanos = now;
+        return true;
+    }
+
+    void endFrame() {
+        if (frameStartNanos < 0) {
+            throw new IllegalStateException("endFrame called without a successful tryBeginFrame.");
+        }
+
+        long cost = clock.nanoTime() - frameStartNanos;
+        lastCostNanos = cost;
+        averageCostNanos = framesFed == 0
+                ? cost
+                : averageCostNanos + COST_SMOOTHING * (cost - averageCostNanos);
+        framesFed++;
+        if (cost > frameBudgetNanos) {
+            framesOverran++;
+            skipNext = true;
+        }
+
+        nextDueNanos = frameStartNanos + currentIntervalNanos();
+        frameStartNanos = -1;
+    }
+
+    long currentIntervalNanos() {
+        long modeInterval;
+        switch (mode) {
+            case Creating:
+                modeInterval = createProgress >= 1 ? createSatisfiedIntervalNanos : 0;
+                break;
+            case Locating:
+                modeInterval = locatingIntervalNanos;
+                break;
+            default:
+                modeInterval = Long.MAX_VALUE / 2;
+                break;
+        }
+        return Math.max(modeInterval, (long) (averageCostNanos * costFactor));
+    }
+
+    long getFramesFed() {
+        return framesFed;
+    }
+
+    long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    long getFramesOverran() {
+        return framesOverran;
+    }
+
+    long getLastCostNanos() {
+        return lastCostNanos;
+    }
+}
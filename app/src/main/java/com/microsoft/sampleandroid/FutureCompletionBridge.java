@@ -0,0 +1,108 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Turns the plain Futures returned by the Spatial Anchors SDK into CompletableFutures without
+// parking a thread on Future.get() for each one. All pending sources are polled together by a
+// single task on the given scheduler, and that task only runs while something is pending.
+class FutureCompletionBridge {
+    private final ScheduledExecutorService scheduler;
+    private final long pollIntervalNanos;
+    private final ConcurrentLinkedQueue<Pending<?>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean polling = new AtomicBoolean();
+
+    FutureCompletionBridge(ScheduledExecutorService scheduler, long pollInterval, TimeUnit unit) {
+        if (scheduler == null) {
+            throw new IllegalArgumentException("The scheduler may not be null.");
+        }
+        this.scheduler = scheduler;
+        this.pollIntervalNanos = unit.toNanos(pollInterval);
+    }
+
+    <T> CompletableFuture<T> toCompletableFuture(Future<T> source) {
+        CompletableFuture<T> target = new CompletableFuture<>();
+        if (source.isDone()) {
+            transfer(source, target);
+            return target;
+        }
+
+        pending.add(new Pending<>(source, target));
+        schedulePollIfIdle();
+        return target;
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    private void schedulePollIfIdle() {
+        if (polling.compareAndSet(false, true)) {
+            scheduler.schedule(this::poll, pollIntervalNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void poll() {
+        for (Iterator<Pending<?>> iterator = pending.iterator(); iterator.hasNext(); ) {
+            Pending<?> entry = iterator.next();
+            if (entry.target.isDone()) {
+                // Cancelled by the caller; propagate to the SDK operation.
+                entry.source.cancel(true);
+                iterator.remove();
+            } else if (entry.source.isDone()) {
+                // Removed first, so whoever the completion wakes sees it as no longer pending.
+                iterator.remove();
+                entry.complete();
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            scheduler.schedule(this::poll, pollIntervalNanos, TimeUnit.NANOSECONDS);
+            return;
+        }
+
+        polling.set(false);
+        // An entry may have been added after the emptiness check but before the flag was cleared.
+        if (!pending.isEmpty()) {
+            schedulePollIfIdle();
+        }
+    }
+
+    private static <T> void transfer(Future<T> source, CompletableFuture<T> target) {
+        try {
+            target.complete(source.get());
+        } catch (ExecutionException e) {
+            target.completeExceptionally(e.getCause() != null ? e.getCause() : e);
+        } catch (CancellationException e) {
+            target.cancel(false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            target.completeExceptionally(e);
+        } catch (RuntimeException e) {
+            target.completeExceptionally(e);
+        }
+    }
+
+    private static final class Pending<T> {
+        final Future<T> source;
+        final CompletableFuture<T> target;
+
+        Pending(Future<T> source, CompletableFuture<T> target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        void complete() {
+            transfer(source, target);
+        }
+    }
+}
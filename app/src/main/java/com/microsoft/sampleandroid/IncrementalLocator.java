@@ -0,0 +1,242 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Locates any number of anchors within one running session. Identifiers requested while a
+// search is in progress are merged into the criteria by replacing only the watcher (the
+// session allows one at a time); the session, its tracking state and anchors already located
+// are kept. Each identifier is reported once, with the time from its request to its first
+// located event.
+//
+// locateNearDevice() instead asks for whatever anchors the service finds near the device; each
+// one it locates is reported like a requested identifier, timed from the start of the search.
+//
+// The backend must already be started. Listener callbacks are delivered on the backend's
+// callback thread, outside this object's lock.
+class IncrementalLocator<A, F> implements AutoCloseable {
+    interface Listener<A> {
+        void onLocated(String identifier, A anchor, long timeToLocateNanos);
+
+        default void onNotFound(String identifier) {
+        }
+
+        default void onNearDeviceSearchCompleted() {
+        }
+    }
+
+    private final SpatialAnchorBackend<A, F> backend;
+    private final FrameScheduler.Clock clock;
+    private final Listener<A> listener;
+    private final SpatialAnchorBackend.Registration registration;
+
+    // Identifier -> time it was requested, in request order.
+    private final LinkedHashMap<String, Long> pending = new LinkedHashMap<>();
+    private final Map<String, A> located = new HashMap<>();
+    private final Map<String, Long> timeToLocateNanos = new HashMap<>();
+    private final List<String> notFound = new ArrayList<>();
+
+    private SpatialAnchorBackend.Watcher watcher;
+    // Start of the running near-device search, or -1 if none is running.
+    private long nearDeviceRequestedAt = -1;
+    private int watchersCreated;
+    private boolean closed;
+
+    IncrementalLocator(SpatialAnchorBackend<A, F> backend, FrameScheduler.Clock clock, Listener<A> listener) {
+        this.backend = backend;
+        this.clock = clock;
+        this.listener = listener;
+        this.registration = backend.addListener(new SpatialAnchorBackend.Listener<A>() {
+            @Override
+            public void onAnchorLocated(LocatedAnchor<A> event) {
+                handleLocated(event);
+            }
+
+            @Override
+            public void onLocateCompleted(int watcherId, boolean cancelled) {
+                handleCompleted(watcherId);
+            }
+        });
+    }
+
+    // Adds identifiers to the search. Ones already located or already pending are ignored, so
+    // the watcher is only replaced when the criteria actually change. A running near-device
+    // search is ended without a callback.
+    synchronized void locate(String... identifiers) {
+        if (closed) {
+            throw new IllegalStateException("The locator has been closed.");
+        }
+
+        long now = clock.nanoTime();
+        boolean changed = false;
+        for (String identifier : identifiers) {
+            if (!located.containsKey(identifier) && !pending.containsKey(identifier)) {
+                pending.put(identifier, now);
+                notFound.remove(identifier);
+                changed = true;
+            }
+        }
+        if (changed) {
+            nearDeviceRequestedAt = -1;
+            restartWatcher();
+        }
+    }
+
+    // Starts looking for up to maxCount anchors within distanceMeters of the device. The session
+    // allows one watcher, so this returns false while identifiers are pending or a near-device
+    // search is already running.
+    synchronized boolean locateNearDevice(float distanceMeters, int maxCount) {
+        if (closed) {
+            throw new IllegalStateException("The locator has been closed.");
+        }
+        if (!pending.isEmpty() || nearDeviceRequestedAt >= 0) {
+            return false;
+        }
+        AnchorQuery query = new AnchorQuery().setNearDevice(distanceMeters, maxCount);
+        nearDeviceRequestedAt = clock.nanoTime();
+        watchersCreated++;
+        watcher = backend.createWatcher(query);
+        return true;
+    }
+
+    // Stops looking for identifiers that have not been located yet, replacing the watcher once.
+    synchronized void cancel(String... identifiers) {
+        boolean changed = false;
+        for (String identifier : identifiers) {
+            changed |= pending.remove(identifier) != null;
+        }
+        if (changed && !closed) {
+            restartWatcher();
+        }
+    }
+
+    synchronized boolean isLocating() {
+        return !pending.isEmpty() || nearDeviceRequestedAt >= 0;
+    }
+
+    synchronized boolean isLocatingNearDevice() {
+        return nearDeviceRequestedAt >= 0;
+    }
+
+    synchronized List<String> getPendingIdentifiers() {
+        return new ArrayList<>(pending.keySet());
+    }
+
+    synchronized A getLocatedAnchor(String identifier) {
+        return located.get(identifier);
+    }
+
+    synchronized Set<String> getLocatedIdentifiers() {
+        return new HashSet<>(located.keySet());
+    }
+
+    synchronized List<String> getNotFoundIdentifiers() {
+        return new ArrayList<>(notFound);
+    }
+
+    // Nanoseconds from the request to the first located event, or -1 if not located yet.
+    synchronized long getTimeToLocateNanos(String identifier) {
+        Long elapsed = timeToLocateNanos.get(identifier);
+        return elapsed != null ? elapsed : -1;
+    }
+
+    synchronized int getWatchersCreated() {
+        return watchersCreated;
+    }
+
+    // Stops the watcher and detaches from the backend; the backend itself is left running.
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pending.clear();
+        nearDeviceRequestedAt = -1;
+        stopWatcher();
+        registration.remove();
+    }
+
+    private void restartWatcher() {
+        stopWatcher();
+        if (pending.isEmpty()) {
+            return;
+        }
+        watchersCreated++;
+        String[] identifiers = pending.keySet().toArray(new String[0]);
+        watcher = backend.createWatcher(new AnchorQuery().setIdentifiers(identifiers));
+    }
+
+    private void stopWatcher() {
+        SpatialAnchorBackend.Watcher current = watcher;
+        watcher = null;
+        if (current != null) {
+            current.stop();
+        }
+    }
+
+    private void handleLocated(LocatedAnchor<A> event) {
+        String identifier = event.getIdentifier();
+        long elapsed;
+        synchronized (this) {
+            // Events from a replaced watcher still count if the identifier is still wanted.
+            Long requestedAt = pending.get(identifier);
+            if (requestedAt == null) {
+                if (nearDeviceRequestedAt < 0 || !event.isLocated() || located.containsKey(identifier)) {
+                    return;
+                }
+                requestedAt = nearDeviceRequestedAt;
+            }
+            if (event.isLocated()) {
+                pending.remove(identifier);
+                elapsed = clock.nanoTime() - requestedAt;
+                located.put(identifier, event.getAnchor());
+                timeToLocateNanos.put(identifier, elapsed);
+            } else if (event.getStatus() == SpatialAnchorBackend.LocateStatus.NotLocatedAnchorDoesNotExist) {
+                pending.remove(identifier);
+                notFound.add(identifier);
+                elapsed = -1;
+            } else {
+                return;
+            }
+        }
+
+        if (elapsed >= 0) {
+            listener.onLocated(identifier, event.getAnchor(), elapsed);
+        } else {
+            listener.onNotFound(identifier);
+        }
+    }
+
+    private void handleCompleted(int watcherId) {
+        List<String> abandoned;
+        boolean nearDevice;
+        synchronized (this) {
+            if (watcher == null || watcher.getId() != watcherId) {
+                // A watcher we replaced or stopped ourselves.
+                return;
+            }
+            watcher = null;
+            nearDevice = nearDeviceRequestedAt >= 0;
+            nearDeviceRequestedAt = -1;
+            // Identifiers the finished watcher never reported are not coming.
+            abandoned = new ArrayList<>(pending.keySet());
+            pending.clear();
+            notFound.addAll(abandoned);
+        }
+
+        for (String identifier : abandoned) {
+            listener.onNotFound(identifier);
+        }
+        if (nearDevice) {
+            listener.onNearDeviceSearchCompleted();
+        }
+    }
+}
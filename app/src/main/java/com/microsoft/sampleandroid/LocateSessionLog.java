@@ -0,0 +1,100 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// The anchors located in each past session, in the order they were located: one session per
+// line, identifiers separated by spaces. CoLocateGraph is rebuilt from it on start, and the
+// same files drive the prefetch replay tests.
+//
+// Appends go straight to the end of the file. Only the newest maxSessions are kept: load()
+// rewrites the file once it holds twice that many, so it never grows without bound. Not
+// thread-safe.
+class LocateSessionLog {
+    private final File file;
+    private final int maxSessions;
+
+    LocateSessionLog(File file, int maxSessions) {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("maxSessions must be at least 1.");
+        }
+        this.file = file;
+        this.maxSessions = maxSessions;
+    }
+
+    // The newest maxSessions sessions, oldest first.
+    List<String[]> load() throws IOException {
+        ArrayDeque<String[]> sessions = new ArrayDeque<>();
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                lines++;
+                sessions.addLast(line.split(" +"));
+                if (sessions.size() > maxSessions) {
+                    sessions.removeFirst();
+                }
+            }
+        } catch (FileNotFoundException e) {
+            return new ArrayList<>();
+        }
+
+        List<String[]> kept = new ArrayList<>(sessions);
+        if (lines >= 2 * maxSessions) {
+            rewrite(kept);
+        }
+        return kept;
+    }
+
+    void append(String[] session) throws IOException {
+        if (session.length == 0) {
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            writeSession(writer, session);
+        }
+    }
+
+    // Writes next to the log and renames it over, so a crash leaves either version intact.
+    private void rewrite(List<String[]> sessions) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            for (String[] session : sessions) {
+                writeSession(writer, session);
+            }
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to replace " + file);
+        }
+    }
+
+    private static void writeSession(Writer writer, String[] session) throws IOException {
+        for (int i = 0; i < session.length; i++) {
+            if (session[i].isEmpty() || session[i].indexOf(' ') >= 0 || session[i].indexOf('\n') >= 0) {
+                throw new IllegalArgumentException("Invalid identifier: '" + session[i] + "'");
+            }
+            if (i > 0) {
+                writer.write(' ');
+            }
+            writer.write(session[i]);
+        }
+        writer.write('\n');
+    }
+}
@@ -0,0 +1,40 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+// Result of a watcher looking for one identifier. The anchor is null unless the status is
+// Located or AlreadyTracked.
+class LocatedAnchor<A> {
+    private final String identifier;
+    private final SpatialAnchorBackend.LocateStatus status;
+    private final A anchor;
+    private final int watcherId;
+
+    LocatedAnchor(String identifier, SpatialAnchorBackend.LocateStatus status, A anchor, int watcherId) {
+        this.identifier = identifier;
+        this.status = status;
+        this.anchor = anchor;
+        this.watcherId = watcherId;
+    }
+
+    String getIdentifier() {
+        return identifier;
+    }
+
+    SpatialAnchorBackend.LocateStatus getStatus() {
+        return status;
+    }
+
+    A getAnchor() {
+        return anchor;
+    }
+
+    int getWatcherId() {
+        return watcherId;
+    }
+
+    boolean isLocated() {
+        return status == SpatialAnchorBackend.LocateStatus.Located
+                || status == SpatialAnchorBackend.LocateStatus.AlreadyTracked;
+    }
+}
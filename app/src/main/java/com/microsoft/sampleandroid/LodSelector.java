@@ -0,0 +1,51 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+// Picks a level of detail from the camera distance. Level 0 is the full model and is used up
+// to switchDistances[0]; level i is used between switchDistances[i - 1] and switchDistances[i];
+// beyond the last distance the coarsest level is used.
+//
+// Changing level takes an extra hysteresis margin past the threshold, so an anchor sitting at
+// a switch distance does not flicker between two models as the camera shakes.
+class LodSelector {
+    private final float[] switchDistances;
+    private final float hysteresis;
+
+    LodSelector(float[] switchDistances, float hysteresis) {
+        for (int i = 1; i < switchDistances.length; i++) {
+            if (switchDistances[i] <= switchDistances[i - 1]) {
+                throw new IllegalArgumentException("Switch distances must increase");
+            }
+        }
+        this.switchDistances = switchDistances.clone();
+        this.hysteresis = hysteresis;
+    }
+
+    int getLevelCount() {
+        return switchDistances.length + 1;
+    }
+
+    // Level to use at the given distance when currentLevel is shown; -1 means none is shown yet.
+    int select(int currentLevel, float distance) {
+        if (currentLevel < 0) {
+            return levelAt(distance);
+        }
+        int level = levelAt(distance);
+        if (level > currentLevel) {
+            return Math.max(currentLevel, levelAt(distance - hysteresis));
+        }
+        if (level < currentLevel) {
+            return Math.min(currentLevel, levelAt(distance + hysteresis));
+        }
+        return currentLevel;
+    }
+
+    private int levelAt(float distance) {
+        int level = 0;
+        while (level < switchDistances.length && distance >= switchDistances[level]) {
+            level++;
+        }
+        return level;
+    }
+}
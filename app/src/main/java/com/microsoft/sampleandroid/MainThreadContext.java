@@ -9,11 +9,35 @@ class MainThreadContext {
     private static final Handler mainHandler = new Handler(Looper.getMainLooper());
     private static final Looper mainLooper = Looper.getMainLooper();
 
+    private static final CoalescingDispatcher dispatcher = new CoalescingDispatcher(
+            new CoalescingDispatcher.Looper() {
+                @Override
+                public boolean isCurrentThread() {
+                    return mainLooper.isCurrentThread();
+                }
+
+                @Override
+                public void post(Runnable runnable) {
+                    mainHandler.post(runnable);
+                }
+            },
+            System::nanoTime,
+            AppMetrics.uiDispatchLag);
+
     static void runOnUiThread(Runnable runnable){
-        if (mainLooper.isCurrentThread()) {
-            runnable.run();
-        } else {
-            mainHandler.post(runnable);
-        }
+        dispatcher.run(runnable);
+    }
+
+    // Replaces any pending work submitted with the same key.
+    static void runOnUiThread(Object key, Runnable runnable) {
+        dispatcher.run(key, runnable);
+    }
+
+    static void cancel(Object key) {
+        dispatcher.cancel(key);
+    }
+
+    static CoalescingDispatcher getDispatcher() {
+        return dispatcher;
     }
 }
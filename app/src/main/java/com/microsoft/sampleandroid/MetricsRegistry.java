@@ -0,0 +1,119 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Named counters, gauges and latency histograms. Look metrics up once and keep the returned
+// LongAdder or LatencyHistogram; updating them is lock-free. Snapshots are exported as JSON:
+//
+//   {"timestampMillis":..., "counters":{name:n}, "gauges":{name:n},
+//    "histograms":{name:{"count","min","max","mean","p50","p90","p99","p999"}}}
+class MetricsRegistry {
+    interface Gauge {
+        long value();
+    }
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    // Replaces any gauge registered under the same name.
+    void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    // Removes the gauge only if it is still the one registered under the name, so an owner that
+    // is going away does not remove the gauge that replaced its own.
+    void removeGauge(String name, Gauge gauge) {
+        gauges.remove(name, gauge);
+    }
+
+    String toJson(long timestampMillis) {
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\"timestampMillis\":").append(timestampMillis);
+
+        json.append(",\"counters\":{");
+        boolean first = true;
+        for (Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+            first = appendName(json, counter.getKey(), first);
+            json.append(counter.getValue().sum());
+        }
+
+        json.append("},\"gauges\":{");
+        first = true;
+        for (Map.Entry<String, Gauge> gauge : new TreeMap<>(gauges).entrySet()) {
+            first = appendName(json, gauge.getKey(), first);
+            json.append(gauge.getValue().value());
+        }
+
+        json.append("},\"histograms\":{");
+        first = true;
+        for (Map.Entry<String, LatencyHistogram> histogram : new TreeMap<>(histograms).entrySet()) {
+            first = appendName(json, histogram.getKey(), first);
+            LatencyHistogram.Snapshot snapshot = histogram.getValue().snapshot();
+            json.append("{\"count\":").append(snapshot.getCount())
+                    .append(",\"min\":").append(snapshot.getMin())
+                    .append(",\"max\":").append(snapshot.getMax())
+                    .append(",\"mean\":").append(Math.round(snapshot.getMean()))
+                    .append(",\"p50\":").append(snapshot.getValueAtPercentile(50))
+                    .append(",\"p90\":").append(snapshot.getValueAtPercentile(90))
+                    .append(",\"p99\":").append(snapshot.getValueAtPercentile(99))
+                    .append(",\"p999\":").append(snapshot.getValueAtPercentile(99.9))
+                    .append('}');
+        }
+        json.append("}}");
+        return json.toString();
+    }
+
+    // Writes a snapshot next to the target and renames it over, so readers never see a
+    // partial file.
+    void writeJson(File file, long timestampMillis) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            writer.write(toJson(timestampMillis));
+        }
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to write metrics to " + file);
+            }
+        }
+    }
+
+    private static boolean appendName(StringBuilder json, String name, boolean first) {
+        if (!first) {
+            json.append(',');
+        }
+        json.append('"');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append("\":");
+        return false;
+    }
+}
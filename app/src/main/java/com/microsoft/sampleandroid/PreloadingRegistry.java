@@ -0,0 +1,133 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.LongAdder;
+
+// Asynchronously loaded assets (renderables, textures) the app declares up front, so they can
+// be loaded before the first anchor needs them instead of stalling it. Concurrent requests for
+// a key share one load; a failed load is forgotten before its future completes, so the next
+// request retries.
+//
+// Under memory pressure evict() drops loaded entries. Whatever already uses a loaded asset
+// keeps it; the registry just stops holding it, and loads it again on the next request. Loads
+// in flight are never dropped, so they are not started twice.
+//
+// Metrics under the given prefix: <prefix>.load_ns from request to loaded, and counters
+// <prefix>.loads, <prefix>.load_failures, <prefix>.hits and <prefix>.evictions. Thread-safe.
+class PreloadingRegistry<K, V> {
+    interface Loader<K, V> {
+        CompletableFuture<V> load(K key);
+    }
+
+    private final Loader<K, V> loader;
+    private final FrameScheduler.Clock clock;
+    private final Set<K> declared = new CopyOnWriteArraySet<>();
+    private final Map<K, CompletableFuture<V>> entries = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram loadTimes;
+    private final LongAdder loads;
+    private final LongAdder failures;
+    private final LongAdder hits;
+    private final LongAdder evictions;
+
+    PreloadingRegistry(Loader<K, V> loader, FrameScheduler.Clock clock, MetricsRegistry metrics, String prefix) {
+        this.loader = loader;
+        this.clock = clock;
+        loadTimes = metrics.histogram(prefix + ".load_ns");
+        loads = metrics.counter(prefix + ".loads");
+        failures = metrics.counter(prefix + ".load_failures");
+        hits = metrics.counter(prefix + ".hits");
+        evictions = metrics.counter(prefix + ".evictions");
+    }
+
+    // Declares assets preload() loads, in the order given.
+    @SafeVarargs
+    final void declare(K... keys) {
+        for (K key : keys) {
+            declared.add(key);
+        }
+    }
+
+    // Starts loading every declared asset that is neither loaded nor loading.
+    void preload() {
+        for (K key : declared) {
+            if (!entries.containsKey(key)) {
+                get(key);
+            }
+        }
+    }
+
+    CompletableFuture<V> get(K key) {
+        CompletableFuture<V> existing = entries.get(key);
+        if (existing != null) {
+            hits.increment();
+            return existing;
+        }
+        CompletableFuture<V> result = new CompletableFuture<>();
+        existing = entries.putIfAbsent(key, result);
+        if (existing != null) {
+            hits.increment();
+            return existing;
+        }
+
+        loads.increment();
+        long startNanos = clock.nanoTime();
+        CompletableFuture<V> loading;
+        try {
+            loading = loader.load(key);
+        } catch (RuntimeException e) {
+            loading = new CompletableFuture<>();
+            loading.completeExceptionally(e);
+        }
+        loading.whenComplete((value, error) -> {
+            if (error != null) {
+                failures.increment();
+                entries.remove(key, result);
+                result.completeExceptionally(error);
+            } else {
+                loadTimes.record(clock.nanoTime() - startNanos);
+                result.complete(value);
+            }
+        });
+        return result;
+    }
+
+    // The asset if it has loaded, without starting a load; null otherwise.
+    V getIfLoaded(K key) {
+        CompletableFuture<V> entry = entries.get(key);
+        if (entry == null || !entry.isDone() || entry.isCompletedExceptionally()) {
+            return null;
+        }
+        return entry.join();
+    }
+
+    // Drops loaded assets; declared ones only if includeDeclared, so moderate pressure keeps
+    // what the next anchor is likely to need. Returns how many were dropped.
+    int evict(boolean includeDeclared) {
+        int evicted = 0;
+        for (Map.Entry<K, CompletableFuture<V>> entry : entries.entrySet()) {
+            CompletableFuture<V> future = entry.getValue();
+            if (future.isDone() && (includeDeclared || !declared.contains(entry.getKey()))
+                    && entries.remove(entry.getKey(), future)) {
+                evicted++;
+            }
+        }
+        evictions.add(evicted);
+        return evicted;
+    }
+
+    // Loaded and loading assets.
+    int size() {
+        return entries.size();
+    }
+
+    int getDeclaredCount() {
+        return declared.size();
+    }
+}
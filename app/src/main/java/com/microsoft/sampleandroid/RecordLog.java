@@ -0,0 +1,149 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Append-only file of checksummed records, the storage under AnchorStore and UploadJournal:
+//   int payloadLength, int crc32(payload), payload
+//
+// open() replays every intact record and truncates a torn or corrupt tail, which is what a crash
+// mid-write leaves behind. Appends are buffered until flush() (to the OS) or sync() (to disk).
+// rewrite() replaces the whole log, for compaction, without a moment where a crash could lose
+// it. Not thread-safe, except that force() may run while another thread appends.
+final class RecordLog implements Closeable {
+    interface Replay {
+        void onRecord(byte[] payload) throws IOException;
+    }
+
+    private static final int MAX_PAYLOAD_LENGTH = 1 << 20;
+
+    private final File file;
+    private final CRC32 crc = new CRC32();
+
+    private FileOutputStream logFile;
+    private DataOutputStream log;
+
+    private RecordLog(File file) {
+        this.file = file;
+    }
+
+    static RecordLog open(File file, Replay replay) throws IOException {
+        RecordLog log = new RecordLog(file);
+        log.replay(replay);
+        log.openForAppend();
+        return log;
+    }
+
+    void append(byte[] payload) throws IOException {
+        write(log, payload);
+    }
+
+    // Hands buffered appends to the OS; they survive the process dying, but not the device.
+    void flush() throws IOException {
+        log.flush();
+    }
+
+    // Waits until everything flushed so far is on disk.
+    void force() throws IOException {
+        logFile.getChannel().force(false);
+    }
+
+    void sync() throws IOException {
+        flush();
+        force();
+    }
+
+    // Replaces the log with the given records. The new log is written next to it and forced to
+    // disk before it is renamed over the old one, so a crash leaves one or the other, complete.
+    // If that fails the old log is kept, and either way the log is open for appending after.
+    void rewrite(List<byte[]> payloads) throws IOException {
+        File temp = new File(file.getPath() + ".compact");
+        try {
+            log.close();
+            try (FileOutputStream tempFile = new FileOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(tempFile))) {
+                for (byte[] payload : payloads) {
+                    write(out, payload);
+                }
+                out.flush();
+                tempFile.getChannel().force(false);
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Unable to replace " + file);
+            }
+        } finally {
+            openForAppend();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    private void write(DataOutputStream out, byte[] payload) throws IOException {
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+    }
+
+    private void replay(Replay replay) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte[] payload;
+                int expectedCrc;
+                try {
+                    int length = in.readInt();
+                    expectedCrc = in.readInt();
+                    if (length < 0 || length > MAX_PAYLOAD_LENGTH) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(payload, 0, payload.length);
+                if ((int) crc.getValue() != expectedCrc) {
+                    break;
+                }
+                replay.onRecord(payload);
+                validLength += 8 + payload.length;
+            }
+        }
+
+        if (validLength < file.length()) {
+            try (RandomAccessFile truncate = new RandomAccessFile(file, "rw")) {
+                truncate.setLength(validLength);
+            }
+        }
+    }
+
+    private void openForAppend() throws IOException {
+        logFile = new FileOutputStream(file, true);
+        log = new DataOutputStream(new BufferedOutputStream(logFile));
+    }
+}
@@ -0,0 +1,78 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// Passes another provider through, appending each new fingerprint it reads to a SensorTrace
+// file, so a walk through a building can be replayed later with TraceSensorProvider. A write
+// failure stops the recording but not the provider.
+class RecordingSensorProvider implements SensorProvider {
+    private final SensorProvider delegate;
+    private final Writer writer;
+
+    private SensorFingerprint lastRecorded;
+    private boolean failed;
+
+    RecordingSensorProvider(SensorProvider delegate, Writer writer) {
+        this.delegate = delegate;
+        this.writer = writer;
+    }
+
+    @Override
+    public void start() {
+        delegate.start();
+    }
+
+    @Override
+    public void stop() {
+        delegate.stop();
+        synchronized (writer) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                failed = true;
+            }
+        }
+    }
+
+    @Override
+    public SensorFingerprint read() {
+        SensorFingerprint fingerprint = delegate.read();
+        if (!fingerprint.isEmpty()) {
+            record(fingerprint);
+        }
+        return fingerprint;
+    }
+
+    @Override
+    public Status getGeoLocationStatus() {
+        return delegate.getGeoLocationStatus();
+    }
+
+    @Override
+    public Status getWifiStatus() {
+        return delegate.getWifiStatus();
+    }
+
+    @Override
+    public Status getBluetoothStatus() {
+        return delegate.getBluetoothStatus();
+    }
+
+    private void record(SensorFingerprint fingerprint) {
+        synchronized (writer) {
+            if (failed || fingerprint.equals(lastRecorded)) {
+                return;
+            }
+            try {
+                SensorTrace.append(writer, fingerprint);
+                writer.flush();
+                lastRecorded = fingerprint;
+            } catch (IOException e) {
+                failed = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Passes another backend through, writing what it tells the app to a SessionRecording: status
+// updates, located anchors, finished watchers, errors, and when each save started and how it
+// ended. ReplaySpatialAnchorBackend plays the recording back on a plain JVM.
+class RecordingSpatialAnchorBackend<A, F> implements SpatialAnchorBackend<A, F> {
+    private final SpatialAnchorBackend<A, F> delegate;
+    private final SessionRecording.Writer writer;
+    private final AtomicInteger nextCreateId = new AtomicInteger();
+
+    RecordingSpatialAnchorBackend(SpatialAnchorBackend<A, F> delegate, SessionRecording.Writer writer) {
+        this.delegate = delegate;
+        this.writer = writer;
+        // Registered first, so events are recorded before the app's listeners act on them.
+        delegate.addListener(new Listener<A>() {
+            @Override
+            public void onSessionUpdated(SessionStatusSnapshot status) {
+                writer.sessionUpdated(status);
+            }
+
+            @Override
+            public void onAnchorLocated(LocatedAnchor<A> located) {
+                writer.anchorLocated(located.getIdentifier(), located.getStatus(), located.getWatcherId());
+            }
+
+            @Override
+            public void onLocateCompleted(int watcherId, boolean cancelled) {
+                writer.locateCompleted(watcherId, cancelled);
+            }
+
+            @Override
+            public void onError(String message) {
+                writer.error(message);
+            }
+        });
+    }
+
+    @Override
+    public void start() {
+        writer.started();
+        delegate.start();
+    }
+
+    @Override
+    public void stop() {
+        delegate.stop();
+        writer.stopped();
+    }
+
+    @Override
+    public void processFrame(F frame) {
+        delegate.processFrame(frame);
+    }
+
+    @Override
+    public CompletableFuture<A> createAnchorAsync(A anchor) {
+        int createId = nextCreateId.getAndIncrement();
+        writer.createStarted(createId);
+        return delegate.createAnchorAsync(anchor).whenComplete((saved, error) -> {
+            if (error == null) {
+                writer.createCompleted(createId, true, delegate.getIdentifier(saved));
+            } else {
+                writer.createCompleted(createId, false, String.valueOf(RetryPolicy.unwrap(error).getMessage()));
+            }
+        });
+    }
+
+    @Override
+    public String getIdentifier(A anchor) {
+        return delegate.getIdentifier(anchor);
+    }
+
+    @Override
+    public Watcher createWatcher(AnchorQuery query) {
+        Watcher watcher = delegate.createWatcher(query);
+        writer.watcherCreated(watcher.getId());
+        return watcher;
+    }
+
+    @Override
+    public List<Watcher> getActiveWatchers() {
+        return delegate.getActiveWatchers();
+    }
+
+    @Override
+    public CompletableFuture<SessionStatusSnapshot> getSessionStatusAsync() {
+        return delegate.getSessionStatusAsync();
+    }
+
+    @Override
+    public Registration addListener(Listener<A> listener) {
+        return delegate.addListener(listener);
+    }
+}
@@ -0,0 +1,105 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.net.Uri;
+import com.google.ar.sceneform.ArSceneView;
+import com.google.ar.sceneform.rendering.ModelRenderable;
+import com.google.ar.sceneform.rendering.PlaneRenderer;
+import com.google.ar.sceneform.rendering.Texture;
+
+// The models and textures the app ships, loaded through process-wide PreloadingRegistry
+// instances. preload() runs when the AR session starts, so the sample model is ready by the time
+// the first anchor is located; onTrimMemory() gives it back when the system runs short.
+final class RenderableAssets {
+    // Drawn by Sceneform's plane renderer on every detected plane.
+    private static final String PLANE_TEXTURE = "models/trigrid.png";
+
+    private static volatile PreloadingRegistry<Integer, ModelRenderable> models;
+    private static volatile PreloadingRegistry<String, Texture> textures;
+
+    private RenderableAssets() {
+    }
+
+    // Compiled models by raw resource id.
+    static PreloadingRegistry<Integer, ModelRenderable> getModels(Context context) {
+        PreloadingRegistry<Integer, ModelRenderable> registry = models;
+        if (registry == null) {
+            synchronized (RenderableAssets.class) {
+                registry = models;
+                if (registry == null) {
+                    Context applicationContext = context.getApplicationContext();
+                    registry = new PreloadingRegistry<>(
+                            resourceId -> AnchorVisual.buildOnUiThread(() -> ModelRenderable.builder()
+                                    .setSource(applicationContext, resourceId)
+                                    .build()),
+                            System::nanoTime, AppMetrics.registry, "models");
+                    // Nearest level first: that is the one a just-located anchor shows.
+                    for (int level : AnchorVisual.SAMPLE_MODEL.levels) {
+                        registry.declare(level);
+                    }
+                    models = registry;
+                }
+            }
+        }
+        return registry;
+    }
+
+    // Textures by asset path.
+    static PreloadingRegistry<String, Texture> getTextures(Context context) {
+        PreloadingRegistry<String, Texture> registry = textures;
+        if (registry == null) {
+            synchronized (RenderableAssets.class) {
+                registry = textures;
+                if (registry == null) {
+                    Context applicationContext = context.getApplicationContext();
+                    registry = new PreloadingRegistry<>(
+                            path -> AnchorVisual.buildOnUiThread(() -> Texture.builder()
+                                    .setSource(applicationContext, Uri.parse(path))
+                                    .setSampler(Texture.Sampler.builder()
+                                            .setMinFilter(Texture.Sampler.MinFilter.LINEAR)
+                                            .setMagFilter(Texture.Sampler.MagFilter.LINEAR)
+                                            .setWrapMode(Texture.Sampler.WrapMode.REPEAT)
+                                            .build())
+                                    .build()),
+                            System::nanoTime, AppMetrics.registry, "textures");
+                    registry.declare(PLANE_TEXTURE);
+                    textures = registry;
+                }
+            }
+        }
+        return registry;
+    }
+
+    // Starts loading every declared asset not already loaded; cheap to call again.
+    static void preload(Context context) {
+        getModels(context).preload();
+        getTextures(context).preload();
+    }
+
+    static void applyPlaneTexture(Context context, ArSceneView sceneView) {
+        getTextures(context).get(PLANE_TEXTURE).thenAccept(texture -> MainThreadContext.runOnUiThread(() ->
+                sceneView.getPlaneRenderer().getMaterial().thenAccept(material ->
+                        material.setTexture(PlaneRenderer.MATERIAL_TEXTURE, texture))));
+    }
+
+    // While running, only what was loaded on demand goes; once the UI is hidden, or memory is
+    // critical, the preloaded assets go too, to be loaded again when the session resumes.
+    static void onTrimMemory(int level) {
+        boolean includeDeclared = level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+        if (level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && !includeDeclared) {
+            return;
+        }
+        PreloadingRegistry<Integer, ModelRenderable> loadedModels = models;
+        if (loadedModels != null) {
+            loadedModels.evict(includeDeclared);
+        }
+        PreloadingRegistry<String, Texture> loadedTextures = textures;
+        if (loadedTextures != null) {
+            loadedTextures.evict(includeDeclared);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Plays a SessionRecording back to the app, so flows recorded on a device can be rerun and
+// timed on a plain JVM. Timing is kept relative to what the app does: status updates follow the
+// recording from start(), the n-th watcher the app creates reports what the n-th recorded
+// watcher did, after the same delays, and the n-th save completes the way the n-th recorded one
+// did, after the same latency. Every delay is divided by speed; Double.POSITIVE_INFINITY
+// delivers everything as fast as the scheduler runs, in recorded order when the scheduler has a
+// single thread.
+//
+// Frames are counted and otherwise ignored: the recording already holds what they produced.
+class ReplaySpatialAnchorBackend<A, F> implements SpatialAnchorBackend<A, F> {
+    // How the replay hands anchors to the app.
+    interface Anchors<A> {
+        // A located anchor with the recorded identifier.
+        A located(String identifier);
+
+        // Gives an anchor the app saved the identifier it was recorded to get.
+        void saved(A anchor, String identifier);
+
+        String getIdentifier(A anchor);
+    }
+
+    // The recorded failure of a save.
+    static final class ReplayedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ReplayedException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class ScriptedWatcher {
+        final int id;
+        // Recorded events of this watcher, with offsets from its creation.
+        final List<SessionRecording.Event> events = new ArrayList<>();
+        final List<Long> delaysNanos = new ArrayList<>();
+
+        ScriptedWatcher(int id) {
+            this.id = id;
+        }
+    }
+
+    private static final class ScriptedCreate {
+        final long latencyNanos;
+        final boolean succeeded;
+        final String text;
+
+        ScriptedCreate(long latencyNanos, boolean succeeded, String text) {
+            this.latencyNanos = latencyNanos;
+            this.succeeded = succeeded;
+            this.text = text;
+        }
+    }
+
+    private final Anchors<A> anchors;
+    private final ScheduledExecutorService scheduler;
+    private final double speed;
+    // Session-wide events with offsets from the recorded start.
+    private final List<SessionRecording.Event> timeline = new ArrayList<>();
+    private final List<Long> timelineDelaysNanos = new ArrayList<>();
+    private final List<ScriptedWatcher> watchers = new ArrayList<>();
+    private final List<ScriptedCreate> creates = new ArrayList<>();
+    private final List<Listener<A>> listeners = new CopyOnWriteArrayList<>();
+    private final Map<Integer, ReplayWatcher> activeWatchers = new ConcurrentHashMap<>();
+    private final Set<ScheduledFuture<?>> scheduled = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger nextWatcher = new AtomicInteger();
+    private final AtomicInteger nextCreate = new AtomicInteger();
+    private final AtomicLong processedFrames = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile SessionStatusSnapshot status = new SessionStatusSnapshot(0, 0, null);
+
+    ReplaySpatialAnchorBackend(List<SessionRecording.Event> recording, Anchors<A> anchors,
+                               ScheduledExecutorService scheduler, double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("The speed must be positive.");
+        }
+        this.anchors = anchors;
+        this.scheduler = scheduler;
+        this.speed = speed;
+        script(recording);
+    }
+
+    int getRecordedWatcherCount() {
+        return watchers.size();
+    }
+
+    int getRecordedCreateCount() {
+        return creates.size();
+    }
+
+    long getProcessedFrameCount() {
+        return processedFrames.get();
+    }
+
+    @Override
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < timeline.size(); i++) {
+            SessionRecording.Event event = timeline.get(i);
+            schedule(() -> deliver(event), timelineDelaysNanos.get(i));
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        for (ScheduledFuture<?> future : scheduled) {
+            future.cancel(false);
+        }
+        scheduled.clear();
+        for (ReplayWatcher watcher : new ArrayList<>(activeWatchers.values())) {
+            watcher.stop();
+        }
+    }
+
+    @Override
+    public void processFrame(F frame) {
+        if (running) {
+            processedFrames.incrementAndGet();
+        }
+    }
+
+    @Override
+    public CompletableFuture<A> createAnchorAsync(A anchor) {
+        CompletableFuture<A> result = new CompletableFuture<>();
+        int index = nextCreate.getAndIncrement();
+        if (index >= creates.size()) {
+            result.completeExceptionally(new IllegalStateException("The recording has no save number " + index + "."));
+            return result;
+        }
+        ScriptedCreate create = creates.get(index);
+        schedule(() -> {
+            if (create.succeeded) {
+                anchors.saved(anchor, create.text);
+                result.complete(anchor);
+            } else {
+                result.completeExceptionally(new ReplayedException(create.text));
+            }
+        }, create.latencyNanos);
+        return result;
+    }
+
+    @Override
+    public String getIdentifier(A anchor) {
+        return anchors.getIdentifier(anchor);
+    }
+
+    @Override
+    public Watcher createWatcher(AnchorQuery query) {
+        if (!running) {
+            throw new IllegalStateException("The session has not been started.");
+        }
+        int index = nextWatcher.getAndIncrement();
+        if (index >= watchers.size()) {
+            throw new IllegalStateException("The recording has no watcher number " + index + ".");
+        }
+        ScriptedWatcher script = watchers.get(index);
+        ReplayWatcher watcher = new ReplayWatcher(script.id);
+        activeWatchers.put(watcher.id, watcher);
+        for (int i = 0; i < script.events.size(); i++) {
+            SessionRecording.Event event = script.events.get(i);
+            watcher.pending.add(schedule(() -> watcher.deliver(event), script.delaysNanos.get(i)));
+        }
+        return watcher;
+    }
+
+    @Override
+    public List<Watcher> getActiveWatchers() {
+        return new ArrayList<>(activeWatchers.values());
+    }
+
+    @Override
+    public CompletableFuture<SessionStatusSnapshot> getSessionStatusAsync() {
+        return CompletableFuture.completedFuture(status);
+    }
+
+    @Override
+    public Registration addListener(Listener<A> listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    // Splits the recording into the session timeline, one script per watcher and one per save.
+    private void script(List<SessionRecording.Event> recording) {
+        long startNanos = 0;
+        for (SessionRecording.Event event : recording) {
+            if (event.type == SessionRecording.EventType.Started) {
+                startNanos = event.offsetNanos;
+                break;
+            }
+        }
+
+        Map<Integer, ScriptedWatcher> watchersById = new HashMap<>();
+        Map<Integer, Long> watcherStarts = new HashMap<>();
+        Map<Integer, Long> createStarts = new HashMap<>();
+        Map<Integer, Integer> createIndexes = new HashMap<>();
+        List<ScriptedCreate> completed = new ArrayList<>();
+        for (SessionRecording.Event event : recording) {
+            switch (event.type) {
+                case SessionUpdated:
+                case Error:
+                    if (event.offsetNanos >= startNanos) {
+                        timeline.add(event);
+                        timelineDelaysNanos.add(event.offsetNanos - startNanos);
+                    }
+                    break;
+                case WatcherCreated:
+                    ScriptedWatcher watcher = new ScriptedWatcher(event.id);
+                    watchers.add(watcher);
+                    watchersById.put(event.id, watcher);
+                    watcherStarts.put(event.id, event.offsetNanos);
+                    break;
+                case AnchorLocated:
+                case LocateCompleted:
+                    ScriptedWatcher owner = watchersById.get(event.id);
+                    if (owner != null) {
+                        owner.events.add(event);
+                        // Reports can be recorded just before their watcher when the SDK is quick.
+                        owner.delaysNanos.add(Math.max(0, event.offsetNanos - watcherStarts.get(event.id)));
+                    }
+                    break;
+                case CreateStarted:
+                    createStarts.put(event.id, event.offsetNanos);
+                    createIndexes.put(event.id, completed.size());
+                    completed.add(null);
+                    break;
+                case CreateCompleted:
+                    Integer index = createIndexes.get(event.id);
+                    if (index != null) {
+                        completed.set(index, new ScriptedCreate(event.offsetNanos - createStarts.get(event.id),
+                                event.flag, event.text));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        // Saves still in flight when the recording ended never complete.
+        for (ScriptedCreate create : completed) {
+            if (create == null) {
+                break;
+            }
+            creates.add(create);
+        }
+    }
+
+    private ScheduledFuture<?> schedule(Runnable task, long recordedDelayNanos) {
+        long delay = Double.isInfinite(speed) ? 0 : (long) (recordedDelayNanos / speed);
+        ScheduledFuture<?> future = scheduler.schedule(task, delay, TimeUnit.NANOSECONDS);
+        scheduled.add(future);
+        return future;
+    }
+
+    private void deliver(SessionRecording.Event event) {
+        if (!running) {
+            return;
+        }
+        if (event.type == SessionRecording.EventType.SessionUpdated) {
+            status = new SessionStatusSnapshot(event.readyForCreateProgress, event.recommendedForCreateProgress, event.text);
+            for (Listener<A> listener : listeners) {
+                listener.onSessionUpdated(status);
+            }
+        } else {
+            for (Listener<A> listener : listeners) {
+                listener.onError(event.text);
+            }
+        }
+    }
+
+    private final class ReplayWatcher implements Watcher {
+        final int id;
+        final List<ScheduledFuture<?>> pending = new CopyOnWriteArrayList<>();
+
+        ReplayWatcher(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public void stop() {
+            for (ScheduledFuture<?> future : pending) {
+                future.cancel(false);
+            }
+            complete(true);
+        }
+
+        void deliver(SessionRecording.Event event) {
+            if (!activeWatchers.containsKey(id)) {
+                return;
+            }
+            if (event.type == SessionRecording.EventType.LocateCompleted) {
+                complete(event.flag);
+                return;
+            }
+            boolean found = event.status == LocateStatus.Located || event.status == LocateStatus.AlreadyTracked;
+            LocatedAnchor<A> located = new LocatedAnchor<>(event.text, event.status,
+                    found ? anchors.located(event.text) : null, id);
+            for (Listener<A> listener : listeners) {
+                listener.onAnchorLocated(located);
+            }
+        }
+
+        void complete(boolean cancelled) {
+            if (activeWatchers.remove(id) == null) {
+                return;
+            }
+            for (Listener<A> listener : listeners) {
+                listener.onLocateCompleted(id, cancelled);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded cache of asynchronously loaded resources (materials, renderables). Concurrent
+// requests for the same key share one load. Entries are split across lock stripes by key
+// hash, each an access-ordered map evicting its least recently used entry once the stripe is
+// full, so the bound is maxEntries overall and LRU order is kept per stripe.
+//
+// A load that fails is dropped from the cache before its future completes, so the next request
+// retries instead of seeing the cached failure.
+class ResourceCache<K, V> {
+    interface Loader<K, V> {
+        CompletableFuture<V> load(K key);
+    }
+
+    private final Loader<K, V> loader;
+    private final Stripe<K, V>[] stripes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    // Java cannot create a generic array, so the stripes array is created raw.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ResourceCache(int maxEntries, int stripeCount, Loader<K, V> loader) {
+        if (maxEntries < 1 || stripeCount < 1) {
+            throw new IllegalArgumentException("maxEntries and stripeCount must be at least 1.");
+        }
+        this.loader = loader;
+        int stripeCountUsed = Math.min(stripeCount, maxEntries);
+        this.stripes = new Stripe[stripeCountUsed];
+        for (int i = 0; i < stripeCountUsed; i++) {
+            // Spread the remainder so the capacities add up to exactly maxEntries.
+            int capacity = maxEntries / stripeCountUsed + (i < maxEntries % stripeCountUsed ? 1 : 0);
+            stripes[i] = new Stripe<>(capacity, evictions);
+        }
+    }
+
+    CompletableFuture<V> get(K key) {
+        Stripe<K, V> stripe = stripeFor(key);
+        CompletableFuture<V> result;
+        synchronized (stripe) {
+            CompletableFuture<V> cached = stripe.get(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            misses.increment();
+            result = new CompletableFuture<>();
+            stripe.put(key, result);
+        }
+
+        // Load outside the stripe lock: loaders may post to other threads or call back into us.
+        CompletableFuture<V> loading;
+        try {
+            loading = loader.load(key);
+        } catch (RuntimeException e) {
+            loading = new CompletableFuture<>();
+            loading.completeExceptionally(e);
+        }
+        loading.whenComplete((value, error) -> {
+            if (error != null) {
+                failures.increment();
+                synchronized (stripe) {
+                    stripe.remove(key, result);
+                }
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+        return result;
+    }
+
+    void invalidateAll() {
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    long getFailureCount() {
+        return failures.sum();
+    }
+
+    private Stripe<K, V> stripeFor(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return stripes[(hash & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    private static final class Stripe<K, V> extends LinkedHashMap<K, CompletableFuture<V>> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final LongAdder evictions;
+
+        Stripe(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, CompletableFuture<V>> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+// Exponential backoff with full jitter: the delay before retry n is drawn uniformly from
+// [0, min(maxDelay, baseDelay * 2^(n - 1))], so clients that failed together do not retry together.
+class RetryPolicy {
+    interface TransientErrorClassifier {
+        boolean isTransient(Throwable error);
+    }
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final TransientErrorClassifier classifier;
+    private final Random random;
+
+    RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, TransientErrorClassifier classifier) {
+        this(maxAttempts, baseDelayMs, maxDelayMs, classifier, new Random());
+    }
+
+    RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs,
+                TransientErrorClassifier classifier, Random random) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1.");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.classifier = classifier;
+        this.random = random;
+    }
+
+    static RetryPolicy noRetries() {
+        return new RetryPolicy(1, 0, 0, error -> false);
+    }
+
+    int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    // attempt is the number of attempts already made, starting at 1.
+    boolean shouldRetry(Throwable error, int attempt) {
+        return attempt < maxAttempts && classifier.isTransient(unwrap(error));
+    }
+
+    long nextDelayMs(int attempt) {
+        int shift = Math.min(Math.max(attempt - 1, 0), 30);
+        long ceiling = Math.min(maxDelayMs, baseDelayMs << shift);
+        if (ceiling <= 0) {
+            return 0;
+        }
+        synchronized (random) {
+            return (long) (random.nextDouble() * (ceiling + 1));
+        }
+    }
+
+    static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
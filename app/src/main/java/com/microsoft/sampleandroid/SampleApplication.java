@@ -3,16 +3,75 @@
 package com.microsoft.sampleandroid;
 
 import android.app.Application;
+import android.os.Process;
+import android.os.SystemClock;
 
+import com.google.ar.core.Session;
 import com.microsoft.CloudServices;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 public class SampleApplication extends Application {
+    // Start-up tasks and milestones, as named in the trace.
+    static final String CLOUD_SERVICES = "cloud_services";
+    static final String AR_SESSION = "ar_session";
+    static final String FIRST_FRAME = "first_frame";
+
+    private static final int STARTUP_THREADS = 2;
+
+    private StartupOrchestrator startup;
+    private final AtomicReference<CompletableFuture<Session>> preparedSession = new AtomicReference<>();
 
     @Override
     public void onCreate() {
         super.onCreate();
 
-        // Use application's context to initialize CloudServices!
-        CloudServices.initialize(this);
+        // The trace counts from the process start, so it includes what ran before onCreate.
+        long processStartNanos = TimeUnit.MILLISECONDS.toNanos(Process.getStartElapsedRealtime());
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor background = new ThreadPoolExecutor(STARTUP_THREADS, STARTUP_THREADS,
+                10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> new Thread(runnable, "startup-" + threadCount.incrementAndGet()));
+        // Start-up is over long before the process is; do not keep the threads around.
+        background.allowCoreThreadTimeOut(true);
+        startup = new StartupOrchestrator(background, MainThreadContext::runOnUiThread,
+                SystemClock::elapsedRealtimeNanos, processStartNanos, AppMetrics.registry);
+
+        StartupOrchestrator.Phase creating = startup.begin("application.onCreate");
+        try {
+            // Use application's context to initialize CloudServices! It runs in the background
+            // from the start, so the UI never waits for it; SharedActivity enables creating and
+            // locating anchors once it is done.
+            startup.task(CLOUD_SERVICES, StartupOrchestrator.Runs.Background, () -> {
+                CloudServices.initialize(this);
+                return null;
+            });
+            // Built while the activity inflates; SharedActivity attaches it to its scene.
+            preparedSession.set(startup.task(AR_SESSION, StartupOrchestrator.Runs.Background,
+                    () -> SceneformHelper.createSession(this)));
+        } finally {
+            creating.close();
+        }
+    }
+
+    StartupOrchestrator getStartup() {
+        return startup;
+    }
+
+    // The session built at start-up, for the first activity to attach; null afterwards, since a
+    // session belongs to the scene it was attached to.
+    CompletableFuture<Session> takePreparedSession() {
+        return preparedSession.getAndSet(null);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        RenderableAssets.onTrimMemory(level);
     }
 }
@@ -25,16 +25,25 @@ class SceneformHelper {
 
     static boolean trySetupSessionForSceneView(Context context, ArSceneView sceneView) {
         try {
-            Session session = new Session(context);
-            Config config = new Config(session);
-            config.setUpdateMode(Config.UpdateMode.LATEST_CAMERA_IMAGE);
-            session.configure(config);
-            sceneView.setupSession(session);
+            sceneView.setupSession(createSession(context));
             return true;
         }
         catch (UnavailableException e) {
-            Log.e("ASADemo: ", "Make sure you have a supported ARCore version installed. Exception: " + e.toString());
+            logUnavailable(e);
             return false;
         }
     }
+
+    // Builds and configures a session; does not need the main thread.
+    static Session createSession(Context context) throws UnavailableException {
+        Session session = new Session(context);
+        Config config = new Config(session);
+        config.setUpdateMode(Config.UpdateMode.LATEST_CAMERA_IMAGE);
+        session.configure(config);
+        return session;
+    }
+
+    static void logUnavailable(Exception e) {
+        Log.e("ASADemo: ", "Make sure you have a supported ARCore version installed. Exception: " + e.toString());
+    }
 }
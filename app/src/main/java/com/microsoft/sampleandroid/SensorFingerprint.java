@@ -0,0 +1,255 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+// What the device's sensors saw at one moment: an optional geolocation fix plus the signal
+// strength of each Wi-Fi access point and Bluetooth beacon in range. Radios are keyed by their
+// 48-bit MAC address and kept sorted by key, so two fingerprints are compared with one merge.
+//
+// Immutable. encode() and decode() give a compact single-line text form, used to keep the
+// fingerprint an anchor was saved or found with in its AnchorRecord and in sensor traces.
+final class SensorFingerprint {
+    static final SensorFingerprint EMPTY = new Builder(0).build();
+
+    private final long timestampMillis;
+    private final double latitude;
+    private final double longitude;
+    private final float accuracyMeters;
+    private final long[] wifiKeys;
+    private final byte[] wifiRssi;
+    private final long[] beaconKeys;
+    private final byte[] beaconRssi;
+
+    private SensorFingerprint(Builder builder) {
+        timestampMillis = builder.timestampMillis;
+        latitude = builder.latitude;
+        longitude = builder.longitude;
+        accuracyMeters = builder.accuracyMeters;
+        wifiKeys = keys(builder.wifi);
+        wifiRssi = values(builder.wifi);
+        beaconKeys = keys(builder.beacons);
+        beaconRssi = values(builder.beacons);
+    }
+
+    long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    boolean hasLocation() {
+        return !Float.isNaN(accuracyMeters);
+    }
+
+    double getLatitude() {
+        return latitude;
+    }
+
+    double getLongitude() {
+        return longitude;
+    }
+
+    float getAccuracyMeters() {
+        return accuracyMeters;
+    }
+
+    int getWifiCount() {
+        return wifiKeys.length;
+    }
+
+    long getWifiKey(int index) {
+        return wifiKeys[index];
+    }
+
+    int getWifiRssi(int index) {
+        return wifiRssi[index];
+    }
+
+    int getBeaconCount() {
+        return beaconKeys.length;
+    }
+
+    long getBeaconKey(int index) {
+        return beaconKeys[index];
+    }
+
+    int getBeaconRssi(int index) {
+        return beaconRssi[index];
+    }
+
+    boolean isEmpty() {
+        return !hasLocation() && wifiKeys.length == 0 && beaconKeys.length == 0;
+    }
+
+    // Parses "aa:bb:cc:dd:ee:ff" (any separators) into a key; returns -1 if it is not a MAC.
+    static long macToKey(String address) {
+        if (address == null) {
+            return -1;
+        }
+        long key = 0;
+        int digits = 0;
+        for (int i = 0; i < address.length(); i++) {
+            int digit = Character.digit(address.charAt(i), 16);
+            if (digit >= 0) {
+                key = key << 4 | digit;
+                digits++;
+            }
+        }
+        return digits == 12 ? key : -1;
+    }
+
+    // "t=<millis>;g=<lat>,<lon>,<accuracy>;w=<key>:<rssi>,...;b=<key>:<rssi>,..." with keys in
+    // hex; absent parts are left out.
+    String encode() {
+        StringBuilder out = new StringBuilder(32 + 16 * (wifiKeys.length + beaconKeys.length));
+        out.append("t=").append(timestampMillis);
+        if (hasLocation()) {
+            out.append(";g=").append(latitude).append(',').append(longitude).append(',').append(accuracyMeters);
+        }
+        appendRadios(out, "w", wifiKeys, wifiRssi);
+        appendRadios(out, "b", beaconKeys, beaconRssi);
+        return out.toString();
+    }
+
+    static SensorFingerprint decode(String text) {
+        Builder builder = new Builder(0);
+        try {
+            for (String part : text.split(";")) {
+                if (part.length() < 2 || part.charAt(1) != '=') {
+                    throw new IllegalArgumentException("Malformed fingerprint part: " + part);
+                }
+                String value = part.substring(2);
+                switch (part.charAt(0)) {
+                    case 't':
+                        builder.timestampMillis = Long.parseLong(value);
+                        break;
+                    case 'g':
+                        String[] fix = value.split(",");
+                        builder.setLocation(Double.parseDouble(fix[0]), Double.parseDouble(fix[1]), Float.parseFloat(fix[2]));
+                        break;
+                    case 'w':
+                    case 'b':
+                        for (String radio : value.split(",")) {
+                            int colon = radio.indexOf(':');
+                            long key = Long.parseLong(radio.substring(0, colon), 16);
+                            int rssi = Integer.parseInt(radio.substring(colon + 1));
+                            if (part.charAt(0) == 'w') {
+                                builder.addWifi(key, rssi);
+                            } else {
+                                builder.addBeacon(key, rssi);
+                            }
+                        }
+                        break;
+                    default:
+                        // Parts written by a newer version are skipped.
+                        break;
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed fingerprint: " + text, e);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SensorFingerprint)) {
+            return false;
+        }
+        SensorFingerprint other = (SensorFingerprint) o;
+        return timestampMillis == other.timestampMillis
+                && Double.compare(latitude, other.latitude) == 0
+                && Double.compare(longitude, other.longitude) == 0
+                && Float.compare(accuracyMeters, other.accuracyMeters) == 0
+                && Arrays.equals(wifiKeys, other.wifiKeys)
+                && Arrays.equals(wifiRssi, other.wifiRssi)
+                && Arrays.equals(beaconKeys, other.beaconKeys)
+                && Arrays.equals(beaconRssi, other.beaconRssi);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(timestampMillis) * 31 + Arrays.hashCode(wifiKeys);
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+
+    private static void appendRadios(StringBuilder out, String tag, long[] keys, byte[] rssi) {
+        if (keys.length == 0) {
+            return;
+        }
+        out.append(';').append(tag).append('=');
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(Long.toHexString(keys[i])).append(':').append(rssi[i]);
+        }
+    }
+
+    private static long[] keys(TreeMap<Long, Byte> radios) {
+        long[] keys = new long[radios.size()];
+        int i = 0;
+        for (Long key : radios.keySet()) {
+            keys[i++] = key;
+        }
+        return keys;
+    }
+
+    private static byte[] values(TreeMap<Long, Byte> radios) {
+        byte[] values = new byte[radios.size()];
+        int i = 0;
+        for (Byte value : radios.values()) {
+            values[i++] = value;
+        }
+        return values;
+    }
+
+    static final class Builder {
+        private long timestampMillis;
+        private double latitude = Double.NaN;
+        private double longitude = Double.NaN;
+        private float accuracyMeters = Float.NaN;
+        private final TreeMap<Long, Byte> wifi = new TreeMap<>();
+        private final TreeMap<Long, Byte> beacons = new TreeMap<>();
+
+        Builder(long timestampMillis) {
+            this.timestampMillis = timestampMillis;
+        }
+
+        Builder setLocation(double latitude, double longitude, float accuracyMeters) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracyMeters = accuracyMeters;
+            return this;
+        }
+
+        // RSSI in dBm. A radio reported twice keeps its strongest reading.
+        Builder addWifi(long key, int rssi) {
+            put(wifi, key, rssi);
+            return this;
+        }
+
+        Builder addBeacon(long key, int rssi) {
+            put(beacons, key, rssi);
+            return this;
+        }
+
+        SensorFingerprint build() {
+            return new SensorFingerprint(this);
+        }
+
+        private static void put(Map<Long, Byte> radios, long key, int rssi) {
+            byte clamped = (byte) Math.max(Byte.MIN_VALUE, Math.min(0, rssi));
+            Byte existing = radios.get(key);
+            if (existing == null || existing < clamped) {
+                radios.put(key, clamped);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+// Source of sensor fingerprints for nearby-anchor discovery. AndroidSensorProvider reads the
+// device's radios; TraceSensorProvider replays a recorded SensorTrace so fingerprinting and
+// matching can be tested and benchmarked on a plain JVM.
+//
+// Implementations must allow read() and the status getters from any thread.
+interface SensorProvider {
+    // Mirrors the SDK's SensorStatus, and the colors of SensorStatusView.
+    enum Status {
+        Indeterminate,
+        Blocked,
+        Unavailable,
+        Available,
+    }
+
+    void start();
+
+    void stop();
+
+    // What the sensors see now; SensorFingerprint.EMPTY when nothing is known yet.
+    SensorFingerprint read();
+
+    Status getGeoLocationStatus();
+
+    Status getWifiStatus();
+
+    Status getBluetoothStatus();
+}
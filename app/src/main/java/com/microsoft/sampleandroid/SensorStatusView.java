@@ -0,0 +1,52 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+// One colored dot per sensor used for nearby-anchor discovery (layout sensor_status), colored
+// by the sensorStatus* colors for its current SensorProvider.Status.
+public class SensorStatusView extends LinearLayout {
+    private final TextView geoLocationStatus;
+    private final TextView wifiStatus;
+    private final TextView bluetoothStatus;
+
+    public SensorStatusView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        setOrientation(VERTICAL);
+        inflate(context, R.layout.sensor_status, this);
+        geoLocationStatus = findViewById(R.id.geolocation_status);
+        wifiStatus = findViewById(R.id.wifi_status);
+        bluetoothStatus = findViewById(R.id.bluetooth_status);
+        update(null);
+    }
+
+    // Shows every sensor as Indeterminate when provider is null. UI thread only.
+    void update(SensorProvider provider) {
+        setStatus(geoLocationStatus, provider != null ? provider.getGeoLocationStatus() : SensorProvider.Status.Indeterminate);
+        setStatus(wifiStatus, provider != null ? provider.getWifiStatus() : SensorProvider.Status.Indeterminate);
+        setStatus(bluetoothStatus, provider != null ? provider.getBluetoothStatus() : SensorProvider.Status.Indeterminate);
+    }
+
+    private void setStatus(TextView view, SensorProvider.Status status) {
+        int color;
+        switch (status) {
+            case Blocked:
+                color = R.color.sensorStatusBlocked;
+                break;
+            case Unavailable:
+                color = R.color.sensorStatusUnavailable;
+                break;
+            case Available:
+                color = R.color.sensorStatusAvailable;
+                break;
+            default:
+                color = R.color.sensorStatusIndeterminate;
+                break;
+        }
+        view.setTextColor(getContext().getColor(color));
+    }
+}
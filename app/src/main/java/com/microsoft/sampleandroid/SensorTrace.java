@@ -0,0 +1,87 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// A recording of what a device's sensors saw over time, as fingerprints in timestamp order.
+// The text form is one SensorFingerprint.encode() per line; blank lines and lines starting
+// with '#' are ignored, so traces can be annotated by hand.
+final class SensorTrace {
+    private final List<SensorFingerprint> samples;
+
+    SensorTrace(List<SensorFingerprint> samples) {
+        ArrayList<SensorFingerprint> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted, Comparator.comparingLong(SensorFingerprint::getTimestampMillis));
+        this.samples = Collections.unmodifiableList(sorted);
+    }
+
+    static SensorTrace read(Reader reader) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        List<SensorFingerprint> samples = new ArrayList<>();
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                samples.add(SensorFingerprint.decode(line));
+            }
+        }
+        return new SensorTrace(samples);
+    }
+
+    void write(Writer writer) throws IOException {
+        for (SensorFingerprint sample : samples) {
+            append(writer, sample);
+        }
+        writer.flush();
+    }
+
+    static void append(Writer writer, SensorFingerprint sample) throws IOException {
+        writer.write(sample.encode());
+        writer.write('\n');
+    }
+
+    int size() {
+        return samples.size();
+    }
+
+    SensorFingerprint get(int index) {
+        return samples.get(index);
+    }
+
+    List<SensorFingerprint> getSamples() {
+        return samples;
+    }
+
+    long getStartMillis() {
+        return samples.isEmpty() ? 0 : samples.get(0).getTimestampMillis();
+    }
+
+    long getDurationMillis() {
+        return samples.isEmpty() ? 0 : samples.get(samples.size() - 1).getTimestampMillis() - getStartMillis();
+    }
+
+    // The latest sample taken at or before the timestamp, or EMPTY if there is none yet.
+    SensorFingerprint at(long timestampMillis) {
+        int low = 0;
+        int high = samples.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (samples.get(mid).getTimestampMillis() <= timestampMillis) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found < 0 ? SensorFingerprint.EMPTY : samples.get(found);
+    }
+}
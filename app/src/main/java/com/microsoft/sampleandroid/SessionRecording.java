@@ -0,0 +1,382 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// What a spatial anchor session told the app, and when: the events crossing the
+// SpatialAnchorBackend boundary, written by RecordingSpatialAnchorBackend and played back by
+// ReplaySpatialAnchorBackend. The binary form is
+//   int MAGIC, byte VERSION, then per event:
+//   byte type, varint nanosSincePreviousEvent, fields by type (see Writer)
+// with varints for ids and varint-length UTF-8 strings (length + 1, 0 for null), so a status
+// update takes about 15 bytes. A recording cut short by a crash reads up to its last whole event.
+final class SessionRecording {
+    private static final int MAGIC = 0x41534152;
+    private static final byte VERSION = 1;
+
+    enum EventType {
+        Started,
+        Stopped,
+        SessionUpdated,
+        AnchorLocated,
+        LocateCompleted,
+        Error,
+        WatcherCreated,
+        CreateStarted,
+        CreateCompleted,
+    }
+
+    // One recorded event; only the fields of its type are set.
+    static final class Event {
+        final EventType type;
+        // Since the recording started.
+        final long offsetNanos;
+        // Watcher id, or the create call's number for CreateStarted and CreateCompleted.
+        final int id;
+        // Cancelled for LocateCompleted, succeeded for CreateCompleted.
+        final boolean flag;
+        final float readyForCreateProgress;
+        final float recommendedForCreateProgress;
+        final SpatialAnchorBackend.LocateStatus status;
+        // User feedback, identifier or error message.
+        final String text;
+
+        Event(EventType type, long offsetNanos, int id, boolean flag, float readyForCreateProgress,
+              float recommendedForCreateProgress, SpatialAnchorBackend.LocateStatus status, String text) {
+            this.type = type;
+            this.offsetNanos = offsetNanos;
+            this.id = id;
+            this.flag = flag;
+            this.readyForCreateProgress = readyForCreateProgress;
+            this.recommendedForCreateProgress = recommendedForCreateProgress;
+            this.status = status;
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return offsetNanos + " " + type + " " + id + " " + text;
+        }
+    }
+
+    private SessionRecording() {
+    }
+
+    // Appends events as they happen. Safe to call from any thread; a write failure stops the
+    // recording but is never thrown at the caller.
+    static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final FrameScheduler.Clock clock;
+        private long lastNanos;
+        private long events;
+        private boolean failed;
+
+        Writer(OutputStream out, FrameScheduler.Clock clock) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out));
+            this.clock = clock;
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(VERSION);
+            lastNanos = clock.nanoTime();
+        }
+
+        synchronized void started() {
+            if (begin(EventType.Started)) {
+                end();
+            }
+        }
+
+        // Also flushes, so a recording is readable up to here if the app is killed later.
+        synchronized void stopped() {
+            if (begin(EventType.Stopped)) {
+                end();
+            }
+            flush();
+        }
+
+        synchronized void sessionUpdated(SessionStatusSnapshot status) {
+            if (begin(EventType.SessionUpdated)) {
+                try {
+                    out.writeFloat(status.getReadyForCreateProgress());
+                    out.writeFloat(status.getRecommendedForCreateProgress());
+                    writeString(status.getUserFeedback());
+                } catch (IOException e) {
+                    failed = true;
+                }
+                end();
+            }
+        }
+
+        synchronized void anchorLocated(String identifier, SpatialAnchorBackend.LocateStatus status, int watcherId) {
+            if (begin(EventType.AnchorLocated)) {
+                try {
+                    writeVarint(watcherId);
+                    out.writeByte(status.ordinal());
+                    writeString(identifier);
+                } catch (IOException e) {
+                    failed = true;
+                }
+                end();
+            }
+        }
+
+        synchronized void locateCompleted(int watcherId, boolean cancelled) {
+            if (begin(EventType.LocateCompleted)) {
+                try {
+                    writeVarint(watcherId);
+                    out.writeBoolean(cancelled);
+                } catch (IOException e) {
+                    failed = true;
+                }
+                end();
+            }
+        }
+
+        synchronized void error(String message) {
+            if (begin(EventType.Error)) {
+                try {
+                    writeString(message);
+                } catch (IOException e) {
+                    failed = true;
+                }
+                end();
+            }
+        }
+
+        synchronized void watcherCreated(int watcherId) {
+            if (begin(EventType.WatcherCreated)) {
+                try {
+                    writeVarint(watcherId);
+                } catch (IOException e) {
+                    failed = true;
+                }
+                end();
+            }
+        }
+
+        synchronized void createStarted(int createId) {
+            if (begin(EventType.CreateStarted)) {
+                try {
+                    writeVarint(createId);
+                } catch (IOException e) {
+                    failed = true;
+                }
+                end();
+            }
+        }
+
+        // The saved identifier on success, the error's message otherwise.
+        synchronized void createCompleted(int createId, boolean succeeded, String identifierOrMessage) {
+            if (begin(EventType.CreateCompleted)) {
+                try {
+                    writeVarint(createId);
+                    out.writeBoolean(succeeded);
+                    writeString(identifierOrMessage);
+                } catch (IOException e) {
+                    failed = true;
+                }
+                end();
+            }
+        }
+
+        synchronized long getEventCount() {
+            return events;
+        }
+
+        synchronized boolean hasFailed() {
+            return failed;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+
+        private boolean begin(EventType type) {
+            if (failed) {
+                return false;
+            }
+            // Read under the lock, so offsets never go backwards.
+            long now = Math.max(clock.nanoTime(), lastNanos);
+            try {
+                out.writeByte(type.ordinal());
+                writeVarint(now - lastNanos);
+            } catch (IOException e) {
+                failed = true;
+                return false;
+            }
+            lastNanos = now;
+            return true;
+        }
+
+        private void end() {
+            if (!failed) {
+                events++;
+            }
+        }
+
+        private void flush() {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                failed = true;
+            }
+        }
+
+        private void writeVarint(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1);
+            out.write(bytes);
+        }
+    }
+
+    // Reads a recording through a memory mapping, one event at a time.
+    static final class Reader {
+        private final ByteBuffer buffer;
+        private long offsetNanos;
+
+        private Reader(ByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            if (buffer.remaining() < 5 || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a session recording.");
+            }
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported session recording version " + version + ".");
+            }
+        }
+
+        static Reader open(File file) throws IOException {
+            try (RandomAccessFile input = new RandomAccessFile(file, "r");
+                 FileChannel channel = input.getChannel()) {
+                // The mapping stays valid after the channel is closed.
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return new Reader(mapped);
+            }
+        }
+
+        static Reader wrap(byte[] recording) throws IOException {
+            return new Reader(ByteBuffer.wrap(recording));
+        }
+
+        // The next event, or null at the end or at a torn last event.
+        Event next() {
+            if (!buffer.hasRemaining()) {
+                return null;
+            }
+            int start = buffer.position();
+            try {
+                int ordinal = buffer.get();
+                if (ordinal < 0 || ordinal >= EventType.values().length) {
+                    return end(start);
+                }
+                EventType type = EventType.values()[ordinal];
+                long offset = offsetNanos + readVarint();
+                Event event;
+                switch (type) {
+                    case SessionUpdated:
+                        float ready = buffer.getFloat();
+                        float recommended = buffer.getFloat();
+                        event = new Event(type, offset, 0, false, ready, recommended, null, readString());
+                        break;
+                    case AnchorLocated:
+                        int watcherId = (int) readVarint();
+                        int status = buffer.get();
+                        if (status < 0 || status >= SpatialAnchorBackend.LocateStatus.values().length) {
+                            return end(start);
+                        }
+                        event = new Event(type, offset, watcherId, false, 0, 0,
+                                SpatialAnchorBackend.LocateStatus.values()[status], readString());
+                        break;
+                    case LocateCompleted:
+                        event = new Event(type, offset, (int) readVarint(), buffer.get() != 0, 0, 0, null, null);
+                        break;
+                    case Error:
+                        event = new Event(type, offset, 0, false, 0, 0, null, readString());
+                        break;
+                    case WatcherCreated:
+                    case CreateStarted:
+                        event = new Event(type, offset, (int) readVarint(), false, 0, 0, null, null);
+                        break;
+                    case CreateCompleted:
+                        int createId = (int) readVarint();
+                        boolean succeeded = buffer.get() != 0;
+                        event = new Event(type, offset, createId, succeeded, 0, 0, null, readString());
+                        break;
+                    default:
+                        event = new Event(type, offset, 0, false, 0, 0, null, null);
+                        break;
+                }
+                offsetNanos = offset;
+                return event;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                return end(start);
+            }
+        }
+
+        List<Event> readAll() {
+            List<Event> events = new ArrayList<>();
+            Event event;
+            while ((event = next()) != null) {
+                events.add(event);
+            }
+            return events;
+        }
+
+        private Event end(int position) {
+            buffer.position(position);
+            buffer.limit(position);
+            return null;
+        }
+
+        private long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint.");
+        }
+
+        private String readString() {
+            long length = readVarint();
+            if (length == 0) {
+                return null;
+            }
+            if (length - 1 > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            byte[] bytes = new byte[(int) (length - 1)];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+// Immutable copy of a session status, taken when the backend reports an update.
+class SessionStatusSnapshot {
+    private final float readyForCreateProgress;
+    private final float recommendedForCreateProgress;
+    private final String userFeedback;
+
+    SessionStatusSnapshot(float readyForCreateProgress, float recommendedForCreateProgress, String userFeedback) {
+        this.readyForCreateProgress = readyForCreateProgress;
+        this.recommendedForCreateProgress = recommendedForCreateProgress;
+        this.userFeedback = userFeedback;
+    }
+
+    float getReadyForCreateProgress() {
+        return readyForCreateProgress;
+    }
+
+    float getRecommendedForCreateProgress() {
+        return recommendedForCreateProgress;
+    }
+
+    String getUserFeedback() {
+        return userFeedback;
+    }
+}
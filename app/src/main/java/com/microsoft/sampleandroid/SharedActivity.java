@@ -2,50 +2,190 @@
 // Licensed under the MIT license.
 package com.microsoft.sampleandroid;
 
+import android.Manifest;
 import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.Network;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.TextView;
 
+import com.google.ar.core.Anchor;
+import com.google.ar.core.Frame;
 import com.google.ar.core.HitResult;
 import com.google.ar.core.Plane;
+import com.google.ar.core.Pose;
+import com.google.ar.core.Session;
 import com.google.ar.sceneform.ArSceneView;
 import com.google.ar.sceneform.Scene;
+import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.ux.ArFragment;
-import com.microsoft.azure.spatialanchors.AnchorLocateCriteria;
-import com.microsoft.azure.spatialanchors.AnchorLocatedEvent;
 import com.microsoft.azure.spatialanchors.CloudSpatialAnchor;
 import com.microsoft.azure.spatialanchors.CloudSpatialException;
-import com.microsoft.azure.spatialanchors.LocateAnchorsCompletedEvent;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.text.DecimalFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class SharedActivity extends AppCompatActivity {
 
-    enum DemoStep {
-        DemoStepChoosing, // Choosing to create or locate
-        DemoStepCreating, // Creating an anchor
-        DemoStepSaving,   // Saving an anchor to the cloud
-        DemoStepEnteringAnchorNumber, // Picking an anchor to find
-        DemoStepLocating  // Looking for an anchor
-    }
+    private static final String TAG = "ASADemo";
+
+    // Local anchor store: anchors this device created or located, used to widen locate criteria.
+    private static final String ANCHOR_STORE_FILE = "anchors.log";
+    private static final int ANCHOR_STORE_MAX_RECORDS = 10_000;
+    private static final float ANCHOR_STORE_CELL_SIZE_METERS = 2f;
+    private static final float NEIGHBOR_RADIUS_METERS = 5f;
+    private static final int MAX_NEIGHBOR_CANDIDATES = 4;
+
+    // Anchors further than this from the camera are detached from the scene.
+    private static final float VISIBILITY_RADIUS_METERS = 10f;
+    private static final float VISIBILITY_HYSTERESIS_METERS = 2f;
+    private static final float VISIBILITY_CELL_SIZE_METERS = 4f;
+    private static final float VISIBILITY_UPDATE_DISTANCE_METERS = 0.25f;
+    // Anchor poses re-read per frame as tracking refines them.
+    private static final int POSE_REFRESHES_PER_FRAME = 16;
+
+    // Nearby discovery: stored anchors whose sensor fingerprint matches the current one are
+    // located first, then the service is asked for any anchor near the device.
+    private static final String FINGERPRINT_PROPERTY = "fingerprint";
+    private static final float FINGERPRINT_GEO_CELL_METERS = 50f;
+    private static final int MAX_FINGERPRINT_CANDIDATES = 8;
+    private static final float MIN_FINGERPRINT_SCORE = 0.2f;
+    private static final float NEAR_DEVICE_DISTANCE_METERS = 5f;
+    private static final int NEAR_DEVICE_MAX_RESULTS = 25;
+    private static final long SENSOR_STATUS_INTERVAL_NANOS = 1_000_000_000L;
+    private static final int LOCATION_PERMISSION_REQUEST = 1;
+    // Debug builds record what the sensors saw, for replay with TraceSensorProvider.
+    private static final String SENSOR_TRACE_FILE = "sensors.trace";
+    // ...and what the spatial anchor session told the app, for replay with ReplaySpatialAnchorBackend.
+    private static final String SESSION_RECORDING_FILE = "session.rec";
+
+    // Prefetch: anchors usually located together with one just located are added to the search
+    // before they are asked for. Past sessions are kept to rebuild the graph on start.
+    private static final String LOCATE_SESSION_LOG_FILE = "locate_sessions.log";
+    private static final int LOCATE_SESSION_LOG_MAX_SESSIONS = 500;
+    private static final int CO_LOCATE_MAX_ANCHORS = 5_000;
+    private static final int PREFETCH_FANOUT = 3;
+    private static final int PREFETCH_MAX_OUTSTANDING = 8;
+    private static final float PREFETCH_MIN_SCORE = 0.3f;
+    private static final long PREFETCH_TTL_NANOS = 20_000_000_000L;
+    private static final long PREFETCH_EXPIRY_INTERVAL_NANOS = 1_000_000_000L;
+
+    // Anchors are shared by short code; the codes of known anchors are kept with their records.
+    private static final String SHORT_CODE_PROPERTY = "shortCode";
+
+    // Offline-first saves: every upload is journaled first and retried until the service takes
+    // it. The journal is fsynced once per batch of uploads enqueued close together.
+    private static final String UPLOAD_JOURNAL_FILE = "uploads.journal";
+    private static final long UPLOAD_SYNC_INTERVAL_MS = 50;
+    private static final int UPLOAD_MAX_SYNC_BATCH = 32;
+    private static final int UPLOAD_MAX_CONCURRENT_SAVES = 4;
+    private static final long UPLOAD_RETRY_BASE_DELAY_MS = 1_000;
+    private static final long UPLOAD_RETRY_MAX_DELAY_MS = 60_000;
+
+    // Metrics snapshot written on every pause.
+    private static final String METRICS_FILE = "metrics.json";
 
     private String anchorId = "";
     private final ConcurrentHashMap<String, AnchorVisual> anchorVisuals = new ConcurrentHashMap<>();
-    private AzureSpatialAnchorsManager cloudAnchorManager;
-    private DemoStep currentStep = DemoStep.DemoStepChoosing;
+    // Every visual by world position; UI thread only.
+    private final VisibilityManager<AnchorVisual> anchorVisibility = new VisibilityManager<>(
+            VISIBILITY_CELL_SIZE_METERS,
+            VISIBILITY_RADIUS_METERS,
+            VISIBILITY_RADIUS_METERS + VISIBILITY_HYSTERESIS_METERS,
+            VISIBILITY_UPDATE_DISTANCE_METERS,
+            new VisibilityManager.Listener<AnchorVisual>() {
+                @Override
+                public void onShow(AnchorVisual visual) {
+                    visual.setCulled(false);
+                }
+
+                @Override
+                public void onHide(AnchorVisual visual) {
+                    visual.setCulled(true);
+                }
+            });
+    // Gauges that read this activity's state; unregistered in onDestroy so the process-wide
+    // registry does not keep the activity alive. UI thread only.
+    private final Map<String, MetricsRegistry.Gauge> activityGauges = new HashMap<>();
+    // anchorVisibility counts as of the last onPause, for the metrics export.
+    private volatile long trackedAnchors;
+    private volatile long visibleAnchors;
+    // One cloud session for the activity's lifetime, switched between creating and locating.
+    private SpatialAnchorSessionManager<CloudSpatialAnchor, Frame> sessionManager;
+    private final FrameScheduler frameScheduler = new FrameScheduler(System::nanoTime);
+    private volatile AnchorStore anchorStore;
+    // Abre, escribe y cierra el almacén de anchors, en orden y fuera del hilo de la UI
+    private final ExecutorService storageExecutor =
+            Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "anchor-store"));
+    private volatile IncrementalLocator<CloudSpatialAnchor, Frame> anchorLocator;
+    private SensorProvider sensorProvider;
+    private Writer sensorTraceWriter;
+    private SessionRecording.Writer sessionRecorder;
+    // Traza del arranque, compartida con la aplicación
+    private StartupOrchestrator startup;
+    private boolean firstFrameSeen;
+    private final FingerprintIndex fingerprintIndex = new FingerprintIndex(FINGERPRINT_GEO_CELL_METERS);
+    private final ShortCodeIndex shortCodes = new ShortCodeIndex(ANCHOR_STORE_MAX_RECORDS);
+    private volatile boolean discoveringNearby;
+    // Ranked candidates of the running nearby discovery not reported yet.
+    private final Set<String> nearbyCandidates = ConcurrentHashMap.newKeySet();
+    private long lastSensorStatusNanos;
+    private final CoLocateGraph coLocateGraph = new CoLocateGraph(CO_LOCATE_MAX_ANCHORS);
+    private final AnchorPrefetcher prefetcher = new AnchorPrefetcher(coLocateGraph, System::nanoTime, AppMetrics.registry,
+            PREFETCH_FANOUT, PREFETCH_MAX_OUTSTANDING, PREFETCH_MIN_SCORE, PREFETCH_TTL_NANOS);
+    private LocateSessionLog locateSessionLog;
+    private long lastPrefetchExpiryNanos;
+    private CompletableFuture<DurableUploadQueue<CloudSpatialAnchor>> uploadQueue;
+    // Los fsync del diario y los reintentos de la cola, fuera del hilo que sondea el SDK
+    private final ScheduledExecutorService uploadExecutor =
+            Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "upload-journal"));
+    // Visuals of anchors being saved, by upload; they keep the session fed with frames.
+    private final ConcurrentHashMap<Long, AnchorVisual> uploadingVisuals = new ConcurrentHashMap<>();
+    // Cada anchor que se coloca y cada búsqueda tiene su propio flujo; los listeners del SDK y
+    // la UI compiten por terminarlos y solo una transición gana
+    private final WorkflowEngine<AnchorVisual> placements = new WorkflowEngine<>(System::nanoTime, AppMetrics.registry);
+    private final WorkflowEngine<String> lookups = new WorkflowEngine<>(System::nanoTime, AppMetrics.registry);
+    // El anchor que se está colocando o guardando ahora; los guardados aplazados sin conexión
+    // siguen su flujo por su cuenta
+    private volatile WorkflowEngine.Workflow<AnchorVisual> placement;
+    private volatile WorkflowEngine.Workflow<String> lookup;
+    private ConnectivityManager.NetworkCallback networkCallback;
+    private volatile DemoStep currentStep = DemoStep.DemoStepChoosing;
     private static final DecimalFormat decimalFormat = new DecimalFormat("00");
-    private String feedbackText;
+    private volatile String feedbackText;
+    private volatile long createStartNanos;
+    // Status line shown while creating, saving or locating; delivered to the UI only on change.
+    private final StatusPublisher<String> statusPublisher = new StatusPublisher<>(MainThreadContext.getDispatcher());
 
     // Materials
     private static final int FAILED_COLOR = android.graphics.Color.RED;
     private static final int SAVED_COLOR = android.graphics.Color.GREEN;
     private static final int READY_COLOR = android.graphics.Color.YELLOW;
+    // Guardado pendiente de que vuelva la conexión
+    private static final int PENDING_COLOR = android.graphics.Color.rgb(255, 152, 0);
     private static final int FOUND_COLOR = android.graphics.Color.YELLOW;
 
     // UI Elements
@@ -55,40 +195,21 @@ public class SharedActivity extends AppCompatActivity {
     private TextView editTextInfo;
     private Button locateButton;
     private ArSceneView sceneView;
+    private SensorStatusView sensorStatusView;
     private TextView textView;
 
     public void createButtonClicked(View source) {
         textView.setText(R.string.escanea);
-        destroySession();
-
-        // creamos el manager (contiene las credenciales de acceso)
-        cloudAnchorManager = new AzureSpatialAnchorsManager(sceneView.getSession());
-
-        // Session creada?
-        cloudAnchorManager.addSessionUpdatedListener(args -> {
-            if (currentStep == DemoStep.DemoStepCreating) {
-                //Obtenemos progreso de referencia
-                float progress = args.getStatus().getRecommendedForCreateProgress();
-                if (progress >= 1.0) {
-                    // Obtenemos anchor visual (trae el anchor creado con el hit, y trae también la parte visual)
-                    AnchorVisual visual = anchorVisuals.get("");
-                    if (visual != null) {
-                        //Si tenemos el anchor (lo hemos situado) y ya hemos alcanzado el progreso de escaneo, almacenamos los datos
-                        transitionToSaving(visual);
-                    } else {
-                        // Si no tenemos anchor visual es el caso en el que pulsamos 'crear', pero no hemos pulsado la pantalla
-                        feedbackText = "Toca en una parte habilitada para colocar el anchor";
-                    }
-                } else {
-                    // No hemos llegado al progreso mínimo para iniciar la subida
-                    feedbackText = "El progreso es" + decimalFormat.format(progress * 100) + "%";
-                }
-            }
-        });
+        // Los anchors se guardan junto con lo que ven los sensores, para encontrarlos sin id
+        requestLocationPermission();
+        resetSession();
 
-        // Se inicia y cambiamos el estado a "creando"
-        cloudAnchorManager.start();
+        // La sesión ya existe (o se crea la primera vez): solo cambiamos al modo "crear"
+        sessionManager.enter(SpatialAnchorSessionManager.Mode.Creating);
+        createStartNanos = System.nanoTime();
+        feedbackText = null;
         currentStep = DemoStep.DemoStepCreating;
+        publishStatus();
         // También actualizamos los TV de la interfaz
         enableCorrectUIControls();
     }
@@ -97,16 +218,31 @@ public class SharedActivity extends AppCompatActivity {
         if (currentStep == DemoStep.DemoStepChoosing) {
             // Actualizamos estado y TVs
             currentStep = DemoStep.DemoStepEnteringAnchorNumber;
+            publishStatus();
             textView.setText(R.string.introduce);
             enableCorrectUIControls();
+            requestLocationPermission();
         } else {
-            String inputVal = anchorNumInput.getText().toString();
-            if (!inputVal.isEmpty()) {
+            String inputVal = anchorNumInput.getText().toString().trim();
+            // Se puede introducir el código corto o el id completo
+            String identifier = inputVal;
+            if (ShortCodeIndex.parse(inputVal) != ShortCodeIndex.NO_CODE) {
+                identifier = shortCodes.resolve(inputVal);
+                if (identifier == null) {
+                    // Solo conocemos los códigos de los anchors que han pasado por este dispositivo
+                    textView.setText(getString(R.string.codigo_desconocido, inputVal));
+                    return;
+                }
+            }
+            //Actualizamos estado y TVs
+            currentStep = DemoStep.DemoStepLocating;
+            enableCorrectUIControls();
+            if (!identifier.isEmpty()) {
                 // Tenemos el id introducido y se ha pulsado 'locate'
-                anchorLookedUp(inputVal);
-                //Actualizamos estado y TVs
-                currentStep = DemoStep.DemoStepLocating;
-                enableCorrectUIControls();
+                anchorLookedUp(identifier);
+            } else {
+                // Sin id: buscamos los anchors que haya cerca
+                discoverNearby();
             }
         }
     }
@@ -114,12 +250,15 @@ public class SharedActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        startup = ((SampleApplication) getApplication()).getStartup();
+        StartupOrchestrator.Phase creating = startup.begin("activity.onCreate");
         setContentView(R.layout.activity_shared);
 
         arFragment = (ArFragment) getSupportFragmentManager().findFragmentById(R.id.ar_fragment);
         arFragment.setOnTapArPlaneListener(this::onTapArPlaneListener);
 
         sceneView = arFragment.getArSceneView();
+        RenderableAssets.applyPlaneTexture(this, sceneView);
 
         textView = findViewById(R.id.textView);
         textView.setVisibility(View.VISIBLE);
@@ -127,21 +266,231 @@ public class SharedActivity extends AppCompatActivity {
         createButton = findViewById(R.id.createButton);
         anchorNumInput = findViewById(R.id.anchorNumText);
         editTextInfo = findViewById(R.id.editTextInfo);
+        sensorStatusView = findViewById(R.id.sensorStatus);
         enableCorrectUIControls();
 
+        // Crear y localizar necesitan CloudServices, que se inicializa en segundo plano al
+        // arrancar la aplicación; hasta que termine, los botones quedan desactivados
+        createButton.setEnabled(false);
+        locateButton.setEnabled(false);
+        startup.require(SampleApplication.CLOUD_SERVICES).whenComplete((ignored, error) -> runOnUiThread(() -> {
+            if (error != null) {
+                Log.e(TAG, "CloudServices could not be initialized", error);
+                return;
+            }
+            createButton.setEnabled(true);
+            locateButton.setEnabled(true);
+        }));
+
+        if (BuildConfig.DEBUG) {
+            try {
+                sessionRecorder = new SessionRecording.Writer(
+                        new FileOutputStream(new File(getFilesDir(), SESSION_RECORDING_FILE)), System::nanoTime);
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to record the spatial anchor session", e);
+            }
+        }
+        SessionRecording.Writer recorder = sessionRecorder;
+
+        // Un solo manager (contiene las credenciales de acceso) para toda la actividad; se crea
+        // al primer uso, cuando ARCore ya tiene sesión
+        sessionManager = new SpatialAnchorSessionManager<>(
+                executor -> {
+                    // Los botones solo se activan con CloudServices ya inicializado (en segundo
+                    // plano, al arrancar), así que aquí no se espera nunca en el hilo de la interfaz
+                    CompletableFuture<?> cloudServices = startup.require(SampleApplication.CLOUD_SERVICES);
+                    if (!cloudServices.isDone()) {
+                        throw new IllegalStateException("CloudServices is still being initialized.");
+                    }
+                    cloudServices.join();
+                    SpatialAnchorBackend<CloudSpatialAnchor, Frame> backend =
+                            new AzureSpatialAnchorsManager(sceneView.getSession(), executor);
+                    // En depuración grabamos lo que dice la sesión, para reproducirlo fuera del dispositivo
+                    return recorder != null ? new RecordingSpatialAnchorBackend<>(backend, recorder) : backend;
+                },
+                runnable -> new Thread(runnable, "spatial-anchors"),
+                System::nanoTime,
+                AppMetrics.registry);
+
+        // Progreso del escaneo al crear
+        sessionManager.addListener(new SpatialAnchorBackend.Listener<CloudSpatialAnchor>() {
+            @Override
+            public void onSessionUpdated(SessionStatusSnapshot status) {
+                frameScheduler.onCreateProgress(status.getRecommendedForCreateProgress());
+                if (currentStep == DemoStep.DemoStepCreating) {
+                    //Obtenemos progreso de referencia
+                    float progress = status.getRecommendedForCreateProgress();
+                    if (progress >= 1.0) {
+                        long startNanos = createStartNanos;
+                        if (startNanos != 0) {
+                            AppMetrics.createScan.record(System.nanoTime() - startNanos);
+                            createStartNanos = 0;
+                        }
+                        // Obtenemos el flujo del anchor colocado (trae el anchor creado con el hit, y trae también la parte visual)
+                        WorkflowEngine.Workflow<AnchorVisual> current = placement;
+                        if (current != null) {
+                            //Si tenemos el anchor (lo hemos situado) y ya hemos alcanzado el progreso de escaneo, almacenamos los datos.
+                            // El progreso llega varias veces: solo el primer aviso inicia el guardado
+                            if (current.transition(WorkflowEngine.State.Creating, WorkflowEngine.State.Saving)) {
+                                transitionToSaving(current);
+                            }
+                        } else {
+                            // Si no tenemos anchor visual es el caso en el que pulsamos 'crear', pero no hemos pulsado la pantalla
+                            feedbackText = "Toca en una parte habilitada para colocar el anchor";
+                        }
+                    } else {
+                        // No hemos llegado al progreso mínimo para iniciar la subida
+                        feedbackText = "El progreso es" + decimalFormat.format(progress * 100) + "%";
+                    }
+                    publishStatus();
+                }
+            }
+        });
+
+        openUploadQueue();
+
+        sensorProvider = new AndroidSensorProvider(this);
+        if (BuildConfig.DEBUG) {
+            try {
+                sensorTraceWriter = new BufferedWriter(new FileWriter(new File(getFilesDir(), SENSOR_TRACE_FILE), true));
+                sensorProvider = new RecordingSensorProvider(sensorProvider, sensorTraceWriter);
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to record sensor traces", e);
+            }
+        }
+
         Scene scene = sceneView.getScene();
         scene.addOnUpdateListener(frameTime -> {
-            if (cloudAnchorManager != null) {
+            if (!firstFrameSeen) {
+                firstFrameSeen = true;
+                startup.mark(SampleApplication.FIRST_FRAME);
+                if (BuildConfig.DEBUG) {
+                    Log.i(TAG, "Startup trace:\n" + startup.formatTrace());
+                }
+            }
+            SpatialAnchorBackend<CloudSpatialAnchor, Frame> backend = sessionManager.getRunningBackend();
+            IncrementalLocator<CloudSpatialAnchor, Frame> locator = anchorLocator;
+            FrameScheduler.Mode mode = FrameScheduler.Mode.Idle;
+            if (backend != null) {
+                mode = locator != null && locator.isLocating()
+                        ? FrameScheduler.Mode.Locating
+                        : currentStep.frameMode();
+                if (mode == FrameScheduler.Mode.Idle && !uploadingVisuals.isEmpty()) {
+                    // Los guardados pendientes necesitan que la sesión siga recibiendo frames
+                    mode = FrameScheduler.Mode.Creating;
+                }
+            }
+            frameScheduler.setMode(mode);
+            if (frameScheduler.tryBeginFrame()) {
                 // Pass frames to Spatial Anchors for processing.
-                cloudAnchorManager.update(sceneView.getArFrame());
+                backend.processFrame(sceneView.getArFrame());
+                frameScheduler.endFrame();
+                AppMetrics.frameProcess.record(frameScheduler.getLastCostNanos());
+            }
+
+            Vector3 cameraPosition = scene.getCamera().getWorldPosition();
+            anchorVisibility.refreshPositions(POSE_REFRESHES_PER_FRAME, AnchorVisual::readWorldPosition);
+            anchorVisibility.update(cameraPosition.x, cameraPosition.y, cameraPosition.z);
+            for (AnchorVisual visual : anchorVisibility.getVisible()) {
+                visual.updateLod(this, cameraPosition);
+            }
+
+            long now = System.nanoTime();
+            if (sensorStatusView.getVisibility() == View.VISIBLE && now - lastSensorStatusNanos >= SENSOR_STATUS_INTERVAL_NANOS) {
+                lastSensorStatusNanos = now;
+                sensorStatusView.update(sensorProvider);
+            }
+            if (locator != null && now - lastPrefetchExpiryNanos >= PREFETCH_EXPIRY_INTERVAL_NANOS) {
+                lastPrefetchExpiryNanos = now;
+                List<String> expired = prefetcher.expire();
+                if (!expired.isEmpty()) {
+                    locator.cancel(expired.toArray(new String[0]));
+                }
+            }
+        });
+
+        registerGauges();
+
+        File anchorStoreFile = new File(getFilesDir(), ANCHOR_STORE_FILE);
+        storageExecutor.execute(() -> {
+            try {
+                AnchorStore store = AnchorStore.open(anchorStoreFile, ANCHOR_STORE_MAX_RECORDS, ANCHOR_STORE_CELL_SIZE_METERS);
+                indexFingerprints(store);
+                indexShortCodes(store);
+                anchorStore = store;
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to open the anchor store", e);
             }
         });
+
+        locateSessionLog = new LocateSessionLog(new File(getFilesDir(), LOCATE_SESSION_LOG_FILE), LOCATE_SESSION_LOG_MAX_SESSIONS);
+        LocateSessionLog sessionLog = locateSessionLog;
+        CompletableFuture.runAsync(() -> {
+            try {
+                synchronized (sessionLog) {
+                    for (String[] session : sessionLog.load()) {
+                        coLocateGraph.recordSession(session);
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to load past locate sessions", e);
+            }
+        });
+        creating.close();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        destroySession();
+        for (Map.Entry<String, MetricsRegistry.Gauge> gauge : activityGauges.entrySet()) {
+            AppMetrics.registry.removeGauge(gauge.getKey(), gauge.getValue());
+        }
+        activityGauges.clear();
+        resetSession();
+        placements.cancelAll(WorkflowEngine.Kind.Create);
+
+        getSystemService(ConnectivityManager.class).unregisterNetworkCallback(networkCallback);
+        uploadQueue.whenComplete((queue, error) -> {
+            try {
+                if (queue != null) {
+                    queue.close();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to close the upload journal", e);
+            } finally {
+                uploadExecutor.shutdown();
+            }
+        });
+        sessionManager.close();
+
+        // Después de las escrituras pendientes
+        storageExecutor.execute(() -> {
+            AnchorStore store = anchorStore;
+            if (store != null) {
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Unable to close the anchor store", e);
+                }
+            }
+        });
+        storageExecutor.shutdown();
+
+        if (sensorTraceWriter != null) {
+            try {
+                sensorTraceWriter.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to close the sensor trace", e);
+            }
+        }
+
+        if (sessionRecorder != null) {
+            try {
+                sessionRecorder.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to close the session recording", e);
+            }
+        }
     }
 
     @Override
@@ -156,77 +505,256 @@ public class SharedActivity extends AppCompatActivity {
         }
 
         if (sceneView != null && sceneView.getSession() == null) {
-            if (!SceneformHelper.trySetupSessionForSceneView(this, sceneView)) {
+            if (!attachSession()) {
 
                 finish();
                 return;
             }
         }
+        // Con la sesión en marcha cargamos ya el modelo, para que el primer anchor localizado no espere
+        RenderableAssets.preload(this);
 
-        updateStatic();
+        statusPublisher.resume(status -> textView.setText(status));
+        sensorProvider.start();
+    }
+
+    // La sesión de ARCore se construye en segundo plano al arrancar la aplicación; aquí solo se
+    // espera lo que le falte. Si no está o no se pudo preparar, se construye aquí como antes
+    private boolean attachSession() {
+        CompletableFuture<Session> prepared = ((SampleApplication) getApplication()).takePreparedSession();
+        if (prepared != null) {
+            StartupOrchestrator.Phase attaching = startup.begin("ar_session.attach");
+            try {
+                sceneView.setupSession(prepared.join());
+                return true;
+            } catch (CompletionException e) {
+                Log.w(TAG, "The ARCore session could not be prepared in the background", e);
+            } finally {
+                attaching.close();
+            }
+        }
+        return SceneformHelper.trySetupSessionForSceneView(this, sceneView);
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode == LOCATION_PERMISSION_REQUEST
+                && grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+            // Los sensores se arrancaron sin permiso; los reiniciamos para que empiecen a leer
+            sensorProvider.stop();
+            sensorProvider.start();
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        statusPublisher.pause();
+        sensorProvider.stop();
+
+        trackedAnchors = anchorVisibility.size();
+        visibleAnchors = anchorVisibility.getVisible().size();
+        File metricsFile = new File(getFilesDir(), METRICS_FILE);
+        CompletableFuture.runAsync(() -> {
+            try {
+                AppMetrics.registry.writeJson(metricsFile, System.currentTimeMillis());
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to write metrics", e);
+            }
+        });
     }
 
     private void anchorLookedUp(String anchorId) {
 
         // Se ha introducido un anchor id en el editText
         this.anchorId = anchorId;
-        destroySession();
-
-        cloudAnchorManager = new AzureSpatialAnchorsManager(sceneView.getSession());
-        cloudAnchorManager.addAnchorLocatedListener((AnchorLocatedEvent event) ->
-                runOnUiThread(() -> {
-                    // El manager nos devuelve un anchor con un estado
-                    CloudSpatialAnchor anchor = event.getAnchor();
-                    switch (event.getStatus()) {
-                        case AlreadyTracked:
-                        case Located:
-                            // El estado corresponde a que se ha localizado el anchor con ese id :)
-                            // Se obtiene el anchor, y se pinta en su posición (realmente anchor es la posicion)
-                            // Deberíamos decir, se obtiene el anchor y se pinta un modelo 3D en ese anchor
-                            AnchorVisual foundVisual = new AnchorVisual(arFragment, anchor.getLocalAnchor());
-                            foundVisual.setCloudAnchor(anchor);
-                            foundVisual.getAnchorNode().setParent(arFragment.getArSceneView().getScene());
-                            String cloudAnchorIdentifier = foundVisual.getCloudAnchor().getIdentifier();
-                            foundVisual.setColor(this, FOUND_COLOR);
-                            foundVisual.render(arFragment);
-                            anchorVisuals.put(cloudAnchorIdentifier, foundVisual);
-                            break;
-                        case NotLocatedAnchorDoesNotExist:
-                            break;
-                    }
-                }));
-
-        cloudAnchorManager.addLocateAnchorsCompletedListener((LocateAnchorsCompletedEvent event) -> {
-            // Listener que indica que hemos finalizado la localización
-            // Actualizamos el estado y los TVs
-            currentStep = DemoStep.DemoStepChoosing;
-            runOnUiThread(() -> {
-                textView.setText(R.string.encontrado);
-                enableCorrectUIControls();
-            });
-        });
-
-        cloudAnchorManager.start();
+        discoveringNearby = false;
+        startLookup(anchorId);
+        publishStatus();
+        IncrementalLocator<CloudSpatialAnchor, Frame> locator = ensureLocator();
+        prefetcher.onRequested(anchorId);
 
         // Establecemos el criterio de localización, definimos que sea por ID
-        AnchorLocateCriteria criteria = new AnchorLocateCriteria();
-        criteria.setIdentifiers(new String[]{anchorId});
+        // Junto al id buscado, añadimos los anchors guardados que estaban cerca de él
+        AnchorStore store = anchorStore;
+        String[] identifiers = store != null
+                ? store.locateCandidates(anchorId, NEIGHBOR_RADIUS_METERS, MAX_NEIGHBOR_CANDIDATES)
+                : new String[]{anchorId};
         // Mantenemos el objecto situado, aunque nos movamos, porque tenemos un watcher activo
-        cloudAnchorManager.startLocating(criteria);
+        locator.locate(identifiers);
+        if (anchorVisuals.containsKey(anchorId)) {
+            // Ya estaba localizado en esta sesión
+            anchorFound();
+        }
+    }
+
+    private void discoverNearby() {
+        anchorId = "";
+        discoveringNearby = true;
+        startLookup("");
+        publishStatus();
+        IncrementalLocator<CloudSpatialAnchor, Frame> locator = ensureLocator();
+
+        // Primero, los anchors guardados cuya huella de sensores se parece a la actual
+        List<FingerprintIndex.Match> matches = fingerprintIndex.rank(sensorProvider.read(),
+                MAX_FINGERPRINT_CANDIDATES, MIN_FINGERPRINT_SCORE);
+        nearbyCandidates.clear();
+        for (FingerprintIndex.Match match : matches) {
+            if (anchorVisuals.containsKey(match.identifier)) {
+                // Ya estaba localizado en esta sesión
+                nearbyCandidates.clear();
+                anchorFound();
+                return;
+            }
+            nearbyCandidates.add(match.identifier);
+        }
+
+        if (nearbyCandidates.isEmpty()) {
+            locateNearDevice();
+        } else {
+            locator.locate(nearbyCandidates.toArray(new String[0]));
+        }
+    }
+
+    // Ninguna huella guardada sirvió: preguntamos al servicio por los anchors cerca del dispositivo
+    private void locateNearDevice() {
+        IncrementalLocator<CloudSpatialAnchor, Frame> locator = anchorLocator;
+        if (!discoveringNearby || locator == null) {
+            return;
+        }
+        if (!locator.locateNearDevice(NEAR_DEVICE_DISTANCE_METERS, NEAR_DEVICE_MAX_RESULTS)) {
+            // Aún se buscan otros ids (vecinos de una búsqueda anterior) y la sesión solo
+            // admite un watcher
+            Log.i(TAG, "Near-device search skipped while identifiers are pending");
+            nearbySearchFinished();
+        }
+    }
+
+    private void nearbySearchFinished() {
+        WorkflowEngine.Workflow<String> current = lookup;
+        if (!discoveringNearby || currentStep != DemoStep.DemoStepLocating
+                || current == null || !current.advance(WorkflowEngine.State.Failed)) {
+            return;
+        }
+        discoveringNearby = false;
+        currentStep = DemoStep.DemoStepChoosing;
+        publishStatus();
+        textView.setText(R.string.sin_cercanos);
+        enableCorrectUIControls();
+    }
+
+    // Primera búsqueda: pasamos la sesión al modo "localizar". Las siguientes reutilizan el
+    // mismo localizador, y los anchors ya localizados siguen en pantalla.
+    private IncrementalLocator<CloudSpatialAnchor, Frame> ensureLocator() {
+        if (anchorLocator != null) {
+            return anchorLocator;
+        }
+        resetSession();
+
+        anchorLocator = new IncrementalLocator<>(sessionManager.enter(SpatialAnchorSessionManager.Mode.Locating), System::nanoTime,
+                new IncrementalLocator.Listener<CloudSpatialAnchor>() {
+                    @Override
+                    public void onLocated(String identifier, CloudSpatialAnchor anchor, long timeToLocateNanos) {
+                        AppMetrics.locateFirst.record(timeToLocateNanos);
+                        nearbyCandidates.remove(identifier);
+                        List<String> likelyNext = prefetcher.onLocated(identifier);
+                        runOnUiThread(() -> {
+                            anchorLocated(identifier, anchor);
+                            prefetch(likelyNext);
+                        });
+                    }
+
+                    @Override
+                    public void onNotFound(String identifier) {
+                        prefetcher.onNotFound(identifier);
+                        if (identifier.equals(SharedActivity.this.anchorId)) {
+                            runOnUiThread(() -> finishLookup(WorkflowEngine.State.Failed));
+                        } else if (nearbyCandidates.remove(identifier) && nearbyCandidates.isEmpty()) {
+                            runOnUiThread(() -> locateNearDevice());
+                        }
+                    }
+
+                    @Override
+                    public void onNearDeviceSearchCompleted() {
+                        runOnUiThread(() -> nearbySearchFinished());
+                    }
+                });
+        return anchorLocator;
+    }
+
+    // Añadimos a la búsqueda los anchors que suelen localizarse junto al recién localizado
+    private void prefetch(List<String> identifiers) {
+        IncrementalLocator<CloudSpatialAnchor, Frame> locator = anchorLocator;
+        if (identifiers.isEmpty() || locator == null) {
+            return;
+        }
+        if (locator.isLocatingNearDevice()) {
+            // Cambiar el criterio terminaría la búsqueda cerca del dispositivo
+            for (String identifier : identifiers) {
+                prefetcher.onNotFound(identifier);
+            }
+            return;
+        }
+        locator.locate(identifiers.toArray(new String[0]));
+    }
+
+    private void anchorLocated(String identifier, CloudSpatialAnchor anchor) {
+        // Se ha localizado el anchor con ese id :)
+        // Se obtiene el anchor, y se pinta en su posición (realmente anchor es la posicion)
+        // Se pinta el modelo 3D en ese anchor, con el nivel de detalle según la distancia
+        AnchorVisual foundVisual = new AnchorVisual(arFragment, anchor.getLocalAnchor());
+        foundVisual.setCloudAnchor(anchor);
+        foundVisual.setShape(AnchorVisual.Shape.Model);
+        foundVisual.getAnchorNode().setParent(arFragment.getArSceneView().getScene());
+        foundVisual.render(arFragment);
+        anchorVisuals.put(identifier, foundVisual);
+        trackVisibility(foundVisual);
+        rememberAnchor(identifier, foundVisual, FOUND_COLOR);
+        if (identifier.equals(anchorId) || discoveringNearby) {
+            // Los vecinos añadidos al criterio se siguen buscando en segundo plano
+            anchorFound();
+        }
+    }
+
+    // Cada búsqueda es un flujo nuevo; la anterior, si seguía abierta, se cancela
+    private void startLookup(String identifier) {
+        WorkflowEngine.Workflow<String> previous = lookup;
+        if (previous != null) {
+            previous.cancel();
+        }
+        lookup = lookups.start(WorkflowEngine.Kind.Locate, identifier);
+    }
+
+    private void anchorFound() {
+        finishLookup(WorkflowEngine.State.Succeeded);
+    }
 
+    private void finishLookup(WorkflowEngine.State outcome) {
+        WorkflowEngine.Workflow<String> current = lookup;
+        // Localizado y "no encontrado" pueden llegar a la vez: solo el primero termina la búsqueda
+        if (currentStep != DemoStep.DemoStepLocating || current == null || !current.advance(outcome)) {
+            return;
+        }
+        // Actualizamos el estado y los TVs
+        discoveringNearby = false;
+        currentStep = DemoStep.DemoStepChoosing;
+        publishStatus();
+        textView.setText(R.string.encontrado);
+        enableCorrectUIControls();
     }
 
     // Callback llamado cuando se finaliza el envío del anchor id al servicio web
     private void anchorPosted(String anchorId) {
-        // Mostramos el número por el cual podemos buscar el id
-        // (es más simple buscar por el número asociado que si lo tuviésemos que hacer por el id)
-        textView.setText(getString(R.string.anchorid, anchorId));
+        // Mostramos el código corto por el cual podemos buscar el id
+        // (es más simple teclear el código que el id completo)
+        textView.setText(getString(R.string.anchorid, shortCodeOf(anchorId)));
 
         // Hacemos un 'reset'.
         // Reseteamos estado, sesion, limpiamos anchors en pantalla y TVs
         currentStep = DemoStep.DemoStepChoosing;
-        cloudAnchorManager.stop();
-        cloudAnchorManager = null;
+        publishStatus();
+        sessionManager.enter(SpatialAnchorSessionManager.Mode.Idle);
         clearVisuals();
         enableCorrectUIControls();
     }
@@ -239,85 +767,262 @@ public class SharedActivity extends AppCompatActivity {
         visual.setColor(this, READY_COLOR);
         // Se muestra
         visual.render(arFragment);
-        // anchorsVisual es un hashmap (mapa clave valor) seguro para subprocesos
-        // se establece una key (vacia en este caso) y el objeto AnchorVisual
-        anchorVisuals.put("", visual);
+        // El anchor colocado empieza su propio flujo: creando -> guardando -> guardado o fallido
+        placement = placements.start(WorkflowEngine.Kind.Create, visual);
+        trackVisibility(visual);
+    }
+
+    private void trackVisibility(AnchorVisual visual) {
+        float[] position = new float[3];
+        if (visual.readWorldPosition(position)) {
+            anchorVisibility.put(visual, position[0], position[1], position[2]);
+        }
     }
 
     private void clearVisuals() {
+        // Un anchor colocado y sin guardar se descarta; si ya se está guardando, sigue en pantalla
+        WorkflowEngine.Workflow<AnchorVisual> current = placement;
+        if (current != null && current.getState() == WorkflowEngine.State.Creating
+                && current.transition(WorkflowEngine.State.Creating, WorkflowEngine.State.Cancelled)) {
+            placement = null;
+            current.getSubject().destroy();
+        }
         for (AnchorVisual visual : anchorVisuals.values()) {
             visual.destroy();
         }
         //Limpiamos los anchors que se ven en pantalla
         anchorVisuals.clear();
+        anchorVisibility.clear();
     }
 
     private void createAnchorExceptionCompletion(String message) {
         textView.setText(message);
         currentStep = DemoStep.DemoStepChoosing;
-        cloudAnchorManager.stop();
-        cloudAnchorManager = null;
+        publishStatus();
+        sessionManager.enter(SpatialAnchorSessionManager.Mode.Idle);
         enableCorrectUIControls();
     }
 
-    private void destroySession() {
-        if (cloudAnchorManager != null) {
-            cloudAnchorManager.stop();
-            cloudAnchorManager = null;
+    // Termina lo que se estuviera haciendo y limpia la escena; la sesión sigue abierta
+    private void resetSession() {
+        discoveringNearby = false;
+        nearbyCandidates.clear();
+        lookups.cancelAll(WorkflowEngine.Kind.Locate);
+        lookup = null;
+        recordLocateSession(prefetcher.endSession());
+        if (anchorLocator != null) {
+            anchorLocator.close();
+            anchorLocator = null;
         }
 
-        stopWatcher();
-
         clearVisuals();
     }
 
-    private void enableCorrectUIControls() {
-        switch (currentStep) {
-            case DemoStepChoosing:
-                textView.setVisibility(View.VISIBLE);
-                locateButton.setVisibility(View.VISIBLE);
-                createButton.setVisibility(View.VISIBLE);
-                anchorNumInput.setVisibility(View.GONE);
-                editTextInfo.setVisibility(View.GONE);
-                break;
-            case DemoStepCreating:
-            case DemoStepLocating:
-            case DemoStepSaving:
-                textView.setVisibility(View.VISIBLE);
-                locateButton.setVisibility(View.GONE);
-                createButton.setVisibility(View.GONE);
-                anchorNumInput.setVisibility(View.GONE);
-                editTextInfo.setVisibility(View.GONE);
-                break;
-            case DemoStepEnteringAnchorNumber:
-                textView.setVisibility(View.VISIBLE);
-                locateButton.setVisibility(View.VISIBLE);
-                createButton.setVisibility(View.GONE);
-                anchorNumInput.setVisibility(View.VISIBLE);
-                editTextInfo.setVisibility(View.VISIBLE);
-                break;
+    // Una sesión con un solo anchor no dice nada de qué se localiza junto a qué
+    private void recordLocateSession(String[] session) {
+        LocateSessionLog sessionLog = locateSessionLog;
+        if (session.length < 2 || sessionLog == null) {
+            return;
         }
+        coLocateGraph.recordSession(session);
+        CompletableFuture.runAsync(() -> {
+            try {
+                synchronized (sessionLog) {
+                    sessionLog.append(session);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to record the locate session", e);
+            }
+        });
+    }
+
+    private void enableCorrectUIControls() {
+        DemoStep step = currentStep;
+        textView.setVisibility(View.VISIBLE);
+        locateButton.setVisibility(step.showsLocateButton() ? View.VISIBLE : View.GONE);
+        createButton.setVisibility(step.showsCreateButton() ? View.VISIBLE : View.GONE);
+        anchorNumInput.setVisibility(step.showsAnchorInput() ? View.VISIBLE : View.GONE);
+        editTextInfo.setVisibility(step.showsAnchorInput() ? View.VISIBLE : View.GONE);
+        sensorStatusView.setVisibility(step.showsAnchorInput() || step == DemoStep.DemoStepLocating ? View.VISIBLE : View.GONE);
     }
 
     private void onTapArPlaneListener(HitResult hitResult, Plane plane, MotionEvent motionEvent) {
-        if (currentStep == DemoStep.DemoStepCreating) {
-            AnchorVisual visual = anchorVisuals.get("");
-            if (visual == null) {
-                createAnchor(hitResult);
+        if (currentStep == DemoStep.DemoStepCreating && placement == null) {
+            createAnchor(hitResult);
+        }
+    }
+
+    private void openUploadQueue() {
+        File journalFile = new File(getFilesDir(), UPLOAD_JOURNAL_FILE);
+        RetryPolicy retryPolicy = new RetryPolicy(Integer.MAX_VALUE, UPLOAD_RETRY_BASE_DELAY_MS,
+                UPLOAD_RETRY_MAX_DELAY_MS, AzureSpatialAnchorsManager::isTransientError);
+        DurableUploadQueue.Saver<CloudSpatialAnchor> saver = new DurableUploadQueue.Saver<CloudSpatialAnchor>() {
+            @Override
+            public CompletableFuture<CloudSpatialAnchor> save(CloudSpatialAnchor anchor) {
+                SpatialAnchorBackend<CloudSpatialAnchor, Frame> backend = sessionManager.getRunningBackend();
+                if (backend == null) {
+                    CompletableFuture<CloudSpatialAnchor> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(new DurableUploadQueue.Unreachable("No session is running."));
+                    return failed;
+                }
+                return backend.createAnchorAsync(anchor);
+            }
+
+            @Override
+            public String getIdentifier(CloudSpatialAnchor anchor) {
+                return anchor.getIdentifier();
+            }
+        };
+
+        uploadQueue = CompletableFuture.supplyAsync(() -> {
+            try {
+                DurableUploadQueue<CloudSpatialAnchor> queue = new DurableUploadQueue<>(UploadJournal.open(journalFile),
+                        saver, uploadExecutor, retryPolicy, System::nanoTime,
+                        UPLOAD_SYNC_INTERVAL_MS, UPLOAD_MAX_SYNC_BATCH, UPLOAD_MAX_CONCURRENT_SAVES, AppMetrics.registry);
+                queue.setListener(new DurableUploadQueue.Listener<CloudSpatialAnchor>() {
+                    @Override
+                    public void onRetryScheduled(DurableUploadQueue.Upload<CloudSpatialAnchor> upload, Throwable error, long delayMs) {
+                        AnchorVisual visual = uploadingVisuals.get(upload.getEntry().getUploadId());
+                        if (visual != null) {
+                            runOnUiThread(() -> anchorSaveDeferred(visual));
+                        }
+                    }
+                });
+                // Los datos espaciales de un anchor no sobreviven al proceso: lo que quedó
+                // pendiente de una ejecución anterior ya no se puede subir
+                int orphaned = queue.recover(entry -> null).size();
+                if (orphaned > 0) {
+                    Log.w(TAG, orphaned + " anchors were still being saved when the app last closed");
+                }
+                return queue;
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to open the upload journal", e);
+                throw new CompletionException(e);
+            }
+        }, uploadExecutor);
+
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                uploadQueue.thenAccept(DurableUploadQueue::onReachable);
             }
+        };
+        getSystemService(ConnectivityManager.class).registerDefaultNetworkCallback(networkCallback);
+    }
+
+    private void registerGauges() {
+        MetricsRegistry registry = AppMetrics.registry;
+        registerActivityGauge("frame.fed", frameScheduler::getFramesFed);
+        registerActivityGauge("frame.skipped", frameScheduler::getFramesSkipped);
+        registerActivityGauge("frame.overran", frameScheduler::getFramesOverran);
+
+        // Las cachés son de todo el proceso y no retienen la actividad
+        ResourceCache<Integer, ?> materials = AnchorVisual.getMaterialCache(this);
+        registry.gauge("material_cache.hits", materials::getHitCount);
+        registry.gauge("material_cache.misses", materials::getMissCount);
+        registry.gauge("material_cache.evictions", materials::getEvictionCount);
+        registry.gauge("material_cache.failures", materials::getFailureCount);
+        PreloadingRegistry<Integer, ?> models = RenderableAssets.getModels(this);
+        registry.gauge("models.held", models::size);
+
+        // Read off the UI thread when exporting; a slightly stale count is fine.
+        registry.gauge("renderables.live", AnchorVisual::getLiveRenderableCount);
+        // anchorVisibility es solo del hilo de la UI: se exporta lo que se leyó en onPause
+        registerActivityGauge("anchors.tracked", () -> trackedAnchors);
+        registerActivityGauge("anchors.visible", () -> visibleAnchors);
+    }
+
+    private void registerActivityGauge(String name, MetricsRegistry.Gauge gauge) {
+        activityGauges.put(name, gauge);
+        AppMetrics.registry.gauge(name, gauge);
+    }
+
+    private void requestLocationPermission() {
+        if (checkSelfPermission(Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+            requestPermissions(new String[]{Manifest.permission.ACCESS_FINE_LOCATION}, LOCATION_PERMISSION_REQUEST);
         }
     }
 
-    private void stopWatcher() {
-        if (cloudAnchorManager != null) {
-            cloudAnchorManager.stopLocating();
+    // Runs before the store is published, so the index is complete once lookups can use it.
+    private void indexFingerprints(AnchorStore store) {
+        for (AnchorRecord record : store.getAll()) {
+            String encoded = record.getAppProperties().get(FINGERPRINT_PROPERTY);
+            if (encoded == null) {
+                continue;
+            }
+            try {
+                fingerprintIndex.put(record.getIdentifier(), SensorFingerprint.decode(encoded));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Ignoring the fingerprint of anchor " + record.getIdentifier(), e);
+            }
         }
     }
 
-    private void transitionToSaving(AnchorVisual visual) {
+    // Restores the codes already handed out; anchors remembered before codes existed get one now.
+    private void indexShortCodes(AnchorStore store) {
+        for (AnchorRecord record : store.getAll()) {
+            String code = record.getAppProperties().get(SHORT_CODE_PROPERTY);
+            long parsed = code != null ? ShortCodeIndex.parse(code) : ShortCodeIndex.NO_CODE;
+            if (parsed == ShortCodeIndex.NO_CODE || !shortCodes.put(parsed, record.getIdentifier())) {
+                shortCodes.assign(record.getIdentifier());
+            }
+        }
+    }
+
+    private String shortCodeOf(String identifier) {
+        return ShortCodeIndex.format(shortCodes.assign(identifier));
+    }
+
+    private void rememberAnchor(String identifier, AnchorVisual visual, int color) {
+        Anchor localAnchor = visual.getLocalAnchor();
+        if (localAnchor == null) {
+            return;
+        }
+
+        // Lo que hay que leer de ARCore y del SDK se lee aquí, en el hilo de la UI
+        Pose pose = localAnchor.getPose();
+        float[] values = {pose.tx(), pose.ty(), pose.tz(), pose.qx(), pose.qy(), pose.qz(), pose.qw()};
+        long now = System.currentTimeMillis();
+        Map<String, String> cloudProperties = visual.getCloudAnchor().getAppProperties();
+        Map<String, String> properties = cloudProperties != null ? cloudProperties : Collections.emptyMap();
+        String shape = visual.getShape().name();
+        String shortCode = shortCodeOf(identifier);
+
+        // Lo que ven los sensores aquí, para encontrarlo más adelante sin conocer su id
+        SensorFingerprint fingerprint = sensorProvider.read();
+        if (!fingerprint.isEmpty()) {
+            fingerprintIndex.put(identifier, fingerprint);
+        }
+
+        // La escritura (y la compactación que pueda provocar) va al hilo del almacén
+        storageExecutor.execute(() -> {
+            AnchorStore store = anchorStore;
+            if (store == null) {
+                return;
+            }
+            AnchorRecord existing = store.get(identifier);
+            AnchorRecord record = existing != null
+                    ? existing.withLocated(now, values)
+                    : new AnchorRecord(identifier, now, now, values, color, shape, properties);
+            record = record.withAppProperty(SHORT_CODE_PROPERTY, shortCode);
+            if (!fingerprint.isEmpty()) {
+                record = record.withAppProperty(FINGERPRINT_PROPERTY, fingerprint.encode());
+            }
+
+            try {
+                store.put(record);
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to store anchor " + identifier, e);
+            }
+        });
+    }
+
+    private void transitionToSaving(WorkflowEngine.Workflow<AnchorVisual> workflow) {
+        AnchorVisual visual = workflow.getSubject();
 
         // Cambiamos estado y actualizamos TVs
         currentStep = DemoStep.DemoStepSaving;
+        publishStatus();
         enableCorrectUIControls();
 
         //Creamos un cloudAnchor y se lo asignamos al objeto visual
@@ -327,60 +1032,125 @@ public class SharedActivity extends AppCompatActivity {
         // a la hora de crearlo.
         cloudAnchor.setLocalAnchor(visual.getLocalAnchor());
 
-        //Creamos el cloudanchor utilizando el manager
-        cloudAnchorManager.createAnchorAsync(cloudAnchor)
-                .thenAccept(anchor -> {
-                    // T0do fue bien. Obtenemos el ID y cambiamos el color.
-                    String anchorId = anchor.getIdentifier();
-                    visual.setColor(this, SAVED_COLOR);
+        // El guardado pasa por la cola persistente: si falla por falta de conexión no se pierde
+        // el escaneo, se reintenta más tarde
+        Pose pose = visual.getLocalAnchor().getPose();
+        float[] values = {pose.tx(), pose.ty(), pose.tz(), pose.qx(), pose.qy(), pose.qz(), pose.qw()};
+        Map<String, String> properties = cloudAnchor.getAppProperties();
+        uploadQueue.thenApply(queue -> {
+            try {
+                return queue.enqueue(cloudAnchor, System.currentTimeMillis(), values, READY_COLOR,
+                        visual.getShape().name(), properties != null ? properties : Collections.emptyMap());
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }).thenCompose(upload -> {
+            long uploadId = upload.getEntry().getUploadId();
+            uploadingVisuals.put(uploadId, visual);
+            return upload.getResult().whenComplete((anchor, error) -> uploadingVisuals.remove(uploadId));
+        }).whenComplete((anchor, thrown) -> runOnUiThread(() -> {
+            if (thrown == null) {
+                anchorSaved(anchor.getIdentifier(), workflow);
+            } else {
+                anchorSaveFailed(thrown, workflow);
+            }
+        }));
+    }
+
+    private void anchorSaved(String anchorId, WorkflowEngine.Workflow<AnchorVisual> workflow) {
+        if (!workflow.advance(WorkflowEngine.State.Succeeded)) {
+            // La actividad se cerró mientras se guardaba
+            return;
+        }
+        // T0do fue bien. Obtenemos el ID y cambiamos el color.
+        AnchorVisual visual = workflow.getSubject();
+        visual.setColor(this, SAVED_COLOR);
+        rememberAnchor(anchorId, visual, SAVED_COLOR);
 
-                    Intent sendIntent = new Intent();
-                    sendIntent.setAction(Intent.ACTION_SEND);
-                    sendIntent.putExtra(Intent.EXTRA_TEXT, "Anchor id creado: " + anchorId);
-                    sendIntent.setType("text/plain");
+        if (currentStep != DemoStep.DemoStepSaving || placement != workflow) {
+            // Se guardó más tarde, tras perder la conexión: lo dejamos en pantalla hasta el
+            // siguiente reset y solo mostramos su id
+            anchorVisuals.put(anchorId, visual);
+            if (currentStep == DemoStep.DemoStepChoosing) {
+                textView.setText(getString(R.string.anchorid, shortCodeOf(anchorId)));
+            }
+            return;
+        }
 
-                    Intent shareIntent = Intent.createChooser(sendIntent, null);
-                    startActivity(shareIntent);
+        Intent sendIntent = new Intent();
+        sendIntent.setAction(Intent.ACTION_SEND);
+        // Se comparte el código corto; el id completo va detrás para quien no lo tenga indexado
+        sendIntent.putExtra(Intent.EXTRA_TEXT, getString(R.string.compartir_anchor, shortCodeOf(anchorId), anchorId));
+        sendIntent.setType("text/plain");
 
-                    //Además borramos el hashmap local que habíamos creado, y creamos otro con
-                    // el ID del anchor que nos llega del API
-                    anchorVisuals.put(anchorId, visual);
-                    anchorVisuals.remove("");
+        Intent shareIntent = Intent.createChooser(sendIntent, null);
+        startActivity(shareIntent);
 
-                    anchorPosted(anchorId);
+        //Además el anchor deja de ser el que se está colocando, y lo guardamos con
+        // el ID del anchor que nos llega del API
+        anchorVisuals.put(anchorId, visual);
+        placement = null;
 
-                }).exceptionally(thrown -> {
+        anchorPosted(anchorId);
+    }
 
-            thrown.printStackTrace();
-            String exceptionMessage = thrown.toString();
-            Throwable t = thrown.getCause();
-            if (t instanceof CloudSpatialException) {
-                exceptionMessage = (((CloudSpatialException) t).getErrorCode().toString());
+    private void anchorSaveFailed(Throwable thrown, WorkflowEngine.Workflow<AnchorVisual> workflow) {
+        if (!workflow.advance(WorkflowEngine.State.Failed)) {
+            return;
+        }
+        thrown.printStackTrace();
+        Throwable t = RetryPolicy.unwrap(thrown);
+        String exceptionMessage = t.toString();
+        if (t instanceof CloudSpatialException) {
+            exceptionMessage = (((CloudSpatialException) t).getErrorCode().toString());
+        }
+        AnchorVisual visual = workflow.getSubject();
+        visual.setColor(this, FAILED_COLOR);
+        // Lo devolvemos a la escena para que el reset lo limpie
+        anchorVisuals.put("failed-" + workflow.getId(), visual);
+        if (placement != workflow) {
+            // Ya no estábamos esperando
+            if (currentStep == DemoStep.DemoStepChoosing) {
+                textView.setText(exceptionMessage);
             }
-            createAnchorExceptionCompletion(exceptionMessage);
-            visual.setColor(this, FAILED_COLOR);
-            return null;
-        });
+            return;
+        }
+        placement = null;
+        createAnchorExceptionCompletion(exceptionMessage);
     }
 
-    private void updateStatic() {
-        new android.os.Handler().postDelayed(() -> {
-            switch (currentStep) {
-                case DemoStepChoosing:
-                case DemoStepEnteringAnchorNumber:
-                    break;
-                case DemoStepCreating:
-                    textView.setText(feedbackText);
-                    break;
-                case DemoStepLocating:
-                    textView.setText(getString(R.string.buscando, anchorId));
-                    break;
-                case DemoStepSaving:
-                    textView.setText(R.string.guardando);
-                    break;
-            }
-
-            updateStatic();
-        }, 500);
+    // Sin conexión: el anchor queda en la cola y el usuario puede seguir con otra cosa
+    private void anchorSaveDeferred(AnchorVisual visual) {
+        visual.setColor(this, PENDING_COLOR);
+        WorkflowEngine.Workflow<AnchorVisual> current = placement;
+        if (currentStep != DemoStep.DemoStepSaving || current == null || current.getSubject() != visual) {
+            return;
+        }
+        // Su flujo sigue guardando por su cuenta; crear o buscar otro no lo borra mientras se sube
+        placement = null;
+        currentStep = DemoStep.DemoStepChoosing;
+        publishStatus();
+        textView.setText(R.string.guardado_pendiente);
+        enableCorrectUIControls();
+    }
+
+    private void publishStatus() {
+        String status;
+        switch (currentStep) {
+            case DemoStepCreating:
+                status = feedbackText;
+                break;
+            case DemoStepLocating:
+                status = discoveringNearby ? getString(R.string.buscando_cercanos) : getString(R.string.buscando, anchorId);
+                break;
+            case DemoStepSaving:
+                status = getString(R.string.guardando);
+                break;
+            default:
+                // El resto de pasos escriben el texto directamente
+                status = null;
+                break;
+        }
+        statusPublisher.publish(status);
     }
 }
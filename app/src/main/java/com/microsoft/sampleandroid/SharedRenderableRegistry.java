@@ -0,0 +1,79 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Builds the geometry for each shape once and hands out lightweight instances that share it,
+// each with its own material. With Sceneform an instance is Renderable.makeCopy() of the
+// shared prototype, which reuses the prototype's vertex and index buffers; changing an
+// instance's color is a setMaterial on that instance, not a rebuild.
+//
+// Prototypes are kept for the lifetime of the registry so the shapes are not rebuilt when the
+// last anchor using them goes away. Not thread-safe: Sceneform renderables are only touched on
+// the UI thread.
+class SharedRenderableRegistry<K, R, M> {
+    interface Factory<K, R, M> {
+        // Builds the shared geometry for a shape; called once per shape.
+        R makePrototype(K shape, M material);
+
+        // A copy of the prototype that shares its geometry and uses the given material.
+        R makeInstance(R prototype, M material);
+    }
+
+    private final Factory<K, R, M> factory;
+    private final Map<K, R> prototypes = new HashMap<>();
+    private final Map<K, Integer> liveByShape = new HashMap<>();
+    private int liveCount;
+    private long instancesCreated;
+
+    SharedRenderableRegistry(Factory<K, R, M> factory) {
+        this.factory = factory;
+    }
+
+    R acquire(K shape, M material) {
+        R prototype = prototypes.get(shape);
+        if (prototype == null) {
+            prototype = factory.makePrototype(shape, material);
+            prototypes.put(shape, prototype);
+        }
+
+        R instance = factory.makeInstance(prototype, material);
+        instancesCreated++;
+        liveCount++;
+        liveByShape.merge(shape, 1, Integer::sum);
+        return instance;
+    }
+
+    // Called when a visual drops an instance obtained from acquire.
+    void release(K shape) {
+        Integer live = liveByShape.get(shape);
+        if (live == null) {
+            throw new IllegalStateException("No live renderable for " + shape);
+        }
+        if (live == 1) {
+            liveByShape.remove(shape);
+        } else {
+            liveByShape.put(shape, live - 1);
+        }
+        liveCount--;
+    }
+
+    int getLiveCount() {
+        return liveCount;
+    }
+
+    int getLiveCount(K shape) {
+        Integer live = liveByShape.get(shape);
+        return live != null ? live : 0;
+    }
+
+    int getPrototypeCount() {
+        return prototypes.size();
+    }
+
+    long getInstancesCreated() {
+        return instancesCreated;
+    }
+}
@@ -0,0 +1,265 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Short codes for anchor identifiers, easy to read out and type: CODE_LENGTH Crockford base-32
+// characters (40 bits) shown as "XXXX-XXXX". A code is derived from a hash of its identifier;
+// when it is already taken by another identifier the hash is salted and tried again, so codes
+// never collide within an index. Parsing ignores case and hyphens and reads I/L as 1 and O as
+// 0, in O(length).
+//
+// The index keeps codes and identifiers in dense parallel arrays addressed by an open-addressing
+// table of ints. Identifiers in the canonical GUID form the service uses are packed into two
+// longs, so an entry costs 24 bytes plus its share of the table and of unused capacity: about
+// 33 bytes at a million anchors, and never more than about 60, instead of the ~150 of a
+// HashMap<Long, String>. Any other identifier is kept as a String on the side. Thread-safe.
+class ShortCodeIndex {
+    static final int CODE_LENGTH = 8;
+    static final long NO_CODE = -1;
+    private static final int BITS_PER_CHAR = 5;
+    private static final long CODE_MASK = (1L << (CODE_LENGTH * BITS_PER_CHAR)) - 1;
+    private static final String ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ";
+    private static final byte[] DIGITS = new byte[128];
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final float MAX_LOAD = 0.75f;
+
+    static {
+        Arrays.fill(DIGITS, (byte) -1);
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            char c = ALPHABET.charAt(i);
+            DIGITS[c] = (byte) i;
+            DIGITS[Character.toLowerCase(c)] = (byte) i;
+        }
+        DIGITS['I'] = DIGITS['i'] = DIGITS['L'] = DIGITS['l'] = 1;
+        DIGITS['O'] = DIGITS['o'] = 0;
+    }
+
+    // Dense entry i: its code, and its identifier packed or in irregular.
+    private long[] codes;
+    private long[] mostSignificant;
+    private long[] leastSignificant;
+    private final Map<Integer, String> irregular = new HashMap<>();
+    private int size;
+    // Open addressing on the code: entry index + 1, 0 when the slot is empty.
+    private int[] slots;
+    private long collisions;
+
+    ShortCodeIndex(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        codes = new long[capacity];
+        mostSignificant = new long[capacity];
+        leastSignificant = new long[capacity];
+        slots = new int[tableSizeFor(capacity)];
+    }
+
+    // The identifier's code, assigning one if it has none yet.
+    synchronized long assign(String identifier) {
+        for (int salt = 0; ; salt++) {
+            long code = derive(identifier, salt);
+            int entry = find(code);
+            if (entry < 0) {
+                insert(code, identifier);
+                return code;
+            }
+            if (identifierAt(entry).equals(identifier)) {
+                return code;
+            }
+            collisions++;
+        }
+    }
+
+    // Restores a code assigned earlier. Returns false if the code belongs to another identifier.
+    synchronized boolean put(long code, String identifier) {
+        checkCode(code);
+        int entry = find(code);
+        if (entry >= 0) {
+            return identifierAt(entry).equals(identifier);
+        }
+        insert(code, identifier);
+        return true;
+    }
+
+    // The identifier behind a code, or null if this index does not know it.
+    synchronized String resolve(long code) {
+        int entry = find(code);
+        return entry >= 0 ? identifierAt(entry) : null;
+    }
+
+    // Parses and resolves typed text; null if it is not a known code.
+    String resolve(CharSequence text) {
+        long code = parse(text);
+        return code != NO_CODE ? resolve(code) : null;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    // Derived codes that were taken and had to be salted.
+    synchronized long getCollisionCount() {
+        return collisions;
+    }
+
+    // Bytes held by the arrays and irregular identifiers, excluding object headers.
+    synchronized long getMemoryBytes() {
+        long bytes = (long) codes.length * 3 * Long.BYTES + (long) slots.length * Integer.BYTES;
+        for (String identifier : irregular.values()) {
+            bytes += 2L * identifier.length() + 48;
+        }
+        return bytes;
+    }
+
+    static String format(long code) {
+        checkCode(code);
+        char[] text = new char[CODE_LENGTH + 1];
+        int position = text.length;
+        for (int i = 0; i < CODE_LENGTH; i++) {
+            if (i == CODE_LENGTH / 2) {
+                text[--position] = '-';
+            }
+            text[--position] = ALPHABET.charAt((int) (code & 31));
+            code >>>= BITS_PER_CHAR;
+        }
+        return new String(text);
+    }
+
+    // The code in text, or NO_CODE if text is not one.
+    static long parse(CharSequence text) {
+        long code = 0;
+        int digits = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            if (c >= DIGITS.length || DIGITS[c] < 0 || ++digits > CODE_LENGTH) {
+                return NO_CODE;
+            }
+            code = code << BITS_PER_CHAR | DIGITS[c];
+        }
+        return digits == CODE_LENGTH ? code : NO_CODE;
+    }
+
+    static long derive(String identifier, int salt) {
+        // FNV-1a, finished with a mixer so the top bits depend on every character.
+        long hash = 0xcbf29ce484222325L ^ salt;
+        for (int i = 0; i < identifier.length(); i++) {
+            hash = (hash ^ identifier.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash) >>> (64 - CODE_LENGTH * BITS_PER_CHAR);
+    }
+
+    private int find(long code) {
+        int mask = slots.length - 1;
+        for (int slot = (int) mix(code) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot] - 1;
+            if (entry < 0 || codes[entry] == code) {
+                return entry;
+            }
+        }
+    }
+
+    private void insert(long code, String identifier) {
+        if (size == codes.length) {
+            int capacity = size * 2;
+            codes = Arrays.copyOf(codes, capacity);
+            mostSignificant = Arrays.copyOf(mostSignificant, capacity);
+            leastSignificant = Arrays.copyOf(leastSignificant, capacity);
+        }
+        int entry = size++;
+        codes[entry] = code;
+        if (!packGuid(identifier, entry)) {
+            irregular.put(entry, identifier);
+        }
+        if (size > slots.length * MAX_LOAD) {
+            slots = new int[slots.length * 2];
+            for (int i = 0; i < size - 1; i++) {
+                place(i);
+            }
+        }
+        place(entry);
+    }
+
+    private void place(int entry) {
+        int mask = slots.length - 1;
+        int slot = (int) mix(codes[entry]) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = entry + 1;
+    }
+
+    private String identifierAt(int entry) {
+        String identifier = irregular.isEmpty() ? null : irregular.get(entry);
+        return identifier != null ? identifier : unpackGuid(mostSignificant[entry], leastSignificant[entry]);
+    }
+
+    // Packs a lowercase "8-4-4-4-12" hex GUID; anything else would not round-trip.
+    private boolean packGuid(String identifier, int entry) {
+        if (identifier.length() != 36) {
+            return false;
+        }
+        long high = 0;
+        long low = 0;
+        int nibbles = 0;
+        for (int i = 0; i < 36; i++) {
+            char c = identifier.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+                continue;
+            }
+            int value = c >= '0' && c <= '9' ? c - '0' : c >= 'a' && c <= 'f' ? c - 'a' + 10 : -1;
+            if (value < 0) {
+                return false;
+            }
+            if (nibbles++ < 16) {
+                high = high << 4 | value;
+            } else {
+                low = low << 4 | value;
+            }
+        }
+        mostSignificant[entry] = high;
+        leastSignificant[entry] = low;
+        return true;
+    }
+
+    private static String unpackGuid(long high, long low) {
+        char[] text = new char[36];
+        int nibbles = 0;
+        for (int position = 35; position >= 0; position--) {
+            if (position == 8 || position == 13 || position == 18 || position == 23) {
+                text[position] = '-';
+            } else if (nibbles++ < 16) {
+                text[position] = HEX[(int) (low & 15)];
+                low >>>= 4;
+            } else {
+                text[position] = HEX[(int) (high & 15)];
+                high >>>= 4;
+            }
+        }
+        return new String(text);
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    private static int tableSizeFor(int entries) {
+        int size = Integer.highestOneBit((int) (entries / MAX_LOAD)) * 2;
+        return Math.max(16, size);
+    }
+
+    private static void checkCode(long code) {
+        if ((code & ~CODE_MASK) != 0) {
+            throw new IllegalArgumentException("Not a short code: " + code);
+        }
+    }
+}
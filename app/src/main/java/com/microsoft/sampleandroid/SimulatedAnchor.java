@@ -0,0 +1,45 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Anchor type of SimulatedSpatialAnchorBackend: a position in world space plus app properties.
+class SimulatedAnchor {
+    private volatile String identifier;
+    private final float x;
+    private final float y;
+    private final float z;
+    private final Map<String, String> appProperties = new ConcurrentHashMap<>();
+
+    SimulatedAnchor(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    String getIdentifier() {
+        return identifier;
+    }
+
+    void setIdentifier(String identifier) {
+        this.identifier = identifier;
+    }
+
+    float getX() {
+        return x;
+    }
+
+    float getY() {
+        return y;
+    }
+
+    float getZ() {
+        return z;
+    }
+
+    Map<String, String> getAppProperties() {
+        return appProperties;
+    }
+}
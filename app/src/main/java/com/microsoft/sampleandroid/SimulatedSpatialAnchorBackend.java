@@ -0,0 +1,325 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-memory stand-in for the Azure Spatial Anchors service. Saves and located events are
+// delivered on the given scheduler after a latency drawn from the configured range, and
+// failures are injected at the configured rate. All randomness comes from one seeded Random,
+// so a run is reproducible for a given seed and call order.
+//
+// Scan progress is simulated by counting frames: each processed frame adds progressPerFrame
+// to the recommended-for-create progress and triggers a session-updated callback on the
+// calling thread, as processFrame would on a device.
+class SimulatedSpatialAnchorBackend<F> implements SpatialAnchorBackend<SimulatedAnchor, F> {
+    static final class SimulatedBackendException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean isTransient;
+
+        SimulatedBackendException(String message, boolean isTransient) {
+            super(message);
+            this.isTransient = isTransient;
+        }
+
+        boolean isTransient() {
+            return isTransient;
+        }
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final Random random;
+    private final Map<String, SimulatedAnchor> cloudAnchors = new ConcurrentHashMap<>();
+    private final Set<String> trackedIdentifiers = ConcurrentHashMap.newKeySet();
+    private final Map<Integer, SimulatedWatcher> activeWatchers = new ConcurrentHashMap<>();
+    private final List<Listener<SimulatedAnchor>> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextWatcherId = new AtomicInteger(1);
+    private final AtomicInteger nextAnchorId = new AtomicInteger(1);
+    private final AtomicLong processedFrames = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile float progressPerFrame = 0.02f;
+    private volatile boolean requireScanProgress = true;
+    private volatile long createLatencyMinMs = 200;
+    private volatile long createLatencyMaxMs = 800;
+    private volatile long locateLatencyMinMs = 100;
+    private volatile long locateLatencyMaxMs = 1500;
+    private volatile double failureRate;
+    private volatile boolean failuresAreTransient = true;
+    private volatile float[] devicePosition = new float[3];
+    private volatile boolean reachable = true;
+
+    SimulatedSpatialAnchorBackend(ScheduledExecutorService scheduler, long seed) {
+        this.scheduler = scheduler;
+        this.random = new Random(seed);
+    }
+
+    SimulatedSpatialAnchorBackend<F> setCreateLatencyMs(long minMs, long maxMs) {
+        createLatencyMinMs = minMs;
+        createLatencyMaxMs = maxMs;
+        return this;
+    }
+
+    SimulatedSpatialAnchorBackend<F> setLocateLatencyMs(long minMs, long maxMs) {
+        locateLatencyMinMs = minMs;
+        locateLatencyMaxMs = maxMs;
+        return this;
+    }
+
+    SimulatedSpatialAnchorBackend<F> setFailureRate(double failureRate, boolean transientFailures) {
+        this.failureRate = failureRate;
+        this.failuresAreTransient = transientFailures;
+        return this;
+    }
+
+    SimulatedSpatialAnchorBackend<F> setProgressPerFrame(float progressPerFrame) {
+        this.progressPerFrame = progressPerFrame;
+        return this;
+    }
+
+    SimulatedSpatialAnchorBackend<F> setRequireScanProgress(boolean requireScanProgress) {
+        this.requireScanProgress = requireScanProgress;
+        return this;
+    }
+
+    // Where near-device queries consider the device to be, in the anchors' coordinates.
+    SimulatedSpatialAnchorBackend<F> setDevicePosition(float x, float y, float z) {
+        devicePosition = new float[]{x, y, z};
+        return this;
+    }
+
+    // While unreachable, saves fail right away with a transient error, as they would offline.
+    SimulatedSpatialAnchorBackend<F> setReachable(boolean reachable) {
+        this.reachable = reachable;
+        return this;
+    }
+
+    // Seeds the simulated cloud store with an anchor saved by some other device.
+    SimulatedAnchor putCloudAnchor(String identifier, float x, float y, float z) {
+        SimulatedAnchor anchor = new SimulatedAnchor(x, y, z);
+        anchor.setIdentifier(identifier);
+        cloudAnchors.put(identifier, anchor);
+        return anchor;
+    }
+
+    int getCloudAnchorCount() {
+        return cloudAnchors.size();
+    }
+
+    long getProcessedFrameCount() {
+        return processedFrames.get();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        for (SimulatedWatcher watcher : new ArrayList<>(activeWatchers.values())) {
+            watcher.stop();
+        }
+        trackedIdentifiers.clear();
+        processedFrames.set(0);
+    }
+
+    @Override
+    public void processFrame(F frame) {
+        if (!running) {
+            return;
+        }
+        processedFrames.incrementAndGet();
+        SessionStatusSnapshot status = currentStatus();
+        for (Listener<SimulatedAnchor> listener : listeners) {
+            listener.onSessionUpdated(status);
+        }
+    }
+
+    @Override
+    public CompletableFuture<SimulatedAnchor> createAnchorAsync(SimulatedAnchor anchor) {
+        CompletableFuture<SimulatedAnchor> result = new CompletableFuture<>();
+        if (!running) {
+            result.completeExceptionally(new IllegalStateException("The session has not been started."));
+            return result;
+        }
+        if (requireScanProgress && currentStatus().getReadyForCreateProgress() < 1) {
+            result.completeExceptionally(new SimulatedBackendException("Not enough spatial data.", false));
+            return result;
+        }
+        if (!reachable) {
+            result.completeExceptionally(new SimulatedBackendException("Unreachable.", true));
+            return result;
+        }
+
+        boolean fail = nextDouble() < failureRate;
+        scheduler.schedule(() -> {
+            if (fail) {
+                result.completeExceptionally(new SimulatedBackendException("Injected failure.", failuresAreTransient));
+                return;
+            }
+            String identifier = "sim-" + nextAnchorId.getAndIncrement();
+            anchor.setIdentifier(identifier);
+            cloudAnchors.put(identifier, anchor);
+            trackedIdentifiers.add(identifier);
+            result.complete(anchor);
+        }, nextLatency(createLatencyMinMs, createLatencyMaxMs), TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    @Override
+    public String getIdentifier(SimulatedAnchor anchor) {
+        return anchor.getIdentifier();
+    }
+
+    @Override
+    public Watcher createWatcher(AnchorQuery query) {
+        if (!running) {
+            throw new IllegalStateException("The session has not been started.");
+        }
+
+        SimulatedWatcher watcher = new SimulatedWatcher(nextWatcherId.getAndIncrement());
+        activeWatchers.put(watcher.id, watcher);
+        String[] identifiers = query.isNearDevice() ? nearDevice(query) : query.getIdentifiers();
+        watcher.remaining.set(identifiers.length);
+        if (identifiers.length == 0) {
+            watcher.complete(false);
+            return watcher;
+        }
+
+        for (String identifier : identifiers) {
+            long delay = nextLatency(locateLatencyMinMs, locateLatencyMaxMs);
+            watcher.pending.add(scheduler.schedule(() -> watcher.report(identifier), delay, TimeUnit.MILLISECONDS));
+        }
+        return watcher;
+    }
+
+    @Override
+    public List<Watcher> getActiveWatchers() {
+        return new ArrayList<>(activeWatchers.values());
+    }
+
+    @Override
+    public CompletableFuture<SessionStatusSnapshot> getSessionStatusAsync() {
+        return CompletableFuture.completedFuture(currentStatus());
+    }
+
+    @Override
+    public Registration addListener(Listener<SimulatedAnchor> listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    // The cloud anchors within the query's distance of the device, nearest first.
+    private String[] nearDevice(AnchorQuery query) {
+        float[] device = devicePosition;
+        float maxSquared = query.getNearDeviceDistance() * query.getNearDeviceDistance();
+        List<Map.Entry<String, Float>> near = new ArrayList<>();
+        for (Map.Entry<String, SimulatedAnchor> entry : cloudAnchors.entrySet()) {
+            SimulatedAnchor anchor = entry.getValue();
+            float dx = anchor.getX() - device[0];
+            float dy = anchor.getY() - device[1];
+            float dz = anchor.getZ() - device[2];
+            float distanceSquared = dx * dx + dy * dy + dz * dz;
+            if (distanceSquared <= maxSquared) {
+                near.add(new AbstractMap.SimpleEntry<>(entry.getKey(), distanceSquared));
+            }
+        }
+        near.sort(Map.Entry.comparingByValue());
+        int count = Math.min(near.size(), query.getNearDeviceMaxCount());
+        String[] identifiers = new String[count];
+        for (int i = 0; i < count; i++) {
+            identifiers[i] = near.get(i).getKey();
+        }
+        return identifiers;
+    }
+
+    private SessionStatusSnapshot currentStatus() {
+        float progress = processedFrames.get() * progressPerFrame;
+        return new SessionStatusSnapshot(Math.min(progress, 1f), progress, "None");
+    }
+
+    private double nextDouble() {
+        synchronized (random) {
+            return random.nextDouble();
+        }
+    }
+
+    private long nextLatency(long minMs, long maxMs) {
+        if (maxMs <= minMs) {
+            return minMs;
+        }
+        synchronized (random) {
+            return minMs + (long) (random.nextDouble() * (maxMs - minMs + 1));
+        }
+    }
+
+    private final class SimulatedWatcher implements Watcher {
+        final int id;
+        final AtomicInteger remaining = new AtomicInteger();
+        final List<ScheduledFuture<?>> pending = new CopyOnWriteArrayList<>();
+
+        SimulatedWatcher(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public void stop() {
+            for (ScheduledFuture<?> future : pending) {
+                future.cancel(false);
+            }
+            complete(true);
+        }
+
+        void report(String identifier) {
+            if (!activeWatchers.containsKey(id)) {
+                return;
+            }
+
+            SimulatedAnchor anchor = cloudAnchors.get(identifier);
+            LocatedAnchor<SimulatedAnchor> located;
+            if (anchor == null) {
+                located = new LocatedAnchor<>(identifier, LocateStatus.NotLocatedAnchorDoesNotExist, null, id);
+            } else {
+                LocateStatus status = trackedIdentifiers.add(identifier) ? LocateStatus.Located : LocateStatus.AlreadyTracked;
+                located = new LocatedAnchor<>(identifier, status, anchor, id);
+            }
+            for (Listener<SimulatedAnchor> listener : listeners) {
+                listener.onAnchorLocated(located);
+            }
+
+            if (remaining.decrementAndGet() == 0) {
+                complete(false);
+            }
+        }
+
+        void complete(boolean cancelled) {
+            if (activeWatchers.remove(id) == null) {
+                return;
+            }
+            for (Listener<SimulatedAnchor> listener : listeners) {
+                listener.onLocateCompleted(id, cancelled);
+            }
+        }
+    }
+}
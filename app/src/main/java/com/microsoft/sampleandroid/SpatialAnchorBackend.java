@@ -0,0 +1,63 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// The subset of a cloud spatial anchor session the app relies on. AzureSpatialAnchorsManager
+// implements it on top of CloudSpatialAnchorSession; SimulatedSpatialAnchorBackend implements it
+// in-process so create and locate flows can run on a plain JVM.
+//
+// A is the backend's anchor type and F the camera frame type it consumes.
+interface SpatialAnchorBackend<A, F> {
+    enum LocateStatus {
+        Located,
+        AlreadyTracked,
+        NotLocated,
+        NotLocatedAnchorDoesNotExist,
+    }
+
+    // Callbacks may arrive on any thread.
+    interface Listener<A> {
+        default void onSessionUpdated(SessionStatusSnapshot status) {
+        }
+
+        default void onAnchorLocated(LocatedAnchor<A> located) {
+        }
+
+        default void onLocateCompleted(int watcherId, boolean cancelled) {
+        }
+
+        default void onError(String message) {
+        }
+    }
+
+    interface Watcher {
+        int getId();
+
+        void stop();
+    }
+
+    interface Registration {
+        void remove();
+    }
+
+    void start();
+
+    void stop();
+
+    void processFrame(F frame);
+
+    CompletableFuture<A> createAnchorAsync(A anchor);
+
+    String getIdentifier(A anchor);
+
+    Watcher createWatcher(AnchorQuery query);
+
+    List<Watcher> getActiveWatchers();
+
+    CompletableFuture<SessionStatusSnapshot> getSessionStatusAsync();
+
+    Registration addListener(Listener<A> listener);
+}
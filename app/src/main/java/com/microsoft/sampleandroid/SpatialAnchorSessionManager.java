@@ -0,0 +1,174 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+// One spatial anchor session for the lifetime of its owner, switched between creating and
+// locating instead of being configured, started and torn down for every action. The backend is
+// built on first use and started once; later switches only stop the watchers of the previous
+// mode.
+//
+// Listeners added here outlive the backend they are attached to: they are attached when the
+// backend is built and detached when their registration is removed or the manager is closed.
+// The backend's async work runs on one scheduler thread owned by the manager and shut down by
+// close().
+//
+// Metrics:
+//   session.start_ns / session.stop_ns   time spent in the backend's start() and stop()
+//   session.backends_created             backends built; 1 per manager
+//   session.mode_switches                enter() calls that changed the mode
+class SpatialAnchorSessionManager<A, F> implements AutoCloseable {
+    enum Mode {
+        Idle,
+        Creating,
+        Locating,
+    }
+
+    interface BackendFactory<A, F> {
+        SpatialAnchorBackend<A, F> create(ScheduledExecutorService executor);
+    }
+
+    private final BackendFactory<A, F> factory;
+    private final FrameScheduler.Clock clock;
+    private final ScheduledThreadPoolExecutor executor;
+    private final LatencyHistogram startTime;
+    private final LatencyHistogram stopTime;
+    private final LongAdder backendsCreated;
+    private final LongAdder modeSwitches;
+    private final List<ManagedListener> listeners = new ArrayList<>();
+
+    private SpatialAnchorBackend<A, F> backend;
+    private volatile SpatialAnchorBackend<A, F> runningBackend;
+    private Mode mode = Mode.Idle;
+    private boolean closed;
+
+    SpatialAnchorSessionManager(BackendFactory<A, F> factory, ThreadFactory threadFactory,
+                                FrameScheduler.Clock clock, MetricsRegistry metrics) {
+        this.factory = factory;
+        this.clock = clock;
+        executor = new ScheduledThreadPoolExecutor(1, threadFactory);
+        // Retries and polls scheduled for later are moot once the session is gone.
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        startTime = metrics.histogram("session.start_ns");
+        stopTime = metrics.histogram("session.stop_ns");
+        backendsCreated = metrics.counter("session.backends_created");
+        modeSwitches = metrics.counter("session.mode_switches");
+    }
+
+    // Switches to a mode, building and starting the backend the first time, and returns it.
+    // Watchers left from locating are stopped when switching away from it.
+    synchronized SpatialAnchorBackend<A, F> enter(Mode next) {
+        if (closed) {
+            throw new IllegalStateException("The session manager has been closed.");
+        }
+        if (backend == null) {
+            backend = factory.create(executor);
+            backendsCreated.increment();
+            for (ManagedListener listener : listeners) {
+                listener.attach(backend);
+            }
+        }
+        if (runningBackend == null) {
+            long start = clock.nanoTime();
+            backend.start();
+            startTime.record(clock.nanoTime() - start);
+            runningBackend = backend;
+        }
+        if (next != mode) {
+            if (mode == Mode.Locating) {
+                for (SpatialAnchorBackend.Watcher watcher : backend.getActiveWatchers()) {
+                    watcher.stop();
+                }
+            }
+            mode = next;
+            modeSwitches.increment();
+        }
+        return backend;
+    }
+
+    synchronized Mode getMode() {
+        return mode;
+    }
+
+    // The started backend, or null before the first enter() and after stop(); frames should
+    // only be fed to it while it is running.
+    SpatialAnchorBackend<A, F> getRunningBackend() {
+        return runningBackend;
+    }
+
+    // Stops the session, keeping the backend and its listeners for the next enter().
+    synchronized void stop() {
+        if (runningBackend == null) {
+            return;
+        }
+        runningBackend = null;
+        mode = Mode.Idle;
+        long start = clock.nanoTime();
+        backend.stop();
+        stopTime.record(clock.nanoTime() - start);
+    }
+
+    // Attached to the current backend, and to the backend once it is built.
+    synchronized SpatialAnchorBackend.Registration addListener(SpatialAnchorBackend.Listener<A> listener) {
+        if (closed) {
+            throw new IllegalStateException("The session manager has been closed.");
+        }
+        ManagedListener managed = new ManagedListener(listener);
+        listeners.add(managed);
+        if (backend != null) {
+            managed.attach(backend);
+        }
+        return () -> {
+            synchronized (SpatialAnchorSessionManager.this) {
+                if (listeners.remove(managed)) {
+                    managed.detach();
+                }
+            }
+        };
+    }
+
+    ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    // Stops the session, detaches every listener and shuts the scheduler down.
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        stop();
+        closed = true;
+        for (ManagedListener listener : listeners) {
+            listener.detach();
+        }
+        listeners.clear();
+        executor.shutdown();
+    }
+
+    private final class ManagedListener {
+        private final SpatialAnchorBackend.Listener<A> listener;
+        private SpatialAnchorBackend.Registration registration;
+
+        ManagedListener(SpatialAnchorBackend.Listener<A> listener) {
+            this.listener = listener;
+        }
+
+        void attach(SpatialAnchorBackend<A, F> backend) {
+            registration = backend.addListener(listener);
+        }
+
+        void detach() {
+            if (registration != null) {
+                registration.remove();
+                registration = null;
+            }
+        }
+    }
+}
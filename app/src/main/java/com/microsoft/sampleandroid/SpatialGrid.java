@@ -0,0 +1,269 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Uniform grid over 3D points: items are bucketed by the cell containing their position, so a
+// radius query only visits the cells overlapping the query sphere, and a nearest query only the
+// shells of cells around the point until nothing closer can remain. Moving an item only touches
+// its old and new cells. Not thread-safe.
+class SpatialGrid<T> {
+    // Cell coordinates are packed into a long with 21 bits per axis.
+    private static final int AXIS_BITS = 21;
+    private static final long AXIS_MASK = (1L << AXIS_BITS) - 1;
+    private static final int AXIS_OFFSET = 1 << (AXIS_BITS - 1);
+
+    private final float cellSize;
+    private final Map<T, Entry<T>> entries = new HashMap<>();
+    private final Map<Long, ArrayList<Entry<T>>> cells = new HashMap<>();
+
+    SpatialGrid(float cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("cellSize must be positive.");
+        }
+        this.cellSize = cellSize;
+    }
+
+    // Inserts the item, or moves it if it is already present.
+    void put(T item, float x, float y, float z) {
+        Entry<T> entry = entries.get(item);
+        long cell = cellKey(cellIndex(x), cellIndex(y), cellIndex(z));
+        if (entry == null) {
+            entry = new Entry<>(item);
+            entries.put(item, entry);
+        } else if (entry.cell != cell) {
+            removeFromCell(entry);
+        } else {
+            entry.set(x, y, z, cell);
+            return;
+        }
+        entry.set(x, y, z, cell);
+        ArrayList<Entry<T>> bucket = cells.get(cell);
+        if (bucket == null) {
+            bucket = new ArrayList<>(4);
+            cells.put(cell, bucket);
+        }
+        bucket.add(entry);
+    }
+
+    boolean remove(T item) {
+        Entry<T> entry = entries.remove(item);
+        if (entry == null) {
+            return false;
+        }
+        removeFromCell(entry);
+        return true;
+    }
+
+    boolean contains(T item) {
+        return entries.containsKey(item);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    // Squared distance from the item to the point, or NaN if the item is not present.
+    float distanceSquared(T item, float x, float y, float z) {
+        Entry<T> entry = entries.get(item);
+        if (entry == null) {
+            return Float.NaN;
+        }
+        float dx = entry.x - x;
+        float dy = entry.y - y;
+        float dz = entry.z - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    void clear() {
+        entries.clear();
+        cells.clear();
+    }
+
+    // Items within radius of the point, nearest first, at most limit of them.
+    List<T> findWithin(float x, float y, float z, float radius, int limit) {
+        if (limit <= 0 || entries.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        ArrayList<Entry<T>> found = new ArrayList<>();
+        float radiusSquared = radius * radius;
+        int minX = cellIndex(x - radius);
+        int maxX = cellIndex(x + radius);
+        int minY = cellIndex(y - radius);
+        int maxY = cellIndex(y + radius);
+        int minZ = cellIndex(z - radius);
+        int maxZ = cellIndex(z + radius);
+
+        long cellsInRange = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+        if (cellsInRange > cells.size()) {
+            // Sparse grid relative to the query volume: scanning occupied cells is cheaper.
+            for (ArrayList<Entry<T>> bucket : cells.values()) {
+                collect(bucket, x, y, z, radiusSquared, found);
+            }
+        } else {
+            for (int cx = minX; cx <= maxX; cx++) {
+                for (int cy = minY; cy <= maxY; cy++) {
+                    for (int cz = minZ; cz <= maxZ; cz++) {
+                        ArrayList<Entry<T>> bucket = cells.get(cellKey(cx, cy, cz));
+                        if (bucket != null) {
+                            collect(bucket, x, y, z, radiusSquared, found);
+                        }
+                    }
+                }
+            }
+        }
+
+        Collections.sort(found, (a, b) -> Float.compare(a.distanceSquared, b.distanceSquared));
+        int count = Math.min(limit, found.size());
+        List<T> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(found.get(i).item);
+        }
+        return result;
+    }
+
+    // The limit items nearest the point, nearest first. Cells are searched in shells of growing
+    // distance, stopping once no unvisited cell can hold anything closer than the furthest kept.
+    List<T> findNearest(float x, float y, float z, int limit) {
+        if (limit <= 0 || entries.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Max-heap on distance: the head is the furthest of the nearest found so far.
+        PriorityQueue<Entry<T>> nearest = new PriorityQueue<>(Math.min(limit, entries.size()),
+                (a, b) -> Float.compare(b.distanceSquared, a.distanceSquared));
+        int cx = cellIndex(x);
+        int cy = cellIndex(y);
+        int cz = cellIndex(z);
+        for (int ring = 0; ; ring++) {
+            long side = 2L * ring + 1;
+            if (side * side * side > cells.size()) {
+                // The shells now span more cells than are occupied: finish with one full scan.
+                nearest.clear();
+                for (ArrayList<Entry<T>> bucket : cells.values()) {
+                    offerNearest(bucket, x, y, z, limit, nearest);
+                }
+                break;
+            }
+            for (int dx = -ring; dx <= ring; dx++) {
+                for (int dy = -ring; dy <= ring; dy++) {
+                    boolean onShell = Math.abs(dx) == ring || Math.abs(dy) == ring;
+                    int step = onShell || ring == 0 ? 1 : 2 * ring;
+                    for (int dz = -ring; dz <= ring; dz += step) {
+                        ArrayList<Entry<T>> bucket = cells.get(cellKey(cx + dx, cy + dy, cz + dz));
+                        if (bucket != null) {
+                            offerNearest(bucket, x, y, z, limit, nearest);
+                        }
+                    }
+                }
+            }
+            // Every cell outside the shells searched so far is at least ring cells away.
+            float reach = ring * cellSize;
+            if (nearest.size() == limit && nearest.peek().distanceSquared <= reach * reach) {
+                break;
+            }
+        }
+
+        Entry<T>[] sorted = toArray(nearest);
+        Arrays.sort(sorted, (a, b) -> Float.compare(a.distanceSquared, b.distanceSquared));
+        List<T> result = new ArrayList<>(sorted.length);
+        for (Entry<T> entry : sorted) {
+            result.add(entry.item);
+        }
+        return result;
+    }
+
+    private static <T> void offerNearest(ArrayList<Entry<T>> bucket, float x, float y, float z,
+                                         int limit, PriorityQueue<Entry<T>> nearest) {
+        for (int i = 0, n = bucket.size(); i < n; i++) {
+            Entry<T> entry = bucket.get(i);
+            float dx = entry.x - x;
+            float dy = entry.y - y;
+            float dz = entry.z - z;
+            float distanceSquared = dx * dx + dy * dy + dz * dz;
+            if (nearest.size() < limit) {
+                entry.distanceSquared = distanceSquared;
+                nearest.add(entry);
+            } else if (distanceSquared < nearest.peek().distanceSquared) {
+                nearest.poll();
+                entry.distanceSquared = distanceSquared;
+                nearest.add(entry);
+            }
+        }
+    }
+
+    // A generic array cannot be created, but a wildcard one can; every element is an Entry<T>.
+    @SuppressWarnings("unchecked")
+    private static <T> Entry<T>[] toArray(PriorityQueue<Entry<T>> queue) {
+        return (Entry<T>[]) queue.toArray(new Entry<?>[0]);
+    }
+
+    private static <T> void collect(ArrayList<Entry<T>> bucket, float x, float y, float z,
+                                    float radiusSquared, ArrayList<Entry<T>> found) {
+        for (int i = 0, n = bucket.size(); i < n; i++) {
+            Entry<T> entry = bucket.get(i);
+            float dx = entry.x - x;
+            float dy = entry.y - y;
+            float dz = entry.z - z;
+            float distanceSquared = dx * dx + dy * dy + dz * dz;
+            if (distanceSquared <= radiusSquared) {
+                entry.distanceSquared = distanceSquared;
+                found.add(entry);
+            }
+        }
+    }
+
+    private void removeFromCell(Entry<T> entry) {
+        ArrayList<Entry<T>> bucket = cells.get(entry.cell);
+        if (bucket == null) {
+            return;
+        }
+        // Swap-remove; order inside a cell does not matter.
+        int index = bucket.indexOf(entry);
+        int last = bucket.size() - 1;
+        bucket.set(index, bucket.get(last));
+        bucket.remove(last);
+        if (bucket.isEmpty()) {
+            cells.remove(entry.cell);
+        }
+    }
+
+    private int cellIndex(float coordinate) {
+        int index = (int) Math.floor(coordinate / cellSize);
+        return Math.max(-AXIS_OFFSET, Math.min(AXIS_OFFSET - 1, index));
+    }
+
+    private static long cellKey(int cx, int cy, int cz) {
+        return ((cx + AXIS_OFFSET) & AXIS_MASK) << (2 * AXIS_BITS)
+                | ((cy + AXIS_OFFSET) & AXIS_MASK) << AXIS_BITS
+                | ((cz + AXIS_OFFSET) & AXIS_MASK);
+    }
+
+    private static final class Entry<T> {
+        final T item;
+        float x;
+        float y;
+        float z;
+        long cell;
+        float distanceSquared;
+
+        Entry(T item) {
+            this.item = item;
+        }
+
+        void set(float x, float y, float z, long cell) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.cell = cell;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Runs the app's start-up work as a small dependency graph, off the main thread unless a task
+// says otherwise, and traces it. A task starts once all its dependencies have completed; eager
+// tasks are started as soon as they are added, lazy ones by the first require(). A task whose
+// dependency failed fails with the same cause without running.
+//
+// Dependencies must be added before the tasks that use them, so the graph cannot have cycles.
+//
+// The trace holds one span per task and per begin()/close() phase, and milestones such as the
+// first frame, all in nanoseconds since the origin given (the process start in the app). Each
+// also goes to the metrics as startup.<name>_ns: durations for spans, offsets for milestones.
+// Thread-safe.
+class StartupOrchestrator {
+    enum Runs {
+        Background,
+        MainThread,
+    }
+
+    // A finished task or phase, relative to the origin.
+    static final class Span {
+        final String name;
+        final String thread;
+        final long startNanos;
+        final long endNanos;
+        final boolean failed;
+
+        Span(String name, String thread, long startNanos, long endNanos, boolean failed) {
+            this.name = name;
+            this.thread = thread;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.failed = failed;
+        }
+
+        long getDurationNanos() {
+            return endNanos - startNanos;
+        }
+    }
+
+    // Work done inline, e.g. in onCreate; close() ends it.
+    final class Phase implements AutoCloseable {
+        private final String name;
+        private final long startNanos;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Phase(String name) {
+            this.name = name;
+            startNanos = clock.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                addSpan(name, startNanos, false);
+            }
+        }
+    }
+
+    private static final class Task<T> {
+        final String name;
+        final Runs runs;
+        final Callable<T> work;
+        final List<Task<?>> dependencies;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final AtomicBoolean started = new AtomicBoolean();
+
+        Task(String name, Runs runs, Callable<T> work, List<Task<?>> dependencies) {
+            this.name = name;
+            this.runs = runs;
+            this.work = work;
+            this.dependencies = dependencies;
+        }
+    }
+
+    private final Executor background;
+    private final Executor mainThread;
+    private final FrameScheduler.Clock clock;
+    private final long originNanos;
+    private final MetricsRegistry metrics;
+    private final Map<String, Task<?>> tasks = new ConcurrentHashMap<>();
+    private final List<Span> spans = new CopyOnWriteArrayList<>();
+    private final Map<String, Long> milestones = new ConcurrentHashMap<>();
+
+    StartupOrchestrator(Executor background, Executor mainThread, FrameScheduler.Clock clock, long originNanos,
+                        MetricsRegistry metrics) {
+        this.background = background;
+        this.mainThread = mainThread;
+        this.clock = clock;
+        this.originNanos = originNanos;
+        this.metrics = metrics;
+    }
+
+    // Adds a task and starts it once its dependencies are done.
+    <T> CompletableFuture<T> task(String name, Runs runs, Callable<T> work, String... dependencies) {
+        Task<T> task = add(name, runs, work, dependencies);
+        start(task);
+        return task.result;
+    }
+
+    // Adds a task that only starts when something requires it, or a task depending on it starts.
+    <T> CompletableFuture<T> lazyTask(String name, Runs runs, Callable<T> work, String... dependencies) {
+        return add(name, runs, work, dependencies).result;
+    }
+
+    // Starts the task if it has not started yet; completes when it has run.
+    CompletableFuture<?> require(String name) {
+        Task<?> task = tasks.get(name);
+        if (task == null) {
+            throw new IllegalArgumentException("No start-up task named " + name + ".");
+        }
+        start(task);
+        return task.result;
+    }
+
+    Phase begin(String name) {
+        return new Phase(name);
+    }
+
+    // Records when something first happened; later calls for the same name are ignored.
+    void mark(String name) {
+        long offset = clock.nanoTime() - originNanos;
+        if (milestones.putIfAbsent(name, offset) == null) {
+            metrics.histogram("startup." + name + "_ns").record(offset);
+        }
+    }
+
+    // Nanoseconds from the origin to the milestone, or -1 if it has not happened.
+    long getMilestoneNanos(String name) {
+        Long offset = milestones.get(name);
+        return offset != null ? offset : -1;
+    }
+
+    // Finished spans, in the order they started.
+    List<Span> getSpans() {
+        List<Span> sorted = new ArrayList<>(spans);
+        sorted.sort(Comparator.comparingLong(span -> span.startNanos));
+        return sorted;
+    }
+
+    Span getSpan(String name) {
+        for (Span span : spans) {
+            if (span.name.equals(name)) {
+                return span;
+            }
+        }
+        return null;
+    }
+
+    // One line per span and milestone, in time order, for the log.
+    String formatTrace() {
+        List<Map.Entry<Long, String>> lines = new ArrayList<>();
+        for (Span span : spans) {
+            lines.add(new AbstractMap.SimpleEntry<>(span.startNanos, String.format(Locale.ROOT,
+                    "%9.1f ms %8.1f ms  %s [%s]%s", span.startNanos / 1e6, span.getDurationNanos() / 1e6,
+                    span.name, span.thread, span.failed ? " failed" : "")));
+        }
+        for (Map.Entry<String, Long> milestone : milestones.entrySet()) {
+            lines.add(new AbstractMap.SimpleEntry<>(milestone.getValue(), String.format(Locale.ROOT,
+                    "%9.1f ms %11s  %s", milestone.getValue() / 1e6, "", milestone.getKey())));
+        }
+        lines.sort(Map.Entry.comparingByKey());
+        StringBuilder trace = new StringBuilder();
+        for (Map.Entry<Long, String> line : lines) {
+            trace.append(line.getValue()).append('\n');
+        }
+        return trace.toString();
+    }
+
+    private <T> Task<T> add(String name, Runs runs, Callable<T> work, String... dependencies) {
+        List<Task<?>> resolved = new ArrayList<>();
+        for (String dependency : dependencies) {
+            Task<?> task = tasks.get(dependency);
+            if (task == null) {
+                throw new IllegalArgumentException(name + " depends on " + dependency + ", which has not been added.");
+            }
+            resolved.add(task);
+        }
+        Task<T> task = new Task<>(name, runs, work, resolved);
+        if (tasks.putIfAbsent(name, task) != null) {
+            throw new IllegalArgumentException("A start-up task named " + name + " was already added.");
+        }
+        return task;
+    }
+
+    private <T> void start(Task<T> task) {
+        if (!task.started.compareAndSet(false, true)) {
+            return;
+        }
+        CompletableFuture<?>[] dependencies = new CompletableFuture<?>[task.dependencies.size()];
+        for (int i = 0; i < dependencies.length; i++) {
+            Task<?> dependency = task.dependencies.get(i);
+            start(dependency);
+            dependencies[i] = dependency.result;
+        }
+        CompletableFuture.allOf(dependencies).whenComplete((ignored, error) -> {
+            if (error != null) {
+                task.result.completeExceptionally(RetryPolicy.unwrap(error));
+                return;
+            }
+            Executor executor = task.runs == Runs.MainThread ? mainThread : background;
+            executor.execute(() -> run(task));
+        });
+    }
+
+    private <T> void run(Task<T> task) {
+        long startNanos = clock.nanoTime();
+        T value;
+        try {
+            value = task.work.call();
+        } catch (Exception e) {
+            addSpan(task.name, startNanos, true);
+            task.result.completeExceptionally(e);
+            return;
+        }
+        addSpan(task.name, startNanos, false);
+        task.result.complete(value);
+    }
+
+    private void addSpan(String name, long startNanos, boolean failed) {
+        long endNanos = clock.nanoTime();
+        spans.add(new Span(name, Thread.currentThread().getName(), startNanos - originNanos, endNanos - originNanos, failed));
+        metrics.histogram("startup." + name + "_ns").record(endNanos - startNanos);
+    }
+}
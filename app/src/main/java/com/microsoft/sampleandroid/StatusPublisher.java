@@ -0,0 +1,89 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.Objects;
+
+// Delivers status changes to the UI only when they change. Events on any thread publish the
+// current status; bursts are coalesced into one delivery on the UI thread through the
+// dispatcher, and a status equal to the one last delivered is dropped. Nothing runs while no
+// status changes, and nothing at all between pause and resume.
+//
+// Publishing null means the status line is not owned by this publisher right now (other code
+// writes it directly); the next non-null status is then always delivered.
+class StatusPublisher<S> {
+    interface Listener<S> {
+        void onStatusChanged(S status);
+    }
+
+    private final CoalescingDispatcher dispatcher;
+    private final Object deliveryKey = new Object();
+
+    private S latest;
+    private S delivered;
+    private Listener<S> listener;
+    private long published;
+    private long deliveries;
+
+    StatusPublisher(CoalescingDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    void publish(S status) {
+        synchronized (this) {
+            published++;
+            if (Objects.equals(status, latest)) {
+                return;
+            }
+            latest = status;
+            if (status == null) {
+                delivered = null;
+                dispatcher.cancel(deliveryKey);
+                return;
+            }
+            if (listener == null) {
+                return;
+            }
+        }
+        dispatcher.run(deliveryKey, this::deliver);
+    }
+
+    // Starts delivering to the listener, beginning with the current status if it has not
+    // been delivered yet.
+    void resume(Listener<S> listener) {
+        synchronized (this) {
+            this.listener = listener;
+        }
+        dispatcher.run(deliveryKey, this::deliver);
+    }
+
+    void pause() {
+        synchronized (this) {
+            listener = null;
+        }
+        dispatcher.cancel(deliveryKey);
+    }
+
+    synchronized long getPublishedCount() {
+        return published;
+    }
+
+    synchronized long getDeliveryCount() {
+        return deliveries;
+    }
+
+    private void deliver() {
+        Listener<S> target;
+        S status;
+        synchronized (this) {
+            target = listener;
+            status = latest;
+            if (target == null || status == null || status.equals(delivered)) {
+                return;
+            }
+            delivered = status;
+            deliveries++;
+        }
+        target.onStatusChanged(status);
+    }
+}
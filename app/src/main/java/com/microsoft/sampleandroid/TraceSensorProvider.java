@@ -0,0 +1,65 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+// Plays a SensorTrace back in real time against a clock, starting from its first sample when
+// start() is called. Sensor statuses follow the current sample: Available while it has data for
+// that sensor, Unavailable while it does not, Indeterminate before start.
+class TraceSensorProvider implements SensorProvider {
+    private final SensorTrace trace;
+    private final FrameScheduler.Clock clock;
+    private final boolean loop;
+
+    private volatile boolean started;
+    private volatile long startNanos;
+
+    // loop: restart from the first sample once the trace has played through.
+    TraceSensorProvider(SensorTrace trace, FrameScheduler.Clock clock, boolean loop) {
+        this.trace = trace;
+        this.clock = clock;
+        this.loop = loop;
+    }
+
+    @Override
+    public void start() {
+        startNanos = clock.nanoTime();
+        started = true;
+    }
+
+    @Override
+    public void stop() {
+        started = false;
+    }
+
+    @Override
+    public SensorFingerprint read() {
+        if (!started) {
+            return SensorFingerprint.EMPTY;
+        }
+        long elapsedMillis = (clock.nanoTime() - startNanos) / 1_000_000L;
+        long duration = trace.getDurationMillis();
+        if (loop && duration > 0) {
+            elapsedMillis %= duration + 1;
+        }
+        return trace.at(trace.getStartMillis() + elapsedMillis);
+    }
+
+    @Override
+    public Status getGeoLocationStatus() {
+        return started ? status(read().hasLocation()) : Status.Indeterminate;
+    }
+
+    @Override
+    public Status getWifiStatus() {
+        return started ? status(read().getWifiCount() > 0) : Status.Indeterminate;
+    }
+
+    @Override
+    public Status getBluetoothStatus() {
+        return started ? status(read().getBeaconCount() > 0) : Status.Indeterminate;
+    }
+
+    private static Status status(boolean hasData) {
+        return hasData ? Status.Available : Status.Unavailable;
+    }
+}
@@ -0,0 +1,270 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Append-only log of anchor uploads that have not been confirmed by the service yet, so they
+// can be picked up again after the app is killed mid-save. One RecordLog record per change:
+//   payload := byte op, long uploadId,
+//              [ENQUEUED: long enqueuedAtMillis, float[7] pose, int color, UTF shape,
+//                         short propertyCount, (UTF key, UTF value)*]
+//              [SAVED: UTF identifier] [ABANDONED: UTF reason]
+//
+// Appends are buffered; sync() flushes and fsyncs everything appended so far, so callers can
+// batch many appends per fsync, and appends from other threads do not wait for the fsync.
+// Replay keeps the ENQUEUED entries with no later SAVED or ABANDONED entry and truncates a torn
+// tail. Once the log holds more than COMPACTION_RATIO entries per pending upload, the next
+// sync() rewrites it with only those instead. Thread-safe.
+class UploadJournal implements Closeable {
+    private static final byte OP_ENQUEUED = 1;
+    private static final byte OP_SAVED = 2;
+    private static final byte OP_ABANDONED = 3;
+    private static final int COMPACTION_RATIO = 4;
+    private static final int MIN_COMPACTION_ENTRIES = 256;
+
+    // What is needed to save an anchor again: where it was and how it looked.
+    static final class Entry {
+        private final long uploadId;
+        private final long enqueuedAtMillis;
+        private final float[] pose;
+        private final int color;
+        private final String shape;
+        private final Map<String, String> appProperties;
+
+        Entry(long uploadId, long enqueuedAtMillis, float[] pose, int color, String shape,
+              Map<String, String> appProperties) {
+            if (pose.length != AnchorRecord.POSE_LENGTH) {
+                throw new IllegalArgumentException("The pose must have " + AnchorRecord.POSE_LENGTH + " components.");
+            }
+            this.uploadId = uploadId;
+            this.enqueuedAtMillis = enqueuedAtMillis;
+            this.pose = pose.clone();
+            this.color = color;
+            this.shape = shape;
+            this.appProperties = Collections.unmodifiableMap(new HashMap<>(appProperties));
+        }
+
+        long getUploadId() {
+            return uploadId;
+        }
+
+        long getEnqueuedAtMillis() {
+            return enqueuedAtMillis;
+        }
+
+        float[] getPose() {
+            return pose.clone();
+        }
+
+        int getColor() {
+            return color;
+        }
+
+        String getShape() {
+            return shape;
+        }
+
+        Map<String, String> getAppProperties() {
+            return appProperties;
+        }
+    }
+
+    // One sync or compaction at a time; taken before the journal's own lock, never after.
+    private final Object syncLock = new Object();
+    private final LinkedHashMap<Long, Entry> pending = new LinkedHashMap<>();
+    private final ByteArrayOutputStream scratch = new ByteArrayOutputStream(256);
+    private final DataOutputStream scratchOut = new DataOutputStream(scratch);
+
+    private RecordLog log;
+    private long nextUploadId = 1;
+    private int logEntries;
+    private int unsyncedEntries;
+    private boolean compactionDue;
+    private long syncs;
+
+    private UploadJournal() {
+    }
+
+    static UploadJournal open(File file) throws IOException {
+        UploadJournal journal = new UploadJournal();
+        journal.log = RecordLog.open(file, payload -> {
+            journal.decode(payload);
+            journal.logEntries++;
+        });
+        return journal;
+    }
+
+    // Logs a new upload and returns its entry; durable after the next sync().
+    synchronized Entry append(long enqueuedAtMillis, float[] pose, int color, String shape,
+                              Map<String, String> appProperties) throws IOException {
+        Entry entry = new Entry(nextUploadId++, enqueuedAtMillis, pose, color, shape, appProperties);
+        write(encodeEnqueued(entry));
+        pending.put(entry.getUploadId(), entry);
+        return entry;
+    }
+
+    synchronized void markSaved(long uploadId, String identifier) throws IOException {
+        finish(OP_SAVED, uploadId, identifier);
+    }
+
+    synchronized void markAbandoned(long uploadId, String reason) throws IOException {
+        finish(OP_ABANDONED, uploadId, reason);
+    }
+
+    // Flushes and fsyncs every entry appended so far. Returns how many were written since the
+    // previous sync; 0 costs nothing.
+    int sync() throws IOException {
+        synchronized (syncLock) {
+            int synced;
+            synchronized (this) {
+                if (compactionDue) {
+                    compactionDue = false;
+                    try {
+                        // The rewritten log is forced to disk, and holds everything still pending.
+                        compact();
+                        synced = unsyncedEntries;
+                        unsyncedEntries = 0;
+                        syncs++;
+                        return synced;
+                    } catch (IOException e) {
+                        // The old log was kept; sync it as usual and compact after later finishes.
+                    }
+                }
+                if (unsyncedEntries == 0) {
+                    return 0;
+                }
+                log.flush();
+                synced = unsyncedEntries;
+                unsyncedEntries = 0;
+            }
+            // Outside the journal's lock, so appends carry on while the disk catches up.
+            try {
+                log.force();
+            } catch (IOException e) {
+                synchronized (this) {
+                    unsyncedEntries += synced;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                syncs++;
+            }
+            return synced;
+        }
+    }
+
+    // Uploads logged and not finished, oldest first.
+    synchronized List<Entry> getPending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    synchronized long getSyncCount() {
+        return syncs;
+    }
+
+    synchronized int getLogEntryCount() {
+        return logEntries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            sync();
+            synchronized (this) {
+                log.close();
+            }
+        }
+    }
+
+    private void finish(byte op, long uploadId, String detail) throws IOException {
+        if (pending.remove(uploadId) == null) {
+            return;
+        }
+        scratch.reset();
+        scratchOut.writeByte(op);
+        scratchOut.writeLong(uploadId);
+        scratchOut.writeUTF(detail);
+        scratchOut.flush();
+        write(scratch.toByteArray());
+        if (logEntries > MIN_COMPACTION_ENTRIES && logEntries > COMPACTION_RATIO * pending.size()) {
+            compactionDue = true;
+        }
+    }
+
+    // Rewrites the log with the pending uploads only.
+    private void compact() throws IOException {
+        List<byte[]> payloads = new ArrayList<>(pending.size());
+        for (Entry entry : pending.values()) {
+            payloads.add(encodeEnqueued(entry));
+        }
+        log.rewrite(payloads);
+        logEntries = pending.size();
+    }
+
+    private void write(byte[] payload) throws IOException {
+        log.append(payload);
+        logEntries++;
+        unsyncedEntries++;
+    }
+
+    private byte[] encodeEnqueued(Entry entry) throws IOException {
+        scratch.reset();
+        scratchOut.writeByte(OP_ENQUEUED);
+        scratchOut.writeLong(entry.getUploadId());
+        scratchOut.writeLong(entry.getEnqueuedAtMillis());
+        for (float component : entry.pose) {
+            scratchOut.writeFloat(component);
+        }
+        scratchOut.writeInt(entry.getColor());
+        scratchOut.writeUTF(entry.getShape());
+        scratchOut.writeShort(entry.getAppProperties().size());
+        for (Map.Entry<String, String> property : entry.getAppProperties().entrySet()) {
+            scratchOut.writeUTF(property.getKey());
+            scratchOut.writeUTF(property.getValue());
+        }
+        scratchOut.flush();
+        return scratch.toByteArray();
+    }
+
+    private void decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        long uploadId = in.readLong();
+        nextUploadId = Math.max(nextUploadId, uploadId + 1);
+        if (op != OP_ENQUEUED) {
+            pending.remove(uploadId);
+            return;
+        }
+
+        long enqueuedAt = in.readLong();
+        float[] pose = new float[AnchorRecord.POSE_LENGTH];
+        for (int i = 0; i < pose.length; i++) {
+            pose[i] = in.readFloat();
+        }
+        int color = in.readInt();
+        String shape = in.readUTF();
+        int propertyCount = in.readUnsignedShort();
+        Map<String, String> properties = new HashMap<>(propertyCount * 2);
+        for (int i = 0; i < propertyCount; i++) {
+            properties.put(in.readUTF(), in.readUTF());
+        }
+        pending.put(uploadId, new Entry(uploadId, enqueuedAt, pose, color, shape, properties));
+    }
+}
@@ -0,0 +1,193 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+// Tracks which items are close enough to the camera to be shown, over a SpatialGrid of their
+// world positions. Items are shown once within showRadius and hidden again only beyond
+// hideRadius, so one sitting at the edge does not flicker as the camera moves.
+//
+// update() only queries the cells around the camera, and is skipped entirely while neither the
+// camera nor any item has moved noticeably. Positions that drift as tracking refines are picked
+// up a few items per frame by refreshPositions(). Not thread-safe; the app uses it from the
+// UI thread.
+class VisibilityManager<T> {
+    interface Listener<T> {
+        void onShow(T item);
+
+        void onHide(T item);
+    }
+
+    // Reports an item's current world position into out, or returns false if it is unknown.
+    interface PositionSource<T> {
+        boolean read(T item, float[] out);
+    }
+
+    private final SpatialGrid<T> grid;
+    private final float showRadius;
+    private final float hideRadius;
+    private final float updateDistance;
+    private final Listener<T> listener;
+
+    private final HashSet<T> visible = new HashSet<>();
+    private final Collection<T> visibleView = Collections.unmodifiableSet(visible);
+    // Items in insertion order for round-robin position refreshes, with their indices for
+    // constant-time removal.
+    private final ArrayList<T> items = new ArrayList<>();
+    private final Map<T, Integer> itemIndices = new HashMap<>();
+    private final float[] scratch = new float[3];
+    private int refreshCursor;
+
+    private boolean dirty = true;
+    private float lastX;
+    private float lastY;
+    private float lastZ;
+    private long updates;
+    private long skippedUpdates;
+
+    // updateDistance: how far the camera must move before visibility is evaluated again.
+    VisibilityManager(float cellSize, float showRadius, float hideRadius, float updateDistance, Listener<T> listener) {
+        if (hideRadius < showRadius) {
+            throw new IllegalArgumentException("hideRadius must not be less than showRadius.");
+        }
+        this.grid = new SpatialGrid<>(cellSize);
+        this.showRadius = showRadius;
+        this.hideRadius = hideRadius;
+        this.updateDistance = updateDistance;
+        this.listener = listener;
+    }
+
+    // Adds the item, shown until an update finds it out of range, or moves it.
+    void put(T item, float x, float y, float z) {
+        if (!grid.contains(item)) {
+            itemIndices.put(item, items.size());
+            items.add(item);
+            visible.add(item);
+        }
+        grid.put(item, x, y, z);
+        dirty = true;
+    }
+
+    // Forgets the item without a callback.
+    void remove(T item) {
+        Integer index = itemIndices.remove(item);
+        if (index == null) {
+            return;
+        }
+        int last = items.size() - 1;
+        T moved = items.get(last);
+        items.set(index, moved);
+        items.remove(last);
+        if (moved != item) {
+            itemIndices.put(moved, index);
+        }
+        grid.remove(item);
+        visible.remove(item);
+    }
+
+    void clear() {
+        grid.clear();
+        items.clear();
+        itemIndices.clear();
+        visible.clear();
+        refreshCursor = 0;
+        dirty = true;
+    }
+
+    // Re-reads the positions of up to budget items, continuing where the last call stopped.
+    void refreshPositions(int budget, PositionSource<T> source) {
+        int count = Math.min(budget, items.size());
+        for (int i = 0; i < count; i++) {
+            if (refreshCursor >= items.size()) {
+                refreshCursor = 0;
+            }
+            T item = items.get(refreshCursor++);
+            if (source.read(item, scratch)) {
+                // Small refinements are tracked but do not force a visibility pass.
+                if (grid.distanceSquared(item, scratch[0], scratch[1], scratch[2]) >= updateDistance * updateDistance) {
+                    dirty = true;
+                }
+                grid.put(item, scratch[0], scratch[1], scratch[2]);
+            }
+        }
+    }
+
+    // Shows and hides items for the camera position.
+    void update(float x, float y, float z) {
+        float dx = x - lastX;
+        float dy = y - lastY;
+        float dz = z - lastZ;
+        if (!dirty && dx * dx + dy * dy + dz * dz < updateDistance * updateDistance) {
+            skippedUpdates++;
+            return;
+        }
+        dirty = false;
+        lastX = x;
+        lastY = y;
+        lastZ = z;
+        updates++;
+
+        // Everything within the hide radius, nearest first: the ones inside the show radius
+        // become visible, the rest keep their state, and anything visible but not found hides.
+        List<T> inRange = grid.findWithin(x, y, z, hideRadius, Integer.MAX_VALUE);
+        HashSet<T> keep = new HashSet<>(inRange.size() * 2);
+        float showSquared = showRadius * showRadius;
+        for (T item : inRange) {
+            if (visible.contains(item)) {
+                keep.add(item);
+            } else if (grid.distanceSquared(item, x, y, z) <= showSquared) {
+                keep.add(item);
+                visible.add(item);
+                listener.onShow(item);
+            }
+        }
+        if (keep.size() < visible.size()) {
+            ArrayList<T> hidden = new ArrayList<>();
+            for (T item : visible) {
+                if (!keep.contains(item)) {
+                    hidden.add(item);
+                }
+            }
+            for (T item : hidden) {
+                visible.remove(item);
+                listener.onHide(item);
+            }
+        }
+    }
+
+    boolean isVisible(T item) {
+        return visible.contains(item);
+    }
+
+    // Live view of the visible items.
+    Collection<T> getVisible() {
+        return visibleView;
+    }
+
+    List<T> findWithin(float x, float y, float z, float radius, int limit) {
+        return grid.findWithin(x, y, z, radius, limit);
+    }
+
+    List<T> findNearest(float x, float y, float z, int limit) {
+        return grid.findNearest(x, y, z, limit);
+    }
+
+    int size() {
+        return items.size();
+    }
+
+    long getUpdateCount() {
+        return updates;
+    }
+
+    long getSkippedUpdateCount() {
+        return skippedUpdates;
+    }
+}
@@ -0,0 +1,241 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// Every anchor being created or looked for gets its own Workflow, so several placements, saves
+// and lookups can be in flight without sharing a "the pending anchor" slot. A workflow's state
+// moves with compare-and-set along the edges of its Kind only: when SDK threads and the UI race
+// to finish the same workflow, exactly one transition wins and the others see false.
+//
+//   Create: Creating -> Saving -> Succeeded | Failed | Cancelled
+//           Creating -> Failed | Cancelled
+//   Locate: Locating -> Succeeded | Failed | Cancelled
+//
+// Metrics, per kind and state (e.g. workflow.create.saving_ns): time spent in each state, and
+// workflow.<kind>.<terminal state> counting how workflows ended. workflow.lost_races counts
+// transitions that found the workflow already moved on. Lock-free.
+class WorkflowEngine<T> {
+    enum State {
+        Creating,
+        Saving,
+        Locating,
+        Succeeded,
+        Failed,
+        Cancelled;
+
+        boolean isTerminal() {
+            return this == Succeeded || this == Failed || this == Cancelled;
+        }
+    }
+
+    enum Kind {
+        Create(State.Creating),
+        Locate(State.Locating);
+
+        final State initial;
+
+        Kind(State initial) {
+            this.initial = initial;
+        }
+
+        boolean allows(State from, State to) {
+            if (from.isTerminal()) {
+                return false;
+            }
+            switch (from) {
+                case Creating:
+                    return this == Create && (to == State.Saving || to == State.Failed || to == State.Cancelled);
+                case Saving:
+                    return this == Create && to.isTerminal();
+                case Locating:
+                    return this == Locate && to.isTerminal();
+                default:
+                    return false;
+            }
+        }
+    }
+
+    interface Listener<T> {
+        // Called on the thread that won the transition.
+        void onTransition(Workflow<T> workflow, State from, State to);
+    }
+
+    private static final class Stamp {
+        final State state;
+        final long enteredAtNanos;
+
+        Stamp(State state, long enteredAtNanos) {
+            this.state = state;
+            this.enteredAtNanos = enteredAtNanos;
+        }
+    }
+
+    static final class Workflow<T> {
+        private final WorkflowEngine<T> engine;
+        private final long id;
+        private final Kind kind;
+        private final T subject;
+        private final long startedAtNanos;
+        private final AtomicReference<Stamp> stamp;
+
+        private Workflow(WorkflowEngine<T> engine, long id, Kind kind, T subject, long now) {
+            this.engine = engine;
+            this.id = id;
+            this.kind = kind;
+            this.subject = subject;
+            startedAtNanos = now;
+            stamp = new AtomicReference<>(new Stamp(kind.initial, now));
+        }
+
+        // Moves from one given state to another. The edge must exist for this kind; returns
+        // false if the workflow was no longer in from.
+        boolean transition(State from, State to) {
+            if (!kind.allows(from, to)) {
+                throw new IllegalArgumentException(kind + " workflows cannot go from " + from + " to " + to + ".");
+            }
+            Stamp current = stamp.get();
+            if (current.state != from || !commit(current, to)) {
+                engine.lostRaces.increment();
+                return false;
+            }
+            return true;
+        }
+
+        // Moves to a state from whichever state the workflow is in, if that edge exists. Returns
+        // false once the workflow has ended or moved past to.
+        boolean advance(State to) {
+            while (true) {
+                Stamp current = stamp.get();
+                if (!kind.allows(current.state, to)) {
+                    engine.lostRaces.increment();
+                    return false;
+                }
+                if (commit(current, to)) {
+                    return true;
+                }
+            }
+        }
+
+        boolean cancel() {
+            return advance(State.Cancelled);
+        }
+
+        State getState() {
+            return stamp.get().state;
+        }
+
+        boolean isActive() {
+            return !getState().isTerminal();
+        }
+
+        long getId() {
+            return id;
+        }
+
+        Kind getKind() {
+            return kind;
+        }
+
+        T getSubject() {
+            return subject;
+        }
+
+        // Time since the workflow started.
+        long getElapsedNanos() {
+            return engine.clock.nanoTime() - startedAtNanos;
+        }
+
+        private boolean commit(Stamp current, State to) {
+            long now = engine.clock.nanoTime();
+            if (!stamp.compareAndSet(current, new Stamp(to, now))) {
+                return false;
+            }
+            engine.onTransition(this, current.state, to, now - current.enteredAtNanos);
+            return true;
+        }
+    }
+
+    private final FrameScheduler.Clock clock;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final ConcurrentHashMap<Long, Workflow<T>> active = new ConcurrentHashMap<>();
+    private final LatencyHistogram[][] stateTimes = new LatencyHistogram[Kind.values().length][State.values().length];
+    private final LongAdder[][] endings = new LongAdder[Kind.values().length][State.values().length];
+    private final LongAdder lostRaces;
+    private volatile Listener<T> listener;
+
+    WorkflowEngine(FrameScheduler.Clock clock, MetricsRegistry metrics) {
+        this.clock = clock;
+        for (Kind kind : Kind.values()) {
+            String prefix = "workflow." + kind.name().toLowerCase(Locale.ROOT) + ".";
+            for (State state : State.values()) {
+                String name = prefix + state.name().toLowerCase(Locale.ROOT);
+                if (state.isTerminal()) {
+                    endings[kind.ordinal()][state.ordinal()] = metrics.counter(name);
+                } else if (state == kind.initial || kind.allows(kind.initial, state)) {
+                    stateTimes[kind.ordinal()][state.ordinal()] = metrics.histogram(name + "_ns");
+                }
+            }
+        }
+        lostRaces = metrics.counter("workflow.lost_races");
+    }
+
+    void setListener(Listener<T> listener) {
+        this.listener = listener;
+    }
+
+    Workflow<T> start(Kind kind, T subject) {
+        Workflow<T> workflow = new Workflow<>(this, nextId.getAndIncrement(), kind, subject, clock.nanoTime());
+        active.put(workflow.getId(), workflow);
+        return workflow;
+    }
+
+    // Workflows that have not ended, in no particular order.
+    List<Workflow<T>> getActive(Kind kind) {
+        List<Workflow<T>> result = new ArrayList<>();
+        for (Workflow<T> workflow : active.values()) {
+            if (workflow.getKind() == kind && workflow.isActive()) {
+                result.add(workflow);
+            }
+        }
+        return result;
+    }
+
+    int getActiveCount() {
+        return active.size();
+    }
+
+    // Cancels every workflow of a kind that has not ended; returns how many this call cancelled.
+    int cancelAll(Kind kind) {
+        int cancelled = 0;
+        for (Workflow<T> workflow : getActive(kind)) {
+            if (workflow.cancel()) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    private void onTransition(Workflow<T> workflow, State from, State to, long nanosInState) {
+        int kind = workflow.getKind().ordinal();
+        LatencyHistogram histogram = stateTimes[kind][from.ordinal()];
+        if (histogram != null) {
+            histogram.record(nanosInState);
+        }
+        if (to.isTerminal()) {
+            endings[kind][to.ordinal()].increment();
+            active.remove(workflow.getId());
+        }
+        Listener<T> current = listener;
+        if (current != null) {
+            current.onTransition(workflow, from, to);
+        }
+    }
+}
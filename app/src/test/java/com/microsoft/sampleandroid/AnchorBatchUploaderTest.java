@@ -0,0 +1,246 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AnchorBatchUploaderTest {
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void respectsConcurrencyLimit() throws Exception {
+        FakeSession session = new FakeSession(5, 20);
+        AnchorBatchUploader<String> uploader =
+                new AnchorBatchUploader<>(session::save, scheduler, 3, RetryPolicy.noRetries());
+
+        AnchorBatchUploader.Batch<String> batch = uploader.upload(anchors(40));
+
+        assertEquals(anchors(40), batch.getCompletion().get(5, TimeUnit.SECONDS));
+        assertEquals(3, session.maxInFlight.get());
+        assertEquals(40, session.calls.get());
+        assertEquals(0, uploader.getInFlightCount());
+        assertEquals(0, uploader.getQueuedCount());
+    }
+
+    @Test
+    public void retriesTransientFailures() throws Exception {
+        FakeSession session = new FakeSession(1, 5);
+        session.transientFailuresPerAnchor = 2;
+        RetryPolicy retryPolicy = new RetryPolicy(3, 1, 10, error -> error instanceof TransientError, new Random(1));
+        AnchorBatchUploader<String> uploader = new AnchorBatchUploader<>(session::save, scheduler, 4, retryPolicy);
+
+        AnchorBatchUploader.Batch<String> batch = uploader.upload(anchors(10));
+
+        assertEquals(10, batch.getCompletion().get(5, TimeUnit.SECONDS).size());
+        assertEquals(30, session.calls.get());
+    }
+
+    @Test
+    public void permanentFailuresFailOnlyTheirAnchor() throws Exception {
+        FakeSession session = new FakeSession(1, 5);
+        session.permanentlyFailing = "anchor-3";
+        RetryPolicy retryPolicy = new RetryPolicy(5, 1, 10, error -> error instanceof TransientError);
+        AnchorBatchUploader<String> uploader = new AnchorBatchUploader<>(session::save, scheduler, 2, retryPolicy);
+
+        AnchorBatchUploader.Batch<String> batch = uploader.upload(anchors(6));
+
+        try {
+            batch.getCompletion().get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        List<CompletableFuture<String>> futures = batch.getAnchorFutures();
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(i == 3, futures.get(i).isCompletedExceptionally());
+        }
+        // Non-transient failures are not retried.
+        assertEquals(6, session.calls.get());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws Exception {
+        FakeSession session = new FakeSession(1, 2);
+        session.transientFailuresPerAnchor = Integer.MAX_VALUE;
+        RetryPolicy retryPolicy = new RetryPolicy(3, 1, 4, error -> error instanceof TransientError);
+        AnchorBatchUploader<String> uploader = new AnchorBatchUploader<>(session::save, scheduler, 2, retryPolicy);
+
+        CompletableFuture<String> future = uploader.upload(anchors(1)).getAnchorFutures().get(0);
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TransientError);
+        }
+        assertEquals(3, session.calls.get());
+    }
+
+    @Test
+    public void rejectedRetryFailsTheAnchorAndFreesItsSlot() throws Exception {
+        ScheduledExecutorService stopped = Executors.newSingleThreadScheduledExecutor();
+        stopped.shutdown();
+        RetryPolicy retryPolicy = new RetryPolicy(3, 1, 4, error -> error instanceof TransientError);
+        AnchorBatchUploader<String> uploader = new AnchorBatchUploader<>(anchor -> {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new TransientError());
+            return failed;
+        }, stopped, 1, retryPolicy);
+
+        AnchorBatchUploader.Batch<String> batch = uploader.upload(anchors(2));
+
+        for (CompletableFuture<String> future : batch.getAnchorFutures()) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+        assertEquals(0, uploader.getInFlightCount());
+        assertEquals(0, uploader.getQueuedCount());
+    }
+
+    // A saver that settles on the calling thread finishes each anchor inside the drain that
+    // started it; a large batch must not nest one drain per anchor.
+    @Test
+    public void synchronousSavesDoNotRecursePerAnchor() throws Exception {
+        AnchorBatchUploader<String> failing = new AnchorBatchUploader<>(anchor -> {
+            throw new IllegalStateException("offline");
+        }, scheduler, 1, RetryPolicy.noRetries());
+        AnchorBatchUploader<String> saving =
+                new AnchorBatchUploader<>(CompletableFuture::completedFuture, scheduler, 1, RetryPolicy.noRetries());
+
+        AnchorBatchUploader.Batch<String> failed = failing.upload(anchors(20000));
+        AnchorBatchUploader.Batch<String> saved = saving.upload(anchors(20000));
+
+        for (CompletableFuture<String> future : failed.getAnchorFutures()) {
+            assertTrue(future.isCompletedExceptionally());
+        }
+        assertEquals(anchors(20000), saved.getCompletion().get(5, TimeUnit.SECONDS));
+        assertEquals(0, failing.getInFlightCount());
+        assertEquals(0, saving.getQueuedCount());
+    }
+
+    @Test
+    public void cancelledAnchorIsNotRetried() throws Exception {
+        ScheduledExecutorService retries = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            // Holds the retry back until the anchor has been cancelled.
+            retries.execute(() -> {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            RetryPolicy retryPolicy = new RetryPolicy(3, 1, 4, error -> error instanceof TransientError);
+            AnchorBatchUploader<String> uploader = new AnchorBatchUploader<>(anchor -> {
+                calls.incrementAndGet();
+                CompletableFuture<String> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new TransientError());
+                return failed;
+            }, retries, 1, retryPolicy);
+
+            CompletableFuture<String> future = uploader.upload(anchors(1)).getAnchorFutures().get(0);
+            future.cancel(false);
+            gate.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (uploader.getInFlightCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+
+            assertEquals(0, uploader.getInFlightCount());
+            assertEquals(1, calls.get());
+        } finally {
+            retries.shutdownNow();
+        }
+    }
+
+    @Test
+    public void backoffIsJitteredAndCapped() {
+        RetryPolicy retryPolicy = new RetryPolicy(10, 100, 1000, error -> true, new Random(7));
+        for (int attempt = 1; attempt < 10; attempt++) {
+            long ceiling = Math.min(1000, 100L << (attempt - 1));
+            for (int i = 0; i < 50; i++) {
+                long delay = retryPolicy.nextDelayMs(attempt);
+                assertTrue(delay >= 0 && delay <= ceiling);
+            }
+        }
+    }
+
+    private static List<String> anchors(int count) {
+        List<String> anchors = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            anchors.add("anchor-" + i);
+        }
+        return anchors;
+    }
+
+    private static final class TransientError extends RuntimeException {
+    }
+
+    // Stand-in for the cloud session: completes saves after a random latency and injects failures.
+    private final class FakeSession {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+        final Random random = new Random(3);
+        final int minLatencyMs;
+        final int maxLatencyMs;
+        volatile int transientFailuresPerAnchor;
+        volatile String permanentlyFailing;
+
+        FakeSession(int minLatencyMs, int maxLatencyMs) {
+            this.minLatencyMs = minLatencyMs;
+            this.maxLatencyMs = maxLatencyMs;
+        }
+
+        CompletableFuture<String> save(String anchor) {
+            calls.incrementAndGet();
+            int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+
+            CompletableFuture<String> result = new CompletableFuture<>();
+            int latency;
+            synchronized (random) {
+                latency = minLatencyMs + random.nextInt(maxLatencyMs - minLatencyMs + 1);
+            }
+            scheduler.schedule(() -> {
+                inFlight.decrementAndGet();
+                if (anchor.equals(permanentlyFailing)) {
+                    result.completeExceptionally(new IllegalStateException(anchor));
+                } else if (failures.computeIfAbsent(anchor, key -> new AtomicInteger())
+                        .getAndIncrement() < transientFailuresPerAnchor) {
+                    result.completeExceptionally(new TransientError());
+                } else {
+                    result.complete(anchor);
+                }
+            }, latency, TimeUnit.MILLISECONDS);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class AnchorPrefetcherTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private long now;
+
+    @Test
+    public void locatingAnAnchorPrefetchesItsNeighborsWithinBudget() {
+        CoLocateGraph graph = new CoLocateGraph(100);
+        graph.recordSession(new String[]{"a", "b", "c", "d", "e"});
+        AnchorPrefetcher prefetcher = new AnchorPrefetcher(graph, () -> now, new MetricsRegistry(), 3, 3, 0f, 10 * SECOND);
+
+        prefetcher.onRequested("a");
+        assertEquals(Arrays.asList("b", "c", "d"), prefetcher.onLocated("a"));
+        // Asking for b takes it off the budget, which then leaves room for one of b's neighbors.
+        assertTrue(prefetcher.onRequested("b"));
+        assertEquals(Collections.singletonList("e"), prefetcher.onLocated("b"));
+        assertEquals(Arrays.asList("c", "d", "e"), outstanding(prefetcher));
+        // Located speculatively; its neighbors are all known already.
+        assertTrue(prefetcher.onLocated("c").isEmpty());
+        assertEquals(4, prefetcher.getIssued());
+        assertEquals(1, prefetcher.getHits());
+        assertEquals(1, prefetcher.getLocated());
+    }
+
+    @Test
+    public void stalePrefetchesExpireAsWaste() {
+        CoLocateGraph graph = new CoLocateGraph(100);
+        graph.recordSession(new String[]{"a", "b"});
+        graph.recordSession(new String[]{"c", "d"});
+        AnchorPrefetcher prefetcher = new AnchorPrefetcher(graph, () -> now, new MetricsRegistry(), 4, 8, 0f, 10 * SECOND);
+
+        prefetcher.onLocated("a");
+        now += 6 * SECOND;
+        prefetcher.onLocated("c");
+        assertTrue(prefetcher.expire().isEmpty());
+
+        now += 5 * SECOND;
+        assertEquals(Collections.singletonList("b"), prefetcher.expire());
+        assertTrue(prefetcher.isOutstanding("d"));
+        prefetcher.onNotFound("d");
+        assertEquals(0, prefetcher.getOutstandingCount());
+        assertEquals(2, prefetcher.getWasted());
+    }
+
+    @Test
+    public void sessionsLeaveOutPrefetchesNobodyAskedFor() {
+        CoLocateGraph graph = new CoLocateGraph(100);
+        graph.recordSession(new String[]{"a", "b", "c"});
+        AnchorPrefetcher prefetcher = new AnchorPrefetcher(graph, () -> now, new MetricsRegistry(), 4, 8, 0f, 10 * SECOND);
+
+        prefetcher.onRequested("a");
+        prefetcher.onLocated("a");
+        prefetcher.onLocated("c");
+        prefetcher.onRequested("x");
+        prefetcher.onLocated("x");
+
+        // b never located: wasted; c located but never asked for: not recorded.
+        assertArrayEquals(new String[]{"a", "x"}, prefetcher.endSession());
+        assertEquals(1, prefetcher.getWasted());
+        assertEquals(0, prefetcher.getOutstandingCount());
+        assertEquals(0, prefetcher.endSession().length);
+    }
+
+    // Trains on recorded sessions and replays later ones: the user asks for each anchor of a
+    // session in turn, and every prefetched anchor that is part of the session is located
+    // before the next request; the rest wait for the TTL.
+    @Test
+    public void replayedSessionsAreMostlyPrefetched() throws IOException {
+        Random random = new Random(17);
+        List<String[]> tours = tours(random);
+        File file = new File(temporaryFolder.getRoot(), "sessions.log");
+        LocateSessionLog log = new LocateSessionLog(file, 500);
+        for (int i = 0; i < 400; i++) {
+            log.append(session(tours, random));
+        }
+        List<String[]> recorded = log.load();
+        assertEquals(400, recorded.size());
+
+        MetricsRegistry metrics = new MetricsRegistry();
+        CoLocateGraph graph = new CoLocateGraph(1000);
+        for (String[] session : recorded) {
+            graph.recordSession(session);
+        }
+        AnchorPrefetcher prefetcher = new AnchorPrefetcher(graph, () -> now, metrics, 3, 8, 0.3f, 20 * SECOND);
+        int followUps = 0;
+        int followUpHits = 0;
+        for (int i = 0; i < 200; i++) {
+            String[] session = session(tours, random);
+            followUps += session.length - 1;
+            followUpHits += replay(prefetcher, session);
+            assertTrue(prefetcher.getOutstandingCount() <= 8);
+            prefetcher.endSession();
+        }
+
+        float coverage = (float) followUpHits / followUps;
+        float hitRate = (float) prefetcher.getHits() / prefetcher.getIssued();
+        float wasteRate = (float) prefetcher.getWasted() / prefetcher.getIssued();
+        String summary = String.format("coverage %.2f hit rate %.2f waste %.2f", coverage, hitRate, wasteRate);
+        assertTrue(summary, coverage >= 0.6f);
+        assertTrue(summary, hitRate >= 0.6f);
+        assertTrue(summary, wasteRate <= 0.35f);
+        assertEquals(prefetcher.getIssued(), metrics.counter("prefetch.issued").sum());
+
+        // Without history nothing is prefetched, and nothing is wasted.
+        AnchorPrefetcher cold = new AnchorPrefetcher(new CoLocateGraph(1000), () -> now, new MetricsRegistry(), 3, 8, 0.3f, 20 * SECOND);
+        assertEquals(0, replay(cold, session(tours, random)));
+        assertEquals(0, cold.getIssued());
+    }
+
+    // Returns how many of the session's requests after the first had already been prefetched.
+    private int replay(AnchorPrefetcher prefetcher, String[] session) {
+        Set<String> present = new HashSet<>(Arrays.asList(session));
+        Set<String> located = new HashSet<>();
+        int hits = 0;
+        for (int i = 0; i < session.length; i++) {
+            if (prefetcher.onRequested(session[i]) && i > 0) {
+                hits++;
+            }
+            if (located.add(session[i])) {
+                ArrayDeque<String> found = new ArrayDeque<>();
+                found.add(session[i]);
+                while (!found.isEmpty()) {
+                    for (String next : prefetcher.onLocated(found.poll())) {
+                        if (present.contains(next) && located.add(next)) {
+                            found.add(next);
+                        }
+                    }
+                }
+            }
+            now += 5 * SECOND;
+            prefetcher.expire();
+        }
+        return hits;
+    }
+
+    // Routes through a building: anchors along each are usually visited in order, and routes
+    // share a few anchors where they cross.
+    private static List<String[]> tours(Random random) {
+        List<String[]> tours = new ArrayList<>();
+        for (int t = 0; t < 12; t++) {
+            String[] tour = new String[5 + random.nextInt(4)];
+            for (int i = 0; i < tour.length; i++) {
+                tour[i] = random.nextInt(6) == 0 ? "shared-" + random.nextInt(4) : "tour" + t + "-" + i;
+            }
+            tours.add(tour);
+        }
+        return tours;
+    }
+
+    // A prefix of a route, popular ones more often, sometimes with two stops swapped or a
+    // detour to a random anchor.
+    private static String[] session(List<String[]> tours, Random random) {
+        String[] tour = tours.get(Math.min(random.nextInt(tours.size()), random.nextInt(tours.size())));
+        List<String> session = new ArrayList<>(Arrays.asList(tour).subList(0, 3 + random.nextInt(tour.length - 2)));
+        if (random.nextInt(5) == 0) {
+            int i = random.nextInt(session.size() - 1);
+            Collections.swap(session, i, i + 1);
+        }
+        if (random.nextInt(10) == 0) {
+            String[] other = tours.get(random.nextInt(tours.size()));
+            session.add(random.nextInt(session.size()), other[random.nextInt(other.length)]);
+        }
+        return new LinkedHashSet<>(session).toArray(new String[0]);
+    }
+
+    private static List<String> outstanding(AnchorPrefetcher prefetcher) {
+        List<String> outstanding = new ArrayList<>();
+        for (String identifier : new String[]{"a", "b", "c", "d", "e"}) {
+            if (prefetcher.isOutstanding(identifier)) {
+                outstanding.add(identifier);
+            }
+        }
+        return outstanding;
+    }
+}
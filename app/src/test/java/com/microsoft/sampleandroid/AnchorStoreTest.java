@@ -0,0 +1,221 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AnchorStoreTest {
+    private static final int RECORDS = 50_000;
+    private static final float CELL_SIZE = 2f;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void reopeningReplaysTheLog() throws IOException {
+        File file = temporaryFolder.newFile("anchors.log");
+        Map<String, String> properties = new HashMap<>();
+        properties.put("label", "door");
+
+        AnchorStore store = AnchorStore.open(file, 100, CELL_SIZE);
+        store.put(new AnchorRecord("a", 1, 2, pose(1, 2, 3), 0xff00ff00, "Sphere", properties));
+        store.put(record("b", 4, 5, 6));
+        store.remove("b");
+        store.close();
+
+        AnchorStore reopened = AnchorStore.open(file, 100, CELL_SIZE);
+        assertEquals(1, reopened.size());
+        assertNull(reopened.get("b"));
+        AnchorRecord a = reopened.get("a");
+        assertEquals(1, a.getCreatedAtMillis());
+        assertEquals(2, a.getLastLocatedAtMillis());
+        assertArrayEquals(pose(1, 2, 3), a.getPose(), 0f);
+        assertEquals(0xff00ff00, a.getColor());
+        assertEquals("Sphere", a.getShape());
+        assertEquals("door", a.getAppProperties().get("label"));
+        reopened.close();
+    }
+
+    @Test
+    public void manyRecordsSurviveReplay() throws IOException {
+        File file = temporaryFolder.newFile("anchors.log");
+        Random random = new Random(7);
+
+        AnchorStore store = AnchorStore.open(file, RECORDS, CELL_SIZE);
+        for (int i = 0; i < RECORDS; i++) {
+            store.put(record("anchor-" + i,
+                    random.nextFloat() * 500, random.nextFloat() * 10, random.nextFloat() * 500));
+        }
+        store.close();
+
+        store = AnchorStore.open(file, RECORDS, CELL_SIZE);
+        assertEquals(RECORDS, store.size());
+        for (int i = 0; i < 1000; i++) {
+            assertNotNull(store.get("anchor-" + random.nextInt(RECORDS)));
+        }
+        int found = 0;
+        for (int i = 0; i < 1000; i++) {
+            found += store.findNear(random.nextFloat() * 500, 5, random.nextFloat() * 500, 5f, 8).size();
+        }
+        store.close();
+
+        assertTrue(found > 0);
+    }
+
+    @Test
+    public void findNearReturnsNearestFirst() throws IOException {
+        AnchorStore store = AnchorStore.open(temporaryFolder.newFile("anchors.log"), 100, CELL_SIZE);
+        store.put(record("far", 4, 0, 0));
+        store.put(record("near", 1, 0, 0));
+        store.put(record("outside", 9, 0, 0));
+        store.put(record("middle", 0, 2, 0));
+
+        List<AnchorRecord> near = store.findNear(0, 0, 0, 5f, 10);
+
+        assertEquals(3, near.size());
+        assertEquals("near", near.get(0).getIdentifier());
+        assertEquals("middle", near.get(1).getIdentifier());
+        assertEquals("far", near.get(2).getIdentifier());
+        store.close();
+    }
+
+    @Test
+    public void locateCandidatesPutsTheRequestedAnchorFirst() throws IOException {
+        AnchorStore store = AnchorStore.open(temporaryFolder.newFile("anchors.log"), 100, CELL_SIZE);
+        store.put(record("target", 0, 0, 0));
+        store.put(record("n1", 1, 0, 0));
+        store.put(record("n2", 2, 0, 0));
+        store.put(record("n3", 3, 0, 0));
+        store.put(record("distant", 50, 0, 0));
+
+        assertArrayEquals(new String[]{"target", "n1", "n2"}, store.locateCandidates("target", 5f, 2));
+        assertArrayEquals(new String[]{"unknown"}, store.locateCandidates("unknown", 5f, 2));
+        store.close();
+    }
+
+    @Test
+    public void leastRecentlyUsedRecordsAreEvicted() throws IOException {
+        File file = temporaryFolder.newFile("anchors.log");
+        AnchorStore store = AnchorStore.open(file, 3, CELL_SIZE);
+        store.put(record("a", 0, 0, 0));
+        store.put(record("b", 0, 0, 0));
+        store.put(record("c", 0, 0, 0));
+        store.get("a");
+        store.put(record("d", 0, 0, 0));
+
+        assertNull(store.get("b"));
+        assertNotNull(store.get("a"));
+        assertEquals(1, store.getEvictionCount());
+        assertEquals(3, store.findNear(0, 0, 0, 1f, 10).size());
+        store.close();
+
+        AnchorStore reopened = AnchorStore.open(file, 3, CELL_SIZE);
+        assertEquals(3, reopened.size());
+        assertNull(reopened.get("b"));
+        reopened.close();
+    }
+
+    @Test
+    public void tornTailIsTruncatedOnOpen() throws IOException {
+        File file = temporaryFolder.newFile("anchors.log");
+        AnchorStore store = AnchorStore.open(file, 100, CELL_SIZE);
+        store.put(record("a", 0, 0, 0));
+        store.put(record("b", 1, 1, 1));
+        store.close();
+
+        long intactLength = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(intactLength - 5);
+        }
+
+        store = AnchorStore.open(file, 100, CELL_SIZE);
+        assertEquals(1, store.size());
+        assertNotNull(store.get("a"));
+        store.put(record("c", 2, 2, 2));
+        store.close();
+
+        store = AnchorStore.open(file, 100, CELL_SIZE);
+        assertEquals(2, store.size());
+        assertNotNull(store.get("c"));
+        store.close();
+    }
+
+    @Test
+    public void repeatedUpdatesAreCompacted() throws IOException {
+        File file = temporaryFolder.newFile("anchors.log");
+        AnchorStore store = AnchorStore.open(file, 100, CELL_SIZE);
+        for (int i = 0; i < 5000; i++) {
+            store.put(record("anchor-" + (i % 10), i, 0, 0));
+        }
+
+        assertTrue(store.getLogEntryCount() <= 1024 + 10);
+        store.close();
+
+        store = AnchorStore.open(file, 100, CELL_SIZE);
+        assertEquals(10, store.size());
+        assertEquals(4999f, store.get("anchor-9").getX(), 0f);
+        store.close();
+    }
+
+    @Test
+    public void failedCompactionKeepsTheStoreWritable() throws IOException {
+        File file = temporaryFolder.newFile("anchors.log");
+        AnchorStore store = AnchorStore.open(file, 100, CELL_SIZE);
+        store.put(record("anchor-1", 1, 0, 0));
+        // A directory where the compacted log would go makes writing it fail.
+        assertTrue(new File(file.getPath() + ".compact").mkdir());
+
+        try {
+            store.compact();
+            fail();
+        } catch (IOException expected) {
+        }
+        store.put(record("anchor-2", 2, 0, 0));
+        store.close();
+
+        store = AnchorStore.open(file, 100, CELL_SIZE);
+        assertEquals(2, store.size());
+        assertEquals(2f, store.get("anchor-2").getX(), 0f);
+        store.close();
+    }
+
+    @Test
+    public void compactionKeepsEveryRecord() throws IOException {
+        File file = temporaryFolder.newFile("anchors.log");
+        AnchorStore store = AnchorStore.open(file, 100, CELL_SIZE);
+        for (int i = 0; i < 20; i++) {
+            store.put(record("anchor-" + (i % 5), i, 0, 0));
+        }
+
+        store.compact();
+        store.put(record("anchor-5", 5, 0, 0));
+        store.close();
+
+        assertFalse(new File(file.getPath() + ".compact").exists());
+        store = AnchorStore.open(file, 100, CELL_SIZE);
+        assertEquals(6, store.size());
+        assertEquals(6, store.getLogEntryCount());
+        assertEquals(19f, store.get("anchor-4").getX(), 0f);
+        store.close();
+    }
+
+    private static AnchorRecord record(String identifier, float x, float y, float z) {
+        return new AnchorRecord(identifier, 0, 0, pose(x, y, z), 0, "Sphere",
+                Collections.<String, String>emptyMap());
+    }
+
+    private static float[] pose(float x, float y, float z) {
+        return new float[]{x, y, z, 0, 0, 0, 1};
+    }
+}
@@ -0,0 +1,62 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CoLocateGraphTest {
+    @Test
+    public void neighborsAreRankedByHowOftenTheyFollow() {
+        CoLocateGraph graph = new CoLocateGraph(100);
+        for (int i = 0; i < 10; i++) {
+            graph.recordSession(new String[]{"a", "b", "c"});
+        }
+        graph.recordSession(new String[]{"a", "d"});
+
+        List<CoLocateGraph.Neighbor> neighbors = graph.neighbors("a", 10, 0f);
+        assertEquals(3, neighbors.size());
+        assertEquals("b", neighbors.get(0).identifier);
+        assertEquals(10f / 11, neighbors.get(0).score, 1e-6f);
+        assertEquals("c", neighbors.get(1).identifier);
+        assertEquals("d", neighbors.get(2).identifier);
+
+        // Rare companions fall below the threshold, and limit truncates.
+        assertEquals(2, graph.neighbors("a", 10, 0.3f).size());
+        assertEquals(1, graph.neighbors("a", 1, 0f).size());
+        assertTrue(graph.neighbors("unknown", 10, 0f).isEmpty());
+        assertEquals(11, graph.getSessionsRecorded());
+    }
+
+    @Test
+    public void locatingEarlierCountsLessThanLocatingLater() {
+        CoLocateGraph graph = new CoLocateGraph(100);
+        graph.recordSession(new String[]{"a", "b", "c", "b"});
+
+        List<CoLocateGraph.Neighbor> neighbors = graph.neighbors("b", 10, 0f);
+        assertEquals("c", neighbors.get(0).identifier);
+        assertEquals(1f, neighbors.get(0).score, 1e-6f);
+        assertEquals("a", neighbors.get(1).identifier);
+        assertEquals(0.5f, neighbors.get(1).score, 1e-6f);
+    }
+
+    @Test
+    public void neighborsAndNodesAreBounded() {
+        CoLocateGraph graph = new CoLocateGraph(50);
+        for (int i = 0; i < 200; i++) {
+            graph.recordSession(new String[]{"hub", "anchor-" + i});
+        }
+
+        assertEquals(50, graph.size());
+        assertTrue(graph.neighbors("hub", 1000, 0f).size() <= 32);
+        // Trimming drops the weakest edges, never the one just strengthened.
+        boolean keptNewest = false;
+        for (CoLocateGraph.Neighbor neighbor : graph.neighbors("hub", 1000, 0f)) {
+            keptNewest |= neighbor.identifier.equals("anchor-199");
+        }
+        assertTrue(keptNewest);
+        assertEquals("hub", graph.neighbors("anchor-199", 1, 0f).get(0).identifier);
+        assertTrue(graph.neighbors("anchor-0", 10, 0f).isEmpty());
+    }
+}
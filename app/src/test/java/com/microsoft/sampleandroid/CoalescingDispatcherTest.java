@@ -0,0 +1,153 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CoalescingDispatcherTest {
+    private final FakeLooper looper = new FakeLooper();
+    private long now;
+    private final CoalescingDispatcher dispatcher = new CoalescingDispatcher(looper, () -> now);
+    private final List<String> log = new ArrayList<>();
+
+    @Test
+    public void manyTasksShareOneLooperMessage() {
+        for (int i = 0; i < 100; i++) {
+            int index = i;
+            dispatcher.run(() -> log.add("destroy " + index));
+        }
+
+        assertEquals(1, looper.pending());
+        assertEquals(100, dispatcher.getQueueDepth());
+        looper.runAll();
+
+        assertEquals(100, log.size());
+        assertEquals("destroy 0", log.get(0));
+        assertEquals("destroy 99", log.get(99));
+        assertEquals(1, dispatcher.getPostedMessages());
+        assertEquals(100, dispatcher.getExecutedTasks());
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    public void keyedTasksCoalesceAndMoveToTheBack() {
+        Object node = new Object();
+        dispatcher.run(node, () -> log.add("recreate red"));
+        dispatcher.run(() -> log.add("other"));
+        dispatcher.run(node, () -> log.add("recreate green"));
+        dispatcher.run(node, () -> log.add("recreate blue"));
+
+        looper.runAll();
+
+        assertEquals(Arrays.asList("other", "recreate blue"), log);
+        assertEquals(2, dispatcher.getCoalescedTasks());
+        assertEquals(2, dispatcher.getExecutedTasks());
+    }
+
+    @Test
+    public void uiThreadCallsRunInlineAndDropPendingDuplicates() {
+        Object node = new Object();
+        dispatcher.run(node, () -> log.add("queued"));
+
+        looper.onLooperThread(() -> dispatcher.run(node, () -> log.add("inline")));
+        looper.runAll();
+
+        assertEquals(Collections.singletonList("inline"), log);
+    }
+
+    @Test
+    public void cancelDropsPendingWork() {
+        Object material = new Object();
+        dispatcher.run(material, () -> log.add("material"));
+
+        assertTrue(dispatcher.cancel(material));
+        assertFalse(dispatcher.cancel(material));
+        looper.runAll();
+        assertTrue(log.isEmpty());
+    }
+
+    @Test
+    public void workQueuedDuringADrainWaitsForTheNextMessage() {
+        dispatcher.run(() -> {
+            log.add("first");
+            // Submitted from the looper thread: runs inline.
+            dispatcher.run(() -> log.add("inline"));
+        });
+        looper.runNext();
+        dispatcher.run(() -> log.add("second"));
+
+        assertEquals(Arrays.asList("first", "inline"), log);
+        assertEquals(1, looper.pending());
+        looper.runAll();
+        assertEquals(Arrays.asList("first", "inline", "second"), log);
+    }
+
+    @Test
+    public void latencyIsMeasuredFromTheFirstOutstandingRequest() {
+        Object node = new Object();
+        now = 0;
+        dispatcher.run(node, () -> { });
+        now = 5_000_000;
+        dispatcher.run(node, () -> { });
+        dispatcher.run(() -> { });
+        now = 12_000_000;
+        looper.runAll();
+
+        assertEquals(12_000_000, dispatcher.getMaxLatencyNanos());
+        assertEquals((12_000_000 + 7_000_000) / 2, dispatcher.getAverageLatencyNanos());
+        assertEquals(2, dispatcher.getMaxQueueDepth());
+    }
+
+    @Test
+    public void failingTaskDoesNotLoseTheRestOfTheBatch() {
+        dispatcher.run(() -> log.add("a"));
+        dispatcher.run(() -> {
+            throw new IllegalStateException("boom");
+        });
+        dispatcher.run(() -> log.add("c"));
+
+        try {
+            looper.runNext();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(1, dispatcher.getQueueDepth());
+        looper.runAll();
+        assertEquals(Arrays.asList("a", "c"), log);
+    }
+
+    @Test
+    public void concurrentProducersPostFewMessages() throws Exception {
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        int perProducer = 10_000;
+        CountDownLatch done = new CountDownLatch(4);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        for (int p = 0; p < 4; p++) {
+            producers.execute(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    dispatcher.run(() -> executed.add(1));
+                }
+                done.countDown();
+            });
+        }
+        // Drain on the test thread while the producers run, like a busy main looper.
+        while (done.getCount() > 0 || looper.pending() > 0) {
+            looper.runAll();
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        producers.shutdown();
+
+        assertEquals(4 * perProducer, executed.size());
+        assertEquals(4 * perProducer, dispatcher.getExecutedTasks());
+        assertTrue(dispatcher.getPostedMessages() < 4 * perProducer);
+    }
+}
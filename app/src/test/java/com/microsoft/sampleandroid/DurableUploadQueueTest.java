@@ -0,0 +1,195 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DurableUploadQueueTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final SimulatedSpatialAnchorBackend<Object> backend = new SimulatedSpatialAnchorBackend<>(scheduler, 5)
+            .setCreateLatencyMs(1, 5)
+            .setRequireScanProgress(false);
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final DurableUploadQueue.Saver<SimulatedAnchor> saver = new DurableUploadQueue.Saver<SimulatedAnchor>() {
+        @Override
+        public CompletableFuture<SimulatedAnchor> save(SimulatedAnchor anchor) {
+            return backend.createAnchorAsync(anchor);
+        }
+
+        @Override
+        public String getIdentifier(SimulatedAnchor anchor) {
+            return backend.getIdentifier(anchor);
+        }
+    };
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void offlineSavesWaitUntilReachable() throws Exception {
+        backend.start();
+        backend.setReachable(false);
+        UploadJournal journal = UploadJournal.open(temporaryFolder.newFile("uploads.journal"));
+        // Backoff far longer than the test: only onReachable() gets them saved.
+        DurableUploadQueue<SimulatedAnchor> queue = queue(journal, 60_000, 5, 32);
+        List<DurableUploadQueue.Upload<SimulatedAnchor>> uploads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            uploads.add(enqueue(queue, i));
+        }
+        awaitTrue(() -> queue.getWaitingCount() == 3);
+        assertFalse(uploads.get(0).getResult().isDone());
+        assertEquals(3, journal.getPendingCount());
+
+        backend.setReachable(true);
+        queue.onReachable();
+        for (DurableUploadQueue.Upload<SimulatedAnchor> upload : uploads) {
+            assertNotNull(upload.getResult().get(2, TimeUnit.SECONDS).getIdentifier());
+            assertEquals(2, upload.getAttempts());
+        }
+        assertEquals(0, journal.getPendingCount());
+        assertEquals(0, queue.getPendingCount());
+        assertEquals(3, metrics.counter("upload.saved").sum());
+        assertEquals(3, metrics.counter("upload.retries").sum());
+        queue.close();
+    }
+
+    @Test
+    public void permanentFailuresAreAbandoned() throws Exception {
+        backend.start();
+        backend.setFailureRate(1.0, false);
+        UploadJournal journal = UploadJournal.open(temporaryFolder.newFile("uploads.journal"));
+        DurableUploadQueue<SimulatedAnchor> queue = queue(journal, 1, 5, 32);
+
+        DurableUploadQueue.Upload<SimulatedAnchor> upload = enqueue(queue, 0);
+        try {
+            upload.getResult().get(2, TimeUnit.SECONDS);
+            fail("The save should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SimulatedSpatialAnchorBackend.SimulatedBackendException);
+        }
+        assertEquals(1, upload.getAttempts());
+        assertEquals(0, journal.getPendingCount());
+        assertEquals(1, metrics.counter("upload.abandoned").sum());
+        queue.close();
+    }
+
+    @Test
+    public void uploadsInterruptedByACrashAreReplayed() throws Exception {
+        File file = temporaryFolder.newFile("uploads.journal");
+        backend.start();
+        UploadJournal journal = UploadJournal.open(file);
+        DurableUploadQueue<SimulatedAnchor> queue = queue(journal, 60_000, 5, 32);
+        for (int i = 0; i < 10; i++) {
+            enqueue(queue, i).getResult().get(2, TimeUnit.SECONDS);
+        }
+        backend.setReachable(false);
+        for (int i = 10; i < 30; i++) {
+            enqueue(queue, i);
+        }
+        awaitTrue(() -> queue.getWaitingCount() == 20);
+        // What the next scheduled sync would have done before the process died.
+        journal.sync();
+        int savedBeforeCrash = backend.getCloudAnchorCount();
+        assertEquals(10, savedBeforeCrash);
+
+        // Crash: nothing is closed, and a new queue is built from the file alone.
+        backend.setReachable(true);
+        UploadJournal reopened = UploadJournal.open(file);
+        assertEquals(20, reopened.getPendingCount());
+        DurableUploadQueue<SimulatedAnchor> recovering = queue(reopened, 60_000, 5, 32);
+        List<DurableUploadQueue.Upload<SimulatedAnchor>> recovered = recovering.recover(entry -> {
+            float[] pose = entry.getPose();
+            // One anchor whose spatial data did not survive.
+            return pose[0] == 29 ? null : new SimulatedAnchor(pose[0], pose[1], pose[2]);
+        });
+
+        assertEquals(20, recovered.size());
+        List<Float> savedPositions = new ArrayList<>();
+        for (DurableUploadQueue.Upload<SimulatedAnchor> upload : recovered) {
+            try {
+                savedPositions.add(upload.getResult().get(2, TimeUnit.SECONDS).getX());
+            } catch (ExecutionException e) {
+                assertEquals(29f, upload.getEntry().getPose()[0], 0f);
+            }
+        }
+        Collections.sort(savedPositions);
+        assertEquals(19, savedPositions.size());
+        assertEquals(10f, savedPositions.get(0), 0f);
+        assertEquals(28f, savedPositions.get(18), 0f);
+        assertEquals(savedBeforeCrash + 19, backend.getCloudAnchorCount());
+        assertEquals(1, metrics.counter("upload.orphaned").sum());
+        assertEquals(0, reopened.getPendingCount());
+        recovering.close();
+        assertEquals(0, UploadJournal.open(file).getPendingCount());
+    }
+
+    @Test
+    public void journalSyncsAreSharedAcrossUploads() throws Exception {
+        int uploads = 5_000;
+        backend.setCreateLatencyMs(0, 1).start();
+        UploadJournal journal = UploadJournal.open(temporaryFolder.newFile("uploads.journal"));
+        DurableUploadQueue<SimulatedAnchor> queue = queue(journal, 1, 5, 64);
+
+        long start = System.nanoTime();
+        List<CompletableFuture<?>> results = new ArrayList<>(uploads);
+        for (int i = 0; i < uploads; i++) {
+            results.add(enqueue(queue, i).getResult());
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        queue.close();
+
+        assertEquals(uploads, backend.getCloudAnchorCount());
+        assertEquals(0, journal.getPendingCount());
+        // Every upload logs two entries; an fsync per entry would be 10,000.
+        String summary = journal.getSyncCount() + " syncs in " + elapsedMs + " ms";
+        assertTrue(summary, journal.getSyncCount() <= uploads / 16);
+        assertTrue(summary, elapsedMs < 15_000);
+    }
+
+    private DurableUploadQueue<SimulatedAnchor> queue(UploadJournal journal, long retryBaseDelayMs,
+                                                      long syncIntervalMs, int maxSyncBatch) {
+        RetryPolicy retryPolicy = new RetryPolicy(Integer.MAX_VALUE, retryBaseDelayMs, retryBaseDelayMs * 8,
+                error -> error instanceof SimulatedSpatialAnchorBackend.SimulatedBackendException
+                        && ((SimulatedSpatialAnchorBackend.SimulatedBackendException) error).isTransient());
+        return new DurableUploadQueue<>(journal, saver, scheduler, retryPolicy, System::nanoTime,
+                syncIntervalMs, maxSyncBatch, 16, metrics);
+    }
+
+    private static DurableUploadQueue.Upload<SimulatedAnchor> enqueue(DurableUploadQueue<SimulatedAnchor> queue, int i)
+            throws IOException {
+        return queue.enqueue(new SimulatedAnchor(i, 0, 0), i, new float[]{i, 0, 0, 0, 0, 0, 1},
+                0xffffff00, "Sphere", Collections.emptyMap());
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    private static void awaitTrue(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!condition.holds()) {
+            assertTrue("Timed out", System.nanoTime() < deadline);
+            Thread.sleep(2);
+        }
+    }
+}
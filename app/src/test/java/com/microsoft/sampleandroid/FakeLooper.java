@@ -0,0 +1,54 @@
+package com.microsoft.sampleandroid;
+
+import java.util.ArrayDeque;
+
+// Stands in for the main looper: messages run only when the test pumps them. Posting is
+// thread-safe, so producers on other threads can post while the test thread pumps.
+class FakeLooper implements CoalescingDispatcher.Looper {
+    private final ArrayDeque<Runnable> messages = new ArrayDeque<>();
+    private volatile Thread looperThread;
+    private int posted;
+
+    @Override
+    public boolean isCurrentThread() {
+        return Thread.currentThread() == looperThread;
+    }
+
+    @Override
+    public synchronized void post(Runnable runnable) {
+        posted++;
+        messages.add(runnable);
+    }
+
+    synchronized int pending() {
+        return messages.size();
+    }
+
+    synchronized int posted() {
+        return posted;
+    }
+
+    void runNext() {
+        Runnable message;
+        synchronized (this) {
+            message = messages.poll();
+        }
+        onLooperThread(message);
+    }
+
+    void runAll() {
+        while (pending() > 0) {
+            runNext();
+        }
+    }
+
+    // Runs a task as if on the main looper, so isCurrentThread() holds while it runs.
+    void onLooperThread(Runnable runnable) {
+        looperThread = Thread.currentThread();
+        try {
+            runnable.run();
+        } finally {
+            looperThread = null;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FingerprintIndexTest {
+    // A 200 x 200 m office campus with Wi-Fi access points and beacons scattered through it.
+    private static final double ORIGIN_LATITUDE = 47.64;
+    private static final double ORIGIN_LONGITUDE = -122.13;
+    private static final float SITE_METERS = 200;
+    private static final int ACCESS_POINTS = 60;
+    private static final int BEACONS = 30;
+    private static final int ANCHORS = 300;
+
+    private final Random random = new Random(17);
+    private final float[][] accessPoints = scatter(ACCESS_POINTS);
+    private final float[][] beacons = scatter(BEACONS);
+
+    @Test
+    public void ranksAnchorsNearTheDeviceFirst() {
+        float[][] anchors = scatter(ANCHORS);
+        FingerprintIndex index = new FingerprintIndex(50f);
+        for (int i = 0; i < ANCHORS; i++) {
+            index.put("anchor-" + i, observe(anchors[i][0], anchors[i][1], 0, true));
+        }
+        assertEquals(ANCHORS, index.size());
+
+        // Come back to each anchor later: new noise, a different fix, some radios missed. Anchors
+        // here are ~6 m apart, closer than fingerprints can tell apart, so the one we stand at
+        // must be among the candidates the app asks for, and the best one must be close by.
+        int inTopEight = 0;
+        int bestWithinTen = 0;
+        for (int i = 0; i < ANCHORS; i++) {
+            List<FingerprintIndex.Match> ranked = index.rank(observe(anchors[i][0], anchors[i][1], 1000, true), 8, 0.1f);
+            inTopEight += identifiers(ranked).contains("anchor-" + i) ? 1 : 0;
+            float[] best = anchors[Integer.parseInt(ranked.get(0).identifier.substring("anchor-".length()))];
+            bestWithinTen += Math.hypot(best[0] - anchors[i][0], best[1] - anchors[i][1]) <= 10 ? 1 : 0;
+        }
+        assertTrue("in top eight: " + inTopEight, inTopEight >= ANCHORS * 0.8);
+        assertTrue("best within 10 m: " + bestWithinTen, bestWithinTen >= ANCHORS * 0.55);
+    }
+
+    @Test
+    public void rankMatchesScoringEveryAnchor() {
+        float[][] anchors = scatter(ANCHORS);
+        FingerprintIndex index = new FingerprintIndex(25f);
+        List<SensorFingerprint> stored = new ArrayList<>();
+        for (int i = 0; i < ANCHORS; i++) {
+            // Some anchors were saved without Wi-Fi or without a location fix.
+            SensorFingerprint fingerprint = observe(anchors[i][0], anchors[i][1], 0, i % 3 != 0);
+            if (i % 5 == 0) {
+                fingerprint = SensorFingerprint.decode(fingerprint.encode().replaceAll(";g=[^;]*", ""));
+            }
+            stored.add(fingerprint);
+            index.put("anchor-" + i, fingerprint);
+        }
+
+        for (int query = 0; query < 50; query++) {
+            SensorFingerprint current = observe(random.nextFloat() * SITE_METERS, random.nextFloat() * SITE_METERS, 0, query % 2 == 0);
+            List<Float> expected = new ArrayList<>();
+            for (SensorFingerprint fingerprint : stored) {
+                float score = FingerprintIndex.score(current, fingerprint);
+                if (score >= 0.05f) {
+                    expected.add(score);
+                }
+            }
+            Collections.sort(expected, Collections.reverseOrder());
+            expected = expected.subList(0, Math.min(10, expected.size()));
+
+            List<Float> actual = new ArrayList<>();
+            for (FingerprintIndex.Match match : index.rank(current, 10, 0.05f)) {
+                actual.add(match.score);
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void replayedWalkFindsTheAnchorsAlongIt() {
+        FingerprintIndex index = new FingerprintIndex(50f);
+        index.put("lobby", observe(20, 20, 0, true));
+        index.put("kitchen", observe(100, 100, 0, true));
+        index.put("lab", observe(180, 180, 0, true));
+
+        // Walk from the lobby to the lab in 60 s, one scan a second.
+        List<SensorFingerprint> walk = new ArrayList<>();
+        for (int second = 0; second <= 60; second++) {
+            float along = 20 + 160 * second / 60f;
+            walk.add(observe(along, along, 10_000 + second * 1000L, true));
+        }
+        long[] now = {0};
+        TraceSensorProvider provider = new TraceSensorProvider(new SensorTrace(walk), () -> now[0], false);
+        provider.start();
+
+        assertEquals("lobby", best(index, provider.read()));
+        now[0] = 30_000_000_000L;
+        assertEquals("kitchen", best(index, provider.read()));
+        now[0] = 60_000_000_000L;
+        assertEquals("lab", best(index, provider.read()));
+    }
+
+    @Test
+    public void removedAnchorsAreNoLongerRanked() {
+        FingerprintIndex index = new FingerprintIndex(50f);
+        SensorFingerprint here = observe(50, 50, 0, true);
+        index.put("a", here);
+        index.put("b", here);
+
+        assertTrue(index.remove("a"));
+        assertFalse(index.remove("a"));
+        index.put("b", SensorFingerprint.EMPTY);
+
+        assertEquals(0, index.size());
+        assertTrue(index.rank(here, 10, 0).isEmpty());
+    }
+
+    @Test
+    public void scoresOnlySensorsBothFingerprintsHave() {
+        SensorFingerprint geo = new SensorFingerprint.Builder(0).setLocation(ORIGIN_LATITUDE, ORIGIN_LONGITUDE, 5).build();
+        SensorFingerprint wifi = new SensorFingerprint.Builder(0).addWifi(1, -50).build();
+        SensorFingerprint both = new SensorFingerprint.Builder(0)
+                .setLocation(ORIGIN_LATITUDE, ORIGIN_LONGITUDE, 5).addWifi(1, -50).build();
+
+        assertEquals(0, FingerprintIndex.score(geo, wifi), 0);
+        assertEquals(1, FingerprintIndex.score(geo, both), 1e-6);
+        assertEquals(1, FingerprintIndex.score(wifi, both), 1e-6);
+        assertEquals(1, FingerprintIndex.score(both, both), 1e-6);
+
+        SensorFingerprint farAway = new SensorFingerprint.Builder(0).setLocation(ORIGIN_LATITUDE + 0.01, ORIGIN_LONGITUDE, 5).build();
+        assertTrue(FingerprintIndex.score(geo, farAway) < 1e-3);
+        assertEquals(1113, FingerprintIndex.distanceMeters(geo, farAway), 1);
+    }
+
+    private static String best(FingerprintIndex index, SensorFingerprint current) {
+        List<FingerprintIndex.Match> ranked = index.rank(current, 1, 0);
+        return ranked.isEmpty() ? null : ranked.get(0).identifier;
+    }
+
+    private static List<String> identifiers(List<FingerprintIndex.Match> matches) {
+        List<String> identifiers = new ArrayList<>();
+        for (FingerprintIndex.Match match : matches) {
+            identifiers.add(match.identifier);
+        }
+        return identifiers;
+    }
+
+    // What a device at (x, y) meters from the site origin would see: log-distance path loss with
+    // shadowing noise, radios below the sensitivity floor missed, and a noisy location fix.
+    private SensorFingerprint observe(float x, float y, long timestampMillis, boolean withWifi) {
+        SensorFingerprint.Builder builder = new SensorFingerprint.Builder(timestampMillis);
+        float accuracy = 5 + random.nextFloat() * 20;
+        double fixX = x + random.nextGaussian() * accuracy / 2;
+        double fixY = y + random.nextGaussian() * accuracy / 2;
+        builder.setLocation(ORIGIN_LATITUDE + fixY / 111_320.0,
+                ORIGIN_LONGITUDE + fixX / (111_320.0 * Math.cos(Math.toRadians(ORIGIN_LATITUDE))), accuracy);
+        if (withWifi) {
+            for (int i = 0; i < ACCESS_POINTS; i++) {
+                addIfHeard(builder, false, 0x1000 + i, accessPoints[i], x, y, -35);
+            }
+        }
+        for (int i = 0; i < BEACONS; i++) {
+            addIfHeard(builder, true, 0x2000 + i, beacons[i], x, y, -55);
+        }
+        return builder.build();
+    }
+
+    private void addIfHeard(SensorFingerprint.Builder builder, boolean beacon, long key, float[] radio, float x, float y, int rssiAtOneMeter) {
+        double distance = Math.max(1, Math.hypot(radio[0] - x, radio[1] - y));
+        int rssi = (int) Math.round(rssiAtOneMeter - 30 * Math.log10(distance) + random.nextGaussian() * 4);
+        if (rssi > -92 && random.nextFloat() > 0.1f) {
+            if (beacon) {
+                builder.addBeacon(key, rssi);
+            } else {
+                builder.addWifi(key, rssi);
+            }
+        }
+    }
+
+    private float[][] scatter(int count) {
+        float[][] points = new float[count][];
+        for (int i = 0; i < count; i++) {
+            points[i] = new float[]{random.nextFloat() * SITE_METERS, random.nextFloat() * SITE_METERS};
+        }
+        return points;
+    }
+}
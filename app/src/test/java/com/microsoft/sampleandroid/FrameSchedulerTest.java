@@ -0,0 +1,108 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameSchedulerTest {
+    private static final long MS = 1_000_000L;
+    private static final long FRAME = 16 * MS;
+
+    private long now;
+    private final FrameScheduler scheduler = new FrameScheduler(() -> now, 8 * MS, 33 * MS, 100 * MS, 2.0);
+
+    @Test
+    public void idleModeFeedsNothing() {
+        int fed = render(60, 1 * MS);
+
+        assertEquals(0, fed);
+        assertEquals(60, scheduler.getFramesSkipped());
+    }
+
+    @Test
+    public void creatingFeedsEveryFrameUntilProgressIsReached() {
+        scheduler.setMode(FrameScheduler.Mode.Creating);
+        assertEquals(60, render(60, 2 * MS));
+
+        scheduler.onCreateProgress(1.0f);
+        int fed = render(60, 2 * MS);
+
+        // 100 ms interval at 16 ms per frame: one frame in seven.
+        assertEquals(9, fed);
+        assertEquals(69, scheduler.getFramesFed());
+    }
+
+    @Test
+    public void locatingFeedsAtReducedRate() {
+        scheduler.setMode(FrameScheduler.Mode.Locating);
+
+        int fed = render(60, 2 * MS);
+
+        // 33 ms interval: every third frame.
+        assertEquals(20, fed);
+        assertEquals(40, scheduler.getFramesSkipped());
+    }
+
+    @Test
+    public void overrunningFrameSkipsTheNext() {
+        scheduler.setMode(FrameScheduler.Mode.Creating);
+        render(1, 2 * MS);
+
+        render(1, 12 * MS);
+        assertEquals(1, scheduler.getFramesOverran());
+
+        long skippedBefore = scheduler.getFramesSkipped();
+        assertEquals(0, render(1, 2 * MS));
+        assertEquals(skippedBefore + 1, scheduler.getFramesSkipped());
+        assertEquals(1, render(1, 2 * MS));
+    }
+
+    @Test
+    public void expensiveProcessFrameLowersTheFeedRate() {
+        scheduler.setMode(FrameScheduler.Mode.Creating);
+
+        // Within budget, but at 7 ms per call the cost factor keeps fed frames at least
+        // 14 ms apart, so 10 ms frames cannot all be fed.
+        int fed = render(60, 7 * MS, 10 * MS);
+
+        assertTrue(fed < 60);
+        assertEquals(0, scheduler.getFramesOverran());
+        assertTrue(scheduler.currentIntervalNanos() >= 14 * MS);
+    }
+
+    @Test
+    public void switchingModesResetsProgressAndDueTime() {
+        scheduler.setMode(FrameScheduler.Mode.Creating);
+        scheduler.onCreateProgress(2.0f);
+        render(1, 1 * MS);
+
+        scheduler.setMode(FrameScheduler.Mode.Locating);
+        assertEquals(1, render(1, 1 * MS));
+        scheduler.setMode(FrameScheduler.Mode.Creating);
+        assertEquals(3, render(3, 1 * MS));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void endFrameWithoutBeginThrows() {
+        scheduler.endFrame();
+    }
+
+    private int render(int frames, long processCost) {
+        return render(frames, processCost, FRAME);
+    }
+
+    // Drives the scheduler with a synthetic frame clock; returns how many frames were fed.
+    private int render(int frames, long processCost, long frameInterval) {
+        int fed = 0;
+        for (int i = 0; i < frames; i++) {
+            long frameStart = now;
+            if (scheduler.tryBeginFrame()) {
+                now += processCost;
+                scheduler.endFrame();
+                fed++;
+            }
+            now = frameStart + frameInterval;
+        }
+        return fed;
+    }
+}
@@ -0,0 +1,178 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class FutureCompletionBridgeTest {
+    private final AtomicInteger bridgeThreads = new AtomicInteger();
+    private ScheduledExecutorService scheduler;
+    private FutureCompletionBridge bridge;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            bridgeThreads.incrementAndGet();
+            return new Thread(runnable, "bridge");
+        });
+        bridge = new FutureCompletionBridge(scheduler, 1, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void completesWithSourceValue() throws Exception {
+        FakeFuture<String> source = new FakeFuture<>();
+        CompletableFuture<String> target = bridge.toCompletableFuture(source);
+        assertFalse(target.isDone());
+
+        source.succeed("anchor-id");
+
+        assertEquals("anchor-id", target.get(1, TimeUnit.SECONDS));
+        assertEquals(0, bridge.getPendingCount());
+    }
+
+    @Test
+    public void unwrapsExecutionException() throws Exception {
+        FakeFuture<String> source = new FakeFuture<>();
+        IllegalStateException failure = new IllegalStateException("save failed");
+        CompletableFuture<String> target = bridge.toCompletableFuture(source)
+                .thenApply(value -> value);
+
+        source.fail(failure);
+
+        try {
+            target.get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+        try {
+            target.join();
+            fail();
+        } catch (CompletionException e) {
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test
+    public void cancellingTargetCancelsSource() throws Exception {
+        FakeFuture<String> source = new FakeFuture<>();
+        CompletableFuture<String> target = bridge.toCompletableFuture(source);
+
+        target.cancel(false);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (!source.isCancelled() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+
+        assertTrue(source.isCancelled());
+        assertEquals(0, bridge.getPendingCount());
+    }
+
+    @Test
+    public void hundredConcurrentSaves_completeOnSingleThread() throws Exception {
+        int saves = 100;
+        CountDownLatch done = new CountDownLatch(saves);
+        Set<String> completingThreads = ConcurrentHashMap.newKeySet();
+        List<FakeFuture<Integer>> sources = new ArrayList<>();
+        List<CompletableFuture<Integer>> targets = new ArrayList<>();
+
+        for (int i = 0; i < saves; i++) {
+            FakeFuture<Integer> source = new FakeFuture<>();
+            CompletableFuture<Integer> target = bridge.toCompletableFuture(source);
+            target.thenRun(() -> {
+                completingThreads.add(Thread.currentThread().getName());
+                done.countDown();
+            });
+            sources.add(source);
+            targets.add(target);
+        }
+
+        // All saves are in flight at once, yet none of them owns a thread.
+        assertEquals(saves, bridge.getPendingCount());
+        // Finish them in reverse order, so completion does not depend on submission order.
+        for (int i = saves - 1; i >= 0; i--) {
+            sources.get(i).succeed(i);
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < saves; i++) {
+            assertEquals(Integer.valueOf(i), targets.get(i).get());
+        }
+        assertEquals(0, bridge.getPendingCount());
+        assertEquals(1, bridgeThreads.get());
+        assertEquals(Collections.singleton("bridge"), completingThreads);
+    }
+
+    private static final class FakeFuture<T> implements Future<T> {
+        private volatile boolean done;
+        private volatile boolean cancelled;
+        private volatile T value;
+        private volatile Throwable failure;
+
+        void succeed(T value) {
+            this.value = value;
+            done = true;
+        }
+
+        void fail(Throwable failure) {
+            this.failure = failure;
+            done = true;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            cancelled = true;
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public T get() throws ExecutionException {
+            if (!done) {
+                throw new AssertionError("The bridge must not block on an incomplete future");
+            }
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return value;
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws ExecutionException, TimeoutException {
+            return get();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class IncrementalLocatorTest {
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final SimulatedSpatialAnchorBackend<Object> backend =
+            new SimulatedSpatialAnchorBackend<>(scheduler, 11).setLocateLatencyMs(50, 100);
+    private final RecordingListener listener = new RecordingListener();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void laterSearchesKeepEarlierAnchors() throws Exception {
+        backend.putCloudAnchor("a", 0, 0, 0);
+        backend.putCloudAnchor("b", 1, 0, 0);
+        backend.start();
+        IncrementalLocator<SimulatedAnchor, Object> locator =
+                new IncrementalLocator<>(backend, System::nanoTime, listener);
+
+        locator.locate("a");
+        awaitIdle(locator);
+        SimulatedAnchor a = locator.getLocatedAnchor("a");
+        assertNotNull(a);
+
+        locator.locate("a", "b");
+        awaitIdle(locator);
+
+        assertSame(a, locator.getLocatedAnchor("a"));
+        assertNotNull(locator.getLocatedAnchor("b"));
+        assertEquals(Arrays.asList("a", "b"), listener.located);
+        assertEquals(2, locator.getWatchersCreated());
+
+        // Everything asked for is already located: no new watcher.
+        locator.locate("b");
+        assertEquals(2, locator.getWatchersCreated());
+        assertTrue(backend.getActiveWatchers().isEmpty());
+    }
+
+    @Test
+    public void identifiersAddedMidSearchAreMergedIntoOneWatcher() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            backend.putCloudAnchor("anchor-" + i, i, 0, 0);
+        }
+        backend.setLocateLatencyMs(200, 300);
+        backend.start();
+        IncrementalLocator<SimulatedAnchor, Object> locator =
+                new IncrementalLocator<>(backend, System::nanoTime, listener);
+
+        for (int i = 0; i < 5; i++) {
+            locator.locate("anchor-" + i);
+            assertTrue(backend.getActiveWatchers().size() <= 1);
+        }
+        assertEquals(5, locator.getPendingIdentifiers().size());
+        awaitIdle(locator);
+
+        assertEquals(5, locator.getLocatedIdentifiers().size());
+        assertEquals(5, listener.located.size());
+        assertEquals(5, new HashSet<>(listener.located).size());
+        assertEquals(5, locator.getWatchersCreated());
+        assertTrue(backend.getActiveWatchers().isEmpty());
+    }
+
+    @Test
+    public void reportsTimeToFirstLocatedPerAnchor() throws Exception {
+        backend.putCloudAnchor("a", 0, 0, 0);
+        backend.setLocateLatencyMs(100, 100);
+        backend.start();
+        IncrementalLocator<SimulatedAnchor, Object> locator =
+                new IncrementalLocator<>(backend, System::nanoTime, listener);
+
+        assertEquals(-1, locator.getTimeToLocateNanos("a"));
+        locator.locate("a");
+        awaitIdle(locator);
+
+        long elapsed = locator.getTimeToLocateNanos("a");
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(90));
+        assertEquals(elapsed, (long) listener.timeToLocate.get("a"));
+    }
+
+    @Test
+    public void missingIdentifiersAreReportedAsNotFound() throws Exception {
+        backend.putCloudAnchor("a", 0, 0, 0);
+        backend.start();
+        IncrementalLocator<SimulatedAnchor, Object> locator =
+                new IncrementalLocator<>(backend, System::nanoTime, listener);
+
+        locator.locate("a", "missing");
+        awaitIdle(locator);
+
+        assertEquals(Collections.singletonList("a"), listener.located);
+        assertEquals(Collections.singletonList("missing"), listener.notFound);
+        assertEquals(Collections.singletonList("missing"), locator.getNotFoundIdentifiers());
+    }
+
+    @Test
+    public void cancelAndCloseStopTheWatcher() throws Exception {
+        backend.putCloudAnchor("a", 0, 0, 0);
+        backend.putCloudAnchor("b", 0, 0, 0);
+        backend.putCloudAnchor("c", 0, 0, 0);
+        backend.setLocateLatencyMs(10_000, 10_000);
+        backend.start();
+        IncrementalLocator<SimulatedAnchor, Object> locator =
+                new IncrementalLocator<>(backend, System::nanoTime, listener);
+
+        locator.locate("a", "b", "c");
+        int watchers = locator.getWatchersCreated();
+        locator.cancel("a", "c", "unknown");
+        assertEquals(Collections.singletonList("b"), locator.getPendingIdentifiers());
+        assertEquals(watchers + 1, locator.getWatchersCreated());
+        assertEquals(1, backend.getActiveWatchers().size());
+
+        locator.close();
+        assertTrue(backend.getActiveWatchers().isEmpty());
+        assertFalse(locator.isLocating());
+        assertTrue(listener.notFound.isEmpty());
+    }
+
+    @Test
+    public void nearDeviceSearchReportsAnchorsInRangeNearestFirst() throws Exception {
+        backend.putCloudAnchor("near", 1, 0, 0);
+        backend.putCloudAnchor("nearer", 0.5f, 0, 0);
+        backend.putCloudAnchor("nearest", 0.1f, 0, 0);
+        backend.putCloudAnchor("far", 50, 0, 0);
+        backend.setDevicePosition(0, 0, 0).setLocateLatencyMs(20, 20);
+        backend.start();
+        IncrementalLocator<SimulatedAnchor, Object> locator =
+                new IncrementalLocator<>(backend, System::nanoTime, listener);
+
+        assertTrue(locator.locateNearDevice(5, 2));
+        assertTrue(locator.isLocatingNearDevice());
+        assertFalse(locator.locateNearDevice(5, 2));
+        awaitIdle(locator);
+
+        assertEquals(new HashSet<>(Arrays.asList("nearest", "nearer")), locator.getLocatedIdentifiers());
+        assertEquals(2, listener.located.size());
+        assertTrue(locator.getTimeToLocateNanos("nearest") >= 0);
+        assertEquals(1, listener.nearDeviceCompleted);
+        assertTrue(listener.notFound.isEmpty());
+    }
+
+    @Test
+    public void nearDeviceSearchWaitsForPendingIdentifiers() throws Exception {
+        backend.putCloudAnchor("a", 0, 0, 0);
+        backend.start();
+        IncrementalLocator<SimulatedAnchor, Object> locator =
+                new IncrementalLocator<>(backend, System::nanoTime, listener);
+
+        locator.locate("a");
+        assertFalse(locator.locateNearDevice(5, 10));
+        awaitIdle(locator);
+        assertTrue(locator.locateNearDevice(5, 10));
+
+        // Identifiers asked for mid-search replace the near-device watcher.
+        locator.locate("b");
+        assertFalse(locator.isLocatingNearDevice());
+        awaitIdle(locator);
+        assertEquals(0, listener.nearDeviceCompleted);
+        assertEquals(Collections.singletonList("b"), listener.notFound);
+    }
+
+    private static void awaitIdle(IncrementalLocator<?, ?> locator) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (locator.isLocating()) {
+            assertTrue("Locating did not finish", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static class RecordingListener implements IncrementalLocator.Listener<SimulatedAnchor> {
+        final List<String> located = new CopyOnWriteArrayList<>();
+        final List<String> notFound = new CopyOnWriteArrayList<>();
+        final Map<String, Long> timeToLocate = new ConcurrentHashMap<>();
+        volatile int nearDeviceCompleted;
+
+        @Override
+        public void onLocated(String identifier, SimulatedAnchor anchor, long timeToLocateNanos) {
+            located.add(identifier);
+            timeToLocate.put(identifier, timeToLocateNanos);
+        }
+
+        @Override
+        public void onNotFound(String identifier) {
+            notFound.add(identifier);
+        }
+
+        @Override
+        public void onNearDeviceSearchCompleted() {
+            nearDeviceCompleted++;
+        }
+    }
+}
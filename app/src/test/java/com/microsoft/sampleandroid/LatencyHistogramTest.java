@@ -0,0 +1,96 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test
+    public void bucketsCoverTheRangeWithBoundedError() {
+        int previous = -1;
+        for (long value = 0; value < LatencyHistogram.MAX_VALUE; value = value < 100 ? value + 1 : value * 17 / 16) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(index >= previous);
+            previous = index;
+
+            long reported = LatencyHistogram.bucketValue(index);
+            assertTrue("value " + value + " reported as " + reported,
+                    Math.abs(reported - value) <= Math.max(1, value / 32));
+        }
+    }
+
+    @Test
+    public void percentilesMatchSortedSamples() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(5);
+        long[] samples = new long[100_000];
+        for (int i = 0; i < samples.length; i++) {
+            // Log-normal-ish frame costs around 2 ms with a long tail.
+            samples[i] = (long) (2_000_000 * Math.exp(random.nextGaussian() * 0.5));
+            histogram.record(samples[i]);
+        }
+        Arrays.sort(samples);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(samples.length, snapshot.getCount());
+        assertEquals(samples[0], snapshot.getMin());
+        assertEquals(samples[samples.length - 1], snapshot.getMax());
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long expected = samples[(int) Math.ceil(percentile / 100 * samples.length) - 1];
+            long actual = snapshot.getValueAtPercentile(percentile);
+            assertEquals("p" + percentile, expected, actual, expected * 0.04);
+        }
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getMin());
+        assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getMax());
+        assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void emptySnapshotIsZero() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void concurrentRecordingLosesNothing() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        CountDownLatch done = new CountDownLatch(4);
+        for (int t = 0; t < 4; t++) {
+            threads.execute(() -> {
+                for (int i = 1; i <= 250_000; i++) {
+                    histogram.record(i);
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        threads.shutdown();
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1_000_000, snapshot.getCount());
+        assertEquals(1, snapshot.getMin());
+        assertEquals(250_000, snapshot.getMax());
+        assertEquals(125_000.5, snapshot.getMean(), 0.01);
+    }
+}
@@ -0,0 +1,58 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LocateSessionLogTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void sessionsSurviveReopening() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "sessions.log");
+        assertTrue(new LocateSessionLog(file, 10).load().isEmpty());
+
+        LocateSessionLog log = new LocateSessionLog(file, 10);
+        log.append(new String[]{"a", "b", "c"});
+        log.append(new String[0]);
+        log.append(new String[]{"d"});
+
+        List<String[]> sessions = new LocateSessionLog(file, 10).load();
+        assertEquals(2, sessions.size());
+        assertArrayEquals(new String[]{"a", "b", "c"}, sessions.get(0));
+        assertArrayEquals(new String[]{"d"}, sessions.get(1));
+    }
+
+    @Test
+    public void onlyTheNewestSessionsAreKept() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "sessions.log");
+        LocateSessionLog log = new LocateSessionLog(file, 3);
+        for (int i = 0; i < 5; i++) {
+            log.append(new String[]{"s" + i});
+        }
+
+        // Below twice the limit the file is left alone.
+        assertEquals(3, log.load().size());
+        assertEquals(5, Files.readAllLines(file.toPath()).size());
+
+        log.append(new String[]{"s5"});
+        List<String[]> sessions = log.load();
+        assertEquals(3, sessions.size());
+        assertEquals("s3", sessions.get(0)[0]);
+        assertEquals("s5", sessions.get(2)[0]);
+        assertEquals(3, Files.readAllLines(file.toPath()).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void identifiersMustNotContainSeparators() throws IOException {
+        new LocateSessionLog(new File(temporaryFolder.getRoot(), "sessions.log"), 3).append(new String[]{"a b"});
+    }
+}
@@ -0,0 +1,39 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LodSelectorTest {
+    private final LodSelector selector = new LodSelector(new float[]{1.5f, 4f}, 0.25f);
+
+    @Test
+    public void firstSelectionUsesTheDistanceAlone() {
+        assertEquals(3, selector.getLevelCount());
+        assertEquals(0, selector.select(-1, 0.5f));
+        assertEquals(1, selector.select(-1, 1.5f));
+        assertEquals(1, selector.select(-1, 3.9f));
+        assertEquals(2, selector.select(-1, 40f));
+    }
+
+    @Test
+    public void switchingNeedsToClearTheHysteresis() {
+        assertEquals(0, selector.select(0, 1.6f));
+        assertEquals(1, selector.select(0, 1.8f));
+        assertEquals(1, selector.select(1, 1.4f));
+        assertEquals(0, selector.select(1, 1.2f));
+    }
+
+    @Test
+    public void largeMovesSkipLevels() {
+        assertEquals(2, selector.select(0, 10f));
+        assertEquals(0, selector.select(2, 0.3f));
+        // Just past the far threshold jumps to the middle level only.
+        assertEquals(1, selector.select(0, 4.1f));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void distancesMustIncrease() {
+        new LodSelector(new float[]{2f, 1f}, 0f);
+    }
+}
@@ -0,0 +1,82 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void metricsAreLookedUpByName() {
+        MetricsRegistry registry = new MetricsRegistry();
+
+        assertSame(registry.counter("anchor.save.failed"), registry.counter("anchor.save.failed"));
+        assertSame(registry.histogram("frame.process_ns"), registry.histogram("frame.process_ns"));
+    }
+
+    @Test
+    public void jsonSnapshotIsSortedAndComplete() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("b.count").add(3);
+        registry.counter("a.count").increment();
+        registry.gauge("queue.depth", () -> 7);
+        LatencyHistogram histogram = registry.histogram("save_ns");
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        String json = registry.toJson(1234);
+
+        // Above 64 buckets are two values wide and report their midpoint, so p99 (99) is 98.
+        assertEquals("{\"timestampMillis\":1234,"
+                + "\"counters\":{\"a.count\":1,\"b.count\":3},"
+                + "\"gauges\":{\"queue.depth\":7},"
+                + "\"histograms\":{\"save_ns\":{\"count\":100,\"min\":1,\"max\":100,\"mean\":51,"
+                + "\"p50\":50,\"p90\":90,\"p99\":98,\"p999\":100}}}", json);
+    }
+
+    @Test
+    public void removingAGaugeLeavesItsReplacement() {
+        MetricsRegistry registry = new MetricsRegistry();
+        MetricsRegistry.Gauge first = () -> 1;
+        MetricsRegistry.Gauge second = () -> 2;
+        registry.gauge("anchors.tracked", first);
+        registry.gauge("anchors.tracked", second);
+
+        registry.removeGauge("anchors.tracked", first);
+        assertTrue(registry.toJson(0).contains("\"gauges\":{\"anchors.tracked\":2}"));
+
+        registry.removeGauge("anchors.tracked", second);
+        assertTrue(registry.toJson(0).contains("\"gauges\":{}"));
+    }
+
+    @Test
+    public void namesAreEscaped() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("quote\"back\\slash\n").increment();
+
+        assertTrue(registry.toJson(0).contains("\"quote\\\"back\\\\slash\\u000a\":1"));
+    }
+
+    @Test
+    public void writeJsonReplacesTheFile() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        File file = new File(temporaryFolder.getRoot(), "metrics.json");
+        registry.counter("saves").increment();
+        registry.writeJson(file, 1);
+        registry.counter("saves").increment();
+        registry.writeJson(file, 2);
+
+        String written = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertEquals(registry.toJson(2), written);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+}
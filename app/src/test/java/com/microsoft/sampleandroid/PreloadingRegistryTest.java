@@ -0,0 +1,124 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class PreloadingRegistryTest {
+    private final AtomicLong now = new AtomicLong();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final Map<String, CompletableFuture<String>> pending = new HashMap<>();
+    private final List<String> loaded = new ArrayList<>();
+
+    private PreloadingRegistry<String, String> registry() {
+        return new PreloadingRegistry<>(key -> {
+            synchronized (loaded) {
+                loaded.add(key);
+            }
+            CompletableFuture<String> future = new CompletableFuture<>();
+            pending.put(key, future);
+            return future;
+        }, now::get, metrics, "models");
+    }
+
+    @Test
+    public void preloadLoadsDeclaredAssetsOnceInOrder() {
+        PreloadingRegistry<String, String> registry = registry();
+        registry.declare("model", "model_lod1");
+
+        registry.preload();
+        registry.preload();
+        now.set(5_000_000);
+        pending.get("model").complete("full");
+
+        assertEquals(2, loaded.size());
+        assertEquals("model", loaded.get(0));
+        assertEquals("full", registry.getIfLoaded("model"));
+        assertNull(registry.getIfLoaded("model_lod1"));
+        assertNull(registry.getIfLoaded("other"));
+        assertEquals(2, registry.size());
+        assertEquals(5_000_000, metrics.histogram("models.load_ns").snapshot().getMax());
+        assertEquals(2, metrics.counter("models.loads").sum());
+    }
+
+    @Test
+    public void concurrentRequestsShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<String> load = new CompletableFuture<>();
+        PreloadingRegistry<String, String> registry = new PreloadingRegistry<>(key -> {
+            loads.incrementAndGet();
+            return load;
+        }, System::nanoTime, metrics, "models");
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<CompletableFuture<String>>> requests = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            requests.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return registry.get("model");
+            }));
+        }
+
+        start.countDown();
+        CompletableFuture<String> first = requests.get(0).get();
+        for (CompletableFuture<CompletableFuture<String>> request : requests) {
+            assertSame(first, request.get());
+        }
+        load.complete("full");
+
+        assertEquals(1, loads.get());
+        assertEquals("full", first.get());
+        assertEquals(threads - 1, metrics.counter("models.hits").sum());
+    }
+
+    @Test
+    public void failedLoadsAreRetried() {
+        PreloadingRegistry<String, String> registry = registry();
+
+        CompletableFuture<String> first = registry.get("model");
+        pending.get("model").completeExceptionally(new IllegalStateException("corrupt"));
+        CompletableFuture<String> second = registry.get("model");
+
+        assertTrue(first.isCompletedExceptionally());
+        assertNotSame(first, second);
+        assertEquals(2, loaded.size());
+        assertEquals(1, metrics.counter("models.load_failures").sum());
+    }
+
+    @Test
+    public void evictionKeepsLoadsInFlightAndDeclaredAssetsUnlessAsked() {
+        PreloadingRegistry<String, String> registry = registry();
+        registry.declare("model");
+        registry.preload();
+        registry.get("custom");
+        registry.get("loading");
+        pending.get("model").complete("full");
+        pending.get("custom").complete("custom");
+
+        assertEquals(1, registry.evict(false));
+        assertNull(registry.getIfLoaded("custom"));
+        assertEquals("full", registry.getIfLoaded("model"));
+
+        assertEquals(1, registry.evict(true));
+        assertNull(registry.getIfLoaded("model"));
+        assertEquals(1, registry.size());
+        assertEquals(2, metrics.counter("models.evictions").sum());
+
+        // The next request loads it again.
+        registry.preload();
+        assertEquals(4, loaded.size());
+    }
+}
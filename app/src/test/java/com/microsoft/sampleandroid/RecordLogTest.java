@@ -0,0 +1,102 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecordLogTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void recordsAreReplayedInOrder() throws IOException {
+        File file = temporaryFolder.newFile("records.log");
+        RecordLog log = RecordLog.open(file, payload -> fail());
+        log.append(bytes("first"));
+        log.append(bytes("second"));
+        log.sync();
+        log.close();
+
+        assertEquals(Arrays.asList("first", "second"), replay(file));
+    }
+
+    @Test
+    public void tornAndCorruptTailsAreTruncated() throws IOException {
+        File file = temporaryFolder.newFile("records.log");
+        RecordLog log = RecordLog.open(file, payload -> fail());
+        log.append(bytes("kept"));
+        log.close();
+        long length = file.length();
+
+        // A record whose payload fails its checksum, then a write torn by a crash.
+        RecordLog corrupt = RecordLog.open(file, payload -> { });
+        corrupt.append(bytes("flipped"));
+        corrupt.close();
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(file.length() - 1);
+            raw.write('X');
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[]{0, 0, 0, 40, 1, 2});
+        }
+
+        assertEquals(Arrays.asList("kept"), replay(file));
+        assertEquals(length, file.length());
+    }
+
+    @Test
+    public void rewriteReplacesEveryRecord() throws IOException {
+        File file = temporaryFolder.newFile("records.log");
+        RecordLog log = RecordLog.open(file, payload -> fail());
+        for (int i = 0; i < 10; i++) {
+            log.append(bytes("old-" + i));
+        }
+
+        log.rewrite(Arrays.asList(bytes("a"), bytes("b")));
+        log.append(bytes("c"));
+        log.close();
+
+        assertEquals(Arrays.asList("a", "b", "c"), replay(file));
+        assertFalse(new File(file.getPath() + ".compact").exists());
+    }
+
+    @Test
+    public void failedRewriteKeepsTheLogAndItsAppends() throws IOException {
+        File file = temporaryFolder.newFile("records.log");
+        RecordLog log = RecordLog.open(file, payload -> fail());
+        log.append(bytes("a"));
+        // A directory where the rewritten log would go makes writing it fail.
+        assertTrue(new File(file.getPath() + ".compact").mkdir());
+
+        try {
+            log.rewrite(Arrays.asList(bytes("lost")));
+            fail();
+        } catch (IOException expected) {
+        }
+        log.append(bytes("b"));
+        log.close();
+
+        assertEquals(Arrays.asList("a", "b"), replay(file));
+    }
+
+    private static List<String> replay(File file) throws IOException {
+        List<String> records = new ArrayList<>();
+        RecordLog.open(file, payload -> records.add(new String(payload, StandardCharsets.UTF_8))).close();
+        return records;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
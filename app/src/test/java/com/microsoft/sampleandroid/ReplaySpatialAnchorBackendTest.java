@@ -0,0 +1,346 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class ReplaySpatialAnchorBackendTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private static final ReplaySpatialAnchorBackend.Anchors<SimulatedAnchor> ANCHORS =
+            new ReplaySpatialAnchorBackend.Anchors<SimulatedAnchor>() {
+                @Override
+                public SimulatedAnchor located(String identifier) {
+                    SimulatedAnchor anchor = new SimulatedAnchor(0, 0, 0);
+                    anchor.setIdentifier(identifier);
+                    return anchor;
+                }
+
+                @Override
+                public void saved(SimulatedAnchor anchor, String identifier) {
+                    anchor.setIdentifier(identifier);
+                }
+
+                @Override
+                public String getIdentifier(SimulatedAnchor anchor) {
+                    return anchor.getIdentifier();
+                }
+            };
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void aReplayReproducesTheRecordedSessionFaster() throws Exception {
+        File file = temporaryFolder.newFile("session.rec");
+        SimulatedSpatialAnchorBackend<Object> simulated = new SimulatedSpatialAnchorBackend<>(scheduler, 3)
+                .setCreateLatencyMs(40, 80)
+                .setLocateLatencyMs(100, 200)
+                .setProgressPerFrame(0.05f);
+        simulated.putCloudAnchor("other-device", 1, 0, 0);
+        Flow recorded;
+        try (SessionRecording.Writer writer = new SessionRecording.Writer(new FileOutputStream(file), System::nanoTime)) {
+            recorded = new Flow(new RecordingSpatialAnchorBackend<>(simulated, writer), true);
+        }
+
+        List<SessionRecording.Event> events = SessionRecording.Reader.open(file).readAll();
+        double speed = 4;
+        ReplaySpatialAnchorBackend<SimulatedAnchor, Object> replay =
+                new ReplaySpatialAnchorBackend<>(events, ANCHORS, scheduler, speed);
+        assertEquals(1, replay.getRecordedWatcherCount());
+        assertEquals(2, replay.getRecordedCreateCount());
+        Flow replayed = new Flow(replay, false);
+
+        assertEquals(recorded.log, replayed.log);
+        assertEquals(20, recorded.statusUpdates.get());
+        assertEquals(20, replayed.statusUpdates.get());
+        long expectedNanos = (long) (recorded.locateNanos / speed);
+        long slackNanos = TimeUnit.MILLISECONDS.toNanos(40);
+        assertTrue(replayed.locateNanos + " vs " + expectedNanos, Math.abs(replayed.locateNanos - expectedNanos) < slackNanos);
+        assertEquals(20, replay.getProcessedFrameCount());
+    }
+
+    @Test
+    public void stoppingAReplayedWatcherCancelsIt() throws Exception {
+        AtomicLong now = new AtomicLong();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SessionRecording.Writer writer = new SessionRecording.Writer(bytes, now::get);
+        writer.started();
+        writer.watcherCreated(1);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        writer.anchorLocated("late", SpatialAnchorBackend.LocateStatus.Located, 1);
+        writer.stopped();
+        writer.close();
+
+        ReplaySpatialAnchorBackend<SimulatedAnchor, Object> replay = new ReplaySpatialAnchorBackend<>(
+                SessionRecording.Reader.wrap(bytes.toByteArray()).readAll(), ANCHORS, scheduler, 1);
+        List<String> seen = new CopyOnWriteArrayList<>();
+        replay.addListener(new SpatialAnchorBackend.Listener<SimulatedAnchor>() {
+            @Override
+            public void onAnchorLocated(LocatedAnchor<SimulatedAnchor> located) {
+                seen.add(located.getIdentifier());
+            }
+
+            @Override
+            public void onLocateCompleted(int watcherId, boolean cancelled) {
+                seen.add("completed " + watcherId + " " + cancelled);
+            }
+        });
+        replay.start();
+        SpatialAnchorBackend.Watcher watcher = replay.createWatcher(new AnchorQuery().setIdentifiers(new String[]{"late"}));
+        assertEquals(1, replay.getActiveWatchers().size());
+        watcher.stop();
+
+        assertEquals(0, replay.getActiveWatchers().size());
+        assertEquals(1, seen.size());
+        assertEquals("completed 1 true", seen.get(0));
+        replay.stop();
+    }
+
+    @Test
+    public void longSessionsReplayOnTheRecordedSchedule() throws Exception {
+        // Ten minutes at 30 frames per second, with a lookup every 12 seconds.
+        AtomicLong now = new AtomicLong();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SessionRecording.Writer writer = new SessionRecording.Writer(bytes, now::get);
+        writer.started();
+        int frames = 30 * 600;
+        int watcherId = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            now.addAndGet(33_333_333);
+            writer.sessionUpdated(new SessionStatusSnapshot(1f, 1f, "None"));
+            if (frame % 360 == 0) {
+                watcherId++;
+                writer.watcherCreated(watcherId);
+                for (int anchor = 0; anchor < 5; anchor++) {
+                    writer.anchorLocated("anchor-" + watcherId + "-" + anchor, SpatialAnchorBackend.LocateStatus.Located, watcherId);
+                }
+                writer.locateCompleted(watcherId, false);
+            }
+        }
+        writer.stopped();
+        writer.close();
+        List<SessionRecording.Event> events = SessionRecording.Reader.wrap(bytes.toByteArray()).readAll();
+
+        // Replayed on virtual time, so ten recorded minutes take as long as delivering the events.
+        double speed = 4;
+        VirtualScheduler virtual = new VirtualScheduler();
+        ReplaySpatialAnchorBackend<SimulatedAnchor, Object> replay =
+                new ReplaySpatialAnchorBackend<>(events, ANCHORS, virtual, speed);
+        AtomicInteger located = new AtomicInteger();
+        List<Long> statusTimes = new ArrayList<>();
+        AtomicInteger completed = new AtomicInteger();
+        replay.addListener(new SpatialAnchorBackend.Listener<SimulatedAnchor>() {
+            @Override
+            public void onSessionUpdated(SessionStatusSnapshot status) {
+                statusTimes.add(virtual.now);
+            }
+
+            @Override
+            public void onAnchorLocated(LocatedAnchor<SimulatedAnchor> anchor) {
+                located.incrementAndGet();
+            }
+
+            @Override
+            public void onLocateCompleted(int id, boolean cancelled) {
+                assertFalse(cancelled);
+                completed.incrementAndGet();
+            }
+        });
+        replay.start();
+        int watchers = watcherId;
+        for (int i = 0; i < watchers; i++) {
+            replay.createWatcher(new AnchorQuery().setIdentifiers(new String[]{"anchor"}));
+        }
+        virtual.runAll();
+
+        assertEquals(frames, statusTimes.size());
+        for (int frame = 0; frame < frames; frame++) {
+            assertEquals((long) ((frame + 1) * 33_333_333L / speed), (long) statusTimes.get(frame));
+        }
+        assertEquals(watchers * 5, located.get());
+        assertEquals(watchers, completed.get());
+        assertEquals((long) (frames * 33_333_333L / speed), virtual.now);
+    }
+
+    // Runs scheduled tasks in due order on the calling thread, moving its clock to each task's
+    // due time instead of waiting for it.
+    private static final class VirtualScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+        private final PriorityQueue<Task<?>> queue = new PriorityQueue<>();
+        private long now;
+        private long sequence;
+        private boolean shutdown;
+
+        void runAll() {
+            Task<?> task;
+            while ((task = queue.poll()) != null) {
+                now = Math.max(now, task.dueNanos);
+                task.run();
+            }
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            return schedule(Executors.callable(command), delay, unit);
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            Task<V> task = new Task<>(callable, now + unit.toNanos(Math.max(0, delay)), sequence++);
+            queue.add(task);
+            return task;
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            schedule(command, 0, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            List<Runnable> pending = new ArrayList<>(queue);
+            queue.clear();
+            return pending;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown && queue.isEmpty();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return isTerminated();
+        }
+
+        private final class Task<V> extends FutureTask<V> implements ScheduledFuture<V> {
+            final long dueNanos;
+            final long order;
+
+            Task(Callable<V> callable, long dueNanos, long order) {
+                super(callable);
+                this.dueNanos = dueNanos;
+                this.order = order;
+            }
+
+            @Override
+            public long getDelay(TimeUnit unit) {
+                return unit.convert(dueNanos - now, TimeUnit.NANOSECONDS);
+            }
+
+            @Override
+            public int compareTo(Delayed other) {
+                Task<?> task = (Task<?>) other;
+                int byDue = Long.compare(dueNanos, task.dueNanos);
+                return byDue != 0 ? byDue : Long.compare(order, task.order);
+            }
+        }
+    }
+
+    // Create two anchors, then look for one of them, another device's and a missing one.
+    private static final class Flow {
+        final List<String> log = new ArrayList<>();
+        final AtomicInteger statusUpdates = new AtomicInteger();
+        long locateNanos;
+
+        Flow(SpatialAnchorBackend<SimulatedAnchor, Object> backend, boolean feedFrames) throws Exception {
+            List<String> located = new CopyOnWriteArrayList<>();
+            CompletableFuture<Boolean> completed = new CompletableFuture<>();
+            ConcurrentHashMap<String, Long> locatedAt = new ConcurrentHashMap<>();
+            backend.addListener(new SpatialAnchorBackend.Listener<SimulatedAnchor>() {
+                @Override
+                public void onSessionUpdated(SessionStatusSnapshot status) {
+                    statusUpdates.incrementAndGet();
+                }
+
+                @Override
+                public void onAnchorLocated(LocatedAnchor<SimulatedAnchor> anchor) {
+                    locatedAt.put(anchor.getIdentifier(), System.nanoTime());
+                    located.add(anchor.getIdentifier() + " " + anchor.getStatus()
+                            + (anchor.getAnchor() != null ? " " + anchor.getAnchor().getIdentifier() : ""));
+                }
+
+                @Override
+                public void onLocateCompleted(int watcherId, boolean cancelled) {
+                    completed.complete(cancelled);
+                }
+            });
+
+            backend.start();
+            for (int frame = 0; frame < 20; frame++) {
+                backend.processFrame(null);
+            }
+            awaitStatusUpdates(20);
+            for (int i = 0; i < 2; i++) {
+                SimulatedAnchor saved = backend.createAnchorAsync(new SimulatedAnchor(i, 0, 0)).get(5, TimeUnit.SECONDS);
+                log.add("saved " + backend.getIdentifier(saved));
+            }
+
+            long start = System.nanoTime();
+            backend.createWatcher(new AnchorQuery().setIdentifiers(new String[]{"sim-1", "other-device", "missing"}));
+            log.add("completed " + completed.get(5, TimeUnit.SECONDS));
+            locateNanos = locatedAt.get("other-device") - start;
+            // Reports of one watcher can arrive in any order; compare them as a set.
+            List<String> sorted = new ArrayList<>(located);
+            sorted.sort(null);
+            log.addAll(sorted);
+            backend.stop();
+        }
+
+        private void awaitStatusUpdates(int expected) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (statusUpdates.get() < expected && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ResourceCacheTest {
+    private final ExecutorService factoryThread = Executors.newSingleThreadExecutor();
+    private final ExecutorService callers = Executors.newFixedThreadPool(8);
+
+    @After
+    public void tearDown() {
+        factoryThread.shutdownNow();
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void concurrentRequestsShareOneLoad() throws Exception {
+        FakeMaterialFactory factory = new FakeMaterialFactory(0);
+        ResourceCache<Integer, String> cache = new ResourceCache<>(16, 4, factory);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<CompletableFuture<String>>> requests = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            requests.add(callers.submit(() -> {
+                start.await();
+                return cache.get(0xff0000);
+            }));
+        }
+        start.countDown();
+
+        for (Future<CompletableFuture<String>> request : requests) {
+            assertEquals("material-ff0000", request.get().get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(1, factory.loads.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(63, cache.getHitCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() throws Exception {
+        FakeMaterialFactory factory = new FakeMaterialFactory(0);
+        ResourceCache<Integer, String> cache = new ResourceCache<>(2, 1, factory);
+        cache.get(1).get();
+        cache.get(2).get();
+        cache.get(1).get();
+        cache.get(3).get();
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        cache.get(1).get();
+        assertEquals(3, factory.loads.get());
+        cache.get(2).get();
+        assertEquals(4, factory.loads.get());
+    }
+
+    @Test
+    public void failedLoadsAreNotCached() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        ResourceCache<Integer, String> cache = new ResourceCache<>(4, 1, key -> {
+            CompletableFuture<String> result = new CompletableFuture<>();
+            if (attempts.incrementAndGet() == 1) {
+                result.completeExceptionally(new IllegalStateException("filament not ready"));
+            } else {
+                result.complete("ok");
+            }
+            return result;
+        });
+
+        try {
+            cache.get(7).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getFailureCount());
+        assertEquals("ok", cache.get(7).get());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void loaderExceptionsFailTheFuture() {
+        ResourceCache<Integer, String> cache = new ResourceCache<>(4, 1, key -> {
+            throw new IllegalArgumentException("bad color");
+        });
+
+        assertTrue(cache.get(1).isCompletedExceptionally());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void stressStaysBoundedAndConsistent() throws Exception {
+        int maxEntries = 32;
+        int threads = 8;
+        int requestsPerThread = 20_000;
+        FakeMaterialFactory factory = new FakeMaterialFactory(0.05);
+        ResourceCache<Integer, String> cache = new ResourceCache<>(maxEntries, 4, factory);
+        AtomicInteger unexpected = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            callers.execute(() -> {
+                Random random = new Random(seed);
+                List<CompletableFuture<String>> results = new ArrayList<>();
+                for (int i = 0; i < requestsPerThread; i++) {
+                    // Skewed key distribution: a few hot colors, a long tail of cold ones.
+                    int key = random.nextInt(4) == 0 ? random.nextInt(256) : random.nextInt(8);
+                    CompletableFuture<String> result = cache.get(key);
+                    if (cache.size() > maxEntries) {
+                        unexpected.incrementAndGet();
+                    }
+                    results.add(result.whenComplete((value, error) -> {
+                        if (error != null) {
+                            failed.incrementAndGet();
+                        } else if (!value.equals(nameFor(key))) {
+                            unexpected.incrementAndGet();
+                        }
+                    }));
+                }
+                CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                        .handle((value, error) -> null).join();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        long total = (long) threads * requestsPerThread;
+
+        assertEquals(0, unexpected.get());
+        assertEquals(total, cache.getHitCount() + cache.getMissCount());
+        assertEquals(cache.getMissCount(), factory.loads.get());
+        assertEquals(factory.failures.get(), cache.getFailureCount());
+        assertTrue(failed.get() >= factory.failures.get());
+        assertTrue(cache.size() <= maxEntries);
+        assertTrue(cache.getHitCount() > cache.getMissCount());
+
+        // Nothing left in the cache is a failure.
+        for (int key = 0; key < 256; key++) {
+            long loadsBefore = factory.loads.get();
+            CompletableFuture<String> result = cache.get(key);
+            if (factory.loads.get() == loadsBefore) {
+                assertFalse(result.isCompletedExceptionally());
+            }
+        }
+    }
+
+    private static String nameFor(int key) {
+        return "material-" + Integer.toHexString(key);
+    }
+
+    // Completes loads on its own thread, like MaterialFactory completing on the UI thread.
+    private class FakeMaterialFactory implements ResourceCache.Loader<Integer, String> {
+        final AtomicInteger loads = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        private final double failureRate;
+        private final Random random = new Random(3);
+
+        FakeMaterialFactory(double failureRate) {
+            this.failureRate = failureRate;
+        }
+
+        @Override
+        public CompletableFuture<String> load(Integer key) {
+            loads.incrementAndGet();
+            boolean fail;
+            synchronized (random) {
+                fail = random.nextDouble() < failureRate;
+            }
+            if (fail) {
+                failures.incrementAndGet();
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                if (fail) {
+                    throw new IllegalStateException("Injected failure");
+                }
+                return nameFor(key);
+            }, factoryThread);
+        }
+    }
+}
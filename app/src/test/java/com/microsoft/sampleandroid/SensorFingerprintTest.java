@@ -0,0 +1,133 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SensorFingerprintTest {
+    @Test
+    public void encodeRoundTrips() {
+        SensorFingerprint fingerprint = new SensorFingerprint.Builder(1234)
+                .setLocation(47.6396, -122.1281, 12.5f)
+                .addWifi(0xaabbccddeeffL, -61)
+                .addWifi(0x001122334455L, -80)
+                .addBeacon(0x0a0b0c0d0e0fL, -70)
+                .build();
+
+        SensorFingerprint decoded = SensorFingerprint.decode(fingerprint.encode());
+
+        assertEquals(fingerprint, decoded);
+        assertEquals(0x001122334455L, decoded.getWifiKey(0));
+        assertEquals(-61, decoded.getWifiRssi(1));
+        assertEquals(47.6396, decoded.getLatitude(), 0);
+        assertTrue(decoded.hasLocation());
+    }
+
+    @Test
+    public void absentSensorsAreLeftOut() {
+        SensorFingerprint wifiOnly = new SensorFingerprint.Builder(5).addWifi(1, -50).build();
+
+        assertEquals("t=5;w=1:-50", wifiOnly.encode());
+        assertFalse(SensorFingerprint.decode("t=5;w=1:-50").hasLocation());
+        assertTrue(SensorFingerprint.decode("t=7").isEmpty());
+        assertEquals(wifiOnly, SensorFingerprint.decode("t=5;w=1:-50;x=ignored"));
+    }
+
+    @Test
+    public void repeatedRadiosKeepTheStrongestReading() {
+        SensorFingerprint fingerprint = new SensorFingerprint.Builder(0)
+                .addWifi(7, -80)
+                .addWifi(7, -55)
+                .addWifi(7, -90)
+                .addBeacon(3, 20)
+                .build();
+
+        assertEquals(1, fingerprint.getWifiCount());
+        assertEquals(-55, fingerprint.getWifiRssi(0));
+        assertEquals(0, fingerprint.getBeaconRssi(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedTextIsRejected() {
+        SensorFingerprint.decode("t=1;w=zz");
+    }
+
+    @Test
+    public void parsesMacAddresses() {
+        assertEquals(0xaabbccddeeffL, SensorFingerprint.macToKey("AA:BB:CC:DD:EE:FF"));
+        assertEquals(0x0123456789abL, SensorFingerprint.macToKey("01-23-45-67-89-ab"));
+        assertEquals(-1, SensorFingerprint.macToKey("02:00:00:00:00"));
+        assertEquals(-1, SensorFingerprint.macToKey(null));
+    }
+
+    @Test
+    public void traceRoundTripsAndFindsSamplesByTime() throws Exception {
+        SensorTrace trace = new SensorTrace(Arrays.asList(
+                new SensorFingerprint.Builder(2000).addWifi(2, -60).build(),
+                new SensorFingerprint.Builder(1000).addWifi(1, -60).build()));
+        StringWriter out = new StringWriter();
+        trace.write(out);
+
+        SensorTrace read = SensorTrace.read(new StringReader("# walk\n\n" + out));
+
+        assertEquals(trace.getSamples(), read.getSamples());
+        assertEquals(1000, read.getDurationMillis());
+        assertSame(SensorFingerprint.EMPTY, read.at(999));
+        assertEquals(1, read.at(1000).getWifiKey(0));
+        assertEquals(1, read.at(1999).getWifiKey(0));
+        assertEquals(2, read.at(5000).getWifiKey(0));
+    }
+
+    @Test
+    public void traceProviderReplaysAgainstTheClock() {
+        SensorTrace trace = new SensorTrace(Arrays.asList(
+                new SensorFingerprint.Builder(10_000).addWifi(1, -60).build(),
+                new SensorFingerprint.Builder(10_500).setLocation(1, 2, 3).build()));
+        long[] now = {0};
+        TraceSensorProvider provider = new TraceSensorProvider(trace, () -> now[0], true);
+
+        assertSame(SensorFingerprint.EMPTY, provider.read());
+        assertEquals(SensorProvider.Status.Indeterminate, provider.getWifiStatus());
+
+        now[0] = 5_000_000_000L;
+        provider.start();
+        assertEquals(1, provider.read().getWifiCount());
+        assertEquals(SensorProvider.Status.Available, provider.getWifiStatus());
+        assertEquals(SensorProvider.Status.Unavailable, provider.getGeoLocationStatus());
+
+        now[0] += 500_000_000L;
+        assertTrue(provider.read().hasLocation());
+        assertEquals(SensorProvider.Status.Available, provider.getGeoLocationStatus());
+
+        // Loops back to the first sample.
+        now[0] += 100_000_000L;
+        assertEquals(1, provider.read().getWifiCount());
+
+        provider.stop();
+        assertSame(SensorFingerprint.EMPTY, provider.read());
+    }
+
+    @Test
+    public void recordingProviderWritesEachNewFingerprintOnce() throws Exception {
+        SensorTrace trace = new SensorTrace(Arrays.asList(
+                new SensorFingerprint.Builder(0).addWifi(1, -60).build(),
+                new SensorFingerprint.Builder(100).addWifi(2, -60).build()));
+        long[] now = {0};
+        StringWriter out = new StringWriter();
+        RecordingSensorProvider provider = new RecordingSensorProvider(new TraceSensorProvider(trace, () -> now[0], false), out);
+
+        provider.read();
+        provider.start();
+        provider.read();
+        provider.read();
+        now[0] = 200_000_000L;
+        provider.read();
+        provider.stop();
+
+        assertEquals(trace.getSamples(), SensorTrace.read(new StringReader(out.toString())).getSamples());
+    }
+}
@@ -0,0 +1,112 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class SessionRecordingTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    public void eventsRoundTripThroughTheMappedFile() throws IOException {
+        File file = temporaryFolder.newFile("session.rec");
+        try (SessionRecording.Writer writer = new SessionRecording.Writer(new FileOutputStream(file), now::get)) {
+            now.addAndGet(10);
+            writer.started();
+            now.addAndGet(33_000_000);
+            writer.sessionUpdated(new SessionStatusSnapshot(0.5f, 0.25f, "Move the device"));
+            writer.sessionUpdated(new SessionStatusSnapshot(1f, 1f, null));
+            writer.watcherCreated(7);
+            now.addAndGet(400_000_000);
+            writer.anchorLocated("über-anchor", SpatialAnchorBackend.LocateStatus.AlreadyTracked, 7);
+            writer.locateCompleted(7, true);
+            writer.createStarted(0);
+            now.addAndGet(5_000_000_000L);
+            writer.createCompleted(0, false, "Unreachable.");
+            writer.error("Session lost");
+            writer.stopped();
+            assertEquals(10, writer.getEventCount());
+            assertFalse(writer.hasFailed());
+        }
+
+        List<SessionRecording.Event> events = SessionRecording.Reader.open(file).readAll();
+
+        assertEquals(10, events.size());
+        assertEquals(SessionRecording.EventType.Started, events.get(0).type);
+        assertEquals(10, events.get(0).offsetNanos);
+        SessionRecording.Event status = events.get(1);
+        assertEquals(33_000_010, status.offsetNanos);
+        assertEquals(0.5f, status.readyForCreateProgress, 0f);
+        assertEquals(0.25f, status.recommendedForCreateProgress, 0f);
+        assertEquals("Move the device", status.text);
+        assertNull(events.get(2).text);
+        assertEquals(7, events.get(3).id);
+        SessionRecording.Event located = events.get(4);
+        assertEquals("über-anchor", located.text);
+        assertEquals(SpatialAnchorBackend.LocateStatus.AlreadyTracked, located.status);
+        assertEquals(433_000_010, located.offsetNanos);
+        assertTrue(events.get(5).flag);
+        SessionRecording.Event completed = events.get(7);
+        assertEquals(SessionRecording.EventType.CreateCompleted, completed.type);
+        assertFalse(completed.flag);
+        assertEquals("Unreachable.", completed.text);
+        assertEquals(5_433_000_010L, completed.offsetNanos);
+        assertEquals("Session lost", events.get(8).text);
+        assertEquals(SessionRecording.EventType.Stopped, events.get(9).type);
+    }
+
+    @Test
+    public void aTornRecordingReadsUpToItsLastWholeEvent() throws IOException {
+        File file = temporaryFolder.newFile("session.rec");
+        try (SessionRecording.Writer writer = new SessionRecording.Writer(new FileOutputStream(file), now::get)) {
+            writer.started();
+            for (int i = 0; i < 10; i++) {
+                now.addAndGet(33_000_000);
+                writer.sessionUpdated(new SessionStatusSnapshot(i / 10f, i / 10f, "Frame " + i));
+            }
+        }
+        try (RandomAccessFile truncate = new RandomAccessFile(file, "rw")) {
+            truncate.setLength(file.length() - 3);
+        }
+
+        SessionRecording.Reader reader = SessionRecording.Reader.open(file);
+        List<SessionRecording.Event> events = reader.readAll();
+
+        assertEquals(10, events.size());
+        assertEquals("Frame 8", events.get(9).text);
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void statusUpdatesTakeAFewBytesEach() throws IOException {
+        File file = temporaryFolder.newFile("session.rec");
+        int frames = 30 * 60;
+        try (SessionRecording.Writer writer = new SessionRecording.Writer(new FileOutputStream(file), now::get)) {
+            writer.started();
+            for (int i = 0; i < frames; i++) {
+                now.addAndGet(33_333_333);
+                writer.sessionUpdated(new SessionStatusSnapshot(1f, i / (float) frames, "None"));
+            }
+        }
+
+        assertTrue(file.length() + " bytes", file.length() < frames * 20);
+        assertEquals(frames + 1, SessionRecording.Reader.open(file).readAll().size());
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFilesAreRejected() throws IOException {
+        SessionRecording.Reader.wrap("not a recording".getBytes("UTF-8"));
+    }
+}
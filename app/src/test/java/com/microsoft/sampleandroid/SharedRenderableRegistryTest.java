@@ -0,0 +1,122 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SharedRenderableRegistryTest {
+    // Same shapes as AnchorVisual.Shape, which cannot be loaded without Sceneform.
+    private enum Shape {
+        Sphere,
+        Cube,
+        Cylinder,
+    }
+
+    private static final int ANCHORS = 500;
+    // Roughly the vertex data of a Sceneform sphere: 24 x 24 segments, 8 floats per vertex.
+    private static final int VERTEX_FLOATS = 25 * 25 * 8;
+
+    @Test
+    public void shapesShareOnePrototype() {
+        FakeFactory factory = new FakeFactory();
+        SharedRenderableRegistry<Shape, FakeRenderable, Integer> registry =
+                new SharedRenderableRegistry<>(factory);
+
+        FakeRenderable red = registry.acquire(Shape.Sphere, 0xff0000);
+        FakeRenderable green = registry.acquire(Shape.Sphere, 0x00ff00);
+        FakeRenderable cube = registry.acquire(Shape.Cube, 0xff0000);
+
+        assertSame(red.geometry, green.geometry);
+        assertNotSame(red.geometry, cube.geometry);
+        assertEquals(0xff0000, red.material);
+        assertEquals(0x00ff00, green.material);
+        assertEquals(2, factory.prototypesBuilt);
+        assertEquals(2, registry.getPrototypeCount());
+        assertEquals(3, registry.getLiveCount());
+        assertEquals(2, registry.getLiveCount(Shape.Sphere));
+    }
+
+    @Test
+    public void releaseTracksLiveRenderables() {
+        SharedRenderableRegistry<Shape, FakeRenderable, Integer> registry =
+                new SharedRenderableRegistry<>(new FakeFactory());
+        registry.acquire(Shape.Cylinder, 1);
+        registry.acquire(Shape.Cylinder, 1);
+
+        registry.release(Shape.Cylinder);
+        assertEquals(1, registry.getLiveCount(Shape.Cylinder));
+        registry.release(Shape.Cylinder);
+        assertEquals(0, registry.getLiveCount());
+        // The prototype survives so the next anchor does not rebuild it.
+        assertEquals(1, registry.getPrototypeCount());
+        assertEquals(2, registry.getInstancesCreated());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releasingWithoutAcquireThrows() {
+        new SharedRenderableRegistry<>(new FakeFactory()).release(Shape.Sphere);
+    }
+
+    // 500 anchors, each created READY and then turned SAVED, as SharedActivity does: one
+    // prototype per shape and a material swap on color change. SharedRenderableBenchmark
+    // measures the allocations against rebuilding the geometry on every change.
+    @Test
+    public void fiveHundredAnchorsShareOneGeometryPerShape() {
+        FakeFactory after = new FakeFactory();
+        SharedRenderableRegistry<Shape, FakeRenderable, Integer> registry = shareThroughRegistry(after);
+
+        assertEquals(Shape.values().length, after.prototypesBuilt);
+        assertEquals(ANCHORS, after.instancesBuilt);
+        assertEquals(Shape.values().length, after.geometries.size());
+        assertEquals(ANCHORS, registry.getLiveCount());
+    }
+
+    private static SharedRenderableRegistry<Shape, FakeRenderable, Integer> shareThroughRegistry(
+            FakeFactory factory) {
+        SharedRenderableRegistry<Shape, FakeRenderable, Integer> registry =
+                new SharedRenderableRegistry<>(factory);
+        for (int i = 0; i < ANCHORS; i++) {
+            FakeRenderable visual = registry.acquire(shapeFor(i), 0xffff00);
+            visual.material = 0x00ff00;
+        }
+        return registry;
+    }
+
+    private static Shape shapeFor(int i) {
+        return Shape.values()[i % Shape.values().length];
+    }
+
+    private static class FakeRenderable {
+        final float[] geometry;
+        int material;
+
+        FakeRenderable(float[] geometry, int material) {
+            this.geometry = geometry;
+            this.material = material;
+        }
+    }
+
+    private static class FakeFactory
+            implements SharedRenderableRegistry.Factory<Shape, FakeRenderable, Integer> {
+        final Set<float[]> geometries = Collections.newSetFromMap(new IdentityHashMap<>());
+        int prototypesBuilt;
+        int instancesBuilt;
+
+        @Override
+        public FakeRenderable makePrototype(Shape shape, Integer material) {
+            prototypesBuilt++;
+            return new FakeRenderable(new float[VERTEX_FLOATS], material);
+        }
+
+        @Override
+        public FakeRenderable makeInstance(FakeRenderable prototype, Integer material) {
+            instancesBuilt++;
+            geometries.add(prototype.geometry);
+            return new FakeRenderable(prototype.geometry, material);
+        }
+    }
+}
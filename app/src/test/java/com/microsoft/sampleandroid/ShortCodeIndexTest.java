@@ -0,0 +1,88 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class ShortCodeIndexTest {
+    @Test
+    public void codesRoundTripThroughTheirText() {
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; i++) {
+            long code = ShortCodeIndex.derive("anchor-" + random.nextInt(), 0);
+            String text = ShortCodeIndex.format(code);
+            assertEquals(ShortCodeIndex.CODE_LENGTH + 1, text.length());
+            assertEquals('-', text.charAt(4));
+            assertEquals(code, ShortCodeIndex.parse(text));
+        }
+    }
+
+    @Test
+    public void parsingForgivesWhatPeopleType() {
+        long code = ShortCodeIndex.parse("1O2C-4Z9Q");
+        assertNotEquals(ShortCodeIndex.NO_CODE, code);
+        assertEquals(code, ShortCodeIndex.parse("102c4z9q"));
+        assertEquals(code, ShortCodeIndex.parse("lo2c 4z9q"));
+        assertEquals(code, ShortCodeIndex.parse("I02C-4Z9Q"));
+
+        assertEquals(ShortCodeIndex.NO_CODE, ShortCodeIndex.parse("102C-4Z9"));
+        assertEquals(ShortCodeIndex.NO_CODE, ShortCodeIndex.parse("102C-4Z9QQ"));
+        // U is left out of the alphabet.
+        assertEquals(ShortCodeIndex.NO_CODE, ShortCodeIndex.parse("102C-4Z9U"));
+        assertEquals(ShortCodeIndex.NO_CODE, ShortCodeIndex.parse("0f1c2b3a-1111-2222-3333-444455556666"));
+        assertEquals(ShortCodeIndex.NO_CODE, ShortCodeIndex.parse(""));
+    }
+
+    @Test
+    public void identifiersResolveExactly() {
+        ShortCodeIndex index = new ShortCodeIndex(4);
+        String guid = "0f1c2b3a-1111-2222-3333-444455556666";
+        String upperGuid = "0F1C2B3A-1111-2222-3333-444455556666";
+        String other = "anchor-42";
+
+        long guidCode = index.assign(guid);
+        long upperCode = index.assign(upperGuid);
+        long otherCode = index.assign(other);
+
+        assertEquals(guid, index.resolve(guidCode));
+        assertEquals(upperGuid, index.resolve(upperCode));
+        assertEquals(other, index.resolve(ShortCodeIndex.format(otherCode).toLowerCase()));
+        assertEquals(guidCode, index.assign(guid));
+        assertEquals(3, index.size());
+        assertNull(index.resolve("ZZZZ-ZZZZ"));
+        assertNull(index.resolve(guid));
+    }
+
+    @Test
+    public void takenCodesAreSalted() {
+        ShortCodeIndex index = new ShortCodeIndex(16);
+        long taken = ShortCodeIndex.derive("b", 0);
+        assertTrue(index.put(taken, "a"));
+        assertFalse(index.put(taken, "b"));
+
+        long code = index.assign("b");
+
+        assertEquals(ShortCodeIndex.derive("b", 1), code);
+        assertEquals(1, index.getCollisionCount());
+        assertEquals("a", index.resolve(taken));
+        assertEquals("b", index.resolve(code));
+        assertEquals(code, index.assign("b"));
+    }
+
+    @Test
+    public void guidsArePackedIntoTheArrays() {
+        ShortCodeIndex index = new ShortCodeIndex(1024);
+        Random random = new Random(11);
+        for (int i = 0; i < 1000; i++) {
+            index.assign(new UUID(random.nextLong(), random.nextLong()).toString());
+        }
+        // Three longs per entry and a table of 2048 ints; nothing per identifier.
+        assertEquals(1024 * 24 + 2048 * 4, index.getMemoryBytes());
+
+        index.assign("anchor-42");
+        assertEquals(1024 * 24 + 2048 * 4 + 2 * "anchor-42".length() + 48, index.getMemoryBytes());
+    }
+}
@@ -0,0 +1,200 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SimulatedSpatialAnchorBackendTest {
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void createRequiresScanProgress() throws Exception {
+        SimulatedSpatialAnchorBackend<Object> backend = newBackend();
+        List<Float> progress = new ArrayList<>();
+        backend.addListener(new SpatialAnchorBackend.Listener<SimulatedAnchor>() {
+            @Override
+            public void onSessionUpdated(SessionStatusSnapshot status) {
+                progress.add(status.getRecommendedForCreateProgress());
+            }
+        });
+        backend.start();
+
+        try {
+            backend.createAnchorAsync(new SimulatedAnchor(0, 0, 0)).get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertFalse(((SimulatedSpatialAnchorBackend.SimulatedBackendException) e.getCause()).isTransient());
+        }
+
+        feedFrames(backend, 10);
+        assertEquals(10, progress.size());
+        assertEquals(1f, progress.get(9), 1e-6f);
+
+        SimulatedAnchor saved = backend.createAnchorAsync(new SimulatedAnchor(1, 2, 3)).get(1, TimeUnit.SECONDS);
+        assertEquals("sim-1", backend.getIdentifier(saved));
+        assertEquals(1, backend.getCloudAnchorCount());
+    }
+
+    @Test
+    public void watcherReportsEachIdentifierThenCompletes() throws Exception {
+        SimulatedSpatialAnchorBackend<Object> backend = newBackend();
+        backend.putCloudAnchor("a", 0, 0, 0);
+        backend.putCloudAnchor("b", 1, 0, 0);
+        RecordingListener listener = new RecordingListener(1);
+        backend.addListener(listener);
+        backend.start();
+
+        SpatialAnchorBackend.Watcher watcher =
+                backend.createWatcher(new AnchorQuery().setIdentifiers(new String[]{"a", "b", "missing"}));
+
+        assertTrue(listener.completed.await(1, TimeUnit.SECONDS));
+        assertEquals(SpatialAnchorBackend.LocateStatus.Located, listener.statuses.get("a"));
+        assertEquals(SpatialAnchorBackend.LocateStatus.Located, listener.statuses.get("b"));
+        assertEquals(SpatialAnchorBackend.LocateStatus.NotLocatedAnchorDoesNotExist, listener.statuses.get("missing"));
+        assertEquals(Collections.singletonList(false), listener.cancellations);
+        assertTrue(backend.getActiveWatchers().isEmpty());
+        assertEquals(watcher.getId(), (int) listener.watcherIds.get(0));
+    }
+
+    @Test
+    public void stoppedWatcherCompletesAsCancelled() throws Exception {
+        SimulatedSpatialAnchorBackend<Object> backend = newBackend().setLocateLatencyMs(10_000, 10_000);
+        backend.putCloudAnchor("a", 0, 0, 0);
+        RecordingListener listener = new RecordingListener(1);
+        SpatialAnchorBackend.Registration registration = backend.addListener(listener);
+        backend.start();
+
+        SpatialAnchorBackend.Watcher watcher = backend.createWatcher(new AnchorQuery().setIdentifiers(new String[]{"a"}));
+        assertEquals(1, backend.getActiveWatchers().size());
+        watcher.stop();
+
+        assertTrue(listener.completed.await(1, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(true), listener.cancellations);
+        assertTrue(listener.statuses.isEmpty());
+
+        registration.remove();
+        backend.createWatcher(new AnchorQuery().setIdentifiers(new String[0]));
+        assertEquals(1, listener.cancellations.size());
+    }
+
+    @Test
+    public void failureRateIsDeterministicForSeed() throws Exception {
+        assertEquals(countFailures(7), countFailures(7));
+        int failures = countFailures(11);
+        assertTrue(failures > 20 && failures < 80);
+    }
+
+    @Test
+    public void createsAndLocatesManyAnchorsDespiteTransientFailures() throws Exception {
+        int anchors = 200;
+        SimulatedSpatialAnchorBackend<Object> backend = newBackend()
+                .setCreateLatencyMs(5, 20)
+                .setLocateLatencyMs(5, 40)
+                .setFailureRate(0.1, true);
+        backend.start();
+        feedFrames(backend, 50);
+
+        AnchorBatchUploader<SimulatedAnchor> uploader = new AnchorBatchUploader<>(
+                backend::createAnchorAsync, scheduler, 8,
+                new RetryPolicy(5, 1, 20, error ->
+                        error instanceof SimulatedSpatialAnchorBackend.SimulatedBackendException
+                                && ((SimulatedSpatialAnchorBackend.SimulatedBackendException) error).isTransient()));
+        List<SimulatedAnchor> drafts = new ArrayList<>();
+        for (int i = 0; i < anchors; i++) {
+            drafts.add(new SimulatedAnchor(i, 0, 0));
+        }
+
+        List<SimulatedAnchor> saved = uploader.upload(drafts).getCompletion().get(10, TimeUnit.SECONDS);
+        assertEquals(anchors, saved.size());
+
+        backend.stop();
+        backend.start();
+        String[] identifiers = new String[anchors];
+        for (int i = 0; i < anchors; i++) {
+            identifiers[i] = saved.get(i).getIdentifier();
+        }
+        RecordingListener listener = new RecordingListener(1);
+        backend.addListener(listener);
+        backend.createWatcher(new AnchorQuery().setIdentifiers(identifiers));
+        assertTrue(listener.completed.await(10, TimeUnit.SECONDS));
+
+        assertEquals(anchors, listener.statuses.size());
+        assertFalse(listener.statuses.containsValue(SpatialAnchorBackend.LocateStatus.NotLocatedAnchorDoesNotExist));
+    }
+
+    private int countFailures(long seed) throws Exception {
+        SimulatedSpatialAnchorBackend<Object> backend =
+                new SimulatedSpatialAnchorBackend<>(scheduler, seed)
+                        .setCreateLatencyMs(0, 0)
+                        .setRequireScanProgress(false)
+                        .setFailureRate(0.5, true);
+        backend.start();
+        List<CompletableFuture<SimulatedAnchor>> saves = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            saves.add(backend.createAnchorAsync(new SimulatedAnchor(0, 0, 0)));
+        }
+        int failures = 0;
+        for (CompletableFuture<SimulatedAnchor> save : saves) {
+            try {
+                save.get(1, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    private SimulatedSpatialAnchorBackend<Object> newBackend() {
+        return new SimulatedSpatialAnchorBackend<>(scheduler, 42)
+                .setCreateLatencyMs(1, 5)
+                .setLocateLatencyMs(1, 10)
+                .setProgressPerFrame(0.1f);
+    }
+
+    private static void feedFrames(SimulatedSpatialAnchorBackend<Object> backend, int frames) {
+        for (int i = 0; i < frames; i++) {
+            backend.processFrame(null);
+        }
+    }
+
+    private static final class RecordingListener implements SpatialAnchorBackend.Listener<SimulatedAnchor> {
+        final Map<String, SpatialAnchorBackend.LocateStatus> statuses = new ConcurrentHashMap<>();
+        final List<Boolean> cancellations = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> watcherIds = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch completed;
+
+        RecordingListener(int expectedCompletions) {
+            completed = new CountDownLatch(expectedCompletions);
+        }
+
+        @Override
+        public void onAnchorLocated(LocatedAnchor<SimulatedAnchor> located) {
+            statuses.put(located.getIdentifier(), located.getStatus());
+        }
+
+        @Override
+        public void onLocateCompleted(int watcherId, boolean cancelled) {
+            watcherIds.add(watcherId);
+            cancellations.add(cancelled);
+            completed.countDown();
+        }
+    }
+}
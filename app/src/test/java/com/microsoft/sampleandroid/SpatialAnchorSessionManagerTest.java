@@ -0,0 +1,144 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SpatialAnchorSessionManagerTest {
+    private static final String THREAD_NAME = "session-manager-test";
+
+    private final AtomicInteger threadsCreated = new AtomicInteger();
+    private final List<SimulatedSpatialAnchorBackend<Object>> backends = new ArrayList<>();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final SpatialAnchorSessionManager<SimulatedAnchor, Object> manager = new SpatialAnchorSessionManager<>(
+            executor -> {
+                SimulatedSpatialAnchorBackend<Object> backend = new SimulatedSpatialAnchorBackend<>(executor, 3)
+                        .setCreateLatencyMs(1, 5)
+                        .setLocateLatencyMs(1, 5)
+                        .setRequireScanProgress(false);
+                backend.putCloudAnchor("a", 0, 0, 0);
+                backends.add(backend);
+                return backend;
+            },
+            runnable -> {
+                threadsCreated.incrementAndGet();
+                Thread thread = new Thread(runnable, THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            },
+            System::nanoTime,
+            metrics);
+
+    @After
+    public void tearDown() {
+        manager.close();
+    }
+
+    @Test
+    public void modeSwitchesReuseOneSessionAndOneThread() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            if (i % 2 == 0) {
+                SpatialAnchorBackend<SimulatedAnchor, Object> backend = manager.enter(SpatialAnchorSessionManager.Mode.Creating);
+                backend.processFrame(null);
+                assertNotNull(backend.createAnchorAsync(new SimulatedAnchor(i, 0, 0)).get(2, TimeUnit.SECONDS));
+            } else {
+                IncrementalLocator<SimulatedAnchor, Object> locator = new IncrementalLocator<>(
+                        manager.enter(SpatialAnchorSessionManager.Mode.Locating), System::nanoTime, (identifier, anchor, elapsed) -> {
+                        });
+                locator.locate("a", "missing-" + i);
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+                while (locator.isLocating()) {
+                    assertTrue("Locating did not finish", System.nanoTime() < deadline);
+                    Thread.sleep(1);
+                }
+                assertNotNull(locator.getLocatedAnchor("a"));
+                locator.close();
+            }
+        }
+
+        assertEquals(1, backends.size());
+        assertEquals(1, threadsCreated.get());
+        assertEquals(1, countThreads());
+        assertEquals(100, metrics.counter("session.mode_switches").sum());
+        assertEquals(1, metrics.counter("session.backends_created").sum());
+        assertEquals(1, metrics.histogram("session.start_ns").snapshot().getCount());
+
+        manager.close();
+        assertEquals(1, metrics.histogram("session.stop_ns").snapshot().getCount());
+        assertTrue(manager.getExecutor().awaitTermination(2, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (countThreads() > 0) {
+            assertTrue("The scheduler thread is still alive", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void leavingLocateModeStopsItsWatchers() {
+        manager.enter(SpatialAnchorSessionManager.Mode.Locating)
+                .createWatcher(new AnchorQuery().setIdentifiers(new String[]{"a"}));
+        SimulatedSpatialAnchorBackend<Object> backend = backends.get(0);
+        backend.setLocateLatencyMs(10_000, 10_000);
+        backend.createWatcher(new AnchorQuery().setIdentifiers(new String[]{"b"}));
+        assertFalse(backend.getActiveWatchers().isEmpty());
+
+        assertSame(backend, manager.enter(SpatialAnchorSessionManager.Mode.Creating));
+        assertTrue(backend.getActiveWatchers().isEmpty());
+        assertEquals(SpatialAnchorSessionManager.Mode.Creating, manager.getMode());
+    }
+
+    @Test
+    public void listenersOutliveTheBackendUntilRemoved() {
+        AtomicInteger early = new AtomicInteger();
+        AtomicInteger late = new AtomicInteger();
+        SpatialAnchorBackend.Registration earlyRegistration = manager.addListener(new SpatialAnchorBackend.Listener<SimulatedAnchor>() {
+            @Override
+            public void onSessionUpdated(SessionStatusSnapshot status) {
+                early.incrementAndGet();
+            }
+        });
+        assertNull(manager.getRunningBackend());
+
+        SpatialAnchorBackend<SimulatedAnchor, Object> backend = manager.enter(SpatialAnchorSessionManager.Mode.Creating);
+        manager.addListener(new SpatialAnchorBackend.Listener<SimulatedAnchor>() {
+            @Override
+            public void onSessionUpdated(SessionStatusSnapshot status) {
+                late.incrementAndGet();
+            }
+        });
+        backend.processFrame(null);
+        earlyRegistration.remove();
+        earlyRegistration.remove();
+        backend.processFrame(null);
+        assertEquals(1, early.get());
+        assertEquals(2, late.get());
+
+        // Stopped sessions keep their listeners and start again on the next switch.
+        manager.stop();
+        assertNull(manager.getRunningBackend());
+        assertSame(backend, manager.enter(SpatialAnchorSessionManager.Mode.Locating));
+        backend.processFrame(null);
+        assertEquals(3, late.get());
+
+        manager.close();
+        backend.start();
+        backend.processFrame(null);
+        assertEquals(3, late.get());
+    }
+
+    private static int countThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(THREAD_NAME) && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,87 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SpatialGridTest {
+    private static final int ANCHORS = 10_000;
+
+    @Test
+    public void nearestMatchesBruteForce() {
+        Random random = new Random(11);
+        SpatialGrid<Integer> grid = new SpatialGrid<>(2f);
+        float[][] points = new float[ANCHORS][];
+        for (int i = 0; i < ANCHORS; i++) {
+            // A 100 m square building, three floors.
+            points[i] = new float[]{random.nextFloat() * 100, random.nextInt(3) * 3f, random.nextFloat() * 100};
+            grid.put(i, points[i][0], points[i][1], points[i][2]);
+        }
+
+        for (int query = 0; query < 50; query++) {
+            float x = random.nextFloat() * 120 - 10;
+            float y = random.nextFloat() * 6;
+            float z = random.nextFloat() * 120 - 10;
+            int k = 1 + random.nextInt(20);
+
+            assertEquals(bruteForceNearest(points, x, y, z, k), distancesOf(grid.findNearest(x, y, z, k), points, x, y, z));
+        }
+    }
+
+    @Test
+    public void nearestFallsBackToScanningSparseGrids() {
+        SpatialGrid<String> grid = new SpatialGrid<>(1f);
+        grid.put("far", 500, 0, 0);
+        grid.put("further", -900, 0, 0);
+
+        assertEquals(Arrays.asList("far", "further"), grid.findNearest(0, 0, 0, 5));
+        assertEquals(Collections.singletonList("far"), grid.findNearest(0, 0, 0, 1));
+        assertTrue(grid.findNearest(0, 0, 0, 0).isEmpty());
+    }
+
+    @Test
+    public void movesAreSeenByBothQueries() {
+        SpatialGrid<String> grid = new SpatialGrid<>(2f);
+        grid.put("a", 0, 0, 0);
+        grid.put("b", 10, 0, 0);
+
+        // Tracking refines "b" to right next to the origin.
+        grid.put("b", 0.5f, 0, 0);
+
+        assertEquals(Arrays.asList("a", "b"), grid.findWithin(0, 0, 0, 1, 10));
+        assertEquals(Arrays.asList("a", "b"), grid.findNearest(0, 0, 0, 2));
+        assertEquals(0.25f, grid.distanceSquared("b", 0, 0, 0), 1e-6f);
+        assertTrue(grid.findWithin(10, 0, 0, 1, 10).isEmpty());
+        assertTrue(Float.isNaN(grid.distanceSquared("c", 0, 0, 0)));
+    }
+
+    private static List<Float> bruteForceNearest(float[][] points, float x, float y, float z, int k) {
+        List<Float> distances = new ArrayList<>();
+        for (float[] point : points) {
+            distances.add(distanceSquared(point, x, y, z));
+        }
+        Collections.sort(distances);
+        return distances.subList(0, k);
+    }
+
+    private static List<Float> distancesOf(List<Integer> found, float[][] points, float x, float y, float z) {
+        List<Float> distances = new ArrayList<>();
+        for (int i : found) {
+            distances.add(distanceSquared(points[i], x, y, z));
+        }
+        return distances;
+    }
+
+    private static float distanceSquared(float[] point, float x, float y, float z) {
+        float dx = point[0] - x;
+        float dy = point[1] - y;
+        float dz = point[2] - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
@@ -0,0 +1,178 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class StartupOrchestratorTest {
+    private final ExecutorService background = Executors.newFixedThreadPool(2, runnable -> new Thread(runnable, "startup"));
+    private final ExecutorService main = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "main"));
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    // Every reading is a nanosecond later than the one before, on any thread.
+    private final AtomicLong ticks = new AtomicLong();
+    private final StartupOrchestrator startup =
+            new StartupOrchestrator(background, main, ticks::incrementAndGet, 0, metrics);
+
+    @After
+    public void tearDown() {
+        background.shutdownNow();
+        main.shutdownNow();
+    }
+
+    @Test
+    public void tasksRunAfterTheirDependenciesOnTheirThreads() throws Exception {
+        // a and b are independent, so each can wait for the other to start.
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        startup.task("a", StartupOrchestrator.Runs.Background, meeting(bothStarted, "a"));
+        startup.task("b", StartupOrchestrator.Runs.Background, meeting(bothStarted, "b"));
+        CompletableFuture<String> c = startup.task("c", StartupOrchestrator.Runs.MainThread,
+                () -> Thread.currentThread().getName(), "a", "b");
+
+        assertEquals("main", c.get(5, TimeUnit.SECONDS));
+        StartupOrchestrator.Span a = startup.getSpan("a");
+        StartupOrchestrator.Span b = startup.getSpan("b");
+        StartupOrchestrator.Span last = startup.getSpan("c");
+        assertTrue(last.startNanos > Math.max(a.endNanos, b.endNanos));
+        assertTrue(b.startNanos < a.endNanos && a.startNanos < b.endNanos);
+        assertEquals("startup", a.thread);
+        assertEquals(3, startup.getSpans().size());
+        assertEquals(1, metrics.histogram("startup.a_ns").snapshot().getCount());
+    }
+
+    @Test
+    public void lazyTasksRunOnceOnFirstUse() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        startup.lazyTask("cloud_services", StartupOrchestrator.Runs.Background, runs::incrementAndGet);
+        assertEquals(0, runs.get());
+        assertNull(startup.getSpan("cloud_services"));
+
+        CompletableFuture<?> first = startup.require("cloud_services");
+        CompletableFuture<?> second = startup.require("cloud_services");
+        first.get(5, TimeUnit.SECONDS);
+
+        assertSame(first, second);
+        assertEquals(1, runs.get());
+
+        // An eager task starts the lazy ones it depends on.
+        startup.lazyTask("store", StartupOrchestrator.Runs.Background, runs::incrementAndGet);
+        startup.task("index", StartupOrchestrator.Runs.Background, runs::incrementAndGet, "store").get(5, TimeUnit.SECONDS);
+        assertEquals(3, runs.get());
+    }
+
+    @Test
+    public void failuresReachDependentsWithoutRunningThem() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        startup.task("ar_session", StartupOrchestrator.Runs.Background, () -> {
+            throw new IllegalStateException("ARCore is not installed");
+        });
+        CompletableFuture<Integer> dependent = startup.task("attach", StartupOrchestrator.Runs.MainThread,
+                runs::incrementAndGet, "ar_session");
+
+        try {
+            dependent.join();
+            fail();
+        } catch (CompletionException e) {
+            assertEquals("ARCore is not installed", e.getCause().getMessage());
+        }
+        assertEquals(0, runs.get());
+        assertTrue(startup.getSpan("ar_session").failed);
+        assertNull(startup.getSpan("attach"));
+        assertTrue(startup.formatTrace().contains("ar_session [startup] failed"));
+    }
+
+    @Test
+    public void invalidGraphsAreRejected() {
+        startup.lazyTask("a", StartupOrchestrator.Runs.Background, () -> null);
+        try {
+            startup.lazyTask("a", StartupOrchestrator.Runs.Background, () -> null);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            startup.task("b", StartupOrchestrator.Runs.Background, () -> null, "missing");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    // The app's cold start with stubbed work on a clock the test moves: the ARCore session is
+    // built in the background while the activity is created on the main thread, so the first
+    // frame waits for the longer of the two rather than their sum.
+    @Test
+    public void backgroundSessionShortensTimeToFirstFrame() throws Exception {
+        AtomicLong now = new AtomicLong();
+        StartupOrchestrator coldStart = new StartupOrchestrator(background, main, now::get, 0, metrics);
+        CountDownLatch sessionStarted = new CountDownLatch(1);
+        CountDownLatch sessionMayFinish = new CountDownLatch(1);
+        CompletableFuture<Object> cloudServices;
+        CompletableFuture<String> session;
+        StartupOrchestrator.Phase application = coldStart.begin("application.onCreate");
+        try {
+            cloudServices = coldStart.task("cloud_services", StartupOrchestrator.Runs.Background, () -> null);
+            session = coldStart.task("ar_session", StartupOrchestrator.Runs.Background, () -> {
+                sessionStarted.countDown();
+                assertTrue(sessionMayFinish.await(5, TimeUnit.SECONDS));
+                now.set(TimeUnit.MILLISECONDS.toNanos(120));
+                return "session";
+            });
+        } finally {
+            application.close();
+        }
+        main.submit(() -> {
+            StartupOrchestrator.Phase activity = coldStart.begin("activity.onCreate");
+            try {
+                assertTrue(sessionStarted.await(5, TimeUnit.SECONDS));
+                now.set(TimeUnit.MILLISECONDS.toNanos(100));
+            } finally {
+                activity.close();
+            }
+            StartupOrchestrator.Phase attach = coldStart.begin("ar_session.attach");
+            try {
+                sessionMayFinish.countDown();
+                assertEquals("session", session.join());
+            } finally {
+                attach.close();
+            }
+            coldStart.mark("first_frame");
+            coldStart.mark("first_frame");
+            return null;
+        }).get(5, TimeUnit.SECONDS);
+        cloudServices.get(5, TimeUnit.SECONDS);
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(120), coldStart.getMilestoneNanos("first_frame"));
+        assertEquals(1, metrics.histogram("startup.first_frame_ns").snapshot().getCount());
+        StartupOrchestrator.Span activity = coldStart.getSpan("activity.onCreate");
+        StartupOrchestrator.Span arSession = coldStart.getSpan("ar_session");
+        assertEquals("main", activity.thread);
+        assertEquals("startup", arSession.thread);
+        assertEquals(0, arSession.startNanos);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), activity.getDurationNanos());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), coldStart.getSpan("ar_session.attach").getDurationNanos());
+        // Cloud services are initialized in the background from the start, off the main thread.
+        assertEquals("startup", coldStart.getSpan("cloud_services").thread);
+        assertEquals(-1, coldStart.getMilestoneNanos("never"));
+        String trace = coldStart.formatTrace();
+        assertTrue(trace.indexOf("application.onCreate") < trace.indexOf("first_frame"));
+        assertTrue(trace.trim().endsWith("first_frame"));
+    }
+
+    // Returns result once every task sharing the latch has started.
+    private static <T> Callable<T> meeting(CountDownLatch started, T result) {
+        return () -> {
+            started.countDown();
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            return result;
+        };
+    }
+}
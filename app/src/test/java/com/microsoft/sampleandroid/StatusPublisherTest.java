@@ -0,0 +1,107 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StatusPublisherTest {
+    private final FakeLooper looper = new FakeLooper();
+    private final CoalescingDispatcher dispatcher = new CoalescingDispatcher(looper, System::nanoTime);
+    private final StatusPublisher<String> publisher = new StatusPublisher<>(dispatcher);
+    private final List<String> shown = new ArrayList<>();
+
+    @Test
+    public void burstsAreCoalescedIntoOneDelivery() {
+        publisher.resume(shown::add);
+        looper.runAll();
+
+        for (int progress = 0; progress <= 100; progress += 2) {
+            publisher.publish("El progreso es" + progress + "%");
+        }
+        looper.runAll();
+
+        assertEquals(Collections.singletonList("El progreso es100%"), shown);
+        assertEquals(51, publisher.getPublishedCount());
+        assertEquals(1, publisher.getDeliveryCount());
+    }
+
+    @Test
+    public void unchangedStatusIsNotRedelivered() {
+        publisher.resume(shown::add);
+        publisher.publish("Guardando");
+        looper.runAll();
+        publisher.publish("Guardando");
+        publisher.publish("Guardando");
+        looper.runAll();
+
+        assertEquals(Collections.singletonList("Guardando"), shown);
+        assertEquals(1, looper.posted());
+    }
+
+    @Test
+    public void nullHandsTheStatusLineBack() {
+        publisher.resume(shown::add);
+        publisher.publish("Buscando 42");
+        looper.runAll();
+
+        publisher.publish(null);
+        publisher.publish("Buscando 42");
+        looper.runAll();
+
+        assertEquals(Arrays.asList("Buscando 42", "Buscando 42"), shown);
+    }
+
+    @Test
+    public void nullCancelsAPendingDelivery() {
+        publisher.resume(shown::add);
+        looper.runAll();
+        publisher.publish("Guardando");
+        publisher.publish(null);
+        looper.runAll();
+
+        assertTrue(shown.isEmpty());
+    }
+
+    @Test
+    public void pausedPublisherDeliversTheLatestStatusOnResume() {
+        publisher.resume(shown::add);
+        publisher.pause();
+        publisher.publish("a");
+        publisher.publish("b");
+        looper.runAll();
+        assertTrue(shown.isEmpty());
+
+        publisher.resume(shown::add);
+        looper.runAll();
+        assertEquals(Collections.singletonList("b"), shown);
+    }
+
+    // updateStatic started another endless 500 ms loop on every resume. With the publisher,
+    // pause/resume cycles cost at most one looper message each and deliver nothing new.
+    @Test
+    public void wakeupsStayConstantAcrossPauseResumeCycles() {
+        publisher.resume(shown::add);
+        publisher.publish("Buscando 42");
+        looper.runAll();
+        int postedAfterFirstResume = looper.posted();
+
+        for (int cycle = 0; cycle < 100; cycle++) {
+            publisher.pause();
+            publisher.resume(shown::add);
+            looper.runAll();
+        }
+        int postedByCycles = looper.posted() - postedAfterFirstResume;
+
+        // Idle afterwards: nothing is scheduled while nothing changes.
+        looper.runAll();
+        assertEquals(0, looper.pending());
+        assertEquals(Collections.singletonList("Buscando 42"), shown);
+        assertTrue(postedByCycles <= 100);
+        assertEquals(1, publisher.getDeliveryCount());
+    }
+}
@@ -0,0 +1,117 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UploadJournalTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void reopeningKeepsOnlyUnfinishedUploads() throws IOException {
+        File file = temporaryFolder.newFile("uploads.journal");
+        UploadJournal journal = UploadJournal.open(file);
+        UploadJournal.Entry saved = journal.append(1, pose(1), 0xff00ff00, "Sphere", Collections.emptyMap());
+        UploadJournal.Entry abandoned = journal.append(2, pose(2), 0xff00ff00, "Sphere", Collections.emptyMap());
+        UploadJournal.Entry pending = journal.append(3, pose(3), 0xffff0000, "Model",
+                Collections.singletonMap("label", "door"));
+        journal.markSaved(saved.getUploadId(), "cloud-1");
+        journal.markAbandoned(abandoned.getUploadId(), "rejected");
+        journal.close();
+
+        UploadJournal reopened = UploadJournal.open(file);
+        List<UploadJournal.Entry> entries = reopened.getPending();
+        assertEquals(1, entries.size());
+        UploadJournal.Entry entry = entries.get(0);
+        assertEquals(pending.getUploadId(), entry.getUploadId());
+        assertEquals(3, entry.getEnqueuedAtMillis());
+        assertArrayEquals(pose(3), entry.getPose(), 0f);
+        assertEquals(0xffff0000, entry.getColor());
+        assertEquals("Model", entry.getShape());
+        assertEquals("door", entry.getAppProperties().get("label"));
+
+        // Identifiers are never reused, even for finished uploads.
+        assertEquals(pending.getUploadId() + 1,
+                reopened.append(4, pose(4), 0, "Sphere", Collections.emptyMap()).getUploadId());
+        reopened.close();
+    }
+
+    @Test
+    public void onlySyncedEntriesSurviveACrash() throws IOException {
+        File file = temporaryFolder.newFile("uploads.journal");
+        UploadJournal journal = UploadJournal.open(file);
+        journal.append(1, pose(1), 0, "Sphere", Collections.emptyMap());
+        journal.append(2, pose(2), 0, "Sphere", Collections.emptyMap());
+        assertEquals(2, journal.sync());
+        assertEquals(0, journal.sync());
+        assertEquals(1, journal.getSyncCount());
+        // Buffered, never synced: lost with the process.
+        journal.append(3, pose(3), 0, "Sphere", Collections.emptyMap());
+
+        // A write torn by the crash.
+        long length = file.length();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[]{0, 0, 0, 40, 1, 2, 3});
+        }
+
+        UploadJournal reopened = UploadJournal.open(file);
+        assertEquals(2, reopened.getPendingCount());
+        assertEquals(length, file.length());
+        reopened.close();
+    }
+
+    @Test
+    public void finishedUploadsAreCompactedAway() throws IOException {
+        File file = temporaryFolder.newFile("uploads.journal");
+        UploadJournal journal = UploadJournal.open(file);
+        for (int i = 0; i < 1000; i++) {
+            UploadJournal.Entry entry = journal.append(i, pose(i), 0, "Sphere", Collections.emptyMap());
+            if (i < 999) {
+                journal.markSaved(entry.getUploadId(), "cloud-" + i);
+            }
+        }
+        journal.close();
+
+        assertTrue(journal.getLogEntryCount() < 300);
+        UploadJournal reopened = UploadJournal.open(file);
+        assertEquals(1, reopened.getPendingCount());
+        assertEquals(999, reopened.getPending().get(0).getEnqueuedAtMillis());
+        reopened.close();
+    }
+
+    @Test
+    public void compactionWaitsForTheNextSync() throws IOException {
+        File file = temporaryFolder.newFile("uploads.journal");
+        UploadJournal journal = UploadJournal.open(file);
+        for (int i = 0; i < 300; i++) {
+            UploadJournal.Entry entry = journal.append(i, pose(i), 0, "Sphere", Collections.emptyMap());
+            journal.markSaved(entry.getUploadId(), "cloud-" + i);
+        }
+        journal.append(300, pose(300), 0, "Sphere", Collections.emptyMap());
+
+        // Finishing uploads only appends; the rewrite happens with the sync, off the caller's path.
+        assertEquals(601, journal.getLogEntryCount());
+        assertEquals(601, journal.sync());
+        assertEquals(1, journal.getLogEntryCount());
+        assertEquals(1, journal.getSyncCount());
+        journal.close();
+
+        UploadJournal reopened = UploadJournal.open(file);
+        assertEquals(1, reopened.getPendingCount());
+        assertEquals(300, reopened.getPending().get(0).getEnqueuedAtMillis());
+        reopened.close();
+    }
+
+    private static float[] pose(float x) {
+        return new float[]{x, 0, 0, 0, 0, 0, 1};
+    }
+}
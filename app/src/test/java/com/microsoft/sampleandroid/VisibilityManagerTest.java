@@ -0,0 +1,127 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VisibilityManagerTest {
+    private final List<String> shown = new ArrayList<>();
+    private final List<String> hidden = new ArrayList<>();
+    private final VisibilityManager<String> manager = new VisibilityManager<>(4f, 10f, 12f, 0.5f,
+            new VisibilityManager.Listener<String>() {
+                @Override
+                public void onShow(String item) {
+                    shown.add(item);
+                }
+
+                @Override
+                public void onHide(String item) {
+                    hidden.add(item);
+                }
+            });
+
+    @Test
+    public void itemsOutOfRangeAreHiddenAndComeBack() {
+        manager.put("near", 2, 0, 0);
+        manager.put("far", 30, 0, 0);
+
+        manager.update(0, 0, 0);
+        assertEquals(Arrays.asList("far"), hidden);
+        assertTrue(manager.isVisible("near"));
+        assertFalse(manager.isVisible("far"));
+
+        manager.update(25, 0, 0);
+        assertEquals(Arrays.asList("far"), shown);
+        assertEquals(Arrays.asList("far", "near"), hidden);
+    }
+
+    @Test
+    public void hysteresisKeepsEdgeItemsSteady() {
+        manager.put("edge", 11, 0, 0);
+        manager.update(0, 0, 0);
+        // Between the show and hide radius: a new item stays shown.
+        assertTrue(hidden.isEmpty());
+
+        manager.update(-1.5f, 0, 0);
+        assertEquals(Arrays.asList("edge"), hidden);
+
+        // Back to 11 m: still beyond the show radius, so it stays hidden.
+        manager.update(0, 0, 0);
+        assertTrue(shown.isEmpty());
+        manager.update(1.5f, 0, 0);
+        assertEquals(Arrays.asList("edge"), shown);
+    }
+
+    @Test
+    public void smallCameraMovesSkipTheQuery() {
+        manager.put("a", 1, 0, 0);
+        manager.update(0, 0, 0);
+        manager.update(0.1f, 0, 0.1f);
+        manager.update(0.2f, 0, 0);
+
+        assertEquals(1, manager.getUpdateCount());
+        assertEquals(2, manager.getSkippedUpdateCount());
+    }
+
+    @Test
+    public void refreshedPositionsAreApplied() {
+        Map<String, float[]> world = new HashMap<>();
+        world.put("a", new float[]{1, 0, 0});
+        world.put("b", new float[]{2, 0, 0});
+        world.put("c", new float[]{3, 0, 0});
+        for (Map.Entry<String, float[]> entry : world.entrySet()) {
+            float[] p = entry.getValue();
+            manager.put(entry.getKey(), p[0], p[1], p[2]);
+        }
+        manager.update(0, 0, 0);
+
+        // Tracking moves "b" 40 m away; refreshing two items per frame reaches it within two.
+        world.get("b")[0] = 40;
+        VisibilityManager.PositionSource<String> source = (item, out) -> {
+            System.arraycopy(world.get(item), 0, out, 0, 3);
+            return true;
+        };
+        manager.refreshPositions(2, source);
+        manager.refreshPositions(2, source);
+        manager.update(0, 0, 0);
+
+        assertEquals(Arrays.asList("b"), hidden);
+        assertEquals(Arrays.asList("a", "c"), manager.findNearest(0, 0, 0, 2));
+    }
+
+    @Test
+    public void removedItemsGetNoCallbacks() {
+        manager.put("a", 30, 0, 0);
+        manager.put("b", 31, 0, 0);
+        manager.remove("a");
+        manager.update(0, 0, 0);
+
+        assertEquals(Arrays.asList("b"), hidden);
+        assertEquals(1, manager.size());
+    }
+
+    @Test
+    public void tenThousandAnchorsShowOnlyTheNeighbourhood() {
+        Random random = new Random(3);
+        for (int i = 0; i < 10_000; i++) {
+            manager.put("anchor" + i, random.nextFloat() * 200, 0, random.nextFloat() * 200);
+        }
+
+        manager.update(100, 0, 100);
+
+        // About pi * 12^2 / 200^2 of the floor lies within the hide radius.
+        int visible = manager.getVisible().size();
+        assertTrue("visible " + visible, visible > 60 && visible < 160);
+        assertEquals(10_000 - visible, hidden.size());
+        for (String item : manager.getVisible()) {
+            assertTrue(manager.findWithin(100, 0, 100, 12f, Integer.MAX_VALUE).contains(item));
+        }
+    }
+}
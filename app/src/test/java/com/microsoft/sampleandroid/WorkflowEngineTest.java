@@ -0,0 +1,161 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class WorkflowEngineTest {
+    private final AtomicLong now = new AtomicLong();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+
+    @Test
+    public void onlyTheKindsEdgesAreAllowed() {
+        WorkflowEngine<String> engine = new WorkflowEngine<>(now::get, metrics);
+        WorkflowEngine.Workflow<String> create = engine.start(WorkflowEngine.Kind.Create, "a");
+        WorkflowEngine.Workflow<String> locate = engine.start(WorkflowEngine.Kind.Locate, "b");
+
+        assertEquals(WorkflowEngine.State.Creating, create.getState());
+        assertEquals(WorkflowEngine.State.Locating, locate.getState());
+        try {
+            create.transition(WorkflowEngine.State.Creating, WorkflowEngine.State.Succeeded);
+            fail("Creating cannot succeed before saving");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            locate.transition(WorkflowEngine.State.Locating, WorkflowEngine.State.Saving);
+            fail("Lookups are never saved");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertFalse(locate.advance(WorkflowEngine.State.Saving));
+        assertFalse(create.transition(WorkflowEngine.State.Saving, WorkflowEngine.State.Succeeded));
+
+        assertTrue(create.transition(WorkflowEngine.State.Creating, WorkflowEngine.State.Saving));
+        assertTrue(create.advance(WorkflowEngine.State.Succeeded));
+        assertFalse(create.cancel());
+        assertFalse(create.isActive());
+        assertEquals(1, engine.getActiveCount());
+        assertEquals(1, engine.getActive(WorkflowEngine.Kind.Locate).size());
+        assertEquals(1, engine.cancelAll(WorkflowEngine.Kind.Locate));
+        assertEquals(0, engine.getActiveCount());
+    }
+
+    @Test
+    public void timeInEachStateIsRecordedPerKind() {
+        WorkflowEngine<String> engine = new WorkflowEngine<>(now::get, metrics);
+        WorkflowEngine.Workflow<String> create = engine.start(WorkflowEngine.Kind.Create, "a");
+        now.addAndGet(300);
+        create.advance(WorkflowEngine.State.Saving);
+        now.addAndGet(700);
+        create.advance(WorkflowEngine.State.Failed);
+        WorkflowEngine.Workflow<String> locate = engine.start(WorkflowEngine.Kind.Locate, "b");
+        now.addAndGet(50);
+        locate.advance(WorkflowEngine.State.Succeeded);
+
+        assertEquals(1000, create.getElapsedNanos() - 50);
+        assertEquals(300, metrics.histogram("workflow.create.creating_ns").snapshot().getMax());
+        assertEquals(700, metrics.histogram("workflow.create.saving_ns").snapshot().getMax());
+        assertEquals(50, metrics.histogram("workflow.locate.locating_ns").snapshot().getMax());
+        assertEquals(1, metrics.counter("workflow.create.failed").sum());
+        assertEquals(0, metrics.counter("workflow.create.succeeded").sum());
+        assertEquals(1, metrics.counter("workflow.locate.succeeded").sum());
+    }
+
+    @Test
+    public void racingTransitionsEachWinOnce() throws InterruptedException {
+        int workflows = 20_000;
+        int threads = 8;
+        WorkflowEngine<Integer> engine = new WorkflowEngine<>(System::nanoTime, metrics);
+        ConcurrentHashMap<Long, ConcurrentLinkedQueue<WorkflowEngine.State[]>> seen = new ConcurrentHashMap<>();
+        engine.setListener((workflow, from, to) -> seen.computeIfAbsent(workflow.getId(),
+                id -> new ConcurrentLinkedQueue<>()).add(new WorkflowEngine.State[]{from, to}));
+
+        List<WorkflowEngine.Workflow<Integer>> started = new ArrayList<>(workflows);
+        for (int i = 0; i < workflows; i++) {
+            started.add(engine.start(i % 3 == 0 ? WorkflowEngine.Kind.Locate : WorkflowEngine.Kind.Create, i));
+        }
+
+        // Each thread plays a saver, a UI and an SDK callback at once, racing the others.
+        WorkflowEngine.State[] moves = {
+                WorkflowEngine.State.Saving, WorkflowEngine.State.Saving, WorkflowEngine.State.Succeeded,
+                WorkflowEngine.State.Failed, WorkflowEngine.State.Cancelled};
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicLong wins = new AtomicLong();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            new Thread(() -> {
+                Random random = new Random(seed);
+                ready.countDown();
+                try {
+                    go.await();
+                    for (int round = 0; round < 3; round++) {
+                        for (WorkflowEngine.Workflow<Integer> workflow : started) {
+                            if (workflow.advance(moves[random.nextInt(moves.length)])) {
+                                wins.incrementAndGet();
+                            }
+                        }
+                    }
+                    // Whatever is left is cancelled, as on a reset.
+                    for (WorkflowEngine.Workflow<Integer> workflow : started) {
+                        if (workflow.cancel()) {
+                            wins.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        ready.await();
+        go.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        long transitions = 0;
+        long ended = 0;
+        for (WorkflowEngine.Workflow<Integer> workflow : started) {
+            assertFalse(workflow.isActive());
+            ConcurrentLinkedQueue<WorkflowEngine.State[]> edges = seen.get(workflow.getId());
+            // The edges won form one path from the initial state to the final one.
+            WorkflowEngine.State state = workflow.getKind() == WorkflowEngine.Kind.Create
+                    ? WorkflowEngine.State.Creating : WorkflowEngine.State.Locating;
+            int followed = 0;
+            for (boolean moved = true; moved; ) {
+                moved = false;
+                for (WorkflowEngine.State[] edge : edges) {
+                    if (edge[0] == state) {
+                        assertTrue(workflow.getKind().allows(edge[0], edge[1]));
+                        state = edge[1];
+                        followed++;
+                        moved = true;
+                        break;
+                    }
+                }
+            }
+            assertEquals(edges.size(), followed);
+            assertEquals(workflow.getState(), state);
+            transitions += edges.size();
+            ended++;
+        }
+        assertEquals(wins.get(), transitions);
+        assertEquals(0, engine.getActiveCount());
+        long endings = 0;
+        for (WorkflowEngine.Kind kind : WorkflowEngine.Kind.values()) {
+            String prefix = "workflow." + kind.name().toLowerCase() + ".";
+            endings += metrics.counter(prefix + "succeeded").sum() + metrics.counter(prefix + "failed").sum()
+                    + metrics.counter(prefix + "cancelled").sum();
+        }
+        assertEquals(ended, endings);
+    }
+}
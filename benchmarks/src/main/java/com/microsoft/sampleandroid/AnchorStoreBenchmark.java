@@ -0,0 +1,90 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Lookups in the on-device anchor store once it holds tens of thousands of anchors spread over a
+// 500 m square, three floors high. The store is written, closed and opened again first, so the
+// index is the one rebuilt by replaying the log, as on every launch.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnchorStoreBenchmark {
+    private static final float SIDE = 500f;
+    private static final float CELL_SIZE = 2f;
+    private static final float NEAR_RADIUS = 5f;
+    private static final int NEAR_LIMIT = 8;
+    private static final int QUERIES = 4096;
+
+    @Param({"50000"})
+    public int recordCount;
+
+    private final Random random = new Random(7);
+    private File file;
+    private AnchorStore store;
+    private String[] identifiers;
+    private float[] points;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("anchors", ".log");
+        AnchorStore writing = AnchorStore.open(file, recordCount, CELL_SIZE);
+        for (int i = 0; i < recordCount; i++) {
+            float[] pose = {random.nextFloat() * SIDE, random.nextInt(3) * 3f, random.nextFloat() * SIDE, 0, 0, 0, 1};
+            writing.put(new AnchorRecord("anchor-" + i, 0, 0, pose, 0, "Sphere",
+                    Collections.<String, String>emptyMap()));
+        }
+        writing.close();
+        store = AnchorStore.open(file, recordCount, CELL_SIZE);
+
+        identifiers = new String[QUERIES];
+        points = new float[QUERIES * 3];
+        for (int i = 0; i < QUERIES; i++) {
+            identifiers[i] = "anchor-" + random.nextInt(recordCount);
+            points[i * 3] = random.nextFloat() * SIDE;
+            points[i * 3 + 1] = random.nextInt(3) * 3f;
+            points[i * 3 + 2] = random.nextFloat() * SIDE;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public AnchorRecord get() {
+        return store.get(identifiers[next++ % QUERIES]);
+    }
+
+    @Benchmark
+    public List<AnchorRecord> findNear() {
+        int i = next++ % QUERIES;
+        return store.findNear(points[i * 3], points[i * 3 + 1], points[i * 3 + 2], NEAR_RADIUS, NEAR_LIMIT);
+    }
+}
@@ -0,0 +1,62 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// One create-then-locate round of SharedActivity's step machine, including what each step
+// change derives: the frame scheduling mode (evaluated on every rendered frame) and which
+// controls are visible.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DemoStepBenchmark {
+    private static final DemoStep[] ROUND = {
+            DemoStep.DemoStepCreating,
+            DemoStep.DemoStepSaving,
+            DemoStep.DemoStepChoosing,
+            DemoStep.DemoStepEnteringAnchorNumber,
+            DemoStep.DemoStepLocating,
+            DemoStep.DemoStepChoosing,
+    };
+
+    private final FrameScheduler frameScheduler = new FrameScheduler(System::nanoTime);
+    private volatile DemoStep currentStep = DemoStep.DemoStepChoosing;
+
+    @Benchmark
+    public void createAndLocateRound(Blackhole blackhole) {
+        for (DemoStep step : ROUND) {
+            currentStep = step;
+            DemoStep current = currentStep;
+            frameScheduler.setMode(current.frameMode());
+            blackhole.consume(current.showsCreateButton());
+            blackhole.consume(current.showsLocateButton());
+            blackhole.consume(current.showsAnchorInput());
+        }
+    }
+
+    @Benchmark
+    public boolean perFrameModeCheck() {
+        frameScheduler.setMode(currentStep.frameMode());
+        return frameScheduler.tryBeginFrame() && endFrame();
+    }
+
+    private boolean endFrame() {
+        frameScheduler.endFrame();
+        return true;
+    }
+}
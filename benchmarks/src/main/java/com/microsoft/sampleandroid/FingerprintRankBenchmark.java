@@ -0,0 +1,127 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Nearby-anchor ranking: FingerprintIndex against scoring every stored fingerprint. By default
+// anchors and queries are synthesized over a 1 km square campus; with -p traceFile=<path> they
+// come from a SensorTrace recorded on a device (debug builds write files/sensors.trace), every
+// other sample stored as an anchor and the rest replayed as queries.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FingerprintRankBenchmark {
+    private static final float SIDE = 1000f;
+    private static final int ACCESS_POINTS = 2000;
+    private static final int QUERIES = 256;
+    private static final int LIMIT = 8;
+    private static final float MIN_SCORE = 0.2f;
+
+    @Param({"10000"})
+    public int anchorCount;
+
+    @Param({""})
+    public String traceFile;
+
+    private final Random random = new Random(5);
+    private float[][] accessPoints;
+    private FingerprintIndex index;
+    private List<SensorFingerprint> anchors;
+    private List<SensorFingerprint> queries;
+    private String[] encoded;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        anchors = new ArrayList<>();
+        queries = new ArrayList<>();
+        if (traceFile.isEmpty()) {
+            accessPoints = new float[ACCESS_POINTS][];
+            for (int i = 0; i < ACCESS_POINTS; i++) {
+                accessPoints[i] = new float[]{random.nextFloat() * SIDE, random.nextFloat() * SIDE};
+            }
+            for (int i = 0; i < anchorCount; i++) {
+                anchors.add(observe(random.nextFloat() * SIDE, random.nextFloat() * SIDE));
+            }
+            for (int i = 0; i < QUERIES; i++) {
+                queries.add(observe(random.nextFloat() * SIDE, random.nextFloat() * SIDE));
+            }
+        } else {
+            try (Reader reader = new FileReader(traceFile)) {
+                List<SensorFingerprint> samples = SensorTrace.read(reader).getSamples();
+                for (int i = 0; i < samples.size(); i++) {
+                    (i % 2 == 0 ? anchors : queries).add(samples.get(i));
+                }
+            }
+        }
+
+        index = new FingerprintIndex(50f);
+        encoded = new String[anchors.size()];
+        for (int i = 0; i < anchors.size(); i++) {
+            index.put("anchor-" + i, anchors.get(i));
+            encoded[i] = anchors.get(i).encode();
+        }
+    }
+
+    @Benchmark
+    public List<FingerprintIndex.Match> indexRank() {
+        return index.rank(nextQuery(), LIMIT, MIN_SCORE);
+    }
+
+    @Benchmark
+    public int linearScoreAll() {
+        SensorFingerprint query = nextQuery();
+        int above = 0;
+        for (SensorFingerprint anchor : anchors) {
+            if (FingerprintIndex.score(query, anchor) >= MIN_SCORE) {
+                above++;
+            }
+        }
+        return above;
+    }
+
+    // What opening the anchor store costs per stored fingerprint.
+    @Benchmark
+    public SensorFingerprint decode() {
+        return SensorFingerprint.decode(encoded[next++ % encoded.length]);
+    }
+
+    private SensorFingerprint nextQuery() {
+        return queries.get(next++ % queries.size());
+    }
+
+    private SensorFingerprint observe(float x, float y) {
+        SensorFingerprint.Builder builder = new SensorFingerprint.Builder(0)
+                .setLocation(47.64 + y / 111_320.0, -122.13 + x / 75_000.0, 10 + random.nextFloat() * 20);
+        for (int i = 0; i < ACCESS_POINTS; i++) {
+            double distance = Math.max(1, Math.hypot(accessPoints[i][0] - x, accessPoints[i][1] - y));
+            int rssi = (int) Math.round(-35 - 30 * Math.log10(distance) + random.nextGaussian() * 4);
+            if (rssi > -92) {
+                builder.addWifi(0x1000 + i, rssi);
+            }
+        }
+        return builder.build();
+    }
+}
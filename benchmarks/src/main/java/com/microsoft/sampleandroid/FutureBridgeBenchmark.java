@@ -0,0 +1,76 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// FutureCompletionBridge as AzureSpatialAnchorsManager configures it (10 ms polling): the cost
+// of bridging an SDK future that is already done, and the end-to-end time for a batch of
+// futures that complete after being bridged, which is bounded below by the poll interval.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FutureBridgeBenchmark {
+    private static final long POLL_INTERVAL_MS = 10;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private ScheduledExecutorService scheduler;
+    private FutureCompletionBridge bridge;
+    private FutureTask<Object> completed;
+
+    @Setup
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        bridge = new FutureCompletionBridge(scheduler, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        completed = new FutureTask<>(() -> "done");
+        completed.run();
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public CompletableFuture<Object> bridgeCompleted() {
+        return bridge.toCompletableFuture(completed);
+    }
+
+    @Benchmark
+    public Object bridgePendingBatch() {
+        @SuppressWarnings("unchecked")
+        FutureTask<Object>[] sources = new FutureTask[batchSize];
+        CompletableFuture<?>[] targets = new CompletableFuture<?>[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            sources[i] = new FutureTask<>(() -> "saved");
+            targets[i] = bridge.toCompletableFuture(sources[i]);
+        }
+        // The SDK completes its futures on its own threads; here they complete right away.
+        for (FutureTask<Object> source : sources) {
+            source.run();
+        }
+        return CompletableFuture.allOf(targets).join();
+    }
+}
@@ -0,0 +1,60 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// The cache behind AnchorVisual.setColor, sized as in AnchorVisual. With 4 colors every lookup
+// is a hit; with 64 the working set exceeds the bound and lookups mostly miss and evict.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MaterialCacheBenchmark {
+    @Param({"4", "64"})
+    public int distinctColors;
+
+    private ResourceCache<Integer, Object> cache;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        cache = new ResourceCache<>(32, 4, color -> CompletableFuture.completedFuture(new Object()));
+    }
+
+    @Benchmark
+    public CompletableFuture<Object> singleThread(Cursor cursor) {
+        return cache.get(colorAt(cursor));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CompletableFuture<Object> fourThreads(Cursor cursor) {
+        return cache.get(colorAt(cursor));
+    }
+
+    private int colorAt(Cursor cursor) {
+        cursor.next = (cursor.next + 1) % distinctColors;
+        return 0xff000000 | cursor.next * 0x010101;
+    }
+}
@@ -0,0 +1,62 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// Loading sampledata/model.obj: parsing the text from memory (no disk I/O in the measurement)
+// against reading the binary mesh cache written from it.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjParseBenchmark {
+    @Param({"../app/sampledata/model.obj"})
+    public String modelPath;
+
+    private byte[] objBytes;
+    private File cacheFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File model = new File(modelPath);
+        objBytes = Files.readAllBytes(model.toPath());
+        cacheFile = File.createTempFile("model", ".mesh");
+        MeshCache.write(ObjMeshLoader.parse(model), cacheFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cacheFile.delete();
+    }
+
+    @Benchmark
+    public ObjMesh parseObj() throws IOException {
+        return ObjMeshLoader.parse(new ByteArrayInputStream(objBytes));
+    }
+
+    @Benchmark
+    public ObjMesh readMeshCache() throws IOException {
+        return MeshCache.read(cacheFile);
+    }
+}
@@ -0,0 +1,104 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Renderables for a batch of anchors, each rendered READY and then recolored SAVED as
+// SharedActivity does, from a fresh start. rebuildPerChange is AnchorVisual before
+// SharedRenderableRegistry: a ShapeFactory call on every render and every color change.
+// sharedRegistry is AnchorVisual now: one prototype per shape, a copy per anchor, and a material
+// swap on color change. Sceneform cannot run on the JVM, so the factory allocates vertex and
+// index arrays sized like ShapeFactory's meshes; run with -prof gc and compare
+// gc.alloc.rate.norm, the bytes allocated per batch.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharedRenderableBenchmark {
+    private enum Shape {
+        Sphere(25 * 25, 24 * 24 * 6),
+        Cube(24, 36),
+        Cylinder(25 * 4 + 2, 24 * 12);
+
+        final int vertices;
+        final int indices;
+
+        Shape(int vertices, int indices) {
+            this.vertices = vertices;
+            this.indices = indices;
+        }
+    }
+
+    // Position, normal and texture coordinates.
+    private static final int FLOATS_PER_VERTEX = 8;
+    private static final int READY = 0xffffff00;
+    private static final int SAVED = 0xff00ff00;
+
+    private static final class Renderable {
+        final float[] vertices;
+        final int[] indices;
+        int material;
+
+        Renderable(float[] vertices, int[] indices, int material) {
+            this.vertices = vertices;
+            this.indices = indices;
+            this.material = material;
+        }
+    }
+
+    private static final SharedRenderableRegistry.Factory<Shape, Renderable, Integer> SHAPE_FACTORY =
+            new SharedRenderableRegistry.Factory<Shape, Renderable, Integer>() {
+                @Override
+                public Renderable makePrototype(Shape shape, Integer material) {
+                    return new Renderable(new float[shape.vertices * FLOATS_PER_VERTEX], new int[shape.indices], material);
+                }
+
+                @Override
+                public Renderable makeInstance(Renderable prototype, Integer material) {
+                    return new Renderable(prototype.vertices, prototype.indices, material);
+                }
+            };
+
+    @Param({"500"})
+    public int anchorCount;
+
+    @Benchmark
+    public Renderable[] rebuildPerChange() {
+        Renderable[] visuals = new Renderable[anchorCount];
+        for (int i = 0; i < anchorCount; i++) {
+            Shape shape = shapeFor(i);
+            visuals[i] = SHAPE_FACTORY.makePrototype(shape, READY);
+            visuals[i] = SHAPE_FACTORY.makePrototype(shape, SAVED);
+        }
+        return visuals;
+    }
+
+    @Benchmark
+    public Renderable[] sharedRegistry() {
+        SharedRenderableRegistry<Shape, Renderable, Integer> registry = new SharedRenderableRegistry<>(SHAPE_FACTORY);
+        Renderable[] visuals = new Renderable[anchorCount];
+        for (int i = 0; i < anchorCount; i++) {
+            visuals[i] = registry.acquire(shapeFor(i), READY);
+            visuals[i].material = SAVED;
+        }
+        return visuals;
+    }
+
+    private static Shape shapeFor(int i) {
+        return Shape.values()[i % Shape.values().length];
+    }
+}
@@ -0,0 +1,77 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Resolving a typed short code with a million GUID anchors in the index, grown from a small
+// table as it would be while anchors are saved, against a HashMap<Long, String> of the same
+// codes. ShortCodeIndex.getMemoryBytes() gives the index's footprint for the same anchors.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShortCodeIndexBenchmark {
+    private static final int QUERIES = 100_000;
+
+    @Param({"1000000"})
+    public int anchorCount;
+
+    private final Random random = new Random(11);
+    private ShortCodeIndex index;
+    private Map<Long, String> hashMap;
+    private String[] typed;
+    private long[] queryCodes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        index = new ShortCodeIndex(16);
+        hashMap = new HashMap<>();
+        long[] codes = new long[anchorCount];
+        for (int i = 0; i < anchorCount; i++) {
+            String identifier = new UUID(random.nextLong(), random.nextLong()).toString();
+            codes[i] = index.assign(identifier);
+            hashMap.put(codes[i], identifier);
+        }
+        typed = new String[QUERIES];
+        queryCodes = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queryCodes[i] = codes[random.nextInt(anchorCount)];
+            typed[i] = ShortCodeIndex.format(queryCodes[i]);
+        }
+    }
+
+    @Benchmark
+    public String resolveTyped() {
+        return index.resolve(typed[next++ % QUERIES]);
+    }
+
+    @Benchmark
+    public String hashMapTyped() {
+        return hashMap.get(ShortCodeIndex.parse(typed[next++ % QUERIES]));
+    }
+
+    @Benchmark
+    public String resolveCode() {
+        return index.resolve(queryCodes[next++ % QUERIES]);
+    }
+}
@@ -0,0 +1,113 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Per-frame proximity work over synthetic anchors spread across a three-floor, 200 m square
+// building, against the linear scan over every anchor that SharedActivity did before.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpatialIndexBenchmark {
+    private static final float SIDE = 200f;
+    private static final float CELL_SIZE = 4f;
+    private static final float SHOW_RADIUS = 10f;
+    private static final float HIDE_RADIUS = 12f;
+
+    @Param({"10000"})
+    public int anchorCount;
+
+    private float[] positions;
+    private SpatialGrid<Integer> grid;
+    private VisibilityManager<Integer> visibility;
+    private final Random random = new Random(7);
+    private float cameraX = SIDE / 2;
+    private float cameraZ = SIDE / 2;
+    private int moved;
+
+    @Setup
+    public void setUp() {
+        positions = new float[anchorCount * 3];
+        grid = new SpatialGrid<>(CELL_SIZE);
+        visibility = new VisibilityManager<>(CELL_SIZE, SHOW_RADIUS, HIDE_RADIUS, 0f,
+                new VisibilityManager.Listener<Integer>() {
+                    @Override
+                    public void onShow(Integer item) {
+                    }
+
+                    @Override
+                    public void onHide(Integer item) {
+                    }
+                });
+        for (int i = 0; i < anchorCount; i++) {
+            positions[i * 3] = random.nextFloat() * SIDE;
+            positions[i * 3 + 1] = random.nextInt(3) * 3f;
+            positions[i * 3 + 2] = random.nextFloat() * SIDE;
+            grid.put(i, positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+            visibility.put(i, positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+        }
+        visibility.update(cameraX, 0, cameraZ);
+    }
+
+    @Benchmark
+    public int linearScanWithinRadius() {
+        int found = 0;
+        float radiusSquared = SHOW_RADIUS * SHOW_RADIUS;
+        for (int i = 0; i < anchorCount; i++) {
+            float dx = positions[i * 3] - cameraX;
+            float dy = positions[i * 3 + 1];
+            float dz = positions[i * 3 + 2] - cameraZ;
+            if (dx * dx + dy * dy + dz * dz <= radiusSquared) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public List<Integer> gridWithinRadius() {
+        return grid.findWithin(cameraX, 0, cameraZ, SHOW_RADIUS, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<Integer> gridNearest8() {
+        return grid.findNearest(cameraX, 0, cameraZ, 8);
+    }
+
+    // One pose refinement: a small move that usually stays in the same cell.
+    @Benchmark
+    public void gridMove() {
+        int i = moved++ % anchorCount;
+        positions[i * 3] += random.nextFloat() * 0.02f - 0.01f;
+        grid.put(i, positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+    }
+
+    // A visibility pass with the camera walking 10 cm per frame across the building.
+    @Benchmark
+    public int visibilityUpdate() {
+        cameraX += 0.1f;
+        if (cameraX > SIDE) {
+            cameraX = 0;
+        }
+        visibility.update(cameraX, 0, cameraZ);
+        return visibility.getVisible().size();
+    }
+}
@@ -0,0 +1,122 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Writes simplified levels of detail for each OBJ source, keeping its path relative to the
+// source tree: <name>_lod1.obj for the first ratio, <name>_lod2.obj for the second and so on,
+// each reduced to that fraction of the source's triangles. Material libraries the sources
+// reference are copied next to them, so every level is a complete asset for the Sceneform
+// converter.
+public class GenerateLodsTask extends DefaultTask {
+    private FileTree sources;
+    private List<Float> ratios = new ArrayList<>();
+    private File outputDir;
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileTree getSources() {
+        return sources;
+    }
+
+    public void setSources(FileTree sources) {
+        this.sources = sources;
+    }
+
+    @Input
+    public List<Float> getRatios() {
+        return ratios;
+    }
+
+    public void setRatios(List<Float> ratios) {
+        this.ratios = ratios;
+    }
+
+    @OutputDirectory
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    public void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    // The path, relative to outputDir, of a level of detail of the source at relativePath:
+    // "furniture/Chair.obj" at level 1 is "furniture/Chair_lod1.obj".
+    public static String lodPath(String relativePath, int level) {
+        return relativePath.replaceFirst("\\.obj$", "") + "_lod" + level + ".obj";
+    }
+
+    @TaskAction
+    public void generate() throws IOException {
+        Map<String, File> models = new TreeMap<>();
+        sources.visit(details -> {
+            if (!details.isDirectory()) {
+                models.put(details.getRelativePath().getPathString(), details.getFile());
+            }
+        });
+
+        // The directory only holds generated levels; clear out those of removed sources.
+        getProject().delete(outputDir);
+        if (!outputDir.mkdirs()) {
+            throw new IOException("Unable to create " + outputDir);
+        }
+
+        for (Map.Entry<String, File> model : models.entrySet()) {
+            String path = model.getKey();
+            File source = model.getValue();
+            File targetDir = new File(outputDir, path).getParentFile();
+            if (!targetDir.isDirectory() && !targetDir.mkdirs()) {
+                throw new IOException("Unable to create " + targetDir);
+            }
+
+            ObjMesh mesh = ObjMeshLoader.parse(source);
+            String[] libraries = materialLibraries(source);
+            for (String library : libraries) {
+                Files.copy(new File(source.getParentFile(), library).toPath(),
+                        new File(targetDir, library).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            for (int i = 0; i < ratios.size(); i++) {
+                int target = Math.round(mesh.getTriangleCount() * ratios.get(i));
+                ObjMesh lod = QuadricSimplifier.simplify(mesh, target);
+                ObjMeshWriter.write(lod, libraries, new File(outputDir, lodPath(path, i + 1)));
+                getLogger().info("{} LOD {}: {} -> {} triangles", path, i + 1,
+                        mesh.getTriangleCount(), lod.getTriangleCount());
+            }
+        }
+    }
+
+    // ObjMeshLoader skips mtllib statements, so they are read here.
+    static String[] materialLibraries(File source) throws IOException {
+        List<String> libraries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(source.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("mtllib ")) {
+                    libraries.add(line.substring("mtllib ".length()).trim());
+                }
+            }
+        }
+        return libraries.toArray(new String[0]);
+    }
+}
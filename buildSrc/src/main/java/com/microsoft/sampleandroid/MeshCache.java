@@ -0,0 +1,148 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+// Compact binary form of an ObjMesh. The layout is a fixed little-endian header followed by
+// the raw attribute arrays, so a cache file can be memory-mapped and bulk-copied without
+// any text parsing:
+//
+//   int magic, int version,
+//   int positionCount, int texCoordCount, int normalCount, int cornerCount,
+//   int faceCount, int materialCount,
+//   float[] positions, float[] texCoords, float[] normals, int[] corners,
+//   int[] materialStarts, { short byteLength, byte[] utf8 }[] materialNames
+class MeshCache {
+    private static final int MAGIC = 0x3148534D; // "MSH1"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 4 * 6;
+
+    private MeshCache() {
+    }
+
+    static void write(ObjMesh mesh, File cacheFile) throws IOException {
+        byte[][] names = new byte[mesh.materialNames.length][];
+        int namesSize = 0;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = mesh.materialNames[i].getBytes(StandardCharsets.UTF_8);
+            namesSize += 2 + names[i].length;
+        }
+
+        int size = HEADER_SIZE
+                + 4 * (mesh.positions.length + mesh.texCoords.length + mesh.normals.length)
+                + 4 * (mesh.corners.length + mesh.materialStarts.length)
+                + namesSize;
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(mesh.positions.length);
+        buffer.putInt(mesh.texCoords.length);
+        buffer.putInt(mesh.normals.length);
+        buffer.putInt(mesh.corners.length);
+        buffer.putInt(mesh.faceCount);
+        buffer.putInt(mesh.materialNames.length);
+
+        buffer.asFloatBuffer().put(mesh.positions);
+        buffer.position(buffer.position() + 4 * mesh.positions.length);
+        buffer.asFloatBuffer().put(mesh.texCoords);
+        buffer.position(buffer.position() + 4 * mesh.texCoords.length);
+        buffer.asFloatBuffer().put(mesh.normals);
+        buffer.position(buffer.position() + 4 * mesh.normals.length);
+        buffer.asIntBuffer().put(mesh.corners);
+        buffer.position(buffer.position() + 4 * mesh.corners.length);
+        buffer.asIntBuffer().put(mesh.materialStarts);
+        buffer.position(buffer.position() + 4 * mesh.materialStarts.length);
+        for (byte[] name : names) {
+            buffer.putShort((short) name.length);
+            buffer.put(name);
+        }
+        buffer.flip();
+
+        // Write next to the destination and rename, so a crash never leaves a torn cache behind.
+        File temp = new File(cacheFile.getPath() + ".tmp");
+        try (RandomAccessFile file = new RandomAccessFile(temp, "rw");
+             FileChannel channel = file.getChannel()) {
+            file.setLength(0);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        if (!temp.renameTo(cacheFile)) {
+            cacheFile.delete();
+            if (!temp.renameTo(cacheFile)) {
+                throw new IOException("Unable to replace mesh cache " + cacheFile);
+            }
+        }
+    }
+
+    // Returns null when the file is truncated, corrupt or from another format version.
+    static ObjMesh read(File cacheFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+             FileChannel channel = file.getChannel()) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            int positionCount = buffer.getInt();
+            int texCoordCount = buffer.getInt();
+            int normalCount = buffer.getInt();
+            int cornerCount = buffer.getInt();
+            int faceCount = buffer.getInt();
+            int materialCount = buffer.getInt();
+            // A count the rest of the file cannot hold means a truncated or corrupt file.
+            if (positionCount < 0 || texCoordCount < 0 || normalCount < 0 || cornerCount < 0
+                    || faceCount < 0 || materialCount < 0
+                    || buffer.remaining() < 4L * positionCount + 4L * texCoordCount + 4L * normalCount
+                    + 4L * cornerCount + 4L * materialCount + 2L * materialCount) {
+                return null;
+            }
+
+            float[] positions = new float[positionCount];
+            float[] texCoords = new float[texCoordCount];
+            float[] normals = new float[normalCount];
+            int[] corners = new int[cornerCount];
+
+            buffer.asFloatBuffer().get(positions);
+            buffer.position(buffer.position() + 4 * positions.length);
+            buffer.asFloatBuffer().get(texCoords);
+            buffer.position(buffer.position() + 4 * texCoords.length);
+            buffer.asFloatBuffer().get(normals);
+            buffer.position(buffer.position() + 4 * normals.length);
+            buffer.asIntBuffer().get(corners);
+            buffer.position(buffer.position() + 4 * corners.length);
+
+            int[] materialStarts = new int[materialCount];
+            buffer.asIntBuffer().get(materialStarts);
+            buffer.position(buffer.position() + 4 * materialCount);
+            String[] materialNames = new String[materialCount];
+            for (int i = 0; i < materialCount; i++) {
+                if (buffer.remaining() < 2) {
+                    return null;
+                }
+                byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                if (buffer.remaining() < name.length) {
+                    return null;
+                }
+                buffer.get(name);
+                materialNames[i] = new String(name, StandardCharsets.UTF_8);
+            }
+
+            return new ObjMesh(positions, texCoords, normals, corners, faceCount,
+                    materialNames, materialStarts);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.Arrays;
+
+// Flat, primitive-array mesh produced by ObjMeshLoader and stored by MeshCache.
+// Polygons are fan-triangulated; every triangle corner is a (position, texCoord, normal)
+// index triple into the attribute arrays, with -1 marking an absent attribute.
+class ObjMesh {
+    static final int CORNER_STRIDE = 3;
+
+    final float[] positions;
+    final float[] texCoords;
+    final float[] normals;
+    final int[] corners;
+    final int faceCount;
+
+    // Triangle ranges per material: group i covers triangles
+    // [materialStarts[i], materialStarts[i + 1]) and uses materialNames[i].
+    final String[] materialNames;
+    final int[] materialStarts;
+
+    ObjMesh(float[] positions, float[] texCoords, float[] normals, int[] corners, int faceCount,
+            String[] materialNames, int[] materialStarts) {
+        this.positions = positions;
+        this.texCoords = texCoords;
+        this.normals = normals;
+        this.corners = corners;
+        this.faceCount = faceCount;
+        this.materialNames = materialNames;
+        this.materialStarts = materialStarts;
+    }
+
+    int getVertexCount() {
+        return positions.length / 3;
+    }
+
+    int getTexCoordCount() {
+        return texCoords.length / 2;
+    }
+
+    int getNormalCount() {
+        return normals.length / 3;
+    }
+
+    int getTriangleCount() {
+        return corners.length / (3 * CORNER_STRIDE);
+    }
+
+    // Returns {minX, minY, minZ, maxX, maxY, maxZ}.
+    float[] computeBounds() {
+        float[] bounds = new float[6];
+        if (positions.length == 0) {
+            return bounds;
+        }
+        Arrays.fill(bounds, 0, 3, Float.POSITIVE_INFINITY);
+        Arrays.fill(bounds, 3, 6, Float.NEGATIVE_INFINITY);
+        for (int i = 0; i < positions.length; i += 3) {
+            for (int axis = 0; axis < 3; axis++) {
+                float value = positions[i + axis];
+                bounds[axis] = Math.min(bounds[axis], value);
+                bounds[axis + 3] = Math.max(bounds[axis + 3], value);
+            }
+        }
+        return bounds;
+    }
+}
@@ -0,0 +1,379 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Streams a Wavefront OBJ file straight into primitive buffers. Lines are tokenized in place
+// over a reusable byte buffer, so the only objects created while parsing are the growable
+// arrays themselves and the material names.
+//
+// Used by the model tasks and the benchmarks; the app itself only ships the compiled .sfb
+// assets, which Sceneform renders.
+class ObjMeshLoader {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final byte[] KEYWORD_VERTEX = {'v'};
+    private static final byte[] KEYWORD_TEX_COORD = {'v', 't'};
+    private static final byte[] KEYWORD_NORMAL = {'v', 'n'};
+    private static final byte[] KEYWORD_FACE = {'f'};
+    private static final byte[] KEYWORD_USE_MATERIAL = {'u', 's', 'e', 'm', 't', 'l'};
+
+    private final FloatList positions = new FloatList(4096);
+    private final FloatList texCoords = new FloatList(4096);
+    private final FloatList normals = new FloatList(4096);
+    private final IntList corners = new IntList(16384);
+    private final ArrayList<String> materialNames = new ArrayList<>();
+    private final IntList materialStarts = new IntList(16);
+    private int[] polygon = new int[16 * ObjMesh.CORNER_STRIDE];
+    private int faceCount;
+
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private int lineNumber;
+    private int cursor;
+
+    private ObjMeshLoader() {
+    }
+
+    static ObjMesh parse(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return parse(in);
+        }
+    }
+
+    static ObjMesh parse(InputStream in) throws IOException {
+        ObjMeshLoader loader = new ObjMeshLoader();
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                byte b = buffer[i];
+                if (b == '\n') {
+                    loader.parseLine();
+                } else {
+                    loader.append(b);
+                }
+            }
+        }
+        loader.parseLine();
+        return loader.build();
+    }
+
+    private void append(byte b) {
+        if (lineLength == line.length) {
+            line = Arrays.copyOf(line, line.length * 2);
+        }
+        line[lineLength++] = b;
+    }
+
+    private void parseLine() throws IOException {
+        lineNumber++;
+        cursor = 0;
+        int length = lineLength;
+        lineLength = 0;
+
+        // Tolerate CRLF files.
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        int end = length;
+
+        skipSpaces(end);
+        if (cursor >= end || line[cursor] == '#') {
+            return;
+        }
+
+        int keywordStart = cursor;
+        while (cursor < end && !isSpace(line[cursor])) {
+            cursor++;
+        }
+        int keywordLength = cursor - keywordStart;
+
+        if (keywordIs(keywordStart, keywordLength, KEYWORD_VERTEX)) {
+            positions.add(nextFloat(end));
+            positions.add(nextFloat(end));
+            positions.add(nextFloat(end));
+        } else if (keywordIs(keywordStart, keywordLength, KEYWORD_TEX_COORD)) {
+            texCoords.add(nextFloat(end));
+            texCoords.add(nextFloat(end));
+        } else if (keywordIs(keywordStart, keywordLength, KEYWORD_NORMAL)) {
+            normals.add(nextFloat(end));
+            normals.add(nextFloat(end));
+            normals.add(nextFloat(end));
+        } else if (keywordIs(keywordStart, keywordLength, KEYWORD_FACE)) {
+            parseFace(end);
+        } else if (keywordIs(keywordStart, keywordLength, KEYWORD_USE_MATERIAL)) {
+            useMaterial(restOfLine(end));
+        }
+        // Groups, objects, smoothing groups and mtllib do not affect the geometry buffers.
+    }
+
+    private void parseFace(int end) throws IOException {
+        int cornerCount = 0;
+        skipSpaces(end);
+        while (cursor < end) {
+            if ((cornerCount + 1) * ObjMesh.CORNER_STRIDE > polygon.length) {
+                polygon = Arrays.copyOf(polygon, polygon.length * 2);
+            }
+            int offset = cornerCount * ObjMesh.CORNER_STRIDE;
+            polygon[offset] = toIndex(nextInt(end), positions.size() / 3);
+            polygon[offset + 1] = -1;
+            polygon[offset + 2] = -1;
+            if (cursor < end && line[cursor] == '/') {
+                cursor++;
+                if (cursor < end && line[cursor] != '/') {
+                    polygon[offset + 1] = toIndex(nextInt(end), texCoords.size() / 2);
+                }
+                if (cursor < end && line[cursor] == '/') {
+                    cursor++;
+                    polygon[offset + 2] = toIndex(nextInt(end), normals.size() / 3);
+                }
+            }
+            cornerCount++;
+            skipSpaces(end);
+        }
+
+        if (cornerCount < 3) {
+            throw malformed();
+        }
+
+        faceCount++;
+        for (int i = 1; i < cornerCount - 1; i++) {
+            corners.addAll(polygon, 0, ObjMesh.CORNER_STRIDE);
+            corners.addAll(polygon, i * ObjMesh.CORNER_STRIDE, (i + 2) * ObjMesh.CORNER_STRIDE);
+        }
+    }
+
+    private void useMaterial(String name) {
+        int triangle = corners.size() / (3 * ObjMesh.CORNER_STRIDE);
+        int last = materialNames.size() - 1;
+        if (last >= 0 && materialStarts.get(last) == triangle) {
+            // Nothing was drawn with the previous material; just rename the group.
+            materialNames.set(last, name);
+        } else if (last < 0 || !materialNames.get(last).equals(name)) {
+            materialNames.add(name);
+            materialStarts.add(triangle);
+        }
+    }
+
+    private ObjMesh build() {
+        return new ObjMesh(
+                positions.toArray(),
+                texCoords.toArray(),
+                normals.toArray(),
+                corners.toArray(),
+                faceCount,
+                materialNames.toArray(new String[0]),
+                materialStarts.toArray());
+    }
+
+    private boolean keywordIs(int start, int length, byte[] keyword) {
+        if (length != keyword.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line[start + i] != keyword[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String restOfLine(int end) {
+        skipSpaces(end);
+        int trimmedEnd = end;
+        while (trimmedEnd > cursor && isSpace(line[trimmedEnd - 1])) {
+            trimmedEnd--;
+        }
+        return new String(line, cursor, trimmedEnd - cursor, StandardCharsets.UTF_8);
+    }
+
+    // OBJ indices are 1-based, and negative values count back from the latest element.
+    private int toIndex(int objIndex, int elementCount) throws IOException {
+        int index = objIndex > 0 ? objIndex - 1 : elementCount + objIndex;
+        if (objIndex == 0 || index < 0) {
+            throw malformed();
+        }
+        return index;
+    }
+
+    private int nextInt(int end) throws IOException {
+        boolean negative = false;
+        if (cursor < end && line[cursor] == '-') {
+            negative = true;
+            cursor++;
+        }
+        int start = cursor;
+        int value = 0;
+        while (cursor < end && isDigit(line[cursor])) {
+            value = value * 10 + (line[cursor] - '0');
+            cursor++;
+        }
+        if (cursor == start) {
+            throw malformed();
+        }
+        return negative ? -value : value;
+    }
+
+    private float nextFloat(int end) throws IOException {
+        skipSpaces(end);
+        boolean negative = false;
+        if (cursor < end && (line[cursor] == '-' || line[cursor] == '+')) {
+            negative = line[cursor] == '-';
+            cursor++;
+        }
+
+        long mantissa = 0;
+        int exponent = 0;
+        int significantDigits = 0;
+        boolean sawDigit = false;
+        boolean fraction = false;
+        while (cursor < end) {
+            byte b = line[cursor];
+            if (isDigit(b)) {
+                sawDigit = true;
+                if (significantDigits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        significantDigits++;
+                    }
+                    if (fraction) {
+                        exponent--;
+                    }
+                } else if (!fraction) {
+                    exponent++;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+            cursor++;
+        }
+        if (!sawDigit) {
+            throw malformed();
+        }
+
+        if (cursor < end && (line[cursor] == 'e' || line[cursor] == 'E')) {
+            cursor++;
+            boolean negativeExponent = false;
+            if (cursor < end && (line[cursor] == '-' || line[cursor] == '+')) {
+                negativeExponent = line[cursor] == '-';
+                cursor++;
+            }
+            int start = cursor;
+            int value = 0;
+            while (cursor < end && isDigit(line[cursor])) {
+                value = value * 10 + (line[cursor] - '0');
+                cursor++;
+            }
+            if (cursor == start) {
+                throw malformed();
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        double value = mantissa;
+        if (exponent < 0) {
+            value /= powerOfTen(-exponent);
+        } else if (exponent > 0) {
+            value *= powerOfTen(exponent);
+        }
+        return (float) (negative ? -value : value);
+    }
+
+    private static double powerOfTen(int exponent) {
+        return exponent < POWERS_OF_TEN.length ? POWERS_OF_TEN[exponent] : Math.pow(10, exponent);
+    }
+
+    private void skipSpaces(int end) {
+        while (cursor < end && isSpace(line[cursor])) {
+            cursor++;
+        }
+    }
+
+    private IOException malformed() {
+        return new IOException("Malformed OBJ data at line " + lineNumber);
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static final class FloatList {
+        private float[] values;
+        private int size;
+
+        FloatList(int capacity) {
+            values = new float[capacity];
+        }
+
+        void add(float value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        float[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static final class IntList {
+        private int[] values;
+        private int size;
+
+        IntList(int capacity) {
+            values = new int[capacity];
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(int[] source, int from, int to) {
+            int count = to - from;
+            if (size + count > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, size + count));
+            }
+            System.arraycopy(source, from, values, size, count);
+            size += count;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
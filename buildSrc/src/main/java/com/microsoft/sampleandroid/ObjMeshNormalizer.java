@@ -0,0 +1,164 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// Canonical form of a mesh for the asset pipeline, so equal models produce equal assets:
+// - every position, texture coordinate and normal must be finite;
+// - identical attribute values are merged (-0 and 0 count as equal) and values no triangle
+//   uses are dropped, renumbered in the order triangles first use them;
+// - triangles whose corners share a position cover no area and are dropped;
+// - empty material groups are dropped and neighbouring groups of one material merged.
+// Triangles keep their order and corners, so the result draws exactly what the source did.
+class ObjMeshNormalizer {
+    private ObjMeshNormalizer() {
+    }
+
+    static ObjMesh normalize(ObjMesh mesh) {
+        checkFinite(mesh.positions, "Position", 3);
+        checkFinite(mesh.texCoords, "Texture coordinate", 2);
+        checkFinite(mesh.normals, "Normal", 3);
+
+        Remapper positions = new Remapper(mesh.positions, 3);
+        Remapper texCoords = new Remapper(mesh.texCoords, 2);
+        Remapper normals = new Remapper(mesh.normals, 3);
+        int triangleCount = mesh.getTriangleCount();
+        int[] corners = new int[mesh.corners.length];
+        List<String> materialNames = new ArrayList<>();
+        int[] materialStarts = new int[mesh.materialStarts.length];
+        int kept = 0;
+        int group = 0;
+        for (int t = 0; t < triangleCount; t++) {
+            int start = t * 3 * ObjMesh.CORNER_STRIDE;
+            int a = positions.map(mesh.corners[start]);
+            int b = positions.map(mesh.corners[start + ObjMesh.CORNER_STRIDE]);
+            int c = positions.map(mesh.corners[start + 2 * ObjMesh.CORNER_STRIDE]);
+            if (a == b || b == c || a == c) {
+                continue;
+            }
+            while (group < mesh.materialStarts.length && mesh.materialStarts[group] <= t) {
+                group++;
+            }
+            if (group > 0) {
+                String material = mesh.materialNames[group - 1];
+                int last = materialNames.size() - 1;
+                if (last < 0 || !materialNames.get(last).equals(material)) {
+                    materialStarts[materialNames.size()] = kept;
+                    materialNames.add(material);
+                }
+            }
+            int out = kept * 3 * ObjMesh.CORNER_STRIDE;
+            for (int k = 0; k < 3; k++) {
+                int corner = start + k * ObjMesh.CORNER_STRIDE;
+                corners[out + k * ObjMesh.CORNER_STRIDE] = k == 0 ? a : k == 1 ? b : c;
+                corners[out + k * ObjMesh.CORNER_STRIDE + 1] = texCoords.map(mesh.corners[corner + 1]);
+                corners[out + k * ObjMesh.CORNER_STRIDE + 2] = normals.map(mesh.corners[corner + 2]);
+            }
+            kept++;
+        }
+
+        return new ObjMesh(
+                positions.values(),
+                texCoords.values(),
+                normals.values(),
+                Arrays.copyOf(corners, kept * 3 * ObjMesh.CORNER_STRIDE),
+                kept,
+                materialNames.toArray(new String[0]),
+                Arrays.copyOf(materialStarts, materialNames.size()));
+    }
+
+    private static void checkFinite(float[] values, String kind, int stride) {
+        for (int i = 0; i < values.length; i++) {
+            if (Float.isNaN(values[i]) || Float.isInfinite(values[i])) {
+                throw new IllegalArgumentException(kind + " " + (i / stride + 1) + " is not finite.");
+            }
+        }
+    }
+
+    // Gives each distinct value a new index the first time a corner uses it.
+    private static final class Remapper {
+        private final float[] source;
+        private final int stride;
+        private final int[] mapped;
+        private final HashMap<AttributeKey, Integer> seen = new HashMap<>();
+        private float[] values;
+        private int count;
+
+        Remapper(float[] source, int stride) {
+            this.source = source;
+            this.stride = stride;
+            mapped = new int[source.length / stride];
+            Arrays.fill(mapped, -1);
+            values = new float[Math.min(source.length, 1024)];
+        }
+
+        int map(int index) {
+            if (index < 0) {
+                return -1;
+            }
+            if (mapped[index] >= 0) {
+                return mapped[index];
+            }
+            AttributeKey key = new AttributeKey(source, index * stride, stride);
+            Integer existing = seen.get(key);
+            if (existing == null) {
+                existing = count++;
+                seen.put(key, existing);
+                if (count * stride > values.length) {
+                    values = Arrays.copyOf(values, Math.max(values.length * 2, count * stride));
+                }
+                for (int k = 0; k < stride; k++) {
+                    // Adding zero turns -0 into 0.
+                    values[existing * stride + k] = source[index * stride + k] + 0f;
+                }
+            }
+            mapped[index] = existing;
+            return existing;
+        }
+
+        float[] values() {
+            return Arrays.copyOf(values, count * stride);
+        }
+    }
+
+    private static final class AttributeKey {
+        private final float[] values;
+        private final int offset;
+        private final int stride;
+        private final int hash;
+
+        AttributeKey(float[] values, int offset, int stride) {
+            this.values = values;
+            this.offset = offset;
+            this.stride = stride;
+            int h = 1;
+            for (int k = 0; k < stride; k++) {
+                h = 31 * h + Float.floatToIntBits(values[offset + k] + 0f);
+            }
+            hash = h;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof AttributeKey)) {
+                return false;
+            }
+            AttributeKey key = (AttributeKey) other;
+            for (int k = 0; k < stride; k++) {
+                if (Float.floatToIntBits(values[offset + k] + 0f) != Float.floatToIntBits(key.values[key.offset + k] + 0f)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
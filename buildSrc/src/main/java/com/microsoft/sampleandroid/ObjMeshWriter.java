@@ -0,0 +1,84 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+// Writes an ObjMesh back out as Wavefront OBJ text that ObjMeshLoader and the Sceneform asset
+// converter both read: one usemtl per material group, triangles only, 1-based indices.
+class ObjMeshWriter {
+    private ObjMeshWriter() {
+    }
+
+    static void write(ObjMesh mesh, String[] materialLibraries, File file) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            write(mesh, materialLibraries, out);
+        }
+    }
+
+    static void write(ObjMesh mesh, String[] materialLibraries, Writer out) throws IOException {
+        for (String library : materialLibraries) {
+            out.write("mtllib " + library + "\n");
+        }
+        writeAttributes(out, "v ", mesh.positions, 3);
+        writeAttributes(out, "vt ", mesh.texCoords, 2);
+        writeAttributes(out, "vn ", mesh.normals, 3);
+
+        int group = 0;
+        int triangleCount = mesh.getTriangleCount();
+        for (int t = 0; t < triangleCount; t++) {
+            while (group < mesh.materialStarts.length && mesh.materialStarts[group] <= t) {
+                // Groups left empty have nothing to draw; the last usemtl before a face wins.
+                if (group + 1 == mesh.materialStarts.length || mesh.materialStarts[group + 1] > t) {
+                    out.write("usemtl " + mesh.materialNames[group] + "\n");
+                }
+                group++;
+            }
+            out.write('f');
+            for (int k = 0; k < 3; k++) {
+                int corner = (t * 3 + k) * ObjMesh.CORNER_STRIDE;
+                out.write(' ');
+                out.write(Integer.toString(mesh.corners[corner] + 1));
+                int texCoord = mesh.corners[corner + 1];
+                int normal = mesh.corners[corner + 2];
+                if (texCoord >= 0 || normal >= 0) {
+                    out.write('/');
+                    if (texCoord >= 0) {
+                        out.write(Integer.toString(texCoord + 1));
+                    }
+                    if (normal >= 0) {
+                        out.write('/');
+                        out.write(Integer.toString(normal + 1));
+                    }
+                }
+            }
+            out.write('\n');
+        }
+    }
+
+    private static void writeAttributes(Writer out, String keyword, float[] values, int stride) throws IOException {
+        for (int i = 0; i < values.length; i += stride) {
+            out.write(keyword);
+            for (int k = 0; k < stride; k++) {
+                if (k > 0) {
+                    out.write(' ');
+                }
+                out.write(format(values[i + k]));
+            }
+            out.write('\n');
+        }
+    }
+
+    // Shortest text that reads back as the same float, without exponent notation.
+    private static String format(float value) {
+        String text = Float.toString(value);
+        return text.indexOf('E') < 0 ? text : new BigDecimal(text).toPlainString();
+    }
+}
@@ -0,0 +1,625 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileTree;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Validates and normalizes every OBJ model under sourceDir into outputDir, keeping its relative
+// path: each model is run through ObjMeshNormalizer and gets its own <name>.mtl holding only the
+// materials it draws with, plus copies of the textures those use. Each model is a unit of work
+// for Gradle's worker API, so models are processed in parallel within the build's --max-workers.
+//
+// A model is only reprocessed when the SHA-256 of its OBJ, material libraries and textures
+// changed since the last run, so editing one model out of many redoes that one. The task then
+// writes outputDir/manifest.json listing every asset, its sizes, counts and bounds.
+public class ProcessModelsTask extends DefaultTask {
+    // Bump when the output for the same sources changes, to reprocess every model once.
+    private static final int PIPELINE_VERSION = 1;
+    private static final int STATE_VERSION = 1;
+    static final String MANIFEST = "manifest.json";
+
+    private final WorkerExecutor workerExecutor;
+    private File sourceDir;
+    private List<String> excludes = new ArrayList<>();
+    private File outputDir;
+
+    @Inject
+    public ProcessModelsTask(WorkerExecutor workerExecutor) {
+        this.workerExecutor = workerExecutor;
+    }
+
+    @Internal
+    public File getSourceDir() {
+        return sourceDir;
+    }
+
+    public void setSourceDir(File sourceDir) {
+        this.sourceDir = sourceDir;
+    }
+
+    // Ant-style patterns, relative to sourceDir, of files that are not part of any model.
+    @Input
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
+    public void setExcludes(List<String> excludes) {
+        this.excludes = excludes;
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileTree getSourceFiles() {
+        ConfigurableFileTree tree = getProject().fileTree(sourceDir);
+        tree.exclude(excludes);
+        return tree;
+    }
+
+    @Internal
+    public FileTree getModels() {
+        return getSourceFiles().matching(patterns -> patterns.include("**/*.obj"));
+    }
+
+    @OutputDirectory
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    public void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    // A name usable as an Android raw resource for the model at a path relative to sourceDir:
+    // "furniture/Chair-2.obj" becomes "furniture_chair_2".
+    public static String assetName(String relativePath) {
+        String name = relativePath.replaceFirst("\\.obj$", "").toLowerCase(Locale.ROOT);
+        return name.replaceAll("[^a-z0-9_]", "_");
+    }
+
+    @TaskAction
+    public void process() throws IOException {
+        Map<String, File> models = new TreeMap<>();
+        getModels().visit(details -> {
+            if (!details.isDirectory()) {
+                models.put(details.getRelativePath().getPathString(), details.getFile());
+            }
+        });
+        checkAssetNames(models.keySet());
+
+        File stateFile = new File(getTemporaryDir(), "models.state");
+        Map<String, ModelAsset> previous = readState(stateFile);
+        // A worker finds the model's asset from the last run in its result file, and replaces it
+        // with the new asset or the reason the model is invalid.
+        File resultDir = new File(getTemporaryDir(), "results");
+        if (!resultDir.isDirectory() && !resultDir.mkdirs()) {
+            throw new IOException("Unable to create " + resultDir);
+        }
+        WorkQueue queue = workerExecutor.noIsolation();
+        Map<String, File> results = new LinkedHashMap<>();
+        for (Map.Entry<String, File> model : models.entrySet()) {
+            String path = model.getKey();
+            File result = new File(resultDir, results.size() + ".result");
+            ModelAsset last = previous.get(path);
+            if (last != null) {
+                writeResult(result, last, null);
+            } else {
+                Files.deleteIfExists(result.toPath());
+            }
+            results.put(path, result);
+            queue.submit(ProcessModel.class, parameters -> {
+                parameters.getPath().set(path);
+                parameters.getSource().set(model.getValue());
+                parameters.getOutputDir().set(outputDir);
+                parameters.getResult().set(result);
+            });
+        }
+        queue.await();
+
+        List<ModelAsset> assets = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        for (Map.Entry<String, File> result : results.entrySet()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(result.getValue()))) {
+                if (in.readBoolean()) {
+                    assets.add(ModelAsset.read(in));
+                } else {
+                    failures.add(result.getKey() + ": " + in.readUTF());
+                }
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new GradleException("Invalid models:\n  " + String.join("\n  ", failures));
+        }
+
+        copyTextures(assets);
+        deleteStaleOutputs(assets);
+        writeManifest(assets, new File(outputDir, MANIFEST));
+        writeState(assets, stateFile);
+    }
+
+    // Processes one model on a Gradle worker thread.
+    public abstract static class ProcessModel implements WorkAction<ProcessModel.Parameters> {
+        public interface Parameters extends WorkParameters {
+            Property<String> getPath();
+
+            RegularFileProperty getSource();
+
+            DirectoryProperty getOutputDir();
+
+            RegularFileProperty getResult();
+        }
+
+        @Override
+        public void execute() {
+            Parameters parameters = getParameters();
+            String path = parameters.getPath().get();
+            File result = parameters.getResult().get().getAsFile();
+            try {
+                ModelAsset previous = null;
+                if (result.isFile()) {
+                    try (DataInputStream in = new DataInputStream(new FileInputStream(result))) {
+                        previous = in.readBoolean() ? ModelAsset.read(in) : null;
+                    }
+                }
+                ModelAsset asset;
+                try {
+                    asset = process(path, parameters.getSource().get().getAsFile(),
+                            parameters.getOutputDir().get().getAsFile(), previous);
+                } catch (IOException | RuntimeException e) {
+                    writeResult(result, null, String.valueOf(e.getMessage()));
+                    return;
+                }
+                writeResult(result, asset, null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static ModelAsset process(String path, File source, File outputDir, ModelAsset previous)
+            throws IOException {
+        Logger logger = Logging.getLogger(ProcessModelsTask.class);
+        byte[] obj = Files.readAllBytes(source.toPath());
+        String[] libraries = GenerateLodsTask.materialLibraries(source);
+        Map<String, String> definitions = new LinkedHashMap<>();
+        MessageDigest digest = sha256();
+        update(digest, Integer.toString(PIPELINE_VERSION));
+        digest.update(obj);
+        for (String library : libraries) {
+            File file = new File(source.getParentFile(), library);
+            if (!file.isFile()) {
+                throw new IOException("The material library " + library + " does not exist.");
+            }
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            update(digest, library);
+            digest.update(bytes);
+            readMaterials(new String(bytes, StandardCharsets.UTF_8), definitions);
+        }
+        // Textures are only known once the materials are; hash every one the libraries name.
+        Set<String> allTextures = new HashSet<>();
+        for (String definition : definitions.values()) {
+            allTextures.addAll(textures(definition));
+        }
+        for (String texture : new TreeSet<>(allTextures)) {
+            File file = new File(source.getParentFile(), texture);
+            update(digest, texture);
+            if (file.isFile()) {
+                digest.update(Files.readAllBytes(file.toPath()));
+            }
+        }
+        String key = hex(digest.digest());
+
+        String base = path.replaceFirst("\\.obj$", "");
+        File objOut = new File(outputDir, path);
+        File mtlOut = new File(outputDir, base + ".mtl");
+        if (previous != null && previous.key.equals(key) && objOut.length() == previous.bytes
+                && (previous.materials.length == 0 || mtlOut.length() == previous.materialBytes)) {
+            logger.info("{}: unchanged", path);
+            return previous;
+        }
+
+        ObjMesh original = ObjMeshLoader.parse(new ByteArrayInputStream(obj));
+        ObjMesh mesh;
+        try {
+            mesh = ObjMeshNormalizer.normalize(original);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        if (mesh.getTriangleCount() == 0) {
+            throw new IOException("The model has no triangles.");
+        }
+
+        Set<String> used = new LinkedHashSet<>();
+        StringBuilder materials = new StringBuilder();
+        List<String> textures = new ArrayList<>();
+        for (String material : mesh.materialNames) {
+            if (!used.add(material)) {
+                continue;
+            }
+            String definition = definitions.get(material);
+            if (definition == null) {
+                throw new IOException("The material " + material + " is not defined by any material library.");
+            }
+            materials.append(definition);
+            for (String texture : textures(definition)) {
+                if (!new File(source.getParentFile(), texture).isFile()) {
+                    throw new IOException("The texture " + texture + " does not exist.");
+                }
+                if (!textures.contains(texture)) {
+                    textures.add(texture);
+                }
+            }
+        }
+
+        File directory = objOut.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        String[] mtllib = used.isEmpty() ? new String[0] : new String[]{mtlOut.getName()};
+        ObjMeshWriter.write(mesh, mtllib, objOut);
+        if (used.isEmpty()) {
+            Files.deleteIfExists(mtlOut.toPath());
+        } else {
+            Files.write(mtlOut.toPath(), materials.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        ModelAsset asset = new ModelAsset(path, key, obj.length, objOut.length(), used.isEmpty() ? 0 : mtlOut.length(),
+                mesh.getVertexCount(), mesh.getTexCoordCount(), mesh.getNormalCount(), mesh.getTriangleCount(),
+                used.toArray(new String[0]), textures.toArray(new String[0]), mesh.computeBounds());
+        logger.info("{}: {} -> {} vertices, {} -> {} triangles, {} of {} materials", path,
+                original.getVertexCount(), asset.vertices, original.getTriangleCount(), asset.triangles,
+                used.size(), definitions.size());
+        return asset;
+    }
+
+    // Texture copies are shared by the models of a directory, so they are made one at a time.
+    private void copyTextures(List<ModelAsset> assets) throws IOException {
+        for (ModelAsset asset : assets) {
+            File sourceDirectory = new File(sourceDir, asset.path).getParentFile();
+            File outputDirectory = new File(outputDir, asset.path).getParentFile();
+            for (String texture : asset.textures) {
+                File source = new File(sourceDirectory, texture);
+                File target = new File(outputDirectory, texture);
+                if (target.length() != source.length() || target.lastModified() < source.lastModified()) {
+                    target.getParentFile().mkdirs();
+                    Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    // Removes what models that no longer exist, or no longer use a texture, left behind.
+    private void deleteStaleOutputs(List<ModelAsset> assets) {
+        Set<File> expected = new HashSet<>();
+        expected.add(new File(outputDir, MANIFEST));
+        for (ModelAsset asset : assets) {
+            File obj = new File(outputDir, asset.path);
+            expected.add(obj);
+            expected.add(new File(outputDir, asset.path.replaceFirst("\\.obj$", "") + ".mtl"));
+            for (String texture : asset.textures) {
+                expected.add(new File(obj.getParentFile(), texture));
+            }
+        }
+        getProject().fileTree(outputDir).visit(details -> {
+            if (!details.isDirectory() && !expected.contains(details.getFile())) {
+                getLogger().info("Removing {}", details.getRelativePath());
+                details.getFile().delete();
+            }
+        });
+    }
+
+    private static void writeManifest(List<ModelAsset> assets, File file) throws IOException {
+        long totalBytes = 0;
+        for (ModelAsset asset : assets) {
+            totalBytes += asset.bytes + asset.materialBytes;
+        }
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write("{\n");
+            out.write("  \"version\": " + PIPELINE_VERSION + ",\n");
+            out.write("  \"totalBytes\": " + totalBytes + ",\n");
+            out.write("  \"assets\": [");
+            for (int i = 0; i < assets.size(); i++) {
+                ModelAsset asset = assets.get(i);
+                out.write(i == 0 ? "\n" : ",\n");
+                out.write("    {\n");
+                out.write("      \"name\": " + quote(assetName(asset.path)) + ",\n");
+                out.write("      \"path\": " + quote(asset.path) + ",\n");
+                out.write("      \"sourceSha256\": " + quote(asset.key) + ",\n");
+                out.write("      \"sourceBytes\": " + asset.sourceBytes + ",\n");
+                out.write("      \"bytes\": " + asset.bytes + ",\n");
+                out.write("      \"materialBytes\": " + asset.materialBytes + ",\n");
+                out.write("      \"vertices\": " + asset.vertices + ",\n");
+                out.write("      \"texCoords\": " + asset.texCoords + ",\n");
+                out.write("      \"normals\": " + asset.normals + ",\n");
+                out.write("      \"triangles\": " + asset.triangles + ",\n");
+                out.write("      \"materials\": " + quote(asset.materials) + ",\n");
+                out.write("      \"textures\": " + quote(asset.textures) + ",\n");
+                StringBuilder bounds = new StringBuilder();
+                for (float value : asset.bounds) {
+                    bounds.append(bounds.length() == 0 ? "" : ", ").append(value);
+                }
+                out.write("      \"bounds\": [" + bounds + "]\n");
+                out.write("    }");
+            }
+            out.write(assets.isEmpty() ? "]\n" : "\n  ]\n");
+            out.write("}\n");
+        }
+    }
+
+    private void checkAssetNames(Set<String> paths) {
+        Map<String, String> byName = new HashMap<>();
+        for (String path : paths) {
+            String other = byName.put(assetName(path), path);
+            if (other != null) {
+                throw new GradleException(other + " and " + path + " would both be compiled to " + assetName(path) + ".");
+            }
+        }
+    }
+
+    // Splits material libraries into "newmtl" blocks; the first definition of a name wins, as
+    // in the Sceneform converter.
+    private static void readMaterials(String library, Map<String, String> definitions) throws IOException {
+        String name = null;
+        StringBuilder block = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new StringReader(library))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (trimmed.startsWith("newmtl ")) {
+                    addMaterial(name, block, definitions);
+                    name = trimmed.substring("newmtl ".length()).trim();
+                    block.setLength(0);
+                }
+                if (name != null && !trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                    block.append(line).append('\n');
+                }
+            }
+        }
+        addMaterial(name, block, definitions);
+    }
+
+    private static void addMaterial(String name, StringBuilder block, Map<String, String> definitions) {
+        if (name != null && !definitions.containsKey(name)) {
+            definitions.put(name, block.append('\n').toString());
+        }
+    }
+
+    // The files a material's texture statements name: the last argument of each map_*, bump,
+    // disp, decal or refl line.
+    private static List<String> textures(String definition) {
+        List<String> textures = new ArrayList<>();
+        for (String line : definition.split("\n")) {
+            String[] words = line.trim().split("\\s+");
+            String keyword = words[0].toLowerCase(Locale.ROOT);
+            if (words.length > 1 && (keyword.startsWith("map_") || keyword.equals("bump")
+                    || keyword.equals("disp") || keyword.equals("decal") || keyword.equals("refl"))) {
+                textures.add(words[words.length - 1]);
+            }
+        }
+        return textures;
+    }
+
+    private static Map<String, ModelAsset> readState(File file) {
+        Map<String, ModelAsset> assets = new HashMap<>();
+        if (!file.isFile()) {
+            return assets;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != STATE_VERSION) {
+                return assets;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                ModelAsset asset = ModelAsset.read(in);
+                assets.put(asset.path, asset);
+            }
+        } catch (IOException e) {
+            // A damaged state only costs reprocessing every model.
+            assets.clear();
+        }
+        return assets;
+    }
+
+    // A model's result: true and its asset, or false and why it is invalid.
+    private static void writeResult(File file, ModelAsset asset, String failure) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeBoolean(asset != null);
+            if (asset != null) {
+                asset.write(out);
+            } else {
+                out.writeUTF(failure);
+            }
+        }
+    }
+
+    private static void writeState(List<ModelAsset> assets, File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(STATE_VERSION);
+            out.writeInt(assets.size());
+            for (ModelAsset asset : assets) {
+                asset.write(out);
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Length-prefixed, so "ab" + "c" and "a" + "bc" hash differently.
+    private static void update(MessageDigest digest, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder text = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            text.append(Character.forDigit((b >> 4) & 15, 16)).append(Character.forDigit(b & 15, 16));
+        }
+        return text.toString();
+    }
+
+    private static String quote(String[] values) {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < values.length; i++) {
+            text.append(i == 0 ? "" : ", ").append(quote(values[i]));
+        }
+        return text.append(']').toString();
+    }
+
+    private static String quote(String value) {
+        StringBuilder text = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                text.append('\\').append(c);
+            } else if (c < 0x20) {
+                text.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                text.append(c);
+            }
+        }
+        return text.append('"').toString();
+    }
+
+    // What the manifest says about one model, kept between runs with the key it was made from.
+    private static final class ModelAsset {
+        final String path;
+        final String key;
+        final long sourceBytes;
+        final long bytes;
+        final long materialBytes;
+        final int vertices;
+        final int texCoords;
+        final int normals;
+        final int triangles;
+        final String[] materials;
+        final String[] textures;
+        final float[] bounds;
+
+        ModelAsset(String path, String key, long sourceBytes, long bytes, long materialBytes, int vertices,
+                   int texCoords, int normals, int triangles, String[] materials, String[] textures, float[] bounds) {
+            this.path = path;
+            this.key = key;
+            this.sourceBytes = sourceBytes;
+            this.bytes = bytes;
+            this.materialBytes = materialBytes;
+            this.vertices = vertices;
+            this.texCoords = texCoords;
+            this.normals = normals;
+            this.triangles = triangles;
+            this.materials = materials;
+            this.textures = textures;
+            this.bounds = bounds;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(path);
+            out.writeUTF(key);
+            out.writeLong(sourceBytes);
+            out.writeLong(bytes);
+            out.writeLong(materialBytes);
+            out.writeInt(vertices);
+            out.writeInt(texCoords);
+            out.writeInt(normals);
+            out.writeInt(triangles);
+            writeStrings(out, materials);
+            writeStrings(out, textures);
+            for (float value : bounds) {
+                out.writeFloat(value);
+            }
+        }
+
+        static ModelAsset read(DataInputStream in) throws IOException {
+            String path = in.readUTF();
+            String key = in.readUTF();
+            long sourceBytes = in.readLong();
+            long bytes = in.readLong();
+            long materialBytes = in.readLong();
+            int vertices = in.readInt();
+            int texCoords = in.readInt();
+            int normals = in.readInt();
+            int triangles = in.readInt();
+            String[] materials = readStrings(in);
+            String[] textures = readStrings(in);
+            float[] bounds = new float[6];
+            for (int i = 0; i < bounds.length; i++) {
+                bounds[i] = in.readFloat();
+            }
+            return new ModelAsset(path, key, sourceBytes, bytes, materialBytes, vertices, texCoords, normals,
+                    triangles, materials, textures, bounds);
+        }
+
+        private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+            out.writeInt(values.length);
+            for (String value : values) {
+                out.writeUTF(value);
+            }
+        }
+
+        private static String[] readStrings(DataInputStream in) throws IOException {
+            String[] values = new String[in.readInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = in.readUTF();
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,555 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+package com.microsoft.sampleandroid;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Quadric edge-collapse simplification (Garland and Heckbert) used to build the lower levels of
+// detail of a model offline. Corners with identical positions are welded first; then the edge
+// whose collapse adds the least quadric error is collapsed until the triangle target is met.
+//
+// What the result keeps, so that switching levels at a distance is not noticeable:
+// - every material group keeps at least one triangle and its place in the draw order;
+// - edges on open borders and between two materials carry a penalty plane that holds them;
+// - a vertex on each face of the bounding box is never removed, and a collapse only ever
+//   moves a vertex onto its neighbour, so the bounding box is preserved exactly.
+// Texture coordinates and normals travel with each surviving corner rather than being re-fit.
+class QuadricSimplifier {
+    // Weight of the planes holding borders and material seams, relative to the surface planes.
+    private static final double SEAM_WEIGHT = 100;
+    private static final int QUADRIC_SIZE = 10;
+    private static final int TRIANGLE_STRIDE = 3 * ObjMesh.CORNER_STRIDE;
+
+    private final ObjMesh source;
+    private final int[] weldedIndex;
+    private final int[] representative;
+    private final int vertexCount;
+
+    private final double[] quadrics;
+    private final boolean[] locked;
+    private final boolean[] removed;
+    private final int[] versions;
+    private final int[][] vertexTriangles;
+    private final int[] vertexTriangleCounts;
+
+    private final int[] triangles;
+    private final int[] triangleGroups;
+    private final boolean[] deadTriangles;
+    private final int[] groupTriangleCounts;
+    private int liveTriangles;
+
+    private final PriorityQueue<Collapse> queue = new PriorityQueue<>();
+    private final int[] marks;
+    private int markStamp;
+
+    private QuadricSimplifier(ObjMesh source) {
+        this.source = source;
+        int positionCount = source.getVertexCount();
+        weldedIndex = new int[positionCount];
+        representative = new int[positionCount];
+        vertexCount = weld(source.positions, weldedIndex, representative);
+
+        int triangleCount = source.getTriangleCount();
+        triangles = new int[triangleCount * 3];
+        triangleGroups = new int[triangleCount];
+        deadTriangles = new boolean[triangleCount];
+        groupTriangleCounts = new int[source.materialNames.length + 1];
+        liveTriangles = triangleCount;
+
+        quadrics = new double[vertexCount * QUADRIC_SIZE];
+        locked = new boolean[vertexCount];
+        removed = new boolean[vertexCount];
+        versions = new int[vertexCount];
+        vertexTriangles = new int[vertexCount][];
+        vertexTriangleCounts = new int[vertexCount];
+        marks = new int[vertexCount];
+    }
+
+    // Returns a copy of the mesh reduced to about targetTriangles triangles. The target may not
+    // be reached when the remaining edges are all locked or would fold the surface.
+    static ObjMesh simplify(ObjMesh mesh, int targetTriangles) {
+        if (targetTriangles >= mesh.getTriangleCount()) {
+            return mesh;
+        }
+        QuadricSimplifier simplifier = new QuadricSimplifier(mesh);
+        simplifier.buildTopology();
+        simplifier.run(Math.max(targetTriangles, 1));
+        return simplifier.build();
+    }
+
+    // Maps every position to the first position with the same coordinates; returns the number
+    // of distinct positions.
+    private static int weld(float[] positions, int[] weldedIndex, int[] representative) {
+        HashMap<PositionKey, Integer> seen = new HashMap<>();
+        int count = 0;
+        for (int i = 0; i < weldedIndex.length; i++) {
+            PositionKey key = new PositionKey(positions, i * 3);
+            Integer existing = seen.get(key);
+            if (existing == null) {
+                existing = count;
+                representative[count++] = i;
+                seen.put(key, existing);
+            }
+            weldedIndex[i] = existing;
+        }
+        return count;
+    }
+
+    private void buildTopology() {
+        int[] corners = source.corners;
+        int group = 0;
+        for (int t = 0; t < triangleGroups.length; t++) {
+            while (group < source.materialStarts.length && source.materialStarts[group] <= t) {
+                group++;
+            }
+            // Slot 0 holds triangles drawn before the first usemtl.
+            triangleGroups[t] = group;
+            groupTriangleCounts[group]++;
+            for (int k = 0; k < 3; k++) {
+                int vertex = weldedIndex[corners[t * TRIANGLE_STRIDE + k * ObjMesh.CORNER_STRIDE]];
+                triangles[t * 3 + k] = vertex;
+                addVertexTriangle(vertex, t);
+            }
+        }
+
+        double[] normal = new double[3];
+        HashMap<Long, int[]> edges = new HashMap<>();
+        for (int t = 0; t < triangleGroups.length; t++) {
+            double area = faceNormal(t, -1, -1, normal);
+            if (area > 0) {
+                double d = -dot(normal, triangles[t * 3]);
+                for (int k = 0; k < 3; k++) {
+                    addPlane(triangles[t * 3 + k], normal[0], normal[1], normal[2], d, area);
+                }
+            }
+            for (int k = 0; k < 3; k++) {
+                int a = triangles[t * 3 + k];
+                int b = triangles[t * 3 + (k + 1) % 3];
+                long key = (long) Math.min(a, b) << 32 | Math.max(a, b);
+                int[] edge = edges.get(key);
+                if (edge == null) {
+                    // {uses, group of the first triangle, first triangle, seam}
+                    edges.put(key, new int[]{1, triangleGroups[t], t, 0});
+                } else {
+                    edge[0]++;
+                    if (edge[1] != triangleGroups[t]) {
+                        edge[3] = 1;
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<Long, int[]> entry : edges.entrySet()) {
+            int a = (int) (entry.getKey() >>> 32);
+            int b = (int) (long) entry.getKey();
+            int[] edge = entry.getValue();
+            if (edge[0] != 2 || edge[3] != 0) {
+                addSeamPlane(a, b, edge[2], normal);
+            }
+        }
+
+        lockBoundingBox();
+
+        for (Long key : edges.keySet()) {
+            pushCollapse((int) (key >>> 32), (int) (long) key);
+        }
+    }
+
+    private void run(int targetTriangles) {
+        Collapse collapse;
+        while (liveTriangles > targetTriangles && (collapse = queue.poll()) != null) {
+            int gone = collapse.removed;
+            int kept = collapse.kept;
+            if (removed[gone] || removed[kept]
+                    || versions[gone] != collapse.removedVersion || versions[kept] != collapse.keptVersion) {
+                continue;
+            }
+            if (canCollapse(gone, kept)) {
+                collapse(gone, kept);
+            }
+        }
+    }
+
+    private boolean canCollapse(int gone, int kept) {
+        // Link condition: the two ends may only share the vertices of the triangles on the edge,
+        // otherwise the collapse pinches the surface into a non-manifold fin.
+        int stamp = nextMark();
+        int shared = 0;
+        for (int i = 0; i < vertexTriangleCounts[kept]; i++) {
+            int t = vertexTriangles[kept][i];
+            if (!deadTriangles[t]) {
+                for (int k = 0; k < 3; k++) {
+                    marks[triangles[t * 3 + k]] = stamp;
+                }
+            }
+        }
+        int commonStamp = nextMark();
+        int common = 0;
+        double[] before = new double[3];
+        double[] after = new double[3];
+        for (int i = 0; i < vertexTriangleCounts[gone]; i++) {
+            int t = vertexTriangles[gone][i];
+            if (deadTriangles[t]) {
+                continue;
+            }
+            if (containsVertex(t, kept)) {
+                shared++;
+                if (!groupSurvives(t, gone, kept)) {
+                    return false;
+                }
+            } else {
+                // The triangle must not fold over when its corner moves onto the kept vertex.
+                if (faceNormal(t, -1, -1, before) == 0 || faceNormal(t, gone, kept, after) == 0
+                        || before[0] * after[0] + before[1] * after[1] + before[2] * after[2] < 0) {
+                    return false;
+                }
+            }
+            for (int k = 0; k < 3; k++) {
+                int vertex = triangles[t * 3 + k];
+                if (vertex != gone && vertex != kept && marks[vertex] == stamp) {
+                    marks[vertex] = commonStamp;
+                    common++;
+                }
+            }
+        }
+        return common == shared;
+    }
+
+    // Whether every group losing triangles to this collapse keeps at least one.
+    private boolean groupSurvives(int triangle, int gone, int kept) {
+        int group = triangleGroups[triangle];
+        int lost = 0;
+        for (int i = 0; i < vertexTriangleCounts[gone]; i++) {
+            int t = vertexTriangles[gone][i];
+            if (!deadTriangles[t] && triangleGroups[t] == group && containsVertex(t, kept)) {
+                lost++;
+            }
+        }
+        return groupTriangleCounts[group] > lost;
+    }
+
+    private void collapse(int gone, int kept) {
+        for (int i = 0; i < vertexTriangleCounts[gone]; i++) {
+            int t = vertexTriangles[gone][i];
+            if (deadTriangles[t]) {
+                continue;
+            }
+            if (containsVertex(t, kept)) {
+                deadTriangles[t] = true;
+                liveTriangles--;
+                groupTriangleCounts[triangleGroups[t]]--;
+            } else {
+                for (int k = 0; k < 3; k++) {
+                    if (triangles[t * 3 + k] == gone) {
+                        triangles[t * 3 + k] = kept;
+                    }
+                }
+                addVertexTriangle(kept, t);
+            }
+        }
+        removed[gone] = true;
+        vertexTriangles[gone] = null;
+        vertexTriangleCounts[gone] = 0;
+        for (int i = 0; i < QUADRIC_SIZE; i++) {
+            quadrics[kept * QUADRIC_SIZE + i] += quadrics[gone * QUADRIC_SIZE + i];
+        }
+        versions[kept]++;
+
+        // The kept vertex's quadric changed, so every edge around it has a new cost. Dead
+        // triangles are dropped from its list on the way.
+        int stamp = nextMark();
+        marks[kept] = stamp;
+        int[] list = vertexTriangles[kept];
+        int live = 0;
+        for (int i = 0; i < vertexTriangleCounts[kept]; i++) {
+            int t = list[i];
+            if (deadTriangles[t]) {
+                continue;
+            }
+            list[live++] = t;
+            for (int k = 0; k < 3; k++) {
+                int vertex = triangles[t * 3 + k];
+                if (marks[vertex] != stamp) {
+                    marks[vertex] = stamp;
+                    pushCollapse(kept, vertex);
+                }
+            }
+        }
+        vertexTriangleCounts[kept] = live;
+    }
+
+    private void pushCollapse(int a, int b) {
+        if (a == b) {
+            return;
+        }
+        double aIntoB = locked[a] ? Double.POSITIVE_INFINITY : collapseError(a, b);
+        double bIntoA = locked[b] ? Double.POSITIVE_INFINITY : collapseError(b, a);
+        if (aIntoB == Double.POSITIVE_INFINITY && bIntoA == Double.POSITIVE_INFINITY) {
+            return;
+        }
+        if (aIntoB <= bIntoA) {
+            queue.add(new Collapse(aIntoB, a, b, versions[a], versions[b]));
+        } else {
+            queue.add(new Collapse(bIntoA, b, a, versions[b], versions[a]));
+        }
+    }
+
+    // Error of the combined quadric of both ends, evaluated at the kept vertex's position.
+    private double collapseError(int gone, int kept) {
+        int p = representative[kept] * 3;
+        double x = source.positions[p];
+        double y = source.positions[p + 1];
+        double z = source.positions[p + 2];
+        int g = gone * QUADRIC_SIZE;
+        int k = kept * QUADRIC_SIZE;
+        double[] q = quadrics;
+        double error = (q[g] + q[k]) * x * x
+                + 2 * (q[g + 1] + q[k + 1]) * x * y
+                + 2 * (q[g + 2] + q[k + 2]) * x * z
+                + 2 * (q[g + 3] + q[k + 3]) * x
+                + (q[g + 4] + q[k + 4]) * y * y
+                + 2 * (q[g + 5] + q[k + 5]) * y * z
+                + 2 * (q[g + 6] + q[k + 6]) * y
+                + (q[g + 7] + q[k + 7]) * z * z
+                + 2 * (q[g + 8] + q[k + 8]) * z
+                + (q[g + 9] + q[k + 9]);
+        // Rounding can take an exact fit slightly below zero.
+        return Math.max(error, 0);
+    }
+
+    private void addPlane(int vertex, double a, double b, double c, double d, double weight) {
+        int q = vertex * QUADRIC_SIZE;
+        quadrics[q] += weight * a * a;
+        quadrics[q + 1] += weight * a * b;
+        quadrics[q + 2] += weight * a * c;
+        quadrics[q + 3] += weight * a * d;
+        quadrics[q + 4] += weight * b * b;
+        quadrics[q + 5] += weight * b * c;
+        quadrics[q + 6] += weight * b * d;
+        quadrics[q + 7] += weight * c * c;
+        quadrics[q + 8] += weight * c * d;
+        quadrics[q + 9] += weight * d * d;
+    }
+
+    // Adds the plane through the edge and perpendicular to its triangle to both ends, so moving
+    // either end off the border or seam is expensive.
+    private void addSeamPlane(int a, int b, int triangle, double[] scratch) {
+        if (faceNormal(triangle, -1, -1, scratch) == 0) {
+            return;
+        }
+        int pa = representative[a] * 3;
+        int pb = representative[b] * 3;
+        float[] positions = source.positions;
+        double ex = positions[pb] - positions[pa];
+        double ey = positions[pb + 1] - positions[pa + 1];
+        double ez = positions[pb + 2] - positions[pa + 2];
+        double nx = ey * scratch[2] - ez * scratch[1];
+        double ny = ez * scratch[0] - ex * scratch[2];
+        double nz = ex * scratch[1] - ey * scratch[0];
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0) {
+            return;
+        }
+        nx /= length;
+        ny /= length;
+        nz /= length;
+        double d = -(nx * positions[pa] + ny * positions[pa + 1] + nz * positions[pa + 2]);
+        double weight = SEAM_WEIGHT * (ex * ex + ey * ey + ez * ez);
+        addPlane(a, nx, ny, nz, d, weight);
+        addPlane(b, nx, ny, nz, d, weight);
+    }
+
+    // One vertex on each face of the bounding box is enough to keep the box.
+    private void lockBoundingBox() {
+        float[] bounds = source.computeBounds();
+        boolean[] found = new boolean[6];
+        for (int v = 0; v < vertexCount; v++) {
+            int p = representative[v] * 3;
+            for (int side = 0; side < 6; side++) {
+                if (!found[side] && source.positions[p + side % 3] == bounds[side]) {
+                    found[side] = true;
+                    locked[v] = true;
+                }
+            }
+        }
+    }
+
+    // Unit normal of the triangle, optionally with one vertex replaced by another; returns the
+    // triangle's area, 0 when degenerate.
+    private double faceNormal(int triangle, int replaced, int replacement, double[] out) {
+        int p0 = positionOffset(triangles[triangle * 3], replaced, replacement);
+        int p1 = positionOffset(triangles[triangle * 3 + 1], replaced, replacement);
+        int p2 = positionOffset(triangles[triangle * 3 + 2], replaced, replacement);
+        float[] positions = source.positions;
+        double ux = positions[p1] - positions[p0];
+        double uy = positions[p1 + 1] - positions[p0 + 1];
+        double uz = positions[p1 + 2] - positions[p0 + 2];
+        double vx = positions[p2] - positions[p0];
+        double vy = positions[p2 + 1] - positions[p0 + 1];
+        double vz = positions[p2 + 2] - positions[p0 + 2];
+        double nx = uy * vz - uz * vy;
+        double ny = uz * vx - ux * vz;
+        double nz = ux * vy - uy * vx;
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0) {
+            return 0;
+        }
+        out[0] = nx / length;
+        out[1] = ny / length;
+        out[2] = nz / length;
+        return length / 2;
+    }
+
+    private int positionOffset(int vertex, int replaced, int replacement) {
+        return representative[vertex == replaced ? replacement : vertex] * 3;
+    }
+
+    private double dot(double[] normal, int vertex) {
+        int p = representative[vertex] * 3;
+        return normal[0] * source.positions[p]
+                + normal[1] * source.positions[p + 1]
+                + normal[2] * source.positions[p + 2];
+    }
+
+    private boolean containsVertex(int triangle, int vertex) {
+        return triangles[triangle * 3] == vertex
+                || triangles[triangle * 3 + 1] == vertex
+                || triangles[triangle * 3 + 2] == vertex;
+    }
+
+    private void addVertexTriangle(int vertex, int triangle) {
+        int[] list = vertexTriangles[vertex];
+        int count = vertexTriangleCounts[vertex];
+        if (list == null) {
+            list = new int[8];
+        } else if (count == list.length) {
+            list = Arrays.copyOf(list, count * 2);
+        }
+        list[count] = triangle;
+        vertexTriangles[vertex] = list;
+        vertexTriangleCounts[vertex] = count + 1;
+    }
+
+    private int nextMark() {
+        return ++markStamp;
+    }
+
+    // Emits the live triangles in their original order, with only the attributes they use.
+    private ObjMesh build() {
+        int[] corners = new int[liveTriangles * TRIANGLE_STRIDE];
+        int[] positionMap = newMap(vertexCount);
+        int[] texCoordMap = newMap(source.getTexCoordCount());
+        int[] normalMap = newMap(source.getNormalCount());
+        float[] positions = new float[vertexCount * 3];
+        float[] texCoords = new float[source.texCoords.length];
+        float[] normals = new float[source.normals.length];
+        int positionCount = 0;
+        int texCoordCount = 0;
+        int normalCount = 0;
+
+        int[] materialStarts = new int[source.materialStarts.length];
+        int group = 0;
+        int out = 0;
+        for (int t = 0; t < deadTriangles.length; t++) {
+            while (group < materialStarts.length && source.materialStarts[group] <= t) {
+                materialStarts[group++] = out / TRIANGLE_STRIDE;
+            }
+            if (deadTriangles[t]) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int corner = t * TRIANGLE_STRIDE + k * ObjMesh.CORNER_STRIDE;
+                int vertex = triangles[t * 3 + k];
+                if (positionMap[vertex] < 0) {
+                    System.arraycopy(source.positions, representative[vertex] * 3, positions, positionCount * 3, 3);
+                    positionMap[vertex] = positionCount++;
+                }
+                corners[out++] = positionMap[vertex];
+
+                int texCoord = source.corners[corner + 1];
+                if (texCoord >= 0 && texCoordMap[texCoord] < 0) {
+                    System.arraycopy(source.texCoords, texCoord * 2, texCoords, texCoordCount * 2, 2);
+                    texCoordMap[texCoord] = texCoordCount++;
+                }
+                corners[out++] = texCoord >= 0 ? texCoordMap[texCoord] : -1;
+
+                int normal = source.corners[corner + 2];
+                if (normal >= 0 && normalMap[normal] < 0) {
+                    System.arraycopy(source.normals, normal * 3, normals, normalCount * 3, 3);
+                    normalMap[normal] = normalCount++;
+                }
+                corners[out++] = normal >= 0 ? normalMap[normal] : -1;
+            }
+        }
+        while (group < materialStarts.length) {
+            materialStarts[group++] = out / TRIANGLE_STRIDE;
+        }
+
+        return new ObjMesh(
+                Arrays.copyOf(positions, positionCount * 3),
+                Arrays.copyOf(texCoords, texCoordCount * 2),
+                Arrays.copyOf(normals, normalCount * 3),
+                corners,
+                liveTriangles,
+                source.materialNames.clone(),
+                materialStarts);
+    }
+
+    private static int[] newMap(int size) {
+        int[] map = new int[size];
+        Arrays.fill(map, -1);
+        return map;
+    }
+
+    private static final class Collapse implements Comparable<Collapse> {
+        final double cost;
+        final int removed;
+        final int kept;
+        final int removedVersion;
+        final int keptVersion;
+
+        Collapse(double cost, int removed, int kept, int removedVersion, int keptVersion) {
+            this.cost = cost;
+            this.removed = removed;
+            this.kept = kept;
+            this.removedVersion = removedVersion;
+            this.keptVersion = keptVersion;
+        }
+
+        @Override
+        public int compareTo(Collapse other) {
+            return Double.compare(cost, other.cost);
+        }
+    }
+
+    private static final class PositionKey {
+        private final float x;
+        private final float y;
+        private final float z;
+
+        PositionKey(float[] positions, int offset) {
+            x = positions[offset];
+            y = positions[offset + 1];
+            z = positions[offset + 2];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PositionKey)) {
+                return false;
+            }
+            PositionKey other = (PositionKey) o;
+            return Float.compare(x, other.x) == 0
+                    && Float.compare(y, other.y) == 0
+                    && Float.compare(z, other.z) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return (Float.floatToIntBits(x) * 31 + Float.floatToIntBits(y)) * 31 + Float.floatToIntBits(z);
+        }
+    }
+}
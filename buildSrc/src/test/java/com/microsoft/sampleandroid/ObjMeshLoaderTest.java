@@ -0,0 +1,86 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ObjMeshLoaderTest {
+    private static final File MODEL =
+            new File(System.getProperty("sampledata", "../app/sampledata"), "model.obj");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void parse_modelObjCounts() throws Exception {
+        ObjMesh mesh = ObjMeshLoader.parse(MODEL);
+
+        assertEquals(5827, mesh.getVertexCount());
+        assertEquals(23277, mesh.getTexCoordCount());
+        assertEquals(5879, mesh.getNormalCount());
+        assertEquals(5879, mesh.faceCount);
+        assertEquals(11519, mesh.getTriangleCount());
+        assertEquals(0.4907801f, mesh.positions[0], 1e-7f);
+        assertEquals(-0.08287215f, mesh.positions[1], 1e-7f);
+    }
+
+    @Test
+    public void parse_triangulatesAndResolvesIndices() throws Exception {
+        String obj = "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\nvn 0 0 1\n"
+                + "usemtl red\nf 1//1 2//1 3//1 4//1\n"
+                + "usemtl blue\nf -4 -2 -1\n";
+        ObjMesh mesh = ObjMeshLoader.parse(new ByteArrayInputStream(obj.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2, mesh.faceCount);
+        assertEquals(3, mesh.getTriangleCount());
+        assertArrayEquals(new int[]{0, -1, 0, 1, -1, 0, 2, -1, 0}, Arrays.copyOf(mesh.corners, 9));
+        assertArrayEquals(new int[]{0, -1, -1, 2, -1, -1, 3, -1, -1},
+                Arrays.copyOfRange(mesh.corners, 18, 27));
+        assertArrayEquals(new String[]{"red", "blue"}, mesh.materialNames);
+        assertArrayEquals(new int[]{0, 2}, mesh.materialStarts);
+    }
+
+    @Test
+    public void cache_roundTrips() throws Exception {
+        File cacheFile = temporaryFolder.newFile("model.mesh");
+
+        ObjMesh parsed = ObjMeshLoader.parse(MODEL);
+        MeshCache.write(parsed, cacheFile);
+        ObjMesh cached = MeshCache.read(cacheFile);
+
+        assertNotNull(cached);
+        assertArrayEquals(parsed.positions, cached.positions, 0f);
+        assertArrayEquals(parsed.texCoords, cached.texCoords, 0f);
+        assertArrayEquals(parsed.normals, cached.normals, 0f);
+        assertArrayEquals(parsed.corners, cached.corners);
+        assertArrayEquals(parsed.materialNames, cached.materialNames);
+        assertArrayEquals(parsed.materialStarts, cached.materialStarts);
+        assertEquals(parsed.faceCount, cached.faceCount);
+    }
+
+    @Test
+    public void cache_rejectsTruncatedAndCorruptFiles() throws Exception {
+        File cacheFile = temporaryFolder.newFile("model.mesh");
+        MeshCache.write(ObjMeshLoader.parse(MODEL), cacheFile);
+        byte[] bytes = Files.readAllBytes(cacheFile.toPath());
+
+        for (int length : new int[] {bytes.length - 1, bytes.length / 2, 40}) {
+            Files.write(cacheFile.toPath(), Arrays.copyOf(bytes, length));
+            assertNull(MeshCache.read(cacheFile));
+        }
+
+        // A position count far larger than the file.
+        byte[] corrupt = bytes.clone();
+        corrupt[8 + 3] = 0x7F;
+        Files.write(cacheFile.toPath(), corrupt);
+        assertNull(MeshCache.read(cacheFile));
+    }
+}
@@ -0,0 +1,68 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class ObjMeshNormalizerTest {
+    private static final File MODEL =
+            new File(System.getProperty("sampledata", "../app/sampledata"), "model.obj");
+
+    @Test
+    public void modelKeepsItsShapeAndMaterials() throws Exception {
+        ObjMesh mesh = ObjMeshLoader.parse(MODEL);
+
+        ObjMesh normalized = ObjMeshNormalizer.normalize(mesh);
+
+        assertTrue(normalized.getVertexCount() <= mesh.getVertexCount());
+        assertTrue(normalized.getTriangleCount() <= mesh.getTriangleCount());
+        assertArrayEquals(mesh.computeBounds(), normalized.computeBounds(), 0f);
+        assertArrayEquals(mesh.materialNames, normalized.materialNames);
+        // A second pass has nothing left to do.
+        ObjMesh again = ObjMeshNormalizer.normalize(normalized);
+        assertArrayEquals(normalized.positions, again.positions, 0f);
+        assertArrayEquals(normalized.corners, again.corners);
+    }
+
+    @Test
+    public void duplicateAndUnusedAttributesAreDropped() throws IOException {
+        ObjMesh mesh = parse("v 0 0 0\nv 1 0 0\nv 1 1 0\nv -0 0 0\nv 1 1 0\nv 0 1 0\nv 9 9 9\n"
+                + "vt 0 0\nvt 0 0\nvn 0 0 1\nvn 0 0 1\n"
+                + "f 1/1/1 2/2/2 3/1/1\nf 4/2/2 5/1/1 6/2/2\n");
+
+        ObjMesh normalized = ObjMeshNormalizer.normalize(mesh);
+
+        assertArrayEquals(new float[]{0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0}, normalized.positions, 0f);
+        assertEquals(1, normalized.getTexCoordCount());
+        assertEquals(1, normalized.getNormalCount());
+        assertArrayEquals(new int[]{0, 0, 0, 1, 0, 0, 2, 0, 0, 0, 0, 0, 2, 0, 0, 3, 0, 0}, normalized.corners);
+        // -0 is written as 0.
+        assertEquals(Float.floatToIntBits(0f), Float.floatToIntBits(normalized.positions[0]));
+    }
+
+    @Test
+    public void degenerateTrianglesAndEmptyGroupsAreDropped() throws IOException {
+        ObjMesh mesh = parse("v 0 0 0\nv 1 0 0\nv 0 1 0\nv 1 0 0\n"
+                + "usemtl a\nf 1 2 3\nusemtl b\nf 1 2 4\nusemtl a\nf 3 2 1\n");
+
+        ObjMesh normalized = ObjMeshNormalizer.normalize(mesh);
+
+        assertEquals(2, normalized.getTriangleCount());
+        assertArrayEquals(new String[]{"a"}, normalized.materialNames);
+        assertArrayEquals(new int[]{0}, normalized.materialStarts);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void infiniteValuesAreRejected() throws IOException {
+        ObjMeshNormalizer.normalize(parse("v 0 0 0\nv 1e40 0 0\nv 0 1 0\nf 1 2 3\n"));
+    }
+
+    private static ObjMesh parse(String obj) throws IOException {
+        return ObjMeshLoader.parse(new ByteArrayInputStream(obj.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,179 @@
+package com.microsoft.sampleandroid;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProcessModelsTaskTest {
+    private static final File SAMPLEDATA = new File(System.getProperty("sampledata", "../app/sampledata"));
+
+    // A quad written as two triangles with their own copies of the shared corners, one of them
+    // at -0, and a material library with a material nothing uses.
+    private static final String CRATE =
+            "mtllib crate.mtl\n"
+                    + "v 0 0 0\nv 1 0 0\nv 1 1 0\nv -0 0 0\nv 1 1 0\nv 0 1 0\nv 5 5 5\n"
+                    + "usemtl red\n"
+                    + "f 1 2 3\nf 4 5 6\n";
+    private static final String CRATE_MATERIALS =
+            "# Crate\nnewmtl blue\n  Kd 0 0 1\n\nnewmtl red\n  Kd 1 0 0\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File projectDir;
+    private File models;
+    private File output;
+
+    @Before
+    public void setUp() throws IOException {
+        projectDir = temporaryFolder.getRoot();
+        models = new File(projectDir, "models");
+        output = new File(projectDir, "build/models");
+        new File(models, "props").mkdirs();
+        Files.copy(new File(SAMPLEDATA, "model.obj").toPath(), new File(models, "model.obj").toPath());
+        Files.copy(new File(SAMPLEDATA, "materials.mtl").toPath(), new File(models, "materials.mtl").toPath());
+        append(new File(models, "materials.mtl"), "\nnewmtl unused\n  Kd 1 0 1\n");
+        write(new File(models, "props/Crate.obj"), CRATE);
+        write(new File(models, "props/crate.mtl"), CRATE_MATERIALS);
+
+        StringBuilder classpath = new StringBuilder();
+        for (String path : System.getProperty("buildSrc.classes").split(File.pathSeparator)) {
+            classpath.append(classpath.length() == 0 ? "" : ", ").append('\'').append(path.replace("\\", "\\\\")).append('\'');
+        }
+        write(new File(projectDir, "settings.gradle"), "");
+        write(new File(projectDir, "build.gradle"),
+                "buildscript { dependencies { classpath files(" + classpath + ") } }\n"
+                        + "task processModels(type: com.microsoft.sampleandroid.ProcessModelsTask) {\n"
+                        + "    sourceDir = file('models')\n"
+                        + "    outputDir = file('build/models')\n"
+                        + "}\n"
+                        + "task generateLods(type: com.microsoft.sampleandroid.GenerateLodsTask) {\n"
+                        + "    sources = fileTree('build/models') { include '**/*.obj'; builtBy processModels }\n"
+                        + "    ratios = [0.5f]\n"
+                        + "    outputDir = file('build/lods')\n"
+                        + "}\n");
+    }
+
+    @Test
+    public void normalizesEveryModelAndWritesTheManifest() throws IOException {
+        BuildResult result = run().build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":processModels").getOutcome());
+        ObjMesh source = ObjMeshLoader.parse(new File(models, "model.obj"));
+        ObjMesh model = ObjMeshLoader.parse(new File(output, "model.obj"));
+        assertTrue(model.getVertexCount() <= source.getVertexCount());
+        assertArrayEquals(source.computeBounds(), model.computeBounds(), 0f);
+        assertArrayEquals(source.materialNames, model.materialNames);
+        assertTrue(read(new File(output, "model.obj")).startsWith("mtllib model.mtl\n"));
+        String materials = read(new File(output, "model.mtl"));
+        assertTrue(materials.contains("newmtl mat15"));
+        assertFalse(materials.contains("unused"));
+
+        ObjMesh crate = ObjMeshLoader.parse(new File(output, "props/Crate.obj"));
+        assertEquals(4, crate.getVertexCount());
+        assertEquals(2, crate.getTriangleCount());
+        assertArrayEquals(new float[]{0, 0, 0, 1, 1, 0}, crate.computeBounds(), 0f);
+        assertEquals("newmtl red\n  Kd 1 0 0\n\n", read(new File(output, "props/Crate.mtl")));
+
+        String manifest = read(new File(output, ProcessModelsTask.MANIFEST));
+        assertTrue(manifest.contains("\"name\": \"model\""));
+        assertTrue(manifest.contains("\"name\": \"props_crate\""));
+        assertTrue(manifest.contains("\"bytes\": " + new File(output, "model.obj").length() + ","));
+        assertTrue(manifest.contains("\"materials\": [\"red\"]"));
+        assertTrue(manifest.contains("\"bounds\": [0.0, 0.0, 0.0, 1.0, 1.0, 0.0]"));
+    }
+
+    @Test
+    public void onlyChangedModelsAreProcessedAgain() throws IOException {
+        run().build();
+
+        assertEquals(TaskOutcome.UP_TO_DATE, run().build().task(":processModels").getOutcome());
+
+        append(new File(models, "props/Crate.obj"), "f 1 3 6\n");
+        BuildResult result = run("--info").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":processModels").getOutcome());
+        assertTrue(result.getOutput().contains("model.obj: unchanged"));
+        assertFalse(result.getOutput().contains("props/Crate.obj: unchanged"));
+        assertEquals(3, ObjMeshLoader.parse(new File(output, "props/Crate.obj")).getTriangleCount());
+
+        // A material library counts as part of every model using it.
+        append(new File(models, "props/crate.mtl"), "  Ns 10\n");
+        result = run("--info").build();
+
+        assertFalse(result.getOutput().contains("props/Crate.obj: unchanged"));
+        assertTrue(read(new File(output, "props/Crate.mtl")).contains("Ns 10"));
+    }
+
+    @Test
+    public void removedModelsAreRemovedFromTheOutput() throws IOException {
+        run().build();
+
+        Files.delete(new File(models, "props/Crate.obj").toPath());
+        run().build();
+
+        assertFalse(new File(output, "props/Crate.obj").exists());
+        assertFalse(new File(output, "props/Crate.mtl").exists());
+        assertTrue(new File(output, "model.obj").exists());
+        assertFalse(read(new File(output, ProcessModelsTask.MANIFEST)).contains("props_crate"));
+    }
+
+    @Test
+    public void invalidModelsFailTheBuild() throws IOException {
+        write(new File(models, "props/Crate.obj"), CRATE.replace("usemtl red", "usemtl green"));
+        write(new File(models, "Broken.obj"), "v 0 0 0\nv 1 0 0\nv 0 1 0\nv 1e40 0 0\nf 1 2 4\n");
+
+        BuildResult result = run().buildAndFail();
+
+        assertTrue(result.getOutput(), result.getOutput().contains("props/Crate.obj: The material green is not defined"));
+        assertTrue(result.getOutput(), result.getOutput().contains("Broken.obj: Position 4 is not finite."));
+    }
+
+    @Test
+    public void levelsOfDetailKeepTheModelsPaths() throws IOException {
+        BuildResult result = run("generateLods").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":generateLods").getOutcome());
+        File lods = new File(projectDir, "build/lods");
+        assertEquals("props/Crate_lod1.obj", GenerateLodsTask.lodPath("props/Crate.obj", 1));
+        ObjMesh crate = ObjMeshLoader.parse(new File(lods, "props/Crate_lod1.obj"));
+        assertEquals(1, crate.getTriangleCount());
+        assertTrue(new File(lods, "props/Crate.mtl").isFile());
+        assertTrue(ObjMeshLoader.parse(new File(lods, "model_lod1.obj")).getTriangleCount()
+                < ObjMeshLoader.parse(new File(output, "model.obj")).getTriangleCount());
+        assertTrue(new File(lods, "model.mtl").isFile());
+    }
+
+    private GradleRunner run(String... arguments) {
+        List<String> all = new ArrayList<>(Arrays.asList(arguments));
+        all.add("processModels");
+        return GradleRunner.create().withProjectDir(projectDir).withArguments(all);
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void write(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void append(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
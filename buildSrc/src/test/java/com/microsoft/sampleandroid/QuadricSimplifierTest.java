@@ -0,0 +1,129 @@
+package com.microsoft.sampleandroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class QuadricSimplifierTest {
+    private static final File MODEL =
+            new File(System.getProperty("sampledata", "../app/sampledata"), "model.obj");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void modelReducesAndKeepsBoundsAndMaterials() throws Exception {
+        ObjMesh mesh = ObjMeshLoader.parse(MODEL);
+
+        for (float ratio : new float[]{0.5f, 0.25f}) {
+            int target = (int) (mesh.getTriangleCount() * ratio);
+            ObjMesh lod = QuadricSimplifier.simplify(mesh, target);
+
+            assertTrue("ratio " + ratio + " left " + lod.getTriangleCount(),
+                    lod.getTriangleCount() <= target + target / 20);
+            assertTrue(lod.getVertexCount() < mesh.getVertexCount());
+            assertArrayEquals(mesh.computeBounds(), lod.computeBounds(), 0f);
+            assertArrayEquals(mesh.materialNames, lod.materialNames);
+            assertEveryGroupDrawn(lod);
+            assertIndicesInRange(lod);
+        }
+    }
+
+    @Test
+    public void flatGridCollapsesToItsCorners() {
+        // A flat 20x20 quad grid costs nothing to simplify, but its four corners span the box.
+        ObjMesh grid = grid(20, false);
+
+        ObjMesh lod = QuadricSimplifier.simplify(grid, 2);
+
+        assertEquals(2, lod.getTriangleCount());
+        assertEquals(4, lod.getVertexCount());
+        assertArrayEquals(grid.computeBounds(), lod.computeBounds(), 0f);
+    }
+
+    @Test
+    public void everyMaterialKeepsATriangle() {
+        // One material per row; asking for a single triangle still has to draw all 10.
+        ObjMesh grid = grid(10, true);
+
+        ObjMesh lod = QuadricSimplifier.simplify(grid, 1);
+
+        assertEquals(10, lod.materialNames.length);
+        assertEveryGroupDrawn(lod);
+        assertIndicesInRange(lod);
+    }
+
+    @Test
+    public void targetAboveTriangleCountReturnsTheMesh() {
+        ObjMesh grid = grid(4, false);
+
+        assertSame(grid, QuadricSimplifier.simplify(grid, grid.getTriangleCount()));
+    }
+
+    @Test
+    public void writtenLodReadsBack() throws Exception {
+        ObjMesh lod = QuadricSimplifier.simplify(ObjMeshLoader.parse(MODEL), 2000);
+        File file = temporaryFolder.newFile("model_lod.obj");
+
+        ObjMeshWriter.write(lod, new String[]{"materials.mtl"}, file);
+        ObjMesh read = ObjMeshLoader.parse(file);
+
+        assertEquals(lod.getTriangleCount(), read.getTriangleCount());
+        assertArrayEquals(lod.positions, read.positions, 0f);
+        assertArrayEquals(lod.texCoords, read.texCoords, 0f);
+        assertArrayEquals(lod.normals, read.normals, 0f);
+        assertArrayEquals(lod.corners, read.corners);
+        assertArrayEquals(lod.materialNames, read.materialNames);
+        assertArrayEquals(lod.materialStarts, read.materialStarts);
+    }
+
+    // size x size quads in the z = 0 plane, optionally one material per row.
+    private static ObjMesh grid(int size, boolean materialPerRow) {
+        int side = size + 1;
+        float[] positions = new float[side * side * 3];
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                positions[(y * side + x) * 3] = x;
+                positions[(y * side + x) * 3 + 1] = y;
+            }
+        }
+        int[] corners = new int[size * size * 2 * 3 * ObjMesh.CORNER_STRIDE];
+        int out = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int v = y * side + x;
+                for (int vertex : new int[]{v, v + 1, v + side + 1, v, v + side + 1, v + side}) {
+                    corners[out++] = vertex;
+                    corners[out++] = -1;
+                    corners[out++] = -1;
+                }
+            }
+        }
+        String[] names = new String[materialPerRow ? size : 1];
+        int[] starts = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "mat" + i;
+            starts[i] = i * size * 2;
+        }
+        return new ObjMesh(positions, new float[0], new float[0], corners, size * size, names, starts);
+    }
+
+    private static void assertEveryGroupDrawn(ObjMesh mesh) {
+        for (int i = 0; i < mesh.materialStarts.length; i++) {
+            int end = i + 1 < mesh.materialStarts.length ? mesh.materialStarts[i + 1] : mesh.getTriangleCount();
+            assertTrue(mesh.materialNames[i] + " is empty", end > mesh.materialStarts[i]);
+        }
+    }
+
+    private static void assertIndicesInRange(ObjMesh mesh) {
+        for (int i = 0; i < mesh.corners.length; i += ObjMesh.CORNER_STRIDE) {
+            assertTrue(mesh.corners[i] >= 0 && mesh.corners[i] < mesh.getVertexCount());
+            assertTrue(mesh.corners[i + 1] < mesh.getTexCoordCount());
+            assertTrue(mesh.corners[i + 2] < mesh.getNormalCount());
+        }
+    }
+}